@@ -0,0 +1,140 @@
+package net.cacabish;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * How many bytes each step of cleaning one score allocated: parsing it, each cleaning operation, checking the changes, and writing it.
+ * <br><br>
+ * Bytes are counted with {@code com.sun.management.ThreadMXBean.getThreadAllocatedBytes}, so only what the cleaning thread allocates is counted;
+ * validating in the background, parsing in parallel and writing in parallel all allocate on other threads too, and that isn't counted.
+ * On a Java that can't count allocated bytes, nothing is recorded.
+ * <br><br>
+ * The number of elements in the score is recorded too, so that scores of different sizes can be compared by the bytes they allocate per element.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class AllocationStats {
+	
+	/**
+	 * The bean that counts allocated bytes, or {@code null} if this Java can't.
+	 */
+	private static final com.sun.management.ThreadMXBean THREADS = getThreadBean();
+	
+	/**
+	 * The bytes allocated by each step, in the order the steps were first performed.
+	 */
+	private final Map<String, Long> bytes = new LinkedHashMap<>();
+	
+	/**
+	 * The number of elements in the score, or 0 if it isn't known.
+	 */
+	private long elementCount = 0;
+	
+	/**
+	 * Constructs an empty set of stats.
+	 */
+	AllocationStats() {}
+	
+	/**
+	 * @return the bean that counts allocated bytes, or {@code null} if this Java can't
+	 */
+	private static com.sun.management.ThreadMXBean getThreadBean() {
+		try {
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+				if (threads.isThreadAllocatedMemorySupported()) {
+					if (!threads.isThreadAllocatedMemoryEnabled()) {
+						threads.setThreadAllocatedMemoryEnabled(true);
+					}
+					return threads;
+				}
+			}
+		} catch (LinkageError | RuntimeException e) {
+			// Not a Java that can count them
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the total number of bytes the current thread has allocated so far, or -1 if they can't be counted
+	 */
+	public static long threadAllocatedBytes() {
+		return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	/**
+	 * Records what the current thread has allocated since a mark, as part of a step. Recording the same step twice adds them together.
+	 * @param step the name of the step
+	 * @param mark what {@link #threadAllocatedBytes()} returned before the step started
+	 */
+	void record(String step, long mark) {
+		if (mark < 0) {
+			return;
+		}
+		long allocated = threadAllocatedBytes() - mark;
+		synchronized (bytes) {
+			bytes.merge(step, allocated, Long::sum);
+		}
+	}
+	
+	/**
+	 * Counts the elements of a score (leaving out any lazy slices) and records how many there are.
+	 * If this Java can't count allocated bytes, there's nothing to compare them with, so they aren't counted.
+	 * @param document the score
+	 */
+	void countElements(Document document) {
+		if (THREADS == null) {
+			return;
+		}
+		
+		// Walk the tree once without recursion
+		long elements = 0;
+		Node node = document.getDocumentElement();
+		while (node != null) {
+			if (node.getNodeType() == Node.ELEMENT_NODE) {
+				elements++;
+			}
+			
+			if (node.getFirstChild() != null) {
+				node = node.getFirstChild();
+				continue;
+			}
+			while (node != null && node.getNextSibling() == null) {
+				node = node.getParentNode();
+				if (node == document) {
+					node = null;
+				}
+			}
+			if (node != null) {
+				node = node.getNextSibling();
+			}
+		}
+		elementCount = elements;
+	}
+	
+	/**
+	 * @return the bytes allocated by each step, in the order the steps were first performed
+	 */
+	public Map<String, Long> getBytes() {
+		synchronized (bytes) {
+			return Collections.unmodifiableMap(new LinkedHashMap<>(bytes));
+		}
+	}
+	
+	/**
+	 * @return the number of elements in the score, or 0 if it isn't known
+	 */
+	public long getElementCount() {
+		return elementCount;
+	}
+}
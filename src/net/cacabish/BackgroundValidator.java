@@ -0,0 +1,210 @@
+package net.cacabish;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import net.cacabish.xml.ByteBufferInputStream;
+
+/**
+ * Validates the original bytes of a score on another thread while the score is being cleaned. See {@link MusicXMLCleaner#backgroundValidation}.
+ * <br><br>
+ * The validation uses a streaming parser, so it never builds a second copy of the score. If the thread that started it has a {@link CancellationToken},
+ * the validation stops when that token is cancelled, and it can also be abandoned once its answer is no longer needed.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+final class BackgroundValidator {
+	
+	/**
+	 * The threads validations run on. Idle threads go away after a minute.
+	 */
+	private static final ExecutorService THREADS = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "musicxml-validator");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	/**
+	 * The parser factories, one for each set of limits (since the parser's limits are set on the reader).
+	 */
+	private static final ConcurrentHashMap<ParsingLimits, SAXParserFactory> FACTORIES = new ConcurrentHashMap<>();
+	
+	/**
+	 * The readers each validation thread has made, one for each set of limits. Creating a reader is slow, so they are reused.
+	 */
+	private static final ThreadLocal<Map<ParsingLimits, XMLReader>> READERS = ThreadLocal.withInitial(HashMap::new);
+	
+	/**
+	 * Stops the validation if its answer is no longer needed.
+	 */
+	private final CancellationToken abandoned = new CancellationToken();
+	
+	/**
+	 * The running validation.
+	 */
+	private final Future<Void> result;
+	
+	/**
+	 * Starts validating a score.
+	 * @param source the bytes of the score, from its position to its limit. They must not change until the validation is done.
+	 * @param systemId the system ID of the score, or {@code null} if it didn't come from a file
+	 * @param limits the limits the score must stay within
+	 */
+	private BackgroundValidator(ByteBuffer source, String systemId, ParsingLimits limits) {
+		CancellationToken caller = CancellationToken.current();
+		result = THREADS.submit(() -> {
+			validate(source, systemId, limits, caller);
+			return null;
+		});
+	}
+	
+	/**
+	 * Starts validating a score on another thread.
+	 * @param source the bytes of the score, from its position to its limit. They must not change until the validation is done.
+	 * @param systemId the system ID of the score, or {@code null} if it didn't come from a file
+	 * @param limits the limits the score must stay within
+	 * @return the running validation
+	 */
+	static BackgroundValidator start(ByteBuffer source, String systemId, ParsingLimits limits) {
+		if (source == null)
+			throw new IllegalArgumentException("buffer provided was null");
+		if (limits == null)
+			throw new IllegalArgumentException("limits provided was null");
+		return new BackgroundValidator(source, systemId, limits);
+	}
+	
+	/**
+	 * Waits for the validation to finish.
+	 * @throws SAXException if the score isn't valid, or a {@link LimitExceededException} if it goes over a limit
+	 * @throws IOException if the score couldn't be read, or the thread was interrupted while waiting
+	 * @throws CancellationException if the validation was stopped by the caller's token
+	 */
+	void await() throws SAXException, IOException {
+		try {
+			result.get();
+		} catch (InterruptedException e) {
+			abandon();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for validation");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SAXException) {
+				throw (SAXException) cause;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause); // Errors are all that's left
+		}
+	}
+	
+	/**
+	 * Stops the validation at its next read, if it's still going. Does nothing if it has already finished.
+	 */
+	void abandon() {
+		abandoned.cancel("validation abandoned");
+	}
+	
+	/**
+	 * Validates a score on the current thread.
+	 * @param source the bytes of the score
+	 * @param systemId the system ID of the score, or {@code null}
+	 * @param limits the limits the score must stay within
+	 * @param caller the token of the thread that started the validation, or {@code null}
+	 * @throws SAXException if the score isn't valid
+	 * @throws IOException if the score couldn't be read
+	 */
+	private void validate(ByteBuffer source, String systemId, ParsingLimits limits, CancellationToken caller) throws SAXException, IOException {
+		XMLReader reader = getReader(limits);
+		XMLValidationErrorHandler errorHandler = new XMLValidationErrorHandler();
+		reader.setErrorHandler(errorHandler);
+		reader.setEntityResolver(new MusicXMLEntityResolver());
+		
+		// Check both tokens on every read, so that the validation stops when the cleaning does
+		InputStream in = new FilterInputStream(new ByteBufferInputStream(source)) {
+			@Override
+			public int read() throws IOException {
+				check();
+				return super.read();
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				check();
+				return super.read(b, off, len);
+			}
+			
+			private void check() {
+				abandoned.check();
+				if (caller != null) {
+					caller.check();
+				}
+			}
+		};
+		InputSource input = new InputSource(in);
+		input.setSystemId(systemId);
+		
+		try {
+			reader.parse(input);
+		} catch (SAXException e) {
+			throw ParsingLimits.translate(e);
+		}
+		if (!errorHandler.isValid()) {
+			throw ParsingLimits.translate(errorHandler.getException());
+		}
+	}
+	
+	/**
+	 * Returns this thread's validating reader for a set of limits, making it if this is the first time.
+	 * @param limits the limits the reader must enforce
+	 * @return the reader
+	 * @throws SAXException if the reader can't be made
+	 */
+	private static XMLReader getReader(ParsingLimits limits) throws SAXException {
+		Map<ParsingLimits, XMLReader> readers = READERS.get();
+		XMLReader reader = readers.get(limits);
+		if (reader != null) {
+			return reader;
+		}
+		
+		SAXParserFactory factory = FACTORIES.computeIfAbsent(limits, l -> {
+			SAXParserFactory spf = SAXParserFactory.newInstance();
+			spf.setValidating(true);
+			return spf;
+		});
+		try {
+			synchronized (factory) {
+				// The factory isn't guaranteed to be thread-safe
+				reader = factory.newSAXParser().getXMLReader();
+			}
+		} catch (ParserConfigurationException e) {
+			throw new SAXException("Unable to create a validating parser", e);
+		}
+		limits.configure(reader);
+		readers.put(limits, reader);
+		return reader;
+	}
+}
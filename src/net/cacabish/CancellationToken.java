@@ -0,0 +1,156 @@
+package net.cacabish;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A flag that lets one thread ask another to stop cleaning a score, such as when the score has taken too long.
+ * <br><br>
+ * Cleaning can't be stopped from the outside safely, so instead, the thread doing the cleaning binds a token with {@link #bind()},
+ * and the parser and the cleaning operations call {@link #checkCurrent()} every so often (once a measure, once a word, and so on).
+ * Once the token is cancelled, the next check throws a {@link CancellationException}, which unwinds the cleaning and leaves the file untouched.
+ * <br><br>
+ * Usage:
+ * <pre>
+ * CancellationToken.Binding binding = token.bind();
+ * try {
+ *     score = MusicXMLCleaner.clean(file, null, options);
+ * } finally {
+ *     binding.close();
+ * }
+ * </pre>
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class CancellationToken {
+	
+	/**
+	 * The token bound to each thread, if any.
+	 */
+	private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<>();
+	
+	/**
+	 * Why the token was cancelled, or {@code null} if it hasn't been.
+	 */
+	private volatile String reason = null;
+	
+	/**
+	 * Binds a token to the current thread, and unbinds it again when closed.
+	 */
+	public final class Binding implements AutoCloseable {
+		
+		/**
+		 * The token that was bound before this one, which is put back when this one is unbound.
+		 */
+		private final CancellationToken previous;
+		
+		/**
+		 * Binds the token.
+		 */
+		private Binding() {
+			previous = CURRENT.get();
+			CURRENT.set(CancellationToken.this);
+		}
+		
+		@Override
+		public void close() {
+			if (previous == null) {
+				CURRENT.remove();
+			}
+			else {
+				CURRENT.set(previous);
+			}
+		}
+	}
+	
+	/**
+	 * Constructs a token that hasn't been cancelled.
+	 */
+	public CancellationToken() {}
+	
+	/**
+	 * Cancels the token. The thread it is bound to stops at its next check. Cancelling a token twice keeps the first reason.
+	 * @param reason why the token was cancelled, which becomes the message of the exception
+	 */
+	public void cancel(String reason) {
+		if (this.reason == null) {
+			this.reason = reason == null ? "cancelled" : reason;
+		}
+	}
+	
+	/**
+	 * @return true if the token has been cancelled
+	 */
+	public boolean isCancelled() {
+		return reason != null;
+	}
+	
+	/**
+	 * @return why the token was cancelled, or {@code null} if it hasn't been
+	 */
+	public String getReason() {
+		return reason;
+	}
+	
+	/**
+	 * Throws if the token has been cancelled.
+	 * @throws CancellationException if the token has been cancelled
+	 */
+	public void check() {
+		String reason = this.reason;
+		if (reason != null) {
+			throw new CancellationException(reason);
+		}
+	}
+	
+	/**
+	 * Binds this token to the current thread until the binding is closed.
+	 * @return the binding
+	 */
+	public Binding bind() {
+		return new Binding();
+	}
+	
+	/**
+	 * @return the token bound to the current thread, or {@code null} if there isn't one
+	 */
+	public static CancellationToken current() {
+		return CURRENT.get();
+	}
+	
+	/**
+	 * Throws if the token bound to the current thread has been cancelled. Does nothing if no token is bound.
+	 * @throws CancellationException if the bound token has been cancelled
+	 */
+	public static void checkCurrent() {
+		CancellationToken token = CURRENT.get();
+		if (token != null) {
+			token.check();
+		}
+	}
+	
+	/**
+	 * Wraps a stream so that every read checks the token bound to the reading thread. This is how a parse gets stopped partway through.
+	 * @param in the stream
+	 * @return the wrapped stream
+	 */
+	public static InputStream checking(InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				checkCurrent();
+				return super.read();
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				checkCurrent();
+				return super.read(b, off, len);
+			}
+		};
+	}
+}
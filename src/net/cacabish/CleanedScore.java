@@ -0,0 +1,56 @@
+package net.cacabish;
+
+import org.w3c.dom.Document;
+
+/**
+ * A score that has been cleaned but not yet saved, along with anything else that needs to be saved with it.
+ * Returned by {@link MusicXMLCleaner#clean(java.io.File, java.io.File, CleaningOptions)} and passed to {@link MusicXMLCleaner#writeToFile(CleanedScore, java.io.File)}.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class CleanedScore {
+	
+	/**
+	 * The cleaned document. Replaced with a new document if the score is converted to another version of MusicXML.
+	 */
+	Document document;
+	
+	/**
+	 * The manifest of the document, if it is being cleaned incrementally. It is saved beside the file the document is written to.
+	 */
+	MeasureManifest manifest = null;
+	
+	/**
+	 * Whether to write each part of the document on its own thread when it's saved to a file. See {@link MusicXMLCleaner#parallelWriting}.
+	 */
+	boolean parallelWriting = false;
+	
+	/**
+	 * How many bytes each step of cleaning and saving the score allocated.
+	 */
+	AllocationStats allocations = new AllocationStats();
+	
+	/**
+	 * Constructs a cleaned score.
+	 * @param document the document
+	 */
+	CleanedScore(Document document) {
+		this.document = document;
+	}
+	
+	/**
+	 * @return the cleaned document
+	 */
+	public Document getDocument() {
+		return document;
+	}
+	
+	/**
+	 * @return how many bytes each step of cleaning the score allocated, and (once it has been saved) saving it
+	 */
+	public AllocationStats getAllocations() {
+		return allocations;
+	}
+}
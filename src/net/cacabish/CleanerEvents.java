@@ -0,0 +1,444 @@
+package net.cacabish;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+
+/**
+ * Java Flight Recorder events for the parts of cleaning a score that take the time: parsing it, each cleaning operation, and writing it to a file.
+ * <br><br>
+ * The events only cost anything while a recording that has them turned on is running, so they can be left on in production. To record a batch, start it with
+ * <pre>
+ * java -XX:StartFlightRecording=settings=musicxml-cleaner.jfc,filename=batch.jfr -cp MusicXML-Cleaner.jar net.cacabish.batch.BatchCleaner ...
+ * </pre>
+ * using the template in the jar (which also turns on the garbage collection, file, socket and CPU events to line them up against), or add
+ * {@code net.cacabish.*} to any other template. The events are:
+ * <ul>
+ * <li>{@code net.cacabish.Parse}: one per score parsed, with its size, how it was parsed, and whether the parse validated it.</li>
+ * <li>{@code net.cacabish.Operation}: one per cleaning operation, with how many nodes it looked at and how many it changed.</li>
+ * <li>{@code net.cacabish.Write}: one per score written to a file, with how many bytes were written.</li>
+ * </ul>
+ * Flight Recorder's own API can't be compiled against for Java 8, so the event types are made with its {@code EventFactory} when this class loads.
+ * On a Java without Flight Recorder, nothing is recorded and every method here does (next to) nothing.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class CleanerEvents {
+	
+	/**
+	 * The category every event is shown under.
+	 */
+	private static final String CATEGORY = "MusicXML Cleaner";
+	
+	/**
+	 * The DOM mutation events that count as changing a node.
+	 */
+	private static final String[] MUTATION_TYPES = {"DOMAttrModified", "DOMNodeInserted", "DOMNodeRemoved", "DOMCharacterDataModified"};
+	
+	/**
+	 * The type of the parse event, or {@code null} if there is no Flight Recorder.
+	 */
+	private static final EventType PARSE;
+	
+	/**
+	 * The type of the operation event, or {@code null} if there is no Flight Recorder.
+	 */
+	private static final EventType OPERATION;
+	
+	/**
+	 * The type of the write event, or {@code null} if there is no Flight Recorder.
+	 */
+	private static final EventType WRITE;
+	
+	/**
+	 * The operation being recorded on each thread, if any.
+	 */
+	private static final ThreadLocal<Operation> CURRENT = new ThreadLocal<>();
+	
+	static {
+		EventType parse = null, operation = null, write = null;
+		try {
+			Flight flight = new Flight();
+			parse = flight.type("net.cacabish.Parse", "Parse Score", "A score being parsed (and validated, unless that happens in the background).",
+					flight.field(String.class, "source", "Source", null),
+					flight.field(long.class, "size", "Size", "BYTES"),
+					flight.field(String.class, "mode", "Mode", null),
+					flight.field(boolean.class, "validating", "Validating", null));
+			operation = flight.type("net.cacabish.Operation", "Cleaning Operation", "One cleaning operation being performed on a score.",
+					flight.field(String.class, "name", "Name", null),
+					flight.field(int.class, "nodesVisited", "Nodes Visited", null),
+					flight.field(int.class, "nodesModified", "Nodes Modified", null));
+			write = flight.type("net.cacabish.Write", "Write Score", "A cleaned score being written to a file.",
+					flight.field(String.class, "destination", "Destination", null),
+					flight.field(long.class, "bytes", "Bytes Written", "BYTES"),
+					flight.field(boolean.class, "parallel", "Parallel", null));
+		} catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+			// There's no Flight Recorder on this Java (or not one this can use), so there's nothing to record to
+			parse = operation = write = null;
+		}
+		PARSE = parse;
+		OPERATION = operation;
+		WRITE = write;
+	}
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private CleanerEvents() {}
+	
+	/**
+	 * Something being timed, which becomes an event when it ends.
+	 */
+	public static class Span {
+		
+		/**
+		 * A span that isn't being recorded.
+		 */
+		private static final Span NONE = new Span(null, null);
+		
+		/**
+		 * The type of the event.
+		 */
+		private final EventType type;
+		
+		/**
+		 * The {@code jdk.jfr.Event}, which has begun.
+		 */
+		private final Object event;
+		
+		/**
+		 * Constructs a span.
+		 * @param type the type of the event
+		 * @param event the event, which has begun
+		 */
+		private Span(EventType type, Object event) {
+			this.type = type;
+			this.event = event;
+		}
+		
+		/**
+		 * Ends the span and records the event, if it's being recorded.
+		 * @param values the value of each of the event's fields, in order
+		 */
+		void end(Object... values) {
+			if (event != null) {
+				type.commit(event, values);
+			}
+		}
+	}
+	
+	/**
+	 * A cleaning operation being recorded, which counts the nodes it looks at and changes.
+	 */
+	private static final class Operation extends Span implements EventListener {
+		
+		/**
+		 * The nodes the operation has looked at.
+		 */
+		private int visited = 0;
+		
+		/**
+		 * The nodes the operation has changed, inserted or removed, each counted once.
+		 */
+		private final Set<Object> modified = Collections.newSetFromMap(new IdentityHashMap<>());
+		
+		/**
+		 * Constructs an operation.
+		 * @param event the event, which has begun
+		 */
+		private Operation(Object event) {
+			super(OPERATION, event);
+		}
+		
+		@Override
+		public void handleEvent(Event event) {
+			modified.add(event.getTarget());
+		}
+	}
+	
+	/**
+	 * Starts timing a parse.
+	 * @return the span to end with {@link #endParse(Span, String, long, String, boolean)} once the score is parsed
+	 */
+	public static Span beginParse() {
+		return begin(PARSE);
+	}
+	
+	/**
+	 * Records a parse.
+	 * @param span the span from {@link #beginParse()}
+	 * @param source the name of the file the score was parsed from, or {@code null} if it wasn't a file
+	 * @param size the size of the score, in bytes
+	 * @param mode how the score was parsed: {@code lazy}, {@code parallel}, {@code background} or {@code normal}
+	 * @param validating whether the parse validated the score (rather than something else doing so in the background)
+	 */
+	public static void endParse(Span span, String source, long size, String mode, boolean validating) {
+		span.end(source, size, mode, validating);
+	}
+	
+	/**
+	 * Starts timing a write.
+	 * @return the span to end with {@link #endWrite(Span, String, long, boolean)} once the score is written
+	 */
+	public static Span beginWrite() {
+		return begin(WRITE);
+	}
+	
+	/**
+	 * Records a write.
+	 * @param span the span from {@link #beginWrite()}
+	 * @param destination the file the score was written to
+	 * @param bytes the number of bytes written
+	 * @param parallel whether the parts were written in parallel
+	 */
+	public static void endWrite(Span span, String destination, long bytes, boolean parallel) {
+		span.end(destination, bytes, parallel);
+	}
+	
+	/**
+	 * Performs a cleaning operation, recording it if operations are being recorded.
+	 * While it's recorded, every node it changes is counted (with DOM mutation events), and so is every node it reports with {@link #visited(int)}.
+	 * @param name the name of the operation
+	 * @param document the score being cleaned
+	 * @param operation the operation
+	 */
+	public static void operation(String name, Document document, Runnable operation) {
+		Object event = OPERATION == null ? null : OPERATION.begin();
+		if (event == null) {
+			operation.run(); // Not recording, so stay out of the way
+			return;
+		}
+		
+		Operation recording = new Operation(event);
+		EventTarget target = document instanceof EventTarget ? (EventTarget) document : null;
+		if (target != null) {
+			for (String type : MUTATION_TYPES) {
+				target.addEventListener(type, recording, true);
+			}
+		}
+		Operation previous = CURRENT.get();
+		CURRENT.set(recording);
+		try {
+			operation.run();
+		} finally {
+			CURRENT.set(previous);
+			if (target != null) {
+				for (String type : MUTATION_TYPES) {
+					target.removeEventListener(type, recording, true);
+				}
+			}
+			recording.end(name, recording.visited, recording.modified.size());
+		}
+	}
+	
+	/**
+	 * Counts nodes that the operation being recorded on this thread has looked at. This is cheap enough to call from anywhere, since it does nothing
+	 * unless an operation is being recorded.
+	 * @param nodes the number of nodes
+	 */
+	public static void visited(int nodes) {
+		if (OPERATION == null) {
+			return;
+		}
+		Operation recording = CURRENT.get();
+		if (recording != null) {
+			recording.visited += nodes;
+		}
+	}
+	
+	/**
+	 * Begins a span of an event type, if it's being recorded.
+	 * @param type the type of the event, or {@code null} if there is no Flight Recorder
+	 * @return the span, which does nothing when it ends if the event isn't being recorded
+	 */
+	private static Span begin(EventType type) {
+		Object event = type == null ? null : type.begin();
+		return event == null ? Span.NONE : new Span(type, event);
+	}
+	
+	/**
+	 * An event type made with Flight Recorder's {@code EventFactory}.
+	 */
+	private static final class EventType {
+		
+		/**
+		 * The {@code jdk.jfr.EventFactory} that makes events of this type.
+		 */
+		private final Object factory;
+		
+		/**
+		 * The {@code jdk.jfr.EventType}.
+		 */
+		private final Object type;
+		
+		/**
+		 * The flight recorder methods used to make and record events.
+		 */
+		private final Flight flight;
+		
+		/**
+		 * Constructs an event type.
+		 * @param factory the factory
+		 * @param flight the flight recorder methods
+		 * @throws ReflectiveOperationException if the factory can't be asked for its type
+		 */
+		private EventType(Object factory, Flight flight) throws ReflectiveOperationException {
+			this.factory = factory;
+			this.type = flight.getEventType.invoke(factory);
+			this.flight = flight;
+		}
+		
+		/**
+		 * Makes a new event and begins timing it, if this type is being recorded.
+		 * @return the event, or {@code null} if this type isn't being recorded right now
+		 */
+		private Object begin() {
+			try {
+				if (!(Boolean) flight.isEnabled.invoke(type)) {
+					return null;
+				}
+				Object event = flight.newEvent.invoke(factory);
+				flight.begin.invoke(event);
+				return event;
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				return null; // Recording is never worth failing over
+			}
+		}
+		
+		/**
+		 * Sets an event's fields and records it.
+		 * @param event the event
+		 * @param values the value of each field, in order
+		 */
+		private void commit(Object event, Object[] values) {
+			try {
+				for (int i = 0; i < values.length; i++) {
+					flight.set.invoke(event, i, values[i]);
+				}
+				flight.commit.invoke(event);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				// Same here
+			}
+		}
+	}
+	
+	/**
+	 * The parts of Flight Recorder's API that are needed, looked up by name.
+	 */
+	private static final class Flight {
+		
+		/**
+		 * {@code new AnnotationElement(Class, Object)}
+		 */
+		private final Constructor<?> annotationElement;
+		
+		/**
+		 * {@code new ValueDescriptor(Class, String, List)}
+		 */
+		private final Constructor<?> valueDescriptor;
+		
+		/**
+		 * {@code EventFactory.create(List, List)}
+		 */
+		private final Method create;
+		
+		/**
+		 * {@code EventFactory.getEventType()}, {@code EventFactory.newEvent()} and {@code EventType.isEnabled()}
+		 */
+		private final Method getEventType, newEvent, isEnabled;
+		
+		/**
+		 * {@code Event.begin()}, {@code Event.set(int, Object)} and {@code Event.commit()}
+		 */
+		private final Method begin, set, commit;
+		
+		/**
+		 * The annotations an event type or field can have.
+		 */
+		private final Class<? extends Annotation> name, label, description, category, stackTrace, dataAmount;
+		
+		/**
+		 * Looks up the API.
+		 * @throws ReflectiveOperationException if any of it is missing
+		 */
+		private Flight() throws ReflectiveOperationException {
+			Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+			Class<?> eventClass = Class.forName("jdk.jfr.Event");
+			annotationElement = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+			valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+			create = factoryClass.getMethod("create", List.class, List.class);
+			getEventType = factoryClass.getMethod("getEventType");
+			newEvent = factoryClass.getMethod("newEvent");
+			isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+			begin = eventClass.getMethod("begin");
+			set = eventClass.getMethod("set", int.class, Object.class);
+			commit = eventClass.getMethod("commit");
+			name = annotation("jdk.jfr.Name");
+			label = annotation("jdk.jfr.Label");
+			description = annotation("jdk.jfr.Description");
+			category = annotation("jdk.jfr.Category");
+			stackTrace = annotation("jdk.jfr.StackTrace");
+			dataAmount = annotation("jdk.jfr.DataAmount");
+		}
+		
+		/**
+		 * @param className the name of an annotation class
+		 * @return the class
+		 * @throws ClassNotFoundException if there is no such class
+		 */
+		private static Class<? extends Annotation> annotation(String className) throws ClassNotFoundException {
+			return Class.forName(className).asSubclass(Annotation.class);
+		}
+		
+		/**
+		 * Makes and registers an event type. Stack traces are left off, since where these events come from never changes.
+		 * @param typeName the name of the type
+		 * @param typeLabel what the type is shown as
+		 * @param typeDescription what the type records
+		 * @param fields the type's fields, from {@link #field(Class, String, String, String)}
+		 * @return the type
+		 * @throws ReflectiveOperationException if the type can't be made
+		 */
+		private EventType type(String typeName, String typeLabel, String typeDescription, Object... fields) throws ReflectiveOperationException {
+			List<Object> annotations = Arrays.asList(
+					annotationElement.newInstance(name, typeName),
+					annotationElement.newInstance(label, typeLabel),
+					annotationElement.newInstance(description, typeDescription),
+					annotationElement.newInstance(category, new String[] {CATEGORY}),
+					annotationElement.newInstance(stackTrace, false));
+			return new EventType(create.invoke(null, annotations, Arrays.asList(fields)), this);
+		}
+		
+		/**
+		 * Describes a field of an event type.
+		 * @param type the type of the field
+		 * @param fieldName the name of the field
+		 * @param fieldLabel what the field is shown as
+		 * @param amount the kind of amount the field holds (such as {@code BYTES}), or {@code null} if it's not an amount of data
+		 * @return the {@code jdk.jfr.ValueDescriptor}
+		 * @throws ReflectiveOperationException if the field can't be described
+		 */
+		private Object field(Class<?> type, String fieldName, String fieldLabel, String amount) throws ReflectiveOperationException {
+			List<Object> annotations = new ArrayList<>();
+			annotations.add(annotationElement.newInstance(label, fieldLabel));
+			if (amount != null) {
+				annotations.add(annotationElement.newInstance(dataAmount, amount));
+			}
+			return valueDescriptor.newInstance(type, fieldName, annotations);
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package net.cacabish;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Locale;
+
+import net.cacabish.xml.MusicXMLConverter;
+
+/**
+ * A snapshot of every option that controls a single cleaning job.
+ * <br><br>
+ * The static flags in {@link MusicXMLCleaner} are what the GUI changes, and {@link #fromCurrentFlags()} copies them into a new set of options.
+ * Anything that cleans several files at once (such as the daemon) should give each job its own options, so that one job can't change another's flags halfway through.
+ * <br><br>
+ * Every field here has the same name (and meaning) as the flag it was copied from.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class CleaningOptions {
+	
+	/** See {@link MusicXMLCleaner#addMiniTitlesAndPageNumbers}. */
+	public boolean addMiniTitlesAndPageNumbers     = true;
+	/** See {@link MusicXMLCleaner#addSystemMeasureNumbers}. */
+	public boolean addSystemMeasureNumbers         = true;
+	/** See {@link MusicXMLCleaner#removeDuplicateCopyrightInfo}. */
+	public boolean removeDuplicateCopyrightInfo    = true;
+	/** See {@link MusicXMLCleaner#correctTempoMarking}. */
+	public boolean correctTempoMarking             = true;
+	/** See {@link MusicXMLCleaner#centerCreditsHorizontally}. */
+	public boolean centerCreditsHorizontally       = true;
+	/** See {@link MusicXMLCleaner#offsetSystemMargins}. */
+	public boolean offsetSystemMargins             = true;
+	/** See {@link MusicXMLCleaner#makeRepeatTextsBold}. */
+	public boolean makeRepeatTextsBold             = true;
+	/** See {@link MusicXMLCleaner#addPeriodsToVoltaTexts}. */
+	public boolean addPeriodsToVoltaTexts          = true;
+	/** See {@link MusicXMLCleaner#addSwing8thsWhereSwingDirection}. */
+	public boolean addSwing8thsWhereSwingDirection = true;
+	/** See {@link MusicXMLCleaner#replaceEdwinAndFreeSerifWithTimesNewRoman}. */
+	public boolean replaceEdwinAndFreeSerifWithTimesNewRoman = true;
+	/** See {@link MusicXMLCleaner#fontMapper}. */
+	public FontMapper fontMapper = FontMapper.createDefault();
+	/** See {@link MusicXMLCleaner#formatOssias}. */
+	public boolean formatOssias = true;
+	
+	/** See {@link MusicXMLCleaner#lazyParsing}. */
+	public boolean lazyParsing = false;
+	/** See {@link MusicXMLCleaner#limits}. */
+	public ParsingLimits limits = ParsingLimits.DEFAULT;
+	/** See {@link MusicXMLCleaner#backgroundValidation}. */
+	public boolean backgroundValidation = false;
+	/** See {@link MusicXMLCleaner#parallelParsing}. */
+	public boolean parallelParsing = false;
+	/** See {@link MusicXMLCleaner#validateChanges}. */
+	public boolean validateChanges = true;
+	
+	/** See {@link MusicXMLCleaner#preserveFormatting}. */
+	public boolean preserveFormatting = false;
+	/** See {@link MusicXMLCleaner#incrementalCleaning}. */
+	public boolean incrementalCleaning = false;
+	/** See {@link MusicXMLCleaner#outputVersion}. */
+	public String outputVersion = null;
+	/** See {@link MusicXMLCleaner#parallelWriting}. */
+	public boolean parallelWriting = false;
+	
+	/**
+	 * Constructs a set of options with the default value of every flag.
+	 */
+	public CleaningOptions() {}
+	
+	/**
+	 * Copies the current value of every static flag in {@link MusicXMLCleaner}.
+	 * @return the new options
+	 */
+	public static CleaningOptions fromCurrentFlags() {
+		CleaningOptions options = new CleaningOptions();
+		options.addMiniTitlesAndPageNumbers = MusicXMLCleaner.addMiniTitlesAndPageNumbers;
+		options.addSystemMeasureNumbers = MusicXMLCleaner.addSystemMeasureNumbers;
+		options.removeDuplicateCopyrightInfo = MusicXMLCleaner.removeDuplicateCopyrightInfo;
+		options.correctTempoMarking = MusicXMLCleaner.correctTempoMarking;
+		options.centerCreditsHorizontally = MusicXMLCleaner.centerCreditsHorizontally;
+		options.offsetSystemMargins = MusicXMLCleaner.offsetSystemMargins;
+		options.makeRepeatTextsBold = MusicXMLCleaner.makeRepeatTextsBold;
+		options.addPeriodsToVoltaTexts = MusicXMLCleaner.addPeriodsToVoltaTexts;
+		options.addSwing8thsWhereSwingDirection = MusicXMLCleaner.addSwing8thsWhereSwingDirection;
+		options.replaceEdwinAndFreeSerifWithTimesNewRoman = MusicXMLCleaner.replaceEdwinAndFreeSerifWithTimesNewRoman;
+		options.fontMapper = MusicXMLCleaner.fontMapper;
+		options.formatOssias = MusicXMLCleaner.formatOssias;
+		options.lazyParsing = MusicXMLCleaner.lazyParsing;
+		options.limits = MusicXMLCleaner.limits;
+		options.backgroundValidation = MusicXMLCleaner.backgroundValidation;
+		options.parallelParsing = MusicXMLCleaner.parallelParsing;
+		options.validateChanges = MusicXMLCleaner.validateChanges;
+		options.preserveFormatting = MusicXMLCleaner.preserveFormatting;
+		options.incrementalCleaning = MusicXMLCleaner.incrementalCleaning;
+		options.outputVersion = MusicXMLCleaner.outputVersion;
+		options.parallelWriting = MusicXMLCleaner.parallelWriting;
+		return options;
+	}
+	
+	/**
+	 * @return a copy of these options. The font mapper is shared, since it isn't changed once it's configured, and so are the limits, which can't be changed at all.
+	 */
+	public CleaningOptions copy() {
+		CleaningOptions options = new CleaningOptions();
+		for (Field field : CleaningOptions.class.getFields()) {
+			if (Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+			try {
+				field.set(options, field.get(this));
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e); // They're all public, so this can't happen
+			}
+		}
+		return options;
+	}
+	
+	/**
+	 * Sets an option by name, as it would be written on a command line or in a request.
+	 * Every boolean flag accepts {@code true} or {@code false}. The {@code fontMapper} option accepts the path of a font mapping file (see {@link FontMapper#load(File)}).
+	 * The {@code limits} option accepts the name of a profile (see {@link ParsingLimits#forName(String)}), and a single limit can be changed with
+	 * {@code limits.<name>}, such as {@code limits.maxDepth=128}. The {@code outputVersion} option accepts a version of MusicXML, such as {@code 3.0}, or {@code none}.
+	 * @param name the name of the option, which is the name of its field
+	 * @param value the new value
+	 * @throws IllegalArgumentException if there is no such option or the value isn't valid for it
+	 * @throws IOException if the font mapping file can't be loaded
+	 */
+	public void set(String name, String value) throws IOException {
+		if (name == null || value == null)
+			throw new IllegalArgumentException("option provided was null");
+		
+		if (name.equals("fontMapper")) {
+			fontMapper = FontMapper.load(new File(value));
+			return;
+		}
+		if (name.equals("outputVersion")) {
+			String version = value.trim();
+			if (version.isEmpty() || version.equalsIgnoreCase("none")) {
+				outputVersion = null;
+			}
+			else if (MusicXMLConverter.isSupportedVersion(version)) {
+				outputVersion = version;
+			}
+			else {
+				throw new IllegalArgumentException("can't save as MusicXML " + value);
+			}
+			return;
+		}
+		if (name.equals("limits")) {
+			limits = ParsingLimits.forName(value);
+			return;
+		}
+		if (name.startsWith("limits.")) {
+			try {
+				limits = limits.with(name.substring("limits.".length()), Long.parseLong(value.trim()));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("option " + name + " must be a number, not " + value);
+			}
+			return;
+		}
+		
+		Field field;
+		try {
+			field = CleaningOptions.class.getField(name);
+		} catch (NoSuchFieldException e) {
+			throw new IllegalArgumentException("unknown option: " + name);
+		}
+		if (field.getType() != boolean.class || Modifier.isStatic(field.getModifiers())) {
+			throw new IllegalArgumentException("unknown option: " + name);
+		}
+		
+		String lowercase = value.trim().toLowerCase(Locale.ROOT);
+		if (!lowercase.equals("true") && !lowercase.equals("false")) {
+			throw new IllegalArgumentException("option " + name + " must be true or false, not " + value);
+		}
+		try {
+			field.setBoolean(this, Boolean.parseBoolean(lowercase));
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e); // Again, can't happen
+		}
+	}
+	
+	/**
+	 * Describes every option that changes how a measure is cleaned, so that a change in options can be detected between cleanings.
+	 * @return the description
+	 */
+	public String describe() {
+		return "addMiniTitlesAndPageNumbers=" + addMiniTitlesAndPageNumbers
+				+ ";addSystemMeasureNumbers=" + addSystemMeasureNumbers
+				+ ";removeDuplicateCopyrightInfo=" + removeDuplicateCopyrightInfo
+				+ ";correctTempoMarking=" + correctTempoMarking
+				+ ";centerCreditsHorizontally=" + centerCreditsHorizontally
+				+ ";offsetSystemMargins=" + offsetSystemMargins
+				+ ";makeRepeatTextsBold=" + makeRepeatTextsBold
+				+ ";addPeriodsToVoltaTexts=" + addPeriodsToVoltaTexts
+				+ ";addSwing8thsWhereSwingDirection=" + addSwing8thsWhereSwingDirection
+				+ ";replaceEdwinAndFreeSerifWithTimesNewRoman=" + replaceEdwinAndFreeSerifWithTimesNewRoman
+				+ ";fontMapper=" + fontMapper.getMappings()
+				+ ";formatOssias=" + formatOssias
+				+ ";lazyParsing=" + lazyParsing
+				+ ";lineSeparator=" + System.lineSeparator();
+	}
+}
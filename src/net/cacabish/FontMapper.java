@@ -0,0 +1,327 @@
+package net.cacabish;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import net.cacabish.xml.ChangeValidator;
+
+/**
+ * A configurable table of source fonts and the fonts that should replace them.
+ * <br><br>
+ * The mapper is applied with a single walk over the document's elements, checking each {@code font-family} attribute.
+ * Since a {@code font-family} attribute may contain a comma-separated list of fonts, each entry in the list is checked and replaced on its own.
+ * Font names are matched case insensitively and surrounding quotation marks are ignored.
+ * <br><br>
+ * The mapper also keeps a running total of every replacement made, which is safe to read and update from multiple threads.
+ * The table itself should be fully configured before the mapper is used.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class FontMapper {
+	
+	/**
+	 * The name of the attribute this mapper inspects.
+	 */
+	private static final String FONT_FAMILY = "font-family";
+	
+	/**
+	 * The table of replacements. The key is the lowercase source font and the value is a pair of the source font (as it was configured) and the target font.
+	 */
+	private final Map<String, String[]> mappings;
+	
+	/**
+	 * The running total of replacements made by this mapper, keyed by the source font as it was configured.
+	 */
+	private final ConcurrentHashMap<String, AtomicLong> totals;
+	
+	/**
+	 * Constructs a mapper with an empty table.
+	 */
+	public FontMapper() {
+		mappings = new LinkedHashMap<>();
+		totals = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Constructs the default mapper, which replaces the fonts Edwin and FreeSerif with Times New Roman.
+	 * @return a new mapper with the default table
+	 */
+	public static FontMapper createDefault() {
+		FontMapper mapper = new FontMapper();
+		mapper.addMapping("Edwin", "Times New Roman");
+		mapper.addMapping("FreeSerif", "Times New Roman");
+		return mapper;
+	}
+	
+	/**
+	 * Loads a mapper from a text file. Each non-empty line should be of the form {@code Source Font = Target Font}.
+	 * Lines beginning with a {@code #} are treated as comments and ignored.
+	 * @param file the file to load
+	 * @return a new mapper containing every mapping in the file
+	 * @throws IOException if there is an issue reading the file or a line is malformed
+	 */
+	public static FontMapper load(File file) throws IOException {
+		if (file == null)
+			throw new IllegalArgumentException("file provided was null");
+		
+		FontMapper mapper = new FontMapper();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue; // Nothing to see here
+				}
+				
+				int separator = line.indexOf('=');
+				if (separator <= 0 || separator == line.length() - 1) {
+					throw new IOException("Malformed font mapping on line " + lineNumber + " of " + file.getName() + ": " + line);
+				}
+				
+				mapper.addMapping(line.substring(0, separator), line.substring(separator + 1));
+			}
+		}
+		return mapper;
+	}
+	
+	/**
+	 * Adds a mapping to the table, replacing any existing mapping for the same source font.
+	 * @param sourceFont the font to replace
+	 * @param targetFont the font to replace it with
+	 */
+	public void addMapping(String sourceFont, String targetFont) {
+		if (sourceFont == null || targetFont == null)
+			throw new IllegalArgumentException("font provided was null");
+		
+		String source = stripQuotes(sourceFont.trim());
+		String target = stripQuotes(targetFont.trim());
+		if (source.isEmpty() || target.isEmpty())
+			throw new IllegalArgumentException("font provided was empty");
+		
+		mappings.put(source.toLowerCase(Locale.ROOT), new String[] {source, target});
+	}
+	
+	/**
+	 * Returns a read-only view of the table, keyed by the source font.
+	 * @return the table of source fonts to target fonts, in the order they were added
+	 */
+	public Map<String, String> getMappings() {
+		Map<String, String> view = new LinkedHashMap<>();
+		for (String[] mapping : mappings.values()) {
+			view.put(mapping[0], mapping[1]);
+		}
+		return Collections.unmodifiableMap(view);
+	}
+	
+	/**
+	 * Replaces every mapped font in every {@code font-family} attribute of the document.
+	 * @param document a validated MusicXML document
+	 * @return the number of replacements made, keyed by the source font. Empty if nothing was replaced.
+	 */
+	public Map<String, Integer> apply(Document document) {
+		Map<String, Integer> counts = new TreeMap<>();
+		if (document == null || mappings.isEmpty()) {
+			return counts;
+		}
+		
+		// Walk the tree in document order without recursion
+		Node node = document.getDocumentElement();
+		int visited = 0;
+		while (node != null) {
+			CancellationToken.checkCurrent();
+			visited++;
+			if (node.getNodeType() == Node.ELEMENT_NODE) {
+				Attr attribute = ((Element) node).getAttributeNode(FONT_FAMILY);
+				if (attribute != null) {
+					String oldValue = attribute.getValue();
+					String newValue = mapFontFamily(oldValue, counts);
+					if (newValue != oldValue) {
+						attribute.setValue(newValue);
+						ChangeValidator.changed((Element) node);
+					}
+				}
+			}
+			
+			// Descend first, then move across, then climb back up until we can move across
+			if (node.getFirstChild() != null) {
+				node = node.getFirstChild();
+				continue;
+			}
+			while (node != null && node.getNextSibling() == null) {
+				node = node.getParentNode();
+				if (node == document) {
+					node = null;
+				}
+			}
+			if (node != null) {
+				node = node.getNextSibling();
+			}
+		}
+		CleanerEvents.visited(visited);
+		
+		// Add this document's counts to the running totals
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			totals.computeIfAbsent(entry.getKey(), key -> new AtomicLong()).addAndGet(entry.getValue());
+		}
+		
+		return counts;
+	}
+	
+	/**
+	 * Maps a single {@code font-family} value. Each entry of a comma-separated list is mapped independently, and entries that aren't mapped are left exactly as they were.
+	 * A replacement keeps the quotation marks of the font it replaces, and is quoted if it contains a comma. If a replacement repeats a font
+	 * that's elsewhere in the list, only the first of the two is kept, so the fonts that are left stay in the order of preference they were given in.
+	 * @param value the value of the {@code font-family} attribute
+	 * @param counts the replacement counts to add to, keyed by the source font
+	 * @return the mapped value, or the same instance if nothing was replaced
+	 */
+	public String mapFontFamily(String value, Map<String, Integer> counts) {
+		if (value == null || value.isEmpty()) {
+			return value;
+		}
+		
+		String[] entries = value.split(",", -1);
+		String[] fonts = new String[entries.length];
+		boolean[] replaced = new boolean[entries.length];
+		boolean anyReplaced = false;
+		for (int i = 0; i < entries.length; i++) {
+			String entry = entries[i];
+			String trimmed = entry.trim();
+			fonts[i] = stripQuotes(trimmed).toLowerCase(Locale.ROOT);
+			String[] mapping = mappings.get(fonts[i]);
+			if (mapping == null) {
+				continue;
+			}
+			
+			// Keep the whitespace that surrounded the old font, and its quotation marks
+			String quote = "";
+			if (!stripQuotes(trimmed).equals(trimmed)) {
+				quote = trimmed.substring(0, 1);
+			}
+			else if (mapping[1].indexOf(',') >= 0) {
+				quote = "\"";
+			}
+			int leading = entry.indexOf(trimmed);
+			entries[i] = entry.substring(0, leading) + quote + mapping[1] + quote + entry.substring(leading + trimmed.length());
+			fonts[i] = mapping[1].toLowerCase(Locale.ROOT);
+			replaced[i] = true;
+			anyReplaced = true;
+			counts.merge(mapping[0], 1, Integer::sum);
+		}
+		
+		if (!anyReplaced) {
+			return value; // Nothing to do
+		}
+		
+		// Drop the later of any two entries that are the same font because of a replacement. Repeats that were there to begin with are left alone.
+		HashSet<String> seen = new HashSet<>();
+		HashSet<String> introduced = new HashSet<>();
+		boolean[] dropped = new boolean[entries.length];
+		int last = -1;
+		for (int i = 0; i < entries.length; i++) {
+			if (!fonts[i].isEmpty() && !seen.add(fonts[i]) && (replaced[i] || introduced.contains(fonts[i]))) {
+				dropped[i] = true;
+				continue;
+			}
+			if (replaced[i]) {
+				introduced.add(fonts[i]);
+			}
+			last = i;
+		}
+		
+		// Rebuild the list
+		StringBuilder builder = new StringBuilder(value.length() + 16);
+		boolean first = true;
+		for (int i = 0; i < entries.length; i++) {
+			if (dropped[i]) {
+				continue;
+			}
+			String entry = entries[i];
+			String trimmed = entry.trim();
+			if (!first) {
+				builder.append(',');
+			}
+			else if (i > 0) {
+				// The first entry was dropped, so this one takes its leading whitespace
+				entry = entries[0].substring(0, entries[0].indexOf(entries[0].trim())) + entry.substring(entry.indexOf(trimmed));
+			}
+			if (i == last && last < entries.length - 1) {
+				// Likewise for the last entry and its trailing whitespace
+				String end = entries[entries.length - 1];
+				entry = entry.substring(0, entry.lastIndexOf(trimmed) + trimmed.length()) + end.substring(end.lastIndexOf(end.trim()) + end.trim().length());
+			}
+			builder.append(entry);
+			first = false;
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * Returns the running total of replacements made by this mapper since it was created or last reset.
+	 * @return the total number of replacements, keyed by the source font
+	 */
+	public Map<String, Long> getTotalReplacementCounts() {
+		Map<String, Long> snapshot = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> entry : totals.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().get());
+		}
+		return snapshot;
+	}
+	
+	/**
+	 * Resets the running total of replacements.
+	 */
+	public void resetTotalReplacementCounts() {
+		totals.clear();
+	}
+	
+	/**
+	 * Looks up the target font of a source font.
+	 * @param sourceFont the font to look up
+	 * @return the target font, or {@code null} if the font isn't mapped
+	 */
+	public String getTargetFont(String sourceFont) {
+		if (sourceFont == null) {
+			return null;
+		}
+		String[] mapping = mappings.get(stripQuotes(sourceFont.trim()).toLowerCase(Locale.ROOT));
+		return mapping == null ? null : mapping[1];
+	}
+	
+	/**
+	 * Removes one pair of matching single or double quotation marks around a font name, if there are any.
+	 * @param font the font name
+	 * @return the font name without its quotation marks
+	 */
+	private static String stripQuotes(String font) {
+		if (font.length() >= 2) {
+			char first = font.charAt(0);
+			char last = font.charAt(font.length() - 1);
+			if ((first == '"' || first == '\'') && first == last) {
+				return font.substring(1, font.length() - 1).trim();
+			}
+		}
+		return font;
+	}
+}
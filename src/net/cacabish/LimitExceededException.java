@@ -0,0 +1,37 @@
+package net.cacabish;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Thrown when a score is rejected for going over one of the {@link ParsingLimits}, rather than for not being valid MusicXML.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public class LimitExceededException extends SAXException {
+	
+	private static final long serialVersionUID = -2914386702114751073L;
+	
+	/**
+	 * The name of the limit that was exceeded.
+	 */
+	private final String limit;
+	
+	/**
+	 * Constructs the exception. The message ends with the name of the limit, so that whoever reads it knows which limit to raise.
+	 * @param limit the name of the limit that was exceeded, as used by {@link ParsingLimits#with(String, long)}
+	 * @param message what happened
+	 */
+	public LimitExceededException(String limit, String message) {
+		super(message + " (" + limit + ")");
+		this.limit = limit;
+	}
+	
+	/**
+	 * @return the name of the limit that was exceeded
+	 */
+	public String getLimit() {
+		return limit;
+	}
+}
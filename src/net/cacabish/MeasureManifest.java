@@ -0,0 +1,432 @@
+package net.cacabish;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import net.cacabish.xml.DocumentSource;
+import net.cacabish.xml.LazySlices;
+import net.cacabish.xml.XMLByteScanner;
+
+/**
+ * A record of every measure and credit in a cleaned score, which allows a re-exported score to be re-cleaned incrementally.
+ * <br><br>
+ * For each measure, the manifest keeps a hash of the measure as it was exported, along with the bytes that were written for it once it was cleaned.
+ * When the score is re-exported and cleaned again, every measure whose hash hasn't changed is swapped out for its previously cleaned bytes
+ * before the part-local operations run, so only the measures that actually changed are cleaned again.
+ * Credits are always cleaned again (there are only ever a handful of them), but their hashes are kept so that changes can be reported.
+ * <br><br>
+ * Reusing a measure is only safe if nothing else it depends on has changed. So, the manifest also keeps a fingerprint of the cleaning options,
+ * the score's header (everything other than the credits and the parts), and every {@code <print>} tag, since these are what the
+ * document-wide operations look at. If the fingerprint doesn't match, nothing is reused.
+ * <br><br>
+ * The manifest is stored gzipped beside the cleaned file, with the extension {@value #EXTENSION} added on. It contains everything it needs,
+ * so it still works when the cleaned file has since been overwritten by a new export.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class MeasureManifest {
+	
+	/**
+	 * The extension added to a cleaned file's name to get the name of its manifest.
+	 */
+	public static final String EXTENSION = ".manifest";
+	
+	/**
+	 * The first four bytes of every manifest: "MXCM".
+	 */
+	private static final int MAGIC = 0x4D58434D;
+	
+	/**
+	 * The version of the manifest format. Bump this whenever the format changes or cleaning changes in a way that invalidates old output.
+	 */
+	private static final int VERSION = 1;
+	
+	/**
+	 * The number of bytes of each hash that are kept.
+	 */
+	private static final int HASH_LENGTH = 16;
+	
+	/**
+	 * The tag names the scanner looks for, as ASCII bytes.
+	 */
+	private static final byte[] PART = "part".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CREDIT = "credit".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] PRINT = "print".getBytes(StandardCharsets.US_ASCII);
+	
+	/**
+	 * A single measure.
+	 */
+	private static final class Measure {
+		/** The ID of the part the measure is in */
+		final String partID;
+		/** The hash of the measure as it was exported */
+		final byte[] hash;
+		/** Where the measure's cleaned bytes are in the manifest's output, if this manifest was loaded */
+		int outputStart, outputEnd;
+		
+		Measure(String partID, byte[] hash) {
+			this.partID = partID;
+			this.hash = hash;
+		}
+		
+		/** @return the key that identifies an identical measure between runs */
+		String getKey() {
+			return partID + ' ' + toHex(hash);
+		}
+	}
+	
+	/**
+	 * The fingerprint of everything other than the measures that affects how the measures are cleaned.
+	 */
+	private final String fingerprint;
+	
+	/**
+	 * Every measure in the score, in document order.
+	 */
+	private final List<Measure> measures = new ArrayList<>();
+	
+	/**
+	 * The hash of every credit in the score, in document order.
+	 */
+	private final List<byte[]> credits = new ArrayList<>();
+	
+	/**
+	 * The cleaned bytes of every measure, back to back. Only present if this manifest was loaded.
+	 */
+	private ByteBuffer output = null;
+	
+	/**
+	 * Constructs an empty manifest.
+	 * @param fingerprint the fingerprint
+	 */
+	private MeasureManifest(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+	
+	/**
+	 * Returns where the manifest of a cleaned file is kept.
+	 * @param cleanedFile the cleaned file
+	 * @return the manifest file, which may not exist
+	 */
+	public static File getManifestFile(File cleanedFile) {
+		return new File(cleanedFile.getAbsoluteFile().getParentFile(), cleanedFile.getName() + EXTENSION);
+	}
+	
+	/**
+	 * Hashes every measure and credit of a freshly parsed document, along with the fingerprint.
+	 * The document must still have its source attached with {@link DocumentSource}.
+	 * @param document the document, before anything has modified it
+	 * @param options a description of every option that affects cleaning
+	 * @return the manifest, which has no output until it is saved
+	 * @throws SAXException if the source cannot be scanned or doesn't match the document
+	 */
+	public static MeasureManifest scan(Document document, String options) throws SAXException {
+		ByteBuffer source = DocumentSource.getBuffer(document);
+		if (source == null) {
+			throw new IllegalArgumentException("document has no source attached");
+		}
+		
+		MessageDigest context = newDigest();
+		MessageDigest digest = newDigest();
+		context.update(options.getBytes(StandardCharsets.UTF_8));
+		
+		List<Measure> measures = new ArrayList<>();
+		List<byte[]> credits = new ArrayList<>();
+		NodeList parts = document.getElementsByTagName("part");
+		int partIndex = 0;
+		
+		XMLByteScanner scanner = new XMLByteScanner(source);
+		if (scanner.next() != XMLByteScanner.START_ELEMENT) {
+			throw new SAXException("source has no root element");
+		}
+		update(context, source, scanner.getTagStart(), scanner.getTagEnd());
+		
+		// Go through the children of the root
+		while (scanner.next() == XMLByteScanner.START_ELEMENT) {
+			int start = scanner.getTagStart();
+			if (scanner.nameEquals(PART)) {
+				if (partIndex >= parts.getLength()) {
+					throw new SAXException("source has more parts than the document");
+				}
+				String partID = ((Element) parts.item(partIndex++)).getAttribute("id");
+				
+				// Go through the measures of the part
+				while (scanner.next() == XMLByteScanner.START_ELEMENT) {
+					int measureStart = scanner.getTagStart();
+					
+					// Go through the children of the measure, looking for <print> tags
+					while (scanner.next() == XMLByteScanner.START_ELEMENT) {
+						int childStart = scanner.getTagStart();
+						boolean isPrint = scanner.nameEquals(PRINT);
+						int childEnd = scanner.skipElement();
+						if (isPrint) {
+							update(context, source, childStart, childEnd);
+						}
+					}
+					
+					update(digest, source, measureStart, scanner.getTagEnd());
+					measures.add(new Measure(partID, Arrays.copyOf(digest.digest(), HASH_LENGTH)));
+				}
+			}
+			else if (scanner.nameEquals(CREDIT)) {
+				update(digest, source, start, scanner.skipElement());
+				credits.add(Arrays.copyOf(digest.digest(), HASH_LENGTH));
+			}
+			else {
+				update(context, source, start, scanner.skipElement());
+			}
+		}
+		
+		MeasureManifest manifest = new MeasureManifest(toHex(context.digest()));
+		manifest.measures.addAll(measures);
+		manifest.credits.addAll(credits);
+		return manifest;
+	}
+	
+	/**
+	 * Loads the manifest saved beside a cleaned file.
+	 * @param manifestFile the manifest file
+	 * @return the manifest, with its output
+	 * @throws IOException if the file cannot be read or isn't a manifest of this version
+	 */
+	public static MeasureManifest load(File manifestFile) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(manifestFile))))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(manifestFile.getName() + " is not a manifest");
+			}
+			if (in.readInt() != VERSION) {
+				throw new IOException(manifestFile.getName() + " is from a different version");
+			}
+			
+			MeasureManifest manifest = new MeasureManifest(in.readUTF());
+			int measureCount = in.readInt();
+			int position = 0;
+			for (int i = 0; i < measureCount; i++) {
+				String partID = in.readUTF();
+				byte[] hash = new byte[HASH_LENGTH];
+				in.readFully(hash);
+				
+				Measure measure = new Measure(partID, hash);
+				measure.outputStart = position;
+				position += in.readInt();
+				measure.outputEnd = position;
+				manifest.measures.add(measure);
+			}
+			
+			byte[] output = new byte[position];
+			in.readFully(output);
+			manifest.output = ByteBuffer.wrap(output);
+			
+			int creditCount = in.readInt();
+			for (int i = 0; i < creditCount; i++) {
+				byte[] hash = new byte[HASH_LENGTH];
+				in.readFully(hash);
+				manifest.credits.add(hash);
+			}
+			return manifest;
+		}
+	}
+	
+	/**
+	 * Saves this manifest beside the cleaned file, along with the cleaned bytes of every measure.
+	 * @param manifestFile the file to save to
+	 * @param cleanedFile the file the cleaned document was just written to
+	 * @param offsets the start and end of every measure in the cleaned file, in document order, packed as pairs
+	 * @throws IOException if there is an issue reading the cleaned file or writing the manifest
+	 */
+	public void save(File manifestFile, File cleanedFile, long[] offsets) throws IOException {
+		if (offsets.length != measures.size() * 2) {
+			throw new IOException("expected " + measures.size() + " measures in the cleaned file but found " + (offsets.length / 2));
+		}
+		
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(manifestFile))));
+				RandomAccessFile cleaned = new RandomAccessFile(cleanedFile, "r")) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(fingerprint);
+			
+			out.writeInt(measures.size());
+			for (int i = 0; i < measures.size(); i++) {
+				Measure measure = measures.get(i);
+				out.writeUTF(measure.partID);
+				out.write(measure.hash);
+				out.writeInt((int) (offsets[2 * i + 1] - offsets[2 * i]));
+			}
+			
+			// Copy every measure's cleaned bytes
+			byte[] chunk = new byte[8192];
+			for (int i = 0; i < offsets.length; i += 2) {
+				cleaned.seek(offsets[i]);
+				long remaining = offsets[i + 1] - offsets[i];
+				while (remaining > 0) {
+					int count = (int) Math.min(chunk.length, remaining);
+					cleaned.readFully(chunk, 0, count);
+					out.write(chunk, 0, count);
+					remaining -= count;
+				}
+			}
+			
+			out.writeInt(credits.size());
+			for (byte[] hash : credits) {
+				out.write(hash);
+			}
+		}
+	}
+	
+	/**
+	 * Checks if measures cleaned under a previous manifest can be reused under this one.
+	 * @param previous the previous manifest
+	 * @return true if the fingerprints match
+	 */
+	public boolean isCompatibleWith(MeasureManifest previous) {
+		return previous != null && previous.output != null && fingerprint.equals(previous.fingerprint);
+	}
+	
+	/**
+	 * Swaps every measure that hasn't changed since the previous manifest for its previously cleaned bytes.
+	 * Afterwards, the only measures left in the document are the ones that need cleaning.
+	 * <br><br>
+	 * The measures of some parts depend on each other (such as an ossia, which is formatted a system at a time).
+	 * For these parts, if any measure has changed, the whole part is left to be cleaned again.
+	 * @param document the document this manifest was scanned from
+	 * @param previous the previous manifest, which must be compatible
+	 * @param linkedPartIDs the IDs of the parts whose measures depend on each other
+	 * @return the number of measures that were reused
+	 */
+	public int reuseUnchangedMeasures(Document document, MeasureManifest previous, Set<String> linkedPartIDs) {
+		if (!isCompatibleWith(previous)) {
+			return 0;
+		}
+		
+		Map<String, Measure> previousMeasures = new HashMap<>();
+		for (Measure measure : previous.measures) {
+			previousMeasures.put(measure.getKey(), measure);
+		}
+		
+		// Figure out which parts have changed at all
+		Set<String> changedPartIDs = new HashSet<>();
+		for (Measure measure : measures) {
+			if (!previousMeasures.containsKey(measure.getKey())) {
+				changedPartIDs.add(measure.partID);
+			}
+		}
+		
+		LazySlices.setReusedSource(document, previous.output);
+		
+		// Line the measures up with the DOM and swap out the unchanged ones
+		int reused = 0;
+		int index = 0;
+		NodeList parts = document.getElementsByTagName("part");
+		for (int i = 0; i < parts.getLength(); i++) {
+			Element part = (Element) parts.item(i);
+			String partID = part.getAttribute("id");
+			boolean mustCleanWholePart = linkedPartIDs.contains(partID) && changedPartIDs.contains(partID);
+			
+			Node child = part.getFirstChild();
+			while (child != null) {
+				Node next = child.getNextSibling();
+				if (child.getNodeType() == Node.ELEMENT_NODE && ((Element) child).getTagName().equals("measure")) {
+					Measure measure = measures.get(index++);
+					if (!measure.partID.equals(partID)) {
+						throw new IllegalStateException("measure " + index + " is in part " + partID + " but was scanned in part " + measure.partID);
+					}
+					
+					Measure previousMeasure = previousMeasures.get(measure.getKey());
+					if (previousMeasure != null && !mustCleanWholePart) {
+						part.replaceChild(LazySlices.createReusedSlice(document, "measure", previousMeasure.outputStart, previousMeasure.outputEnd), child);
+						reused++;
+					}
+				}
+				child = next;
+			}
+		}
+		return reused;
+	}
+	
+	/**
+	 * Counts the credits that are different from the previous manifest's.
+	 * @param previous the previous manifest
+	 * @return the number of credits that have been added or changed
+	 */
+	public int countChangedCredits(MeasureManifest previous) {
+		Set<String> previousCredits = new HashSet<>();
+		for (byte[] hash : previous.credits) {
+			previousCredits.add(toHex(hash));
+		}
+		
+		int changed = 0;
+		for (byte[] hash : credits) {
+			if (!previousCredits.contains(toHex(hash))) {
+				changed++;
+			}
+		}
+		return changed;
+	}
+	
+	/**
+	 * @return the number of measures in the score
+	 */
+	public int getMeasureCount() {
+		return measures.size();
+	}
+	
+	/**
+	 * @return a new SHA-256 digest
+	 */
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e); // Every JVM is required to have it
+		}
+	}
+	
+	/**
+	 * Feeds a range of a buffer to a digest.
+	 */
+	private static void update(MessageDigest digest, ByteBuffer buffer, int start, int end) {
+		ByteBuffer view = buffer.duplicate();
+		view.limit(end);
+		view.position(start);
+		digest.update(view);
+	}
+	
+	/**
+	 * @return the bytes as a lowercase hexadecimal string
+	 */
+	private static String toHex(byte[] bytes) {
+		StringBuilder builder = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return builder.toString();
+	}
+}
@@ -1,13 +1,21 @@
 package net.cacabish;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Locale;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -18,19 +26,28 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import net.cacabish.xml.ByteBufferInputStream;
+import net.cacabish.xml.ChangeValidator;
+import net.cacabish.xml.DecimalCodec;
+import net.cacabish.xml.DocumentSource;
+import net.cacabish.xml.LazyDocumentBuilder;
+import net.cacabish.xml.LazySlices;
+import net.cacabish.xml.MusicXMLConverter;
+import net.cacabish.xml.MusicXMLSymbols;
+import net.cacabish.xml.MusicXMLWriter;
+import net.cacabish.xml.NodeSymbols;
+import net.cacabish.xml.ParallelDocumentBuilder;
+import net.cacabish.xml.ParallelMusicXMLWriter;
+import net.cacabish.xml.PatchWriter;
+import net.cacabish.xml.SourceTracker;
+
 /**
  * A collection of self-contained transformative methods and helper methods that are intended to "clean" a MusicXML v3.1 file exported from MuseScore.
  * The purpose being that, once cleaned, the file could be uploaded into Finale or Finale Notepad with a lot of major changes made.
@@ -97,15 +114,93 @@ public final class MusicXMLCleaner {
 	 */
 	public static boolean addSwing8thsWhereSwingDirection = true;
 	/**
-	 * A boolean flag signaling whether to replace any font instances of "Edwin" or "FreeSerif" with "Times New Roman", when an XML is cleaned.
+	 * A boolean flag signaling whether to replace any font instances found in the {@link #fontMapper} (by default, "Edwin" or "FreeSerif" with "Times New Roman"), when an XML is cleaned.
 	 * Default = true.
 	 */
 	public static boolean replaceEdwinAndFreeSerifWithTimesNewRoman = true;
+	/**
+	 * The table of fonts to replace and the fonts to replace them with. Used when {@link #replaceEdwinAndFreeSerifWithTimesNewRoman} is set.
+	 * Default = Edwin and FreeSerif are replaced with Times New Roman.
+	 */
+	public static FontMapper fontMapper = FontMapper.createDefault();
 	/**
 	 * A boolean flag signaling whether to attempt to format an ossia based on what's been given.
 	 * Default = true.
 	 */
 	public static boolean formatOssias = true;
+	
+	
+	/*
+	 * ==========================
+	 * ===== PARSING FLAGS ======
+	 * ==========================
+	 */
+	
+	/**
+	 * A boolean flag signaling whether to parse lazily, leaving the notes (and other measure-level musical content) as raw bytes until an operation needs them.
+	 * This greatly reduces the memory needed for large scores. The file must be UTF-8 encoded; if it isn't, the file is parsed normally.
+	 * Default = false.
+	 */
+	public static boolean lazyParsing = false;
+	/**
+	 * The limits on what a score may contain. Scores that go over a limit are rejected before they're cleaned. See {@link ParsingLimits}.
+	 * Default = {@link ParsingLimits#DEFAULT}.
+	 */
+	public static ParsingLimits limits = ParsingLimits.DEFAULT;
+	/**
+	 * A boolean flag signaling whether to validate in the background. The score is parsed without validating, so that cleaning can start straight away,
+	 * while another thread validates the original bytes at the same time. A score is only handed back to be saved once it has passed validation,
+	 * so the guarantees are the same as always; it just takes less time on a machine with more than one core. Ignored when parsing lazily or in parallel.
+	 * Default = false.
+	 */
+	public static boolean backgroundValidation = false;
+	/**
+	 * A boolean flag signaling whether to parse a huge score on several threads at once. The score is split into chunks of whole measures, each of which
+	 * is parsed and validated on its own thread, and the pieces are put back together into one document. See {@link ParallelDocumentBuilder} for details.
+	 * Scores that are too small to be worth splitting, or that can't be split, are parsed normally. Ignored when parsing lazily.
+	 * Default = false.
+	 */
+	public static boolean parallelParsing = false;
+	/**
+	 * A boolean flag signaling whether to check that cleaning kept the score valid. Every element the cleaning operations changed or inserted
+	 * is checked against the MusicXML grammar once they're done, and the score is rejected if one doesn't fit. Only what was touched is checked,
+	 * and the operations say what they touch themselves, so this costs little. See {@link ChangeValidator}. Default = true.
+	 */
+	public static boolean validateChanges = true;
+	
+	
+	/*
+	 * ==========================
+	 * ====== OUTPUT FLAGS ======
+	 * ==========================
+	 */
+	
+	/**
+	 * A boolean flag signaling whether to keep the original file's formatting when saving. Only the parts of the file that were actually changed are rewritten;
+	 * everything else (whitespace, attribute order, comments, and the DOCTYPE) is copied from the original file byte for byte.
+	 * The file must be UTF-8 encoded; if it isn't, the file is saved normally.
+	 * Default = false.
+	 */
+	public static boolean preserveFormatting = false;
+	/**
+	 * A boolean flag signaling whether to clean incrementally. A manifest of every measure is saved beside each cleaned file, and when the same score is
+	 * re-exported and cleaned again, only the measures that changed are cleaned again; the rest are copied from the last cleaning.
+	 * This cannot be combined with {@link #preserveFormatting}.
+	 * Default = false.
+	 */
+	public static boolean incrementalCleaning = false;
+	/**
+	 * The version of MusicXML to save as, such as "3.0", for programs that can't read newer versions. Scores are converted down with the stylesheets
+	 * that come with MusicXML, which drop whatever the older version has no way to say. This cannot be combined with {@link #preserveFormatting} or {@link #incrementalCleaning}.
+	 * Default = null (save as whatever version the score already is).
+	 */
+	public static String outputVersion = null;
+	/**
+	 * A boolean flag signaling whether to write each part of a score on its own thread when saving it to a file. The parts are put back together in order,
+	 * so the file is exactly the same as it would have been otherwise. See {@link ParallelMusicXMLWriter} for details. Ignored when preserving formatting.
+	 * Default = false.
+	 */
+	public static boolean parallelWriting = false;
 
 
 	/*
@@ -115,134 +210,877 @@ public final class MusicXMLCleaner {
 	 */
 	
 	/**
-	 * The validated document. The document is cached here after cleaning until either saved or replaced by a new document.
+	 * The validated score. The score is cached here after cleaning until either saved or replaced by a new score.
 	 */
-	private static Document validatedDoc = null;
+	private static CleanedScore validatedScore = null;
 	
 	/**
-	 * The document builder factory to construct {@code DocumentBuilder} objects from. Statically initialized.
+	 * The document builder factories to construct {@code DocumentBuilder} objects from, one for each set of limits and whether to validate
+	 * (since both are set on the factory). Keyed by a list of the limits and the validation flag.
 	 */
-	private static final DocumentBuilderFactory DBF;
+	private static final ConcurrentHashMap<List<Object>, DocumentBuilderFactory> FACTORIES = new ConcurrentHashMap<>();
 	
 	/**
-	 * The XPath object to use for XPATH querying.
+	 * The document builders each thread has used, keyed the same way as the factories. Creating a builder is slow, so each thread keeps its own and resets it between files.
 	 */
-	private static final XPath XPATH;
+	private static final ThreadLocal<Map<List<Object>, DocumentBuilder>> BUILDERS = ThreadLocal.withInitial(HashMap::new);
 	
 	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private MusicXMLCleaner() {}
 	
 	/**
-	 * The static method that initializes the DocumentBuilderFactory.
+	 * Performs all operations whose boolean flags are set to true.
+	 * If cleaning incrementally, the file is assumed to be cleaned in place, so the manifest is looked for beside the file itself.
+	 * @param file the file to clean
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 * @throws SAXException throws if there is an error when parsing or validating the file
+	 * @throws IOException throws if there is an I/O error resulting from parsing the file
 	 */
-	static {
-		// Create the factory one time
-		DBF = DocumentBuilderFactory.newInstance();
-		DBF.setValidating(true);
-		DBF.setIgnoringElementContentWhitespace(true);
-		
-		XPATH = XPathFactory.newInstance().newXPath();
+	public static void cleanMusicXMLFile(File file) throws ParserConfigurationException, SAXException, IOException {
+		cleanMusicXMLFile(file, file);
 	}
 	
 	/**
-	 * There should be no reason to instantiate this class.
+	 * Performs all operations whose boolean flags are set to true.
+	 * @param file the file to clean
+	 * @param previousOutput the file this score was last cleaned to. If cleaning incrementally, the manifest beside this file is used to skip unchanged measures.
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 * @throws SAXException throws if there is an error when parsing or validating the file
+	 * @throws IOException throws if there is an I/O error resulting from parsing the file
 	 */
-	private MusicXMLCleaner() {}
+	public static void cleanMusicXMLFile(File file, File previousOutput) throws ParserConfigurationException, SAXException, IOException {
+		validatedScore = clean(file, previousOutput, CleaningOptions.fromCurrentFlags());
+	}
 	
 	/**
-	 * Performs all operations whose boolean flags are set to true.
+	 * Performs all operations that are turned on in the provided options.
+	 * Unlike {@link #cleanMusicXMLFile(File, File)}, this doesn't touch the static flags or the validated score, so it is safe to call from several threads at once.
 	 * @param file the file to clean
+	 * @param previousOutput the file this score was last cleaned to. If cleaning incrementally, the manifest beside this file is used to skip unchanged measures.
+	 * @param options the options to clean with
+	 * @return the cleaned score, ready to be saved with {@link #writeToFile(CleanedScore, File)}
 	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
 	 * @throws SAXException throws if there is an error when parsing or validating the file
 	 * @throws IOException throws if there is an I/O error resulting from parsing the file
 	 */
-	public static void cleanMusicXMLFile(File file) throws ParserConfigurationException, SAXException, IOException {
+	public static CleanedScore clean(File file, File previousOutput, CleaningOptions options) throws ParserConfigurationException, SAXException, IOException {
+		if (options == null)
+			throw new IllegalArgumentException("options provided were null"); // How am I supposed to clean with no options? :(
 		System.out.println("");
 		System.out.println("===== Beginning New Cleaning Job =====");
 		
-		validatedDoc = MusicXMLCleaner.constructAndValidateMusicXMLDocument(file);
+		// Don't even start on a file that's too big
+		options.limits.checkFileSize(file.length());
 		
-		// Do the cleaning!
-		if (addMiniTitlesAndPageNumbers)
-			MusicXMLCleaner.addPageNumbersAndMiniTitles(validatedDoc);
-		if (addSystemMeasureNumbers)
-			MusicXMLCleaner.addSystemMeasureNumbers(validatedDoc);
-		if (removeDuplicateCopyrightInfo)
-			MusicXMLCleaner.removeDuplicateCopyrightInfo(validatedDoc);
-		if (correctTempoMarking)
-			MusicXMLCleaner.correctTempoMark(validatedDoc);
-		if (centerCreditsHorizontally)
-			MusicXMLCleaner.centerCreditsHorizontally(validatedDoc);
-		if (offsetSystemMargins)
-			MusicXMLCleaner.offsetSystemMarginsToAlignWithLeftMargin(validatedDoc);
-		if (makeRepeatTextsBold)
-			MusicXMLCleaner.makeRepeatTextsBold(validatedDoc);
-		if (addPeriodsToVoltaTexts)
-			MusicXMLCleaner.addPeriodsToVoltaTexts(validatedDoc);
-		if (addSwing8thsWhereSwingDirection)
-			MusicXMLCleaner.addSwing8thsWhereSwingDirection(validatedDoc);
-		if (replaceEdwinAndFreeSerifWithTimesNewRoman)
-			MusicXMLCleaner.replaceEdwinAndFreeSerifWithTimesNewRoman(validatedDoc);
-		if (formatOssias)
-			MusicXMLCleaner.formatOssias(validatedDoc);
+		AllocationStats allocations = new AllocationStats();
+		long allocationMark = AllocationStats.threadAllocatedBytes();
+		CleanerEvents.Span parse = CleanerEvents.beginParse();
+		Document document;
+		BackgroundValidator validator = null;
+		if (options.lazyParsing) {
+			document = MusicXMLCleaner.constructAndValidateLazyMusicXMLDocument(file, options.limits);
+		}
+		else if (options.parallelParsing) {
+			document = MusicXMLCleaner.constructAndValidateMusicXMLDocumentInParallel(file, options.limits);
+		}
+		else if (options.backgroundValidation) {
+			ByteBuffer source = DocumentSource.map(file);
+			validator = BackgroundValidator.start(source, file.toURI().toString(), options.limits);
+			document = MusicXMLCleaner.constructMusicXMLDocumentWhileValidating(source, file.toURI().toString(), options.limits, validator);
+		}
+		else {
+			document = MusicXMLCleaner.constructAndValidateMusicXMLDocument(file, options.limits);
+		}
+		CleanerEvents.endParse(parse, file.getName(), file.length(), getParseMode(options), validator == null);
+		allocations.record("parse", allocationMark);
+		try {
+			Document parsed = document;
+			document = MusicXMLCleaner.convertIfTimewise(document);
+			boolean sameBytesOut = canKeepBytes(options, document != parsed);
+		
+			CleanedScore score = new CleanedScore(document);
+			score.parallelWriting = options.parallelWriting;
+			score.allocations = allocations;
+			if (options.preserveFormatting && sameBytesOut) {
+				MusicXMLCleaner.trackChangesToPreserveFormatting(document, file);
+			}
+			MeasureManifest previousManifest = null;
+			if (options.incrementalCleaning && sameBytesOut) {
+				// Hash straight from the file's bytes
+				ByteBuffer source = DocumentSource.getBuffer(document);
+				previousManifest = MusicXMLCleaner.prepareIncrementalCleaning(score, source == null ? DocumentSource.map(file) : source,
+						previousOutput == null ? file : previousOutput, options);
+			}
+			
+			MusicXMLCleaner.performCleaningOperations(score, previousManifest, options, validator);
+			MusicXMLCleaner.convertToOutputVersion(score, options);
+			
+			System.out.println("===== End New Cleaning Job =====");
+			return score;
+		} finally {
+			if (validator != null) {
+				validator.abandon(); // In case something went wrong before it was needed
+			}
+		}
+	}
+	
+	/**
+	 * Performs all operations that are turned on in the provided options, reading the score from a stream instead of a file.
+	 * The stream is read to the end, but not closed. Since there is no file to compare against, the score cannot be cleaned incrementally.
+	 * @param in the stream to read the score from
+	 * @param options the options to clean with
+	 * @return the cleaned score, ready to be saved with {@link #writeToStream(CleanedScore, OutputStream)}
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 * @throws SAXException throws if there is an error when parsing or validating the score
+	 * @throws IOException throws if there is an I/O error reading the stream
+	 */
+	public static CleanedScore clean(InputStream in, CleaningOptions options) throws ParserConfigurationException, SAXException, IOException {
+		if (in == null)
+			throw new IllegalArgumentException("stream provided was null"); // Nothing in, nothing out. :(
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		return clean(ByteBuffer.wrap(bytes.toByteArray()), options);
+	}
+	
+	/**
+	 * Performs all operations that are turned on in the provided options, reading the score from a buffer instead of a file.
+	 * The buffer is read from its position to its limit, and must not change for as long as the cleaned score is in use (lazily parsed scores keep reading from it).
+	 * Since there is no file to compare against, the score cannot be cleaned incrementally.
+	 * @param source the bytes of the score
+	 * @param options the options to clean with
+	 * @return the cleaned score, ready to be saved with {@link #writeToStream(CleanedScore, OutputStream)}
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 * @throws SAXException throws if there is an error when parsing or validating the score
+	 * @throws IOException throws if there is an I/O error reading the buffer
+	 */
+	public static CleanedScore clean(ByteBuffer source, CleaningOptions options) throws ParserConfigurationException, SAXException, IOException {
+		return clean(source, null, options);
+	}
+	
+	/**
+	 * Performs all operations that are turned on in the provided options, reading the score from a buffer instead of a file.
+	 * The buffer is read from its position to its limit, and must not change for as long as the cleaned score is in use (lazily parsed scores keep reading from it).
+	 * @param source the bytes of the score
+	 * @param previousOutput the file this score was last cleaned to, or {@code null} if there isn't one. If cleaning incrementally, the manifest beside this file is used to skip unchanged measures.
+	 * @param options the options to clean with
+	 * @return the cleaned score, ready to be saved with {@link #writeToStream(CleanedScore, OutputStream)}
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 * @throws SAXException throws if there is an error when parsing or validating the score
+	 * @throws IOException throws if there is an I/O error reading the buffer
+	 */
+	public static CleanedScore clean(ByteBuffer source, File previousOutput, CleaningOptions options) throws ParserConfigurationException, SAXException, IOException {
+		if (source == null)
+			throw new IllegalArgumentException("buffer provided was null"); // Nothing in, nothing out, again. :(
+		if (options == null)
+			throw new IllegalArgumentException("options provided were null");
+		System.out.println("");
+		System.out.println("===== Beginning New Cleaning Job =====");
+		
+		// Everything that remembers where things came from counts from the start of the buffer
+		source = source.slice();
+		
+		options.limits.checkFileSize(source.remaining());
+		
+		AllocationStats allocations = new AllocationStats();
+		long allocationMark = AllocationStats.threadAllocatedBytes();
+		CleanerEvents.Span parse = CleanerEvents.beginParse();
+		Document document;
+		BackgroundValidator validator = null;
+		if (options.lazyParsing) {
+			document = MusicXMLCleaner.constructAndValidateLazyMusicXMLDocument(source, options.limits);
+		}
+		else if (options.parallelParsing) {
+			document = MusicXMLCleaner.constructAndValidateMusicXMLDocumentInParallel(source, options.limits);
+		}
+		else if (options.backgroundValidation) {
+			validator = BackgroundValidator.start(source, null, options.limits);
+			document = MusicXMLCleaner.constructMusicXMLDocumentWhileValidating(source, null, options.limits, validator);
+		}
+		else {
+			document = MusicXMLCleaner.constructAndValidateMusicXMLDocument(source, options.limits);
+		}
+		CleanerEvents.endParse(parse, null, source.remaining(), getParseMode(options), validator == null);
+		allocations.record("parse", allocationMark);
+		try {
+			Document parsed = document;
+			document = MusicXMLCleaner.convertIfTimewise(document);
+			boolean sameBytesOut = canKeepBytes(options, document != parsed);
+		
+			CleanedScore score = new CleanedScore(document);
+			score.parallelWriting = options.parallelWriting;
+			score.allocations = allocations;
+			if (options.preserveFormatting && sameBytesOut) {
+				if (DocumentSource.getBuffer(document) == null) {
+					DocumentSource.set(document, source, null);
+				}
+				MusicXMLCleaner.trackChangesToPreserveFormatting(document, null);
+			}
+			MeasureManifest previousManifest = null;
+			if (options.incrementalCleaning && sameBytesOut) {
+				previousManifest = MusicXMLCleaner.prepareIncrementalCleaning(score, source, previousOutput, options);
+			}
+			
+			MusicXMLCleaner.performCleaningOperations(score, previousManifest, options, validator);
+			MusicXMLCleaner.convertToOutputVersion(score, options);
+			
+			System.out.println("===== End New Cleaning Job =====");
+			return score;
+		} finally {
+			if (validator != null) {
+				validator.abandon();
+			}
+		}
+	}
+	
+	/**
+	 * Cleans one score with several sets of options (profiles), such as one for printing and one for archiving, parsing and validating it only once.
+	 * Each profile cleans its own copy of the score as it was parsed (see {@link MusicXMLConverter#copy(Document)}), except for one, which cleans the parsed score itself.
+	 * That one is the first profile that preserves formatting or cleans incrementally, since those need the bytes the score was parsed from, or else the last profile.
+	 * Any other profile that preserves formatting or cleans incrementally is saved normally instead.
+	 * <br><br>
+	 * The score is parsed within the strictest of every profile's limits (see {@link ParsingLimits#strictest(ParsingLimits)}), so that no profile cleans a score
+	 * it would have rejected on its own. Since every profile needs the whole score straight away, it is never parsed lazily or validated in the background.
+	 * @param source the bytes of the score, which are read from their position to their limit
+	 * @param previousOutputs the file each profile's score was last cleaned to, in the same order as the profiles, or {@code null} if there aren't any.
+	 * If the profile that cleans the parsed score cleans incrementally, the manifest beside its file is used to skip unchanged measures.
+	 * @param profiles the options to clean with, one set for each profile
+	 * @return the cleaned scores, in the same order as the profiles, each ready to be saved with {@link #writeToStream(CleanedScore, OutputStream)}
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 * @throws SAXException throws if there is an error when parsing or validating the score, or one of the profiles made it invalid
+	 * @throws IOException throws if there is an I/O error reading the buffer
+	 */
+	public static List<CleanedScore> clean(ByteBuffer source, List<File> previousOutputs, List<CleaningOptions> profiles)
+			throws ParserConfigurationException, SAXException, IOException {
+		if (source == null)
+			throw new IllegalArgumentException("buffer provided was null");
+		if (profiles == null || profiles.isEmpty() || profiles.contains(null))
+			throw new IllegalArgumentException("profiles provided were null or empty");
+		if (previousOutputs != null && previousOutputs.size() != profiles.size())
+			throw new IllegalArgumentException("previous outputs provided don't match the profiles");
+		System.out.println("");
+		System.out.println("===== Beginning New Cleaning Job (" + profiles.size() + " profiles) =====");
+		
+		source = source.slice();
+		CleaningOptions first = profiles.get(0);
+		ParsingLimits strictest = first.limits;
+		for (CleaningOptions options : profiles) {
+			strictest = strictest.strictest(options.limits);
+		}
+		strictest.checkFileSize(source.remaining());
+		
+		// Only one profile can clean the parsed score itself
+		int owner = profiles.size() - 1;
+		for (int i = 0; i < profiles.size(); i++) {
+			if (profiles.get(i).preserveFormatting || profiles.get(i).incrementalCleaning) {
+				owner = i;
+				break;
+			}
+		}
+		boolean upFront = false;
+		for (int i = 0; i < profiles.size(); i++) {
+			CleaningOptions options = profiles.get(i);
+			if (i != owner && (options.preserveFormatting || options.incrementalCleaning)) {
+				System.out.println("Only one profile can reuse the original bytes, so profile " + (i + 1) + " will be saved normally.");
+			}
+			upFront |= options.lazyParsing || options.backgroundValidation;
+		}
+		if (upFront) {
+			System.out.println("The score is shared by every profile, so it will be parsed and validated up front.");
+		}
+		
+		AllocationStats allocations = new AllocationStats();
+		long allocationMark = AllocationStats.threadAllocatedBytes();
+		CleanerEvents.Span parse = CleanerEvents.beginParse();
+		Document document;
+		if (first.parallelParsing) {
+			document = MusicXMLCleaner.constructAndValidateMusicXMLDocumentInParallel(source, strictest);
+		}
+		else {
+			document = MusicXMLCleaner.constructAndValidateMusicXMLDocument(source, strictest);
+		}
+		CleanerEvents.endParse(parse, null, source.remaining(), first.parallelParsing ? "parallel" : "normal", true);
+		allocations.record("parse", allocationMark);
+		
+		Document parsed = document;
+		document = MusicXMLCleaner.convertIfTimewise(document);
+		
+		// The profile that cleans the parsed score goes last, so that every copy is of the score as it was parsed
+		CleanedScore[] scores = new CleanedScore[profiles.size()];
+		for (int i = 0; i < profiles.size(); i++) {
+			if (i == owner) {
+				continue;
+			}
+			System.out.println("----- Profile " + (i + 1) + " -----");
+			allocationMark = AllocationStats.threadAllocatedBytes();
+			CleanedScore score = new CleanedScore(MusicXMLConverter.copy(document));
+			score.allocations.record("copy", allocationMark);
+			scores[i] = cleanProfile(score, null, profiles.get(i));
+		}
+		
+		System.out.println("----- Profile " + (owner + 1) + " -----");
+		CleaningOptions options = profiles.get(owner);
+		boolean sameBytesOut = canKeepBytes(options, document != parsed);
+		CleanedScore score = new CleanedScore(document);
+		score.allocations = allocations;
+		if (options.preserveFormatting && sameBytesOut) {
+			if (DocumentSource.getBuffer(document) == null) {
+				DocumentSource.set(document, source, null);
+			}
+			MusicXMLCleaner.trackChangesToPreserveFormatting(document, null);
+		}
+		MeasureManifest previousManifest = null;
+		if (options.incrementalCleaning && sameBytesOut) {
+			File previousOutput = previousOutputs == null ? null : previousOutputs.get(owner);
+			previousManifest = MusicXMLCleaner.prepareIncrementalCleaning(score, source, previousOutput, options);
+		}
+		scores[owner] = cleanProfile(score, previousManifest, options);
 		
 		System.out.println("===== End New Cleaning Job =====");
+		return Arrays.asList(scores);
+	}
+	
+	/**
+	 * Cleans a score for one of the profiles of {@link #clean(ByteBuffer, List, List)}.
+	 * @param score the score, which is either the parsed score or a copy of it
+	 * @param previousManifest the manifest from the last time this score was cleaned, or {@code null} to clean every measure
+	 * @param options the profile's options
+	 * @return the same score, cleaned
+	 * @throws SAXException throws if the cleaning made the score invalid, or it couldn't be converted to the output version
+	 * @throws IOException throws if the score couldn't be read for validation
+	 */
+	private static CleanedScore cleanProfile(CleanedScore score, MeasureManifest previousManifest, CleaningOptions options) throws SAXException, IOException {
+		score.parallelWriting = options.parallelWriting;
+		MusicXMLCleaner.performCleaningOperations(score, previousManifest, options, null);
+		MusicXMLCleaner.convertToOutputVersion(score, options);
+		return score;
+	}
+	
+	/**
+	 * Names the way a score is parsed with the provided options, for {@link CleanerEvents#endParse(CleanerEvents.Span, String, long, String, boolean)}.
+	 * @param options the options to clean with
+	 * @return {@code lazy}, {@code parallel}, {@code background} or {@code normal}
+	 */
+	private static String getParseMode(CleaningOptions options) {
+		if (options.lazyParsing) {
+			return "lazy";
+		}
+		else if (options.parallelParsing) {
+			return "parallel";
+		}
+		else if (options.backgroundValidation) {
+			return "background";
+		}
+		return "normal";
+	}
+	
+	/**
+	 * Converts a freshly parsed score to partwise if it's timewise, since every cleaning operation expects measures inside parts.
+	 * @param document the score
+	 * @return the partwise score, which is the same score if it already was partwise
+	 * @throws SAXException throws if the score can't be converted
+	 */
+	private static Document convertIfTimewise(Document document) throws SAXException {
+		if (!MusicXMLConverter.isTimewise(document)) {
+			return document;
+		}
+		try {
+			document = MusicXMLConverter.toPartwise(document);
+		} catch (TransformerException e) {
+			throw new SAXException("Unable to convert the timewise score to partwise: " + e.getMessage(), e);
+		}
+		System.out.println("Converted the timewise score to partwise.");
+		return document;
+	}
+	
+	/**
+	 * Checks whether the score can be saved by copying the original bytes (to preserve formatting or reuse measures from the last cleaning).
+	 * This isn't possible if the score was converted from timewise or is being converted to another version, since then every part of it may change.
+	 * @param options the options to clean with
+	 * @param convertedFromTimewise whether the score was converted from timewise
+	 * @return true if the bytes can be kept
+	 */
+	private static boolean canKeepBytes(CleaningOptions options, boolean convertedFromTimewise) {
+		if (!options.preserveFormatting && !options.incrementalCleaning) {
+			return true; // Nothing to keep anyway
+		}
+		if (convertedFromTimewise) {
+			System.out.println("The score was converted from timewise, so it will be saved normally.");
+			return false;
+		}
+		if (options.outputVersion != null) {
+			System.out.println("Saving as MusicXML " + options.outputVersion + " rewrites the whole score, so it will be saved normally.");
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Converts a cleaned score down to the version it should be saved as, if there is one.
+	 * @param score the cleaned score
+	 * @param options the options to clean with
+	 * @throws SAXException throws if the score can't be converted
+	 */
+	private static void convertToOutputVersion(CleanedScore score, CleaningOptions options) throws SAXException {
+		if (options.outputVersion == null) {
+			return;
+		}
+		try {
+			score.document = MusicXMLConverter.downConvert(score.document, options.outputVersion);
+		} catch (TransformerException e) {
+			throw new SAXException("Unable to convert the score to MusicXML " + options.outputVersion + ": " + e.getMessage(), e);
+		}
+		System.out.println("Converted the score to MusicXML " + MusicXMLConverter.getVersion(score.document) + ".");
 	}
 	
+	/**
+	 * Performs all operations that are turned on in the provided options on a freshly parsed (or copied) score, and then waits for the score to finish validating
+	 * if it's being validated in the background. Finally, if {@link CleaningOptions#validateChanges} is on, checks everything the operations touched.
+	 * @param score the score
+	 * @param previousManifest the manifest from the last time this score was cleaned, or {@code null} to clean every measure
+	 * @param options the options to clean with
+	 * @param validator the validation running in the background, or {@code null} if the score has already been validated
+	 * @throws SAXException throws if the score turned out not to be valid, or the cleaning made it invalid
+	 * @throws IOException throws if the score couldn't be read for validation
+	 */
+	private static void performCleaningOperations(CleanedScore score, MeasureManifest previousManifest, CleaningOptions options,
+			BackgroundValidator validator) throws SAXException, IOException {
+		score.allocations.countElements(score.document);
+		
+		// Record what the operations touch, so that only that needs to be checked afterwards
+		ChangeValidator changes = options.validateChanges ? ChangeValidator.watch(score.document) : null;
+		try {
+			performCleaningOperations(score, previousManifest, options);
+		} catch (RuntimeException e) {
+			// The operations assume a valid score, so an invalid one may well have tripped them up. If so, that's the real problem.
+			if (validator != null) {
+				validator.await();
+			}
+			throw e;
+		}
+		if (validator != null) {
+			validator.await();
+			System.out.println("Validated the XML file in the background!");
+		}
+		if (changes != null) {
+			long allocationMark = AllocationStats.threadAllocatedBytes();
+			int checked = changes.check();
+			score.allocations.record("validateChanges", allocationMark);
+			System.out.println("Checked the " + checked + " elements the cleaning touched!");
+		}
+	}
 	
 	/**
-	 * Constructs an XML DOM object, given a file, and validates it against the MusicXML 3.1 schema.
+	 * Performs all operations that are turned on in the provided options on a freshly parsed score.
+	 * @param score the score
+	 * @param previousManifest the manifest from the last time this score was cleaned, or {@code null} to clean every measure
+	 * @param options the options to clean with
+	 */
+	private static void performCleaningOperations(CleanedScore score, MeasureManifest previousManifest, CleaningOptions options) {
+		Document document = score.document;
+		
+		// Do the cleaning!
+		// These operations look at the score as a whole, so they always see every measure.
+		if (options.addMiniTitlesAndPageNumbers)
+			perform(score, "addPageNumbersAndMiniTitles", () -> MusicXMLCleaner.addPageNumbersAndMiniTitles(document));
+		if (options.addSystemMeasureNumbers)
+			perform(score, "addSystemMeasureNumbers", () -> MusicXMLCleaner.addSystemMeasureNumbers(document));
+		if (options.removeDuplicateCopyrightInfo)
+			perform(score, "removeDuplicateCopyrightInfo", () -> MusicXMLCleaner.removeDuplicateCopyrightInfo(document));
+		if (options.centerCreditsHorizontally)
+			perform(score, "centerCreditsHorizontally", () -> MusicXMLCleaner.centerCreditsHorizontally(document));
+		if (options.offsetSystemMargins)
+			perform(score, "offsetSystemMargins", () -> MusicXMLCleaner.offsetSystemMarginsToAlignWithLeftMargin(document));
+		
+		// These operations only look at one measure (or part) at a time, so when cleaning incrementally, the unchanged measures are swapped out first.
+		if (score.manifest != null && score.manifest.isCompatibleWith(previousManifest)) {
+			int reused = score.manifest.reuseUnchangedMeasures(document, previousManifest, getOssiaPartIDs(document));
+			System.out.println("Reusing " + reused + " of " + score.manifest.getMeasureCount() + " measure(s) from the last cleaning. "
+					+ score.manifest.countChangedCredits(previousManifest) + " credit(s) changed.");
+		}
+		if (options.correctTempoMarking)
+			perform(score, "correctTempoMarking", () -> MusicXMLCleaner.correctTempoMark(document));
+		if (options.makeRepeatTextsBold)
+			perform(score, "makeRepeatTextsBold", () -> MusicXMLCleaner.makeRepeatTextsBold(document));
+		if (options.addPeriodsToVoltaTexts)
+			perform(score, "addPeriodsToVoltaTexts", () -> MusicXMLCleaner.addPeriodsToVoltaTexts(document));
+		if (options.addSwing8thsWhereSwingDirection)
+			perform(score, "addSwing8thsWhereSwingDirection", () -> MusicXMLCleaner.addSwing8thsWhereSwingDirection(document));
+		if (options.replaceEdwinAndFreeSerifWithTimesNewRoman)
+			perform(score, "replaceFonts", () -> MusicXMLCleaner.replaceEdwinAndFreeSerifWithTimesNewRoman(document, options.fontMapper));
+		if (options.formatOssias)
+			perform(score, "formatOssias", () -> MusicXMLCleaner.formatOssias(document));
+	}
+	
+	/**
+	 * Performs one cleaning operation, recording it (see {@link CleanerEvents}) and how many bytes it allocated.
+	 * @param score the score being cleaned
+	 * @param name the name of the operation
+	 * @param operation the operation
+	 */
+	private static void perform(CleanedScore score, String name, Runnable operation) {
+		long allocationMark = AllocationStats.threadAllocatedBytes();
+		CleanerEvents.operation(name, score.document, operation);
+		score.allocations.record(name, allocationMark);
+	}
+	
+	/**
+	 * Returns this thread's document builder, ready to parse a new file.
+	 * @param limits the limits the builder must enforce
+	 * @param validating whether the builder validates. A builder that doesn't still reads the DTD, so it builds exactly the same tree (with the same
+	 * default attributes and without the whitespace between elements), just without checking it.
+	 * @return the builder
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 */
+	private static DocumentBuilder getDocumentBuilder(ParsingLimits limits, boolean validating) throws ParserConfigurationException {
+		List<Object> key = Arrays.asList(limits, validating);
+		DocumentBuilder builder = BUILDERS.get().get(key);
+		if (builder != null) {
+			builder.reset();
+			return builder;
+		}
+		
+		// Create each factory one time
+		DocumentBuilderFactory factory = FACTORIES.computeIfAbsent(key, k -> {
+			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+			dbf.setValidating(validating);
+			dbf.setIgnoringElementContentWhitespace(true);
+			limits.configure(dbf);
+			return dbf;
+		});
+		synchronized (factory) {
+			// The factory isn't guaranteed to be thread-safe
+			builder = factory.newDocumentBuilder();
+		}
+		BUILDERS.get().put(key, builder);
+		return builder;
+	}
+	
+	
+	/**
+	 * Constructs an XML DOM object, given a file, and validates it against the MusicXML schema for its version.
 	 * @param file the file to be parsed
+	 * @param limits the limits the file must stay within
 	 * @return the DOM object
 	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
-	 * @throws SAXException throws if there is an error when parsing or validating the file
+	 * @throws SAXException throws if there is an error when parsing or validating the file, or a {@link LimitExceededException} if the file goes over a limit
 	 * @throws IOException throws if there is an I/O error resulting from parsing the file
 	 */
-	private static Document constructAndValidateMusicXMLDocument(File file) throws ParserConfigurationException, SAXException, IOException {
+	private static Document constructAndValidateMusicXMLDocument(File file, ParsingLimits limits) throws ParserConfigurationException, SAXException, IOException {
 		if (file == null)
 			throw new IllegalArgumentException("file provided was null"); // You should know better than that. :(
 		System.out.println("Loading file " + file.getName() + "...");
 		
-		DocumentBuilder builder = DBF.newDocumentBuilder();
+		DocumentBuilder builder = getDocumentBuilder(limits, true);
 		
 		// Construct an instance of a personal error handler to see if anything goes wrong when the file gets validated
 		XMLValidationErrorHandler errorHandler = new XMLValidationErrorHandler();
 		builder.setErrorHandler(errorHandler);
 		
-		// Redirect the entity resolver to the local directory instead of online
-		builder.setEntityResolver(new EntityResolver() {
-			
-			@Override
-			public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
-				// Get the files from the local directory
-				InputStream url = getClass().getResourceAsStream("/musicxml-4.0/schema/" + systemId.substring(systemId.lastIndexOf("/") + 1));
-				
-				if (url != null) {
-					// Return pointer to the file
-					return new InputSource(url);
-				}
-				else {
-					// Things went wrong
-					throw new SAXException("Unrecognized System ID: " + systemId + ". This probably means this isn't a MusicXML file.");
-				}
-				
-			}
-		});
-		
-		// Actually parse the file now
-		Document primaryDoc = builder.parse(file);
+		// Redirect the entity resolver to the local directory instead of online. It picks the grammar for the file's version from its DOCTYPE.
+		MusicXMLEntityResolver resolver = new MusicXMLEntityResolver();
+		builder.setEntityResolver(resolver);
+		
+		// Actually parse the file now, reading it through the cancellation token so that a parse that's taking too long can be stopped
+		Document primaryDoc;
+		try (InputStream in = CancellationToken.checking(new FileInputStream(file))) {
+			InputSource input = new InputSource(in);
+			input.setSystemId(file.toURI().toString());
+			primaryDoc = builder.parse(input);
+		} catch (SAXException e) {
+			throw ParsingLimits.translate(e); // In case it was one of the parser's own limits
+		}
 		
 		// Check if all went well
 		if (!errorHandler.isValid()) {
 			// All did not go well
-			throw errorHandler.getException();
+			throw ParsingLimits.translate(errorHandler.getException());
 		}
 		else {
-			// All is well
+			// All is well, but make sure it isn't too much of a good thing
+			limits.check(primaryDoc);
+			MusicXMLConverter.setDeclaredVersion(primaryDoc, resolver.getDeclaredVersion());
 			System.out.println("Successfully constructed and validated the XML file!");
 			return primaryDoc;
 		}
 	}
 	
+	/**
+	 * Constructs an XML DOM object, given the bytes of a file, and validates it against the MusicXML schema.
+	 * @param source the bytes to be parsed
+	 * @param limits the limits the bytes must stay within
+	 * @return the DOM object
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 * @throws SAXException throws if there is an error when parsing or validating the bytes, or a {@link LimitExceededException} if they go over a limit
+	 * @throws IOException throws if there is an I/O error reading the bytes
+	 */
+	private static Document constructAndValidateMusicXMLDocument(ByteBuffer source, ParsingLimits limits) throws ParserConfigurationException, SAXException, IOException {
+		System.out.println("Loading " + source.remaining() + " bytes...");
+		
+		DocumentBuilder builder = getDocumentBuilder(limits, true);
+		XMLValidationErrorHandler errorHandler = new XMLValidationErrorHandler();
+		builder.setErrorHandler(errorHandler);
+		MusicXMLEntityResolver resolver = new MusicXMLEntityResolver();
+		builder.setEntityResolver(resolver);
+		
+		Document primaryDoc;
+		try {
+			primaryDoc = builder.parse(CancellationToken.checking(new ByteBufferInputStream(source)));
+		} catch (SAXException e) {
+			throw ParsingLimits.translate(e);
+		}
+		
+		if (!errorHandler.isValid()) {
+			throw ParsingLimits.translate(errorHandler.getException());
+		}
+		limits.check(primaryDoc);
+		MusicXMLConverter.setDeclaredVersion(primaryDoc, resolver.getDeclaredVersion());
+		System.out.println("Successfully constructed and validated the XML file!");
+		return primaryDoc;
+	}
+	
+	/**
+	 * Constructs an XML DOM object, given the bytes of a file, without validating it. The bytes should already be being validated by the {@link BackgroundValidator}.
+	 * @param source the bytes to be parsed
+	 * @param systemId the system ID of the file, or {@code null} if there isn't one
+	 * @param limits the limits the bytes must stay within
+	 * @param validator the validation running in the background, which is abandoned if the bytes can't even be parsed
+	 * @return the DOM object
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 * @throws SAXException throws if there is an error when parsing the bytes, or a {@link LimitExceededException} if they go over a limit
+	 * @throws IOException throws if there is an I/O error reading the bytes
+	 */
+	private static Document constructMusicXMLDocumentWhileValidating(ByteBuffer source, String systemId, ParsingLimits limits, BackgroundValidator validator)
+			throws ParserConfigurationException, SAXException, IOException {
+		System.out.println("Loading " + source.remaining() + " bytes, validating in the background...");
+		
+		DocumentBuilder builder = getDocumentBuilder(limits, false);
+		XMLValidationErrorHandler errorHandler = new XMLValidationErrorHandler();
+		builder.setErrorHandler(errorHandler);
+		MusicXMLEntityResolver resolver = new MusicXMLEntityResolver();
+		builder.setEntityResolver(resolver);
+		
+		Document primaryDoc;
+		try {
+			InputSource input = new InputSource(CancellationToken.checking(new ByteBufferInputStream(source)));
+			input.setSystemId(systemId);
+			primaryDoc = builder.parse(input);
+			if (!errorHandler.isValid()) {
+				throw errorHandler.getException(); // Not even well-formed
+			}
+			limits.check(primaryDoc);
+		} catch (SAXException e) {
+			validator.abandon(); // It's not going to get any better
+			throw ParsingLimits.translate(e);
+		}
+		
+		MusicXMLConverter.setDeclaredVersion(primaryDoc, resolver.getDeclaredVersion());
+		System.out.println("Successfully constructed the XML file!");
+		return primaryDoc;
+	}
+	
+	/**
+	 * Constructs a lazy XML DOM object, given a file, and validates it against the MusicXML schema.
+	 * The notes (and other measure-level musical content) are left as raw bytes. See {@link LazyDocumentBuilder} for details.
+	 * If the file cannot be parsed lazily because it isn't UTF-8 encoded, it is parsed normally instead.
+	 * @param file the file to be parsed
+	 * @param limits the limits the file must stay within
+	 * @return the DOM object
+	 * @throws ParserConfigurationException throws if there is a problem getting a new parser
+	 * @throws SAXException throws if there is an error when parsing or validating the file, or a {@link LimitExceededException} if the file goes over a limit
+	 * @throws IOException throws if there is an I/O error resulting from parsing the file
+	 */
+	private static Document constructAndValidateLazyMusicXMLDocument(File file, ParsingLimits limits) throws ParserConfigurationException, SAXException, IOException {
+		if (file == null)
+			throw new IllegalArgumentException("file provided was null"); // Still no. :(
+		System.out.println("Lazily loading file " + file.getName() + "...");
+		
+		Document primaryDoc;
+		MusicXMLEntityResolver resolver = new MusicXMLEntityResolver();
+		try {
+			primaryDoc = LazyDocumentBuilder.parse(file, resolver, limits);
+		} catch (IOException e) {
+			if (!file.isFile()) {
+				throw e; // The file doesn't exist, so parsing normally won't help either
+			}
+			// Probably not UTF-8. Fall back to the normal way.
+			System.out.println("Unable to load lazily (" + e.getMessage() + "). Loading normally instead.");
+			return constructAndValidateMusicXMLDocument(file, limits);
+		}
+		MusicXMLConverter.setDeclaredVersion(primaryDoc, resolver.getDeclaredVersion());
+		
+		System.out.println("Successfully constructed and validated the XML file, leaving " + LazySlices.countSlices(primaryDoc) + " elements unexpanded!");
+		return primaryDoc;
+	}
+	
+	/**
+	 * Constructs a lazy XML DOM object, given the bytes of a file, and validates it against the MusicXML schema.
+	 * If the bytes cannot be parsed lazily because they aren't UTF-8 encoded, they are parsed normally instead.
+	 * @param source the bytes to be parsed
+	 * @param limits the limits the bytes must stay within
+	 * @return the DOM object
+	 * @throws ParserConfigurationException throws if there is a problem getting a new parser
+	 * @throws SAXException throws if there is an error when parsing or validating the bytes, or a {@link LimitExceededException} if they go over a limit
+	 * @throws IOException throws if there is an I/O error reading the bytes
+	 */
+	private static Document constructAndValidateLazyMusicXMLDocument(ByteBuffer source, ParsingLimits limits) throws ParserConfigurationException, SAXException, IOException {
+		System.out.println("Lazily loading " + source.remaining() + " bytes...");
+		
+		Document primaryDoc;
+		MusicXMLEntityResolver resolver = new MusicXMLEntityResolver();
+		try {
+			primaryDoc = LazyDocumentBuilder.parse(source, resolver, limits);
+		} catch (IOException e) {
+			System.out.println("Unable to load lazily (" + e.getMessage() + "). Loading normally instead.");
+			return constructAndValidateMusicXMLDocument(source, limits);
+		}
+		MusicXMLConverter.setDeclaredVersion(primaryDoc, resolver.getDeclaredVersion());
+		
+		System.out.println("Successfully constructed and validated the XML file, leaving " + LazySlices.countSlices(primaryDoc) + " elements unexpanded!");
+		return primaryDoc;
+	}
+	
+	/**
+	 * Constructs an XML DOM object, given a file, by parsing and validating chunks of it on several threads at once. See {@link ParallelDocumentBuilder} for details.
+	 * If the file cannot be parsed in parallel, it is parsed normally instead.
+	 * @param file the file to be parsed
+	 * @param limits the limits the file must stay within
+	 * @return the DOM object
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 * @throws SAXException throws if there is an error when parsing or validating the file, or a {@link LimitExceededException} if the file goes over a limit
+	 * @throws IOException throws if there is an I/O error resulting from parsing the file
+	 */
+	private static Document constructAndValidateMusicXMLDocumentInParallel(File file, ParsingLimits limits) throws ParserConfigurationException, SAXException, IOException {
+		if (file == null)
+			throw new IllegalArgumentException("file provided was null"); // Nope. :(
+		System.out.println("Loading file " + file.getName() + " in parallel...");
+		
+		Document primaryDoc;
+		MusicXMLEntityResolver resolver = new MusicXMLEntityResolver();
+		try {
+			primaryDoc = ParallelDocumentBuilder.parse(file, resolver, limits);
+		} catch (IOException e) {
+			if (!file.isFile()) {
+				throw e; // The file doesn't exist, so parsing normally won't help either
+			}
+			System.out.println("Unable to load in parallel (" + e.getMessage() + "). Loading normally instead.");
+			return constructAndValidateMusicXMLDocument(file, limits);
+		}
+		MusicXMLConverter.setDeclaredVersion(primaryDoc, resolver.getDeclaredVersion());
+		
+		System.out.println("Successfully constructed and validated the XML file!");
+		return primaryDoc;
+	}
+	
+	/**
+	 * Constructs an XML DOM object, given the bytes of a file, by parsing and validating chunks of them on several threads at once.
+	 * If the bytes cannot be parsed in parallel, they are parsed normally instead.
+	 * @param source the bytes to be parsed
+	 * @param limits the limits the bytes must stay within
+	 * @return the DOM object
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 * @throws SAXException throws if there is an error when parsing or validating the bytes, or a {@link LimitExceededException} if they go over a limit
+	 * @throws IOException throws if there is an I/O error reading the bytes
+	 */
+	private static Document constructAndValidateMusicXMLDocumentInParallel(ByteBuffer source, ParsingLimits limits) throws ParserConfigurationException, SAXException, IOException {
+		System.out.println("Loading " + source.remaining() + " bytes in parallel...");
+		
+		Document primaryDoc;
+		MusicXMLEntityResolver resolver = new MusicXMLEntityResolver();
+		try {
+			primaryDoc = ParallelDocumentBuilder.parse(source, resolver, limits);
+		} catch (IOException e) {
+			System.out.println("Unable to load in parallel (" + e.getMessage() + "). Loading normally instead.");
+			return constructAndValidateMusicXMLDocument(source, limits);
+		}
+		MusicXMLConverter.setDeclaredVersion(primaryDoc, resolver.getDeclaredVersion());
+		
+		System.out.println("Successfully constructed and validated the XML file!");
+		return primaryDoc;
+	}
+	
+	/**
+	 * Starts tracking where every element of the document came from in the file and which ones get changed, so that it can be saved with its original formatting.
+	 * If this isn't possible, the document will be saved normally instead.
+	 * @param document the freshly parsed document
+	 * @param file the file the document was parsed from, which is only read if the document doesn't already have its source attached
+	 * @throws IOException throws if there is an I/O error reading the file
+	 */
+	private static void trackChangesToPreserveFormatting(Document document, File file) throws IOException {
+		if (DocumentSource.getBuffer(document) == null) {
+			DocumentSource.set(document, DocumentSource.map(file), file);
+		}
+		
+		try {
+			SourceTracker.track(document);
+			System.out.println("Tracking changes to preserve the original formatting.");
+		} catch (IOException | SAXException e) {
+			System.out.println("Unable to preserve the original formatting (" + e.getMessage() + "). The file will be saved normally.");
+		}
+	}
+	
+	/**
+	 * Hashes every measure of the freshly parsed score and loads the manifest from the last time this score was cleaned.
+	 * The new manifest is kept with the score until it is saved, even if there is no previous output, so that the next cleaning can use it.
+	 * @param score the freshly parsed score
+	 * @param source the bytes the score was parsed from
+	 * @param previousOutput the file this score was last cleaned to, or {@code null} if it isn't known
+	 * @param options the options the score is being cleaned with
+	 * @return the previous manifest, or {@code null} if there isn't a usable one
+	 * @throws IOException throws if there is an I/O error reading the file
+	 */
+	private static MeasureManifest prepareIncrementalCleaning(CleanedScore score, ByteBuffer source, File previousOutput, CleaningOptions options) throws IOException {
+		Document document = score.document;
+		if (SourceTracker.isTracking(document)) {
+			System.out.println("Incremental cleaning cannot be combined with preserving the original formatting. Cleaning every measure.");
+			return null;
+		}
+		
+		boolean attachedSource = DocumentSource.getBuffer(document) == null;
+		if (attachedSource) {
+			DocumentSource.set(document, source, null);
+		}
+		try {
+			score.manifest = MeasureManifest.scan(document, options.describe());
+		} catch (SAXException e) {
+			System.out.println("Unable to clean incrementally (" + e.getMessage() + "). Cleaning every measure.");
+			return null;
+		} finally {
+			if (attachedSource) {
+				DocumentSource.set(document, null, null); // Only needed for hashing
+			}
+		}
+		
+		if (previousOutput == null) {
+			System.out.println("Incremental cleaning needs the file this score was last cleaned to. Cleaning every measure.");
+			return null;
+		}
+		File manifestFile = MeasureManifest.getManifestFile(previousOutput);
+		if (!manifestFile.isFile()) {
+			System.out.println("No manifest from a previous cleaning. Cleaning every measure.");
+			return null;
+		}
+		
+		try {
+			MeasureManifest previousManifest = MeasureManifest.load(manifestFile);
+			if (!score.manifest.isCompatibleWith(previousManifest)) {
+				System.out.println("The options, layout, or header have changed since the last cleaning. Cleaning every measure.");
+				return null;
+			}
+			return previousManifest;
+		} catch (IOException e) {
+			System.out.println("Unable to read " + manifestFile.getName() + " (" + e.getMessage() + "). Cleaning every measure.");
+			return null;
+		}
+	}
+	
 	/*
 	 * ======================================
 	 * =============== HELPER ===============
@@ -278,34 +1116,26 @@ public final class MusicXMLCleaner {
 			return -1; // *le sigh*
 		}
 		
-		NodeList nodeList = document.getElementsByTagName("scaling");
-		if (nodeList.getLength() == 0) {
+		Element scalingElement = NodeSymbols.first(document, MusicXMLSymbols.SCALING);
+		if (scalingElement == null) {
 			// We couldn't find any <scaling> tags
 			return -1;
 		}
 		
 		// We have a scaling element. Hooray!
-		Element scalingElement = (Element) nodeList.item(0);
-		
 		// Now, we need to find the millimeters tag and the tenths tag; both MUST exist in a validated sheet.
-		NodeList childNodes = scalingElement.getChildNodes();
-		
 		double millimeters = -1;
 		double tenths = -1;
 		
-		// Iterate over the child nodes of the <scaling> tag
-		for (int i = 0; i < childNodes.getLength(); i++) {
-			Node node = childNodes.item(i);
-			if (node.getNodeType() != Node.ELEMENT_NODE)
-				continue; // If this isn't an element node, we don't care about it.
-			
-			// This is an element, so cast it!
-			Element e = (Element) node;
-			if (e.getTagName().equals("millimeters")) {
-				millimeters = Double.parseDouble(e.getTextContent()); // This is the millimeters value.
-			}
-			else if (e.getTagName().equals("tenths")) {
-				tenths = Double.parseDouble(e.getTextContent()); // This is the tenths value.
+		// Iterate over the children of the <scaling> tag
+		for (Node node = scalingElement.getFirstChild(); node != null; node = node.getNextSibling()) {
+			switch (NodeSymbols.of(node)) {
+			case MusicXMLSymbols.MILLIMETERS:
+				millimeters = DecimalCodec.parse(node.getTextContent()); // This is the millimeters value.
+				break;
+			case MusicXMLSymbols.TENTHS:
+				tenths = DecimalCodec.parse(node.getTextContent()); // This is the tenths value.
+				break;
 			}
 		}
 		
@@ -326,15 +1156,15 @@ public final class MusicXMLCleaner {
 			return -1; // Shame on you! :(
 		}
 		
-		NodeList nodeList = document.getElementsByTagName("page-height");
-		if (nodeList.getLength() == 0) {
+		Element pageHeightElement = NodeSymbols.first(document, MusicXMLSymbols.PAGE_HEIGHT);
+		if (pageHeightElement == null) {
 			// We couldn't find any <page-height> tags
 			return -1;
 		}
 		
 		try {
 			// Return the text content as a double
-			double height = Double.parseDouble(nodeList.item(0).getTextContent());
+			double height = DecimalCodec.parse(pageHeightElement.getTextContent());
 			return height;
 		} catch (NumberFormatException e) {
 			// This number is not a double
@@ -352,15 +1182,15 @@ public final class MusicXMLCleaner {
 			return -1; // You monster. :(
 		}
 		
-		NodeList nodeList = document.getElementsByTagName("page-width");
-		if (nodeList.getLength() == 0) {
+		Element pageWidthElement = NodeSymbols.first(document, MusicXMLSymbols.PAGE_WIDTH);
+		if (pageWidthElement == null) {
 			// We couldn't find any <page-width> tags
 			return -1;
 		}
 		
 		try {
 			// Return the text content as a double
-			double width = Double.parseDouble(nodeList.item(0).getTextContent());
+			double width = DecimalCodec.parse(pageWidthElement.getTextContent());
 			return width;
 		} catch (NumberFormatException e) {
 			// This number is not a double
@@ -384,24 +1214,18 @@ public final class MusicXMLCleaner {
 		double[] evenMargins = null;
 		double[] oddMargins = null;
 		
-		// Run the search
-		NodeList nodeList = document.getElementsByTagName("page-margins");
-		
 		// Iterate over all the <page-margins> tags
-		for (int i = 0; i < nodeList.getLength(); i++) {
-			Element element = (Element) nodeList.item(i);
+		for (Element element : NodeSymbols.elements(document, MusicXMLSymbols.PAGE_MARGINS)) {
 			// Order will be: left, right, top, bottom. This is according to the schema.
 			double[] currentMargins = new double[4];
 			int index = 0;
 			
-			// Get the children
-			NodeList children = element.getChildNodes();
-			for (int j = 0; j < children.getLength(); j++) {
-				Node n = children.item(j);
+			// Go through the children
+			for (Node n = element.getFirstChild(); n != null; n = n.getNextSibling()) {
 				if (n.getNodeType() == Node.ELEMENT_NODE) {
-					// This is an element node, not a text node (id: 3)
+					// This is an element node, not a text node
 					try {
-						double value = Double.parseDouble(n.getTextContent());
+						double value = DecimalCodec.parse(n.getTextContent());
 						currentMargins[index++] = value;
 					} catch (NumberFormatException e) {
 						// This didn't contain a number
@@ -414,9 +1238,10 @@ public final class MusicXMLCleaner {
 				continue; // We didn't fill the array, so passing it along would be a mistake
 			}
 			
-			if (element.hasAttribute("type") && !element.getAttribute("type").equals("both")) {
+			String type = NodeSymbols.attribute(element, MusicXMLSymbols.TYPE);
+			if (NodeSymbols.hasAttribute(element, MusicXMLSymbols.TYPE) && !type.equals("both")) {
 				// These margins correspond to either even pages or odd pages. The order is not specified in the schema.
-				switch (element.getAttribute("type")) {
+				switch (type) {
 				case "even":
 					evenMargins = currentMargins;
 					break;
@@ -455,18 +1280,18 @@ public final class MusicXMLCleaner {
 		}
 		
 		// Fetch the <work-title> tag (which is what MuseScore uses by default)
-		NodeList nodeList = document.getElementsByTagName("work-title");
-		if (nodeList.getLength() == 0) {
+		Element titleElement = NodeSymbols.first(document, MusicXMLSymbols.WORK_TITLE);
+		if (titleElement == null) {
 			// Finale uses this tag instead. Added for future-proofing.
-			nodeList = document.getElementsByTagName("movement-title");
-			if (nodeList.getLength() == 0) {
+			titleElement = NodeSymbols.first(document, MusicXMLSymbols.MOVEMENT_TITLE);
+			if (titleElement == null) {
 				return null;
 			}
 		}
 		
-		// There (technically) should only be one element in this node list
-		// The title should be the text content of the first node.
-		return nodeList.item(0).getTextContent();
+		// There (technically) should only be one of these
+		// The title should be the text content of the first one.
+		return titleElement.getTextContent();
 	}
 	
 	/**
@@ -483,14 +1308,14 @@ public final class MusicXMLCleaner {
 		}
 		
 		// Fetches the <rights> tag
-		NodeList nodeList = document.getElementsByTagName("rights");
-		if (nodeList.getLength() == 0) {
+		Element rightsElement = NodeSymbols.first(document, MusicXMLSymbols.RIGHTS);
+		if (rightsElement == null) {
 			return null;
 		}
 		
-		// There (technically) should only be one element in this node list
-		// The copyright info should be the text content of the first node.
-		return nodeList.item(0).getTextContent();
+		// There (technically) should only be one of these
+		// The copyright info should be the text content of the first one.
+		return rightsElement.getTextContent();
 	}
 	
 	/**
@@ -503,24 +1328,17 @@ public final class MusicXMLCleaner {
 			return -1; // *eyeroll* :(
 		}
 		
-		// Get all the parts
-		NodeList partsList = document.getElementsByTagName("part");
-		if (partsList.getLength() == 0) {
+		// Get the first part
+		Element firstPart = NodeSymbols.first(document, MusicXMLSymbols.PART);
+		if (firstPart == null) {
 			return -1; // No parts, no dice.
 		}
 		
-		// Get the first part
-		Element firstPart = (Element) partsList.item(0);
-		
-		// Get all the <print> tags of the first part
-		NodeList printTagList = firstPart.getElementsByTagName("print");
-		
+		// Go through all the <print> tags of the first part
 		int numberOfPages = 1; // There is at least one page
-		for (int i = 0; i < printTagList.getLength(); i++) {
-			Element printElement = (Element) printTagList.item(i);
-			
+		for (Element printElement : NodeSymbols.elements(firstPart, MusicXMLSymbols.PRINT)) {
 			// If this <print> tag creates a new page, increment the count
-			if (printElement.getAttribute("new-page").equals("yes")) {
+			if (NodeSymbols.attribute(printElement, MusicXMLSymbols.NEW_PAGE).equals("yes")) {
 				numberOfPages++;
 			}
 		}
@@ -528,6 +1346,48 @@ public final class MusicXMLCleaner {
 		return numberOfPages;
 	}
 	
+	/**
+	 * Finds every part that is an ossia, i.e. every part named "Ossia".
+	 * @param document a validated MusicXML v3.1 document
+	 * @return the IDs of the ossia parts, which may be empty
+	 */
+	private static HashSet<String> getOssiaPartIDs(Document document) {
+		Element partListElement = NodeSymbols.first(document, MusicXMLSymbols.PART_LIST);
+		if (partListElement == null) {
+			// There were no parts. We literally cannot proceed.
+			return new HashSet<>();
+		}
+		// At this point, there is at least one of these, and there should only be one of these, so we're good.
+		
+		// In theory, there's nothing wrong with having multiple different ossia staffs, so we'll process them all.
+		HashSet<String> ossiaPartIDs = new HashSet<>();
+		
+		// Go through the score part list
+		for (Element scorePartElement : NodeSymbols.elements(partListElement, MusicXMLSymbols.SCORE_PART)) {
+			// Get the part id
+			String partNameID = NodeSymbols.attribute(scorePartElement, MusicXMLSymbols.ID);
+			if (partNameID.isEmpty()) {
+				// Technically, this has to exist according to the spec, but we'll safety check it anyway.
+				continue;
+			}
+			
+			// Get the part name
+			List<Element> partNameList = NodeSymbols.elements(scorePartElement, MusicXMLSymbols.PART_NAME);
+			if (partNameList.size() != 1) {
+				// Technically, there has to be exactly one of these according to the spec, but we'll safety check it anyway.
+				continue;
+			}
+			
+			String partName = partNameList.get(0).getTextContent().trim();
+			if (partName.equalsIgnoreCase("ossia")) {
+				// We'll flag this part as an ossia
+				ossiaPartIDs.add(partNameID);
+			}
+		}
+		
+		return ossiaPartIDs;
+	}
+	
 	
 	/*
 	 * ======================================
@@ -581,6 +1441,15 @@ public final class MusicXMLCleaner {
 		double evenHorizontal = margins[0][0];
 		double oddHorizontal = pageWidth - margins[1][1];
 		
+		// Every page uses one of these values, so write them out once
+		DecimalCodec codec = new DecimalCodec();
+		String evenVerticalText = codec.format(evenVertical, 4);
+		String oddVerticalText = codec.format(oddVertical, 4);
+		String evenCenterText = codec.format(evenCenter, 4);
+		String oddCenterText = codec.format(oddCenter, 4);
+		String evenHorizontalText = codec.format(evenHorizontal, 4);
+		String oddHorizontalText = codec.format(oddHorizontal, 4);
+		
 		
 		
 		// Detect if page number and/or mini titles exist.
@@ -590,10 +1459,12 @@ public final class MusicXMLCleaner {
 		boolean[] miniTitleExists = new boolean[numberOfPages];
 		
 		// Fetch all the credits
-		NodeList creditList = document.getElementsByTagName("credit");
-		for (int i = 0; i < creditList.getLength(); i++) {
-			Element creditTag = (Element) creditList.item(i);
-			String pageAttribute = creditTag.getAttribute("page");
+		List<Element> creditList = NodeSymbols.elements(document, MusicXMLSymbols.CREDIT);
+		CleanerEvents.visited(creditList.size());
+		for (int i = 0; i < creditList.size(); i++) {
+			CancellationToken.checkCurrent();
+			Element creditTag = creditList.get(i);
+			String pageAttribute = NodeSymbols.attribute(creditTag, MusicXMLSymbols.PAGE);
 			if (pageAttribute.isEmpty() || pageAttribute.equals("1")) {
 				// Page numbers and mini titles exist on pages 2+.
 				// This means it is on page 1. Ignore.
@@ -611,23 +1482,24 @@ public final class MusicXMLCleaner {
 			boolean isEvenPage = (pageNumber % 2) == 0;
 			
 			// Fetch the <credit-words> child tag
-			NodeList creditWordsList = creditTag.getElementsByTagName("credit-words");
-			if (creditWordsList.getLength() != 1) {
+			List<Element> creditWordsList = NodeSymbols.elements(creditTag, MusicXMLSymbols.CREDIT_WORDS);
+			if (creditWordsList.size() != 1) {
 				// There is no <credit-words> tag, ignore.
 				continue;
 			}
 			
 			// Get the text content and check if it is a page number, a mini title, or neither
-			Element candidateTag = (Element) creditWordsList.item(0);
+			Element candidateTag = creditWordsList.get(0);
 			String content = candidateTag.getTextContent().trim();
 			
 			if (content.equals(pageAttribute)) {
 				// This is a page number. Ensure the formatting attributes.
-				candidateTag.setAttribute("default-x", String.format(Locale.US, "%.4f", isEvenPage ? evenHorizontal : oddHorizontal));
-				candidateTag.setAttribute("default-y", String.format(Locale.US, "%.4f", isEvenPage ? evenVertical : oddVertical));
+				candidateTag.setAttribute("default-x", isEvenPage ? evenHorizontalText : oddHorizontalText);
+				candidateTag.setAttribute("default-y", isEvenPage ? evenVerticalText : oddVerticalText);
 				candidateTag.setAttribute("justify", isEvenPage ? "left" : "right");
 				candidateTag.setAttribute("valign", "top");
 				candidateTag.setAttribute("font-size", "14");
+				ChangeValidator.changed(candidateTag);
 				
 				// We've found a page number for this page, mark it as such.
 				pageNumberExists[pageNumber - 1] = true;
@@ -635,11 +1507,12 @@ public final class MusicXMLCleaner {
 			}
 			else if (content.equals(title)) {
 				// This is a mini title. Ensure the formatting attributes.
-				candidateTag.setAttribute("default-x", String.format(Locale.US, "%.4f", isEvenPage ? evenCenter : oddCenter));
-				candidateTag.setAttribute("default-y", String.format(Locale.US, "%.4f", isEvenPage ? evenVertical : oddVertical));
+				candidateTag.setAttribute("default-x", isEvenPage ? evenCenterText : oddCenterText);
+				candidateTag.setAttribute("default-y", isEvenPage ? evenVerticalText : oddVerticalText);
 				candidateTag.setAttribute("justify", "center");
 				candidateTag.setAttribute("valign", "top");
 				candidateTag.setAttribute("font-size", "12");
+				ChangeValidator.changed(candidateTag);
 				
 				// We've found a page number for this page, mark it as such.
 				miniTitleExists[pageNumber - 1] = true;
@@ -653,17 +1526,16 @@ public final class MusicXMLCleaner {
 		// At this point, proceed to add all page numbers and mini titles that don't exist.
 		// Find the <part-list> tag (which must exist according to the schema). 
 		// We will add the new credits before the <part-list> tag.
-		NodeList partList = document.getElementsByTagName("part-list");
+		Element partListTag = NodeSymbols.first(document, MusicXMLSymbols.PART_LIST);
 		
-		if (partList.getLength() == 0) {
+		if (partListTag == null) {
 			// Since this is required, something bad happened. Abort.
 			return;
 		}
 		
-		Element partListTag = (Element) partList.item(0); 
-		
 		// Iterate over the second page and onward
 		for (int pageNumber = 2; pageNumber <= numberOfPages; pageNumber++) {
+			CancellationToken.checkCurrent();
 			// Commonly used values
 			String pageNumberText = Integer.toString(pageNumber);
 			boolean isEvenPage = (pageNumber % 2) == 0;
@@ -692,8 +1564,8 @@ public final class MusicXMLCleaner {
 				pageNumberCreditWords.setTextContent(pageNumberText); // Set the text equal to the page number
 				
 				// Set all the attributes
-				pageNumberCreditWords.setAttribute("default-x", String.format(Locale.US, "%.4f", isEvenPage ? evenHorizontal : oddHorizontal));
-				pageNumberCreditWords.setAttribute("default-y", String.format(Locale.US, "%.4f", isEvenPage ? evenVertical : oddVertical));
+				pageNumberCreditWords.setAttribute("default-x", isEvenPage ? evenHorizontalText : oddHorizontalText);
+				pageNumberCreditWords.setAttribute("default-y", isEvenPage ? evenVerticalText : oddVerticalText);
 				pageNumberCreditWords.setAttribute("justify", isEvenPage ? "left" : "right");
 				pageNumberCreditWords.setAttribute("valign", "top");
 				pageNumberCreditWords.setAttribute("font-size", "14");
@@ -702,6 +1574,7 @@ public final class MusicXMLCleaner {
 				
 				// Add it before the <part-list> tag
 				partListTag.getParentNode().insertBefore(pageNumberCreditTag, partListTag);
+				ChangeValidator.inserted(pageNumberCreditTag);
 			}
 			
 			/*
@@ -728,8 +1601,8 @@ public final class MusicXMLCleaner {
 				pageNumberCreditWords.setTextContent(title); // Set the text equal to the page number
 				
 				// Set all the attributes
-				pageNumberCreditWords.setAttribute("default-x", String.format(Locale.US, "%.4f", isEvenPage ? evenCenter : oddCenter));
-				pageNumberCreditWords.setAttribute("default-y", String.format(Locale.US, "%.4f", isEvenPage ? evenVertical : oddVertical));
+				pageNumberCreditWords.setAttribute("default-x", isEvenPage ? evenCenterText : oddCenterText);
+				pageNumberCreditWords.setAttribute("default-y", isEvenPage ? evenVerticalText : oddVerticalText);
 				pageNumberCreditWords.setAttribute("justify", "center");
 				pageNumberCreditWords.setAttribute("valign", "top");
 				pageNumberCreditWords.setAttribute("font-size", "12");
@@ -738,6 +1611,7 @@ public final class MusicXMLCleaner {
 				
 				// Add it before the <part-list> tag
 				partListTag.getParentNode().insertBefore(pageNumberCreditTag, partListTag);
+				ChangeValidator.inserted(pageNumberCreditTag);
 			}
 		}
 		
@@ -758,20 +1632,20 @@ public final class MusicXMLCleaner {
 			return; // Did you expect something *magical* to happen? :(
 		}
 		
-		NodeList printList = document.getElementsByTagName("print");
-		if (printList.getLength() == 0) {
+		// Get the first <print> tag
+		Element firstPrint = NodeSymbols.first(document, MusicXMLSymbols.PRINT);
+		if (firstPrint == null) {
 			System.out.println("No print tag detected. Aborting.");
 			return; // We've got nothing to work with, so abort.
 		}
-		
-		// Get the first <print> tag
-		Element firstPrint = (Element) printList.item(0);
+		CleanerEvents.visited(1);
 		
 		// Check to see if the <measure-numbering> tag exists
-		NodeList checkList = firstPrint.getElementsByTagName("measure-numbering");
-		if (checkList.getLength() == 1) {
+		List<Element> checkList = NodeSymbols.elements(firstPrint, MusicXMLSymbols.MEASURE_NUMBERING);
+		if (checkList.size() == 1) {
 			// Ensure the measure-numbering is "system"
-			checkList.item(0).setTextContent("system");
+			checkList.get(0).setTextContent("system");
+			ChangeValidator.changed(checkList.get(0));
 			
 			// We're done.
 			System.out.println("Measure numbers already exist.");
@@ -784,14 +1658,15 @@ public final class MusicXMLCleaner {
 		
 		// The XML sequence order must be preserved, so we need to determine where the tag goes.
 		// First, check if <part-name-display> tag exists.
-		NodeList successorList = firstPrint.getElementsByTagName("part-name-display");
-		if (successorList.getLength() == 0) {
+		Element successor = NodeSymbols.first(firstPrint, MusicXMLSymbols.PART_NAME_DISPLAY);
+		if (successor == null) {
 			// <part-name-display> doesn't exist. Check if <part-abbreviation-display> exists.
-			successorList = firstPrint.getElementsByTagName("part-abbreviation-display");
-			if (successorList.getLength() == 0) {
+			successor = NodeSymbols.first(firstPrint, MusicXMLSymbols.PART_ABBREVIATION_DISPLAY);
+			if (successor == null) {
 				// <part-abbreviation-display> doesn't exist either.
 				// At this point, it is safe to append <measure-numbering> tag to the end as no others exist
 				firstPrint.appendChild(measureNumberingTag);
+				ChangeValidator.inserted(measureNumberingTag);
 				
 				// We've added it, so we're done.
 				System.out.println("Done adding measure numbers!");
@@ -800,8 +1675,9 @@ public final class MusicXMLCleaner {
 		}
 		
 		// At this point, either <part-name-display> exists or <part-name-display> doesn't exist but <part-abbreviation-display> does exist.
-		// Either way, the tag is stored in the NodeList and so simply add the <measure-numbering> tag before these tags
-		firstPrint.insertBefore(measureNumberingTag, successorList.item(0));
+		// Either way, the tag is stored in the successor and so simply add the <measure-numbering> tag before it
+		firstPrint.insertBefore(measureNumberingTag, successor);
+		ChangeValidator.inserted(measureNumberingTag);
 		System.out.println("Done adding measure numbers!");
 	}
 	
@@ -826,19 +1702,20 @@ public final class MusicXMLCleaner {
 		}
 		
 		// Get a list of all the <credit> tags
-		NodeList nodeList = document.getElementsByTagName("credit");
+		List<Element> nodeList = NodeSymbols.elements(document, MusicXMLSymbols.CREDIT);
+		CleanerEvents.visited(nodeList.size());
 		
 		// Iterate over the list backwards since we are deleting elements and want to avoid a concurrency issue.
-		for (int i = nodeList.getLength() - 1; i >= 0; i--) {
-			Element creditElement = (Element) nodeList.item(i);
-			String pageNumber = creditElement.getAttribute("page"); // Gets the page number of the credit. NOTE: This can be "" if assumed to be page 1
+		for (int i = nodeList.size() - 1; i >= 0; i--) {
+			CancellationToken.checkCurrent();
+			Element creditElement = nodeList.get(i);
+			String pageNumber = NodeSymbols.attribute(creditElement, MusicXMLSymbols.PAGE); // Gets the page number of the credit. NOTE: This can be "" if assumed to be page 1
 			
 			// Fetch the <credit-words> child of the <credit> tag.
 			// Unless there is an image here, there should be one and only one of these.
-			NodeList subList = creditElement.getElementsByTagName("credit-words");
+			Element creditWordsElement = NodeSymbols.first(creditElement, MusicXMLSymbols.CREDIT_WORDS);
 			
 			// Get the text inside the <credit-words> tag
-			Element creditWordsElement = (Element) subList.item(0);
 			String content = creditWordsElement.getTextContent().trim();
 			// Check if the content contains the copyright info and see if the associated page is not the first page
 			if (content.equals(copyrightInfo)) {
@@ -846,6 +1723,7 @@ public final class MusicXMLCleaner {
 					// This is redundant copyright information. Delete it.
 					
 					// If there is a newline and whitespace before this element, delete it.
+					ChangeValidator.changed((Element) creditElement.getParentNode());
 					Node previousNode = creditElement.getPreviousSibling();
 					if (previousNode != null && previousNode.getNodeType() == Node.TEXT_NODE) {
 						previousNode.getParentNode().removeChild(previousNode);
@@ -858,6 +1736,7 @@ public final class MusicXMLCleaner {
 					// This is the primary copyright information. 
 					// While we have a handle on it, add the font-size attribute.
 					creditWordsElement.setAttribute("font-size", "10");
+					ChangeValidator.changed(creditWordsElement);
 					System.out.println("Font size corrected on primary copyright information.");
 				}
 			}
@@ -880,10 +1759,12 @@ public final class MusicXMLCleaner {
 		}
 		
 		// Search for all the <metronome> tags
-		NodeList nodeList = document.getElementsByTagName("metronome");
+		List<Element> nodeList = NodeSymbols.elements(document, MusicXMLSymbols.METRONOME);
+		CleanerEvents.visited(nodeList.size());
 		
-		for (int i = 0; i < nodeList.getLength(); i++) {
-			Element metronomeTag = (Element) nodeList.item(i);
+		for (int i = 0; i < nodeList.size(); i++) {
+			CancellationToken.checkCurrent();
+			Element metronomeTag = nodeList.get(i);
 			Element directionTypeTag = (Element) metronomeTag.getParentNode();
 			
 			// Look for a previous <direction-type> that may contain the textual directions, such as a <words> direction
@@ -897,10 +1778,11 @@ public final class MusicXMLCleaner {
 				// Thus, we only need to replace the "default-x" attribute, if it exists, with "relative-x"
 				// However, ensure there isn't a "relative-x" already that we would override
 				// It seems that Finale will always ignore the "default-x" attribute, so it should be future-proof to replace
-				String x = metronomeTag.getAttribute("default-x");
-				if (!x.isEmpty() && !metronomeTag.hasAttribute("relative-x")) {
+				String x = NodeSymbols.attribute(metronomeTag, MusicXMLSymbols.DEFAULT_X);
+				if (!x.isEmpty() && !NodeSymbols.hasAttribute(metronomeTag, MusicXMLSymbols.RELATIVE_X)) {
 					metronomeTag.removeAttribute("default-x");
 					metronomeTag.setAttribute("relative-x", x);
+					ChangeValidator.changed(metronomeTag);
 				}
 				
 				// And we're done.
@@ -908,24 +1790,24 @@ public final class MusicXMLCleaner {
 			else {
 				// Check if there are words in this direction
 				Element previousElement = (Element) previous;
-				NodeList wordsList = previousElement.getElementsByTagName("words");
+				Element firstWords = NodeSymbols.first(previousElement, MusicXMLSymbols.WORDS);
 				
-				if (wordsList.getLength() == 0) {
+				if (firstWords == null) {
 					// This is something else. I'm not sure what would be here, but I don't know how to handle it. Abort.
 					System.out.println("Unexpected element before metronome mark. Skipping.");
 					continue;
 				}
 				else {
 					// There is a directional marking with <words>. We've got stuff to do. 
-					// First, get the first <words> tag - this should contain all the attributes we care about
-					Element firstWords = (Element) wordsList.item(0);
+					// The first <words> tag should contain all the attributes we care about
 					
 					// Replace the "default-x" attribute with "relative-x", if it exists.
 					// Also make sure there isn't a "relative-x" already that we would override
-					String x = firstWords.getAttribute("default-x");
-					if (!x.isEmpty() && !metronomeTag.hasAttribute("relative-x")) {
+					String x = NodeSymbols.attribute(firstWords, MusicXMLSymbols.DEFAULT_X);
+					if (!x.isEmpty() && !NodeSymbols.hasAttribute(metronomeTag, MusicXMLSymbols.RELATIVE_X)) {
 						firstWords.removeAttribute("default-x");
 						firstWords.setAttribute("relative-x", x);
+						ChangeValidator.changed(firstWords);
 					}
 					
 //					firstWords.removeAttribute("font-size"); // Optional. Remove the font-size tag and let Finale decide its size
@@ -939,6 +1821,7 @@ public final class MusicXMLCleaner {
 					
 					// Finally, ensure there is a "font-weight"=normal attribute
 					metronomeTag.setAttribute("font-weight", "normal");
+					ChangeValidator.changed(metronomeTag);
 				}
 			}
 			
@@ -978,18 +1861,23 @@ public final class MusicXMLCleaner {
 		// Compute the "default-x" values for the centered credit tags
 		double evenCenter = (pageWidth - margins[0][1] + margins[0][0]) / 2.0;
 		double oddCenter = (pageWidth - margins[1][1] + margins[1][0]) / 2.0;
+		DecimalCodec codec = new DecimalCodec();
+		String evenCenterText = codec.format(evenCenter, 4);
+		String oddCenterText = codec.format(oddCenter, 4);
 		
 		// Find all the <credit> tags
-		NodeList creditList = document.getElementsByTagName("credit");
+		List<Element> creditList = NodeSymbols.elements(document, MusicXMLSymbols.CREDIT);
+		CleanerEvents.visited(creditList.size());
 		
-		for (int i = 0; i < creditList.getLength(); i++) {
+		for (int i = 0; i < creditList.size(); i++) {
+			CancellationToken.checkCurrent();
 			// Get the <credit> tag
-			Element creditElement = (Element) creditList.item(i);
+			Element creditElement = creditList.get(i);
 			
 			int page;
 			try {
 				// Get the page number
-				page = Integer.parseInt(creditElement.getAttribute("page"));
+				page = Integer.parseInt(NodeSymbols.attribute(creditElement, MusicXMLSymbols.PAGE));
 			} catch (NumberFormatException e) {
 				// This tag does not contain a number, so skip this one
 				continue;
@@ -997,13 +1885,14 @@ public final class MusicXMLCleaner {
 			boolean isEvenPage = (page % 2) == 0;
 			
 			// Check if there is a <credit-words> tag (there should be, and if there is, there must be exactly one of them)
-			NodeList creditWordsList = creditElement.getElementsByTagName("credit-words");
-			if (creditWordsList.getLength() != 0) {
-				Element creditWordsElement = (Element) creditWordsList.item(0);
+			Element creditWordsElement = NodeSymbols.first(creditElement, MusicXMLSymbols.CREDIT_WORDS);
+			if (creditWordsElement != null) {
 				// Check if this credit needs to be centered.
-				if (creditWordsElement.getAttribute("justify").equals("center") || creditWordsElement.getAttribute("halign").equals("center")) {
+				if (NodeSymbols.attribute(creditWordsElement, MusicXMLSymbols.JUSTIFY).equals("center")
+						|| NodeSymbols.attribute(creditWordsElement, MusicXMLSymbols.HALIGN).equals("center")) {
 					// Center it!
-					creditWordsElement.setAttribute("default-x", String.format(Locale.US, "%.4f", isEvenPage ? evenCenter : oddCenter));
+					creditWordsElement.setAttribute("default-x", isEvenPage ? evenCenterText : oddCenterText);
+					ChangeValidator.changed(creditWordsElement);
 				}
 			}
 		}
@@ -1027,9 +1916,10 @@ public final class MusicXMLCleaner {
 		}
 		
 		// Get all of the <part-abbreviation> tags.
-		NodeList partAbbreviationTags = document.getElementsByTagName("part-abbreviation");
-		for (int i = 0; i < partAbbreviationTags.getLength(); i++) {
-			Element partAbbreviationTag = (Element) partAbbreviationTags.item(0);
+		List<Element> partAbbreviationTags = NodeSymbols.elements(document, MusicXMLSymbols.PART_ABBREVIATION);
+		CleanerEvents.visited(partAbbreviationTags.size());
+		for (int i = 0; i < partAbbreviationTags.size(); i++) {
+			Element partAbbreviationTag = partAbbreviationTags.get(0);
 			
 			if (!partAbbreviationTag.getTextContent().isEmpty()) {
 				// We've found a part with a part abbreviation text.
@@ -1043,10 +1933,11 @@ public final class MusicXMLCleaner {
 		// If we've made it to this point, none of the parts has a shortened name, so we're good to align all we like!
 		
 		// Fetch all the <system-layout> tags
-		NodeList allSystemLayoutTags = document.getElementsByTagName("system-layout");
+		List<Element> allSystemLayoutTags = NodeSymbols.elements(document, MusicXMLSymbols.SYSTEM_LAYOUT);
+		CleanerEvents.visited(allSystemLayoutTags.size());
 		
 		// Check how many <system-layout> tags we have
-		if (allSystemLayoutTags.getLength() <= 1) {
+		if (allSystemLayoutTags.size() <= 1) {
 			// In this case, we don't have enough relative information to slide all the systems, so we'll just do nothing
 			// NOTE: we could use some standard default value in this case, but for now, I'll just do nothing.
 			return;
@@ -1056,35 +1947,36 @@ public final class MusicXMLCleaner {
 		double minimumValue = Double.MAX_VALUE;
 		
 		// Iterate over all the <system-layout> tags
-		for (int i = 0; i < allSystemLayoutTags.getLength(); i++) {
-			Element systemLayoutElement = (Element) allSystemLayoutTags.item(i);
+		for (int i = 0; i < allSystemLayoutTags.size(); i++) {
+			CancellationToken.checkCurrent();
+			Element systemLayoutElement = allSystemLayoutTags.get(i);
 			
 			// Fetch the <system-margins> child of the <system-layout> tag.
-			NodeList systemMarginsTags = systemLayoutElement.getElementsByTagName("system-margins");
+			List<Element> systemMarginsTags = NodeSymbols.elements(systemLayoutElement, MusicXMLSymbols.SYSTEM_MARGINS);
 			
 			// We will be operating on a single <system-margins> tag, so we need to use that.
-			if (systemMarginsTags.getLength() != 1) {
+			if (systemMarginsTags.size() != 1) {
 				// We don't need to do anything because this is either a bug (if > 1) or this doesn't exist (if == 0), which can happen according to the schema
 				continue;
 			}
 			
 			// Since we know there is exactly one child, fetch it.
-			Element systemMarginsElement = (Element) systemMarginsTags.item(0);
+			Element systemMarginsElement = systemMarginsTags.get(0);
 			
 			// Great! Now, we need to get the <left-margin> child of the <system-margins> tag. According to the schema, it MUST exist and there is exactly one of them.
-			NodeList leftMarginTag = systemMarginsElement.getElementsByTagName("left-margin");
+			List<Element> leftMarginTag = NodeSymbols.elements(systemMarginsElement, MusicXMLSymbols.LEFT_MARGIN);
 			
 			// As a sanity check, assert there is only one
-			if (leftMarginTag.getLength() != 1) {
+			if (leftMarginTag.size() != 1) {
 				// Again, this shouldn't happen, but for defensive code, I'm putting this here.
 				continue;
 			}
 			
 			// Get the left-margins tag
-			Element leftMarginsElement = (Element) leftMarginTag.item(0);
+			Element leftMarginsElement = leftMarginTag.get(0);
 			try {
 				// Read the value
-				double value = Double.parseDouble(leftMarginsElement.getTextContent());
+				double value = DecimalCodec.parse(leftMarginsElement.getTextContent());
 				
 				// Take the smaller of this value and the running minimum.
 				minimumValue = Math.min(value, minimumValue);
@@ -1110,36 +2002,40 @@ public final class MusicXMLCleaner {
 		// The absolute threshold to be constituted as 0 margin and warrant deletion.
 		final double epsilon = 0.1;
 		
+		// Reused to write every new margin
+		DecimalCodec codec = new DecimalCodec();
+		
 		// Iterate over all the <system-layout> tags again!
 		// Iterate over it backwards since we are potentially deleting elements and want to avoid a concurrency issue.
-		for (int i = allSystemLayoutTags.getLength() - 1; i >= 0; i--) {
-			Element systemLayoutElement = (Element) allSystemLayoutTags.item(i);
+		for (int i = allSystemLayoutTags.size() - 1; i >= 0; i--) {
+			CancellationToken.checkCurrent();
+			Element systemLayoutElement = allSystemLayoutTags.get(i);
 			
 			// Fetch the <system-margins> child of the <system-layout> tag.
-			NodeList systemMarginsTags = systemLayoutElement.getElementsByTagName("system-margins");
+			List<Element> systemMarginsTags = NodeSymbols.elements(systemLayoutElement, MusicXMLSymbols.SYSTEM_MARGINS);
 			
 			// Once again, assert the length is 1
-			if (systemMarginsTags.getLength() != 1) {
+			if (systemMarginsTags.size() != 1) {
 				continue;
 			}
 			
 			// Since we know there is exactly one child, fetch it.
-			Element systemMarginsElement = (Element) systemMarginsTags.item(0);
+			Element systemMarginsElement = systemMarginsTags.get(0);
 			
 			// Great! Now, we need to get the <left-margin> child of the <system-margins> tag. According to the schema, it MUST exist and there is exactly one of them.
-			NodeList leftMarginTag = systemMarginsElement.getElementsByTagName("left-margin");
+			List<Element> leftMarginTag = NodeSymbols.elements(systemMarginsElement, MusicXMLSymbols.LEFT_MARGIN);
 			
 			// As a sanity check, assert there is only one
-			if (leftMarginTag.getLength() != 1) {
+			if (leftMarginTag.size() != 1) {
 				continue;
 			}
 			
 			// Get the left-margins tag
-			Element leftMarginsElement = (Element) leftMarginTag.item(0);
+			Element leftMarginsElement = leftMarginTag.get(0);
 			
 			try {
 				// Read the value
-				double value = Double.parseDouble(leftMarginsElement.getTextContent());
+				double value = DecimalCodec.parse(leftMarginsElement.getTextContent());
 				
 				// Now offset the value by the minimum value
 				double newValue = value - minimumValue;
@@ -1151,8 +2047,9 @@ public final class MusicXMLCleaner {
 				}
 				else {
 					// This system is indented some, so we just change the indentation.
-					leftMarginsElement.setTextContent(String.format(Locale.US, "%.2f", newValue)); // Since MuseScore uses 2 decimal places of accuracy, so will I.
+					leftMarginsElement.setTextContent(codec.format(newValue, 2)); // Since MuseScore uses 2 decimal places of accuracy, so will I.
 				}
+				ChangeValidator.changed(leftMarginsElement);
 			}
 			catch (NumberFormatException e) {
 				// This tag errantly contains a non-number (why did this happen??), so ignore this.
@@ -1174,33 +2071,36 @@ public final class MusicXMLCleaner {
 		}
 		
 		// To make sure we are dealing with actual ending texts and not just textual directions that say the words, we search for the <sound> tags first
-		NodeList soundNodes = document.getElementsByTagName("sound");
-		for (int i = 0; i < soundNodes.getLength(); i++) {
-			Element soundElement = (Element) soundNodes.item(i);
+		List<Element> soundNodes = NodeSymbols.elements(document, MusicXMLSymbols.SOUND);
+		CleanerEvents.visited(soundNodes.size());
+		for (int i = 0; i < soundNodes.size(); i++) {
+			CancellationToken.checkCurrent();
+			Element soundElement = soundNodes.get(i);
 			
 			// We're first going to check that this is inside a <direction> tag.
 			Node parentNode = soundElement.getParentNode();
 			
 			// If there is no parent tag, it's not an element, or isn't a <direction> tag, skip it.
-			if (parentNode == null || parentNode.getNodeType() != Node.ELEMENT_NODE || !((Element) parentNode).getTagName().equalsIgnoreCase("direction")) {
+			if (!NodeSymbols.is(parentNode, MusicXMLSymbols.DIRECTION)) {
 				continue;
 			}
 			
 			// At this point, we can assume this sound tag is inside a <direction> tag. Great! Now, let's check that it actually pertains to repeats.
-			if (soundElement.getAttribute("dacapo").equalsIgnoreCase("yes")           // Is this a "D.C. ______"?
-					|| !soundElement.getAttribute("dalsegno").isEmpty()               // Is this a "D.S. ______"?
-					|| !soundElement.getAttribute("fine").isEmpty()                   // Is this a "Fine"?
-					|| !soundElement.getAttribute("tocoda").isEmpty()                 // Is this a "To Coda"?
+			if (NodeSymbols.attribute(soundElement, MusicXMLSymbols.DACAPO).equalsIgnoreCase("yes")    // Is this a "D.C. ______"?
+					|| !NodeSymbols.attribute(soundElement, MusicXMLSymbols.DALSEGNO).isEmpty()    // Is this a "D.S. ______"?
+					|| !NodeSymbols.attribute(soundElement, MusicXMLSymbols.FINE).isEmpty()        // Is this a "Fine"?
+					|| !NodeSymbols.attribute(soundElement, MusicXMLSymbols.TOCODA).isEmpty()      // Is this a "To Coda"?
 				)
 			{
 				// It passed one of tests! Fantastic! Almost done now. We just need the <words> tag.
-				NodeList wordsList = ((Element) parentNode).getElementsByTagName("words");
+				List<Element> wordsList = NodeSymbols.elements(parentNode, MusicXMLSymbols.WORDS);
 				
-				for (int j = 0; j < wordsList.getLength(); j++) {
-					Element wordElement = (Element) wordsList.item(j);
+				for (int j = 0; j < wordsList.size(); j++) {
+					Element wordElement = wordsList.get(j);
 					
 					// Set the font-weight to bold.
 					wordElement.setAttribute("font-weight", "bold");
+					ChangeValidator.changed(wordElement);
 				}
 				
 			}
@@ -1225,12 +2125,14 @@ public final class MusicXMLCleaner {
 		}
 		
 		// Fetch all the <ending> tags
-		NodeList endingNodes = document.getElementsByTagName("ending");
-		for (int i = 0; i < endingNodes.getLength(); i++) {
-			Element endingElement = (Element) endingNodes.item(i);
+		List<Element> endingNodes = NodeSymbols.elements(document, MusicXMLSymbols.ENDING);
+		CleanerEvents.visited(endingNodes.size());
+		for (int i = 0; i < endingNodes.size(); i++) {
+			CancellationToken.checkCurrent();
+			Element endingElement = endingNodes.get(i);
 			
 			// Fetch the number attribute
-			String numberAttribute = endingElement.getAttribute("number");
+			String numberAttribute = NodeSymbols.attribute(endingElement, MusicXMLSymbols.NUMBER);
 			
 			// Put this in a StringBuilder so it's easy to insert characters.
 			StringBuilder builder = new StringBuilder(numberAttribute);
@@ -1262,6 +2164,7 @@ public final class MusicXMLCleaner {
 			
 			// Set this as the <ending> tag's content.
 			endingElement.setTextContent(builder.toString());
+			ChangeValidator.changed(endingElement);
 		}
 		
 		System.out.println("Successfully added periods after volta numbers!");
@@ -1281,9 +2184,11 @@ public final class MusicXMLCleaner {
 		}
 		
 		// Iterate over the <words> tags.
-		NodeList wordsList = document.getElementsByTagName("words");
-		for (int i = 0; i < wordsList.getLength(); i++) {
-			Element wordsElement = (Element) wordsList.item(i);
+		List<Element> wordsList = NodeSymbols.elements(document, MusicXMLSymbols.WORDS);
+		CleanerEvents.visited(wordsList.size());
+		for (int i = 0; i < wordsList.size(); i++) {
+			CancellationToken.checkCurrent();
+			Element wordsElement = wordsList.get(i);
 			
 			Element directionTypeTag = (Element) wordsElement.getParentNode(); // <words> elements are always children of a <direction-type> tag
 			Element nextSibling = (Element) directionTypeTag.getNextSibling(); // Get the next sibling of this tag. Will be null if doesn't exist!
@@ -1459,6 +2364,7 @@ public final class MusicXMLCleaner {
 					// Add it before the next sibling (i.e. right after the previous <direction-type> tag)
 					directionTag.insertBefore(newDirectionTypeTag, nextSibling);
 				}
+				ChangeValidator.inserted(newDirectionTypeTag);
 				
 				// Whew! We're done.
 			}
@@ -1468,54 +2374,31 @@ public final class MusicXMLCleaner {
 	}
 	
 	/**
-	 * This method will check for all tags that contain either 
-	 * 	{@code font-family="Edwin"} or {@code font-family="FreeSerif"} 
-	 * and replace them with {@code font-family="Times New Roman"}.
-	 * If the XPath query fails, this method aborts.
+	 * This method will check for all tags that contain a {@code font-family} attribute and replace any font found in the font mapper with its target font.
+	 * By default, this replaces {@code font-family="Edwin"} and {@code font-family="FreeSerif"} with {@code font-family="Times New Roman"}.
+	 * Each entry of a comma-separated {@code font-family} is replaced on its own. Anything not found in the mapper is left alone.
 	 * @param document a validated MusicXML v3.1 document
+	 * @param fontMapper the fonts to replace and the fonts to replace them with
 	 */
-	private static void replaceEdwinAndFreeSerifWithTimesNewRoman(Document document) {
-		System.out.println("Replacing FreeSerif and Edwin with Times New Roman...");
+	private static void replaceEdwinAndFreeSerifWithTimesNewRoman(Document document, FontMapper fontMapper) {
+		System.out.println("Replacing fonts using the font mapper...");
 		if (document == null) {
 			return; // La de da... :(
 		}
 		
-		try {
-			// This XPath expression will return all elements that contain a "font-family" attribute.
-			String xPathExpression = "//*[@font-family]";
-			NodeList nodeList = (NodeList) XPATH.compile(xPathExpression).evaluate(document, XPathConstants.NODESET);
-			
-			// Iterate over the list of candidates
-			for (int i = 0; i < nodeList.getLength(); i++) {
-				Node node = nodeList.item(i);
-				
-				// Just in case I've picked up something I shouldn't have, check that this is an element node
-				if (node.getNodeType() == Node.ELEMENT_NODE) {
-					// Great! Go ahead and cast it.
-					Element element = (Element) node;
-					
-					// Get the "font-family" attribute's value
-					String oldValue = element.getAttribute("font-family");
-					
-					// Replace FreeSerif (case insensitive) with Times New Roman
-					String newValue = oldValue.replaceAll("(?i)FreeSerif", "Times New Roman");
-					// Replace Edwin (case insensitive) with Times New Roman
-					newValue = newValue.replaceAll("(?i)Edwin", "Times New Roman");
-					
-					// Set the updated "font-family" attribute's value
-					// Note: since we only replaced what we needed to, anything not matching what we replaced should've been left alone.
-					element.setAttribute("font-family", newValue);
-				}
-			}
-			
-		} catch (XPathExpressionException e) {
-			// Bad stuff happened. Abort.
-			System.out.println("An error occurred while trying to replace the fonts: " + e.getMessage());
-			return;
+		// If this document was parsed lazily, the only unexpanded elements we care about are the ones that use a font
+		LazySlices.expandSlicesContaining(document, "font-family");
+		
+		// Walk the tree once and replace everything that's mapped
+		Map<String, Integer> counts = fontMapper.apply(document);
+		
+		// Report what we've done
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			System.out.println("Replaced " + entry.getKey() + " with " + fontMapper.getTargetFont(entry.getKey()) + " " + entry.getValue() + " time(s).");
 		}
 		
 		// Done!
-		System.out.println("Done replacing FreeSerif and Edwin with Times New Roman!");
+		System.out.println("Done replacing fonts!");
 	}
 	
 	/**
@@ -1532,320 +2415,297 @@ public final class MusicXMLCleaner {
 		}
 		
 		// First, we get the part list to see which part corresponds to the ossia
-		NodeList partList = document.getElementsByTagName("part-list");
-		if (partList.getLength() == 0) {
-			// There were no parts. We literally cannot proceed.
-			return;
-		}
-		// At this point, there is at least one of these, and there should only be one of these, so we're good.
-		Element partListElement = (Element) partList.item(0);
-		
-		// In theory, there's nothing wrong with having multiple different ossia staffs, so we'll process them all.
-		HashSet<String> ossiaPartIDs = new HashSet<>();
-		
-		// Get the score part list
-		NodeList scorePartList = partListElement.getElementsByTagName("score-part");
-		
-		for (int i = 0; i < scorePartList.getLength(); i++) {
-			if (scorePartList.item(i).getNodeType() == Node.ELEMENT_NODE) {
-				Element scorePartElement = (Element) scorePartList.item(i);
-				
-				// Get the part id
-				String partNameID = scorePartElement.getAttribute("id");
-				if (partNameID == null || partNameID.isEmpty()) {
-					// Technically, this has to exist according to the spec, but we'll safety check it anyway.
-					continue;
-				}
-				
-				// Get the part name
-				NodeList partNameList = scorePartElement.getElementsByTagName("part-name");
-				if (partNameList.getLength() != 1) {
-					// Technically, this has to exist according to the spec, but we'll safety check it anyway.
-					continue;
-				}
-				
-				String partName = partNameList.item(0).getTextContent().trim();
-				if (partName.equalsIgnoreCase("ossia")) {
-					// We'll flag this part as an ossia
-					ossiaPartIDs.add(partNameID);
-				}
-				
-			}
-		}
+		HashSet<String> ossiaPartIDs = getOssiaPartIDs(document);
 		
 		// Now, we go through all the parts
-		NodeList listOfParts = document.getElementsByTagName("part");
-		for (int i = 0; i < listOfParts.getLength(); i++) {
-			Node partNode = listOfParts.item(i);
-			if (partNode.getNodeType() == Node.ELEMENT_NODE) {
-				Element partElement = (Element) partNode;
-				String partReferenceID = partElement.getAttribute("id");
-				
-				if (partReferenceID == null || partReferenceID.isEmpty()) {
-					// Nothing we can do here.
-					continue;
-				}
-				
-				if (!ossiaPartIDs.contains(partReferenceID)) {
-					// This isn't an ossia part. Skip this one.
-					continue;
-				}
-				
-				// Alright, this is an ossia part! We can proceed!
-				// Get all the measures for this part (we will need all of them
-				NodeList listOfMeasures = partElement.getElementsByTagName("measure");
+		List<Element> listOfParts = NodeSymbols.elements(document, MusicXMLSymbols.PART);
+		CleanerEvents.visited(listOfParts.size());
+		for (int i = 0; i < listOfParts.size(); i++) {
+			CancellationToken.checkCurrent();
+			Element partElement = listOfParts.get(i);
+			String partReferenceID = NodeSymbols.attribute(partElement, MusicXMLSymbols.ID);
+			
+			if (partReferenceID == null || partReferenceID.isEmpty()) {
+				// Nothing we can do here.
+				continue;
+			}
+			
+			if (!ossiaPartIDs.contains(partReferenceID)) {
+				// This isn't an ossia part. Skip this one.
+				continue;
+			}
+			
+			// Alright, this is an ossia part! We can proceed!
+			// Get all the measures for this part (we will need all of them
+			List<Element> listOfMeasures = NodeSymbols.elements(partElement, MusicXMLSymbols.MEASURE);
+			CleanerEvents.visited(listOfMeasures.size());
+			
+			Element startOfSystemMeasure = null;
+			boolean doesMusicHappenOnThisSystem = false;
+			boolean isMusicSetToDisplayAlready = true;
+			
+			for (int j = 0; j < listOfMeasures.size(); j++) {
+				CancellationToken.checkCurrent();
+				Element measureTag = listOfMeasures.get(j); // Get the measure tag
+				String measureNumber = NodeSymbols.attribute(measureTag, MusicXMLSymbols.NUMBER); // Fetch the measure number
 				
-				Element startOfSystemMeasure = null;
-				boolean doesMusicHappenOnThisSystem = false;
-				boolean isMusicSetToDisplayAlready = true;
+				// We need to look at the notes, so if this document was parsed lazily, expand them
+				LazySlices.expand(measureTag);
 				
-				for (int j = 0; j < listOfMeasures.getLength(); j++) {
-					Element measureTag = (Element) listOfMeasures.item(j); // Get the measure tag
-					String measureNumber = measureTag.getAttribute("number"); // Fetch the measure number
+				if (measureNumber.trim().equals("1")) {
+					// This is the first measure, so we will format the staff here.
+					startOfSystemMeasure = measureTag;
 					
-					if (measureNumber.trim().equals("1")) {
-						// This is the first measure, so we will format the staff here.
-						startOfSystemMeasure = measureTag;
+					// Now we need to format the staff
+					Element existingAttributesTag = NodeSymbols.first(measureTag, MusicXMLSymbols.ATTRIBUTES);
+					if (existingAttributesTag == null) {
+						// We need to create the attributes tag
+						Element attributesTag = document.createElement("attributes");
 						
-						// Now we need to format the staff
-						NodeList attributesTags = measureTag.getElementsByTagName("attributes");
-						if (attributesTags.getLength() == 0) {
-							// We need to create the attributes tag
-							Element attributesTag = document.createElement("attributes");
-							
+						Element staffDetailsTag = document.createElement("staff-details");
+						attributesTag.appendChild(staffDetailsTag);
+						
+						// Format the staff to be of "ossia" type
+						Element staffTypeTag = document.createElement("staff-type");
+						staffTypeTag.setTextContent("ossia");
+						staffDetailsTag.appendChild(staffTypeTag);
+						
+						Element firstNoteTag = NodeSymbols.first(measureTag, MusicXMLSymbols.NOTE);
+						if (firstNoteTag == null) {
+							// Just put it at the end (Finale will probably do weird stuff, but the fact is, this probably shouldn't happen) 
+							startOfSystemMeasure.appendChild(attributesTag);
+						}
+						else {
+							// Put right before the <notes> tag
+							measureTag.insertBefore(attributesTag, firstNoteTag);
+						}
+						ChangeValidator.inserted(attributesTag);
+					}
+					else {
+						// The attributes tag already exists
+						Element attributesTag = existingAttributesTag;
+						
+						Element existingStaffDetailsTag = NodeSymbols.first(attributesTag, MusicXMLSymbols.STAFF_DETAILS);
+						if (existingStaffDetailsTag == null) {
+							// We need to create the staff-details tag
 							Element staffDetailsTag = document.createElement("staff-details");
-							attributesTag.appendChild(staffDetailsTag);
 							
 							// Format the staff to be of "ossia" type
 							Element staffTypeTag = document.createElement("staff-type");
 							staffTypeTag.setTextContent("ossia");
 							staffDetailsTag.appendChild(staffTypeTag);
 							
-							NodeList notesTags = measureTag.getElementsByTagName("note");
-							if (notesTags.getLength() == 0) {
-								// Just put it at the end (Finale will probably do weird stuff, but the fact is, this probably shouldn't happen) 
-								startOfSystemMeasure.appendChild(attributesTag);
-							}
-							else {
-								// Put right before the <notes> tag
-								measureTag.insertBefore(attributesTag, (Element) notesTags.item(0));
+							// Since where we place this matters, we will find the first tag that's supposed to come after it, and put it before it.
+							int[] tagsThatComeAfterStaffDetailsTag = {MusicXMLSymbols.TRANSPOSE, MusicXMLSymbols.FOR_PART, MusicXMLSymbols.DIRECTIVE, MusicXMLSymbols.MEASURE_STYLE};
+							Element candidateTag = null;
+							
+							// Go through the tags in order
+							for (int tagToPlaceBefore : tagsThatComeAfterStaffDetailsTag) {
+								candidateTag = NodeSymbols.first(attributesTag, tagToPlaceBefore);
+								if (candidateTag != null) {
+									// Got a match! Use this candidate!
+									break; // We were just looking for the first one we came across.
+								}
 							}
+							
+							// Insert before its closest successor
+							attributesTag.insertBefore(staffDetailsTag, candidateTag);
+							ChangeValidator.inserted(staffDetailsTag);
 						}
 						else {
-							// The attributes tag already exists
-							Element attributesTag = (Element) attributesTags.item(0);
+							// The staff-details tag already exists
+							Element staffDetailsTag = existingStaffDetailsTag;
 							
-							NodeList staffDetailsTags = attributesTag.getElementsByTagName("staff-details");
-							if (staffDetailsTags.getLength() == 0) {
-								// We need to create the staff-details tag
-								Element staffDetailsTag = document.createElement("staff-details");
+							Element existingStaffTypeTag = NodeSymbols.first(staffDetailsTag, MusicXMLSymbols.STAFF_TYPE);
+							if (existingStaffTypeTag == null) {
+								// We need to create the staff-type tag
 								
 								// Format the staff to be of "ossia" type
 								Element staffTypeTag = document.createElement("staff-type");
 								staffTypeTag.setTextContent("ossia");
 								staffDetailsTag.appendChild(staffTypeTag);
-								
-								// Since where we place this matters, we will find the first tag that's supposed to come after it, and put it before it.
-								String[] tagNamesThatComeAfterStaffDetailsTag = new String[] {"transpose", "for-part", "directive", "measure-style"};
-								Element candidateTag = null;
-								
-								// Go through the tags in order
-								for (String tagNameToPlaceBefore : tagNamesThatComeAfterStaffDetailsTag) {
-									NodeList candidateTags = attributesTag.getElementsByTagName(tagNameToPlaceBefore);
-									if (candidateTags.getLength() != 0) {
-										// Got a match! Use this candidate!
-										candidateTag = (Element) candidateTags.item(0);
-										break; // We were just looking for the first one we came across.
-									}
-								}
-								
-								// Insert before its closest successor
-								attributesTag.insertBefore(staffDetailsTag, candidateTag);
+								ChangeValidator.inserted(staffTypeTag);
 							}
 							else {
-								// The staff-details tag already exists
-								Element staffDetailsTag = (Element) staffDetailsTags.item(0);
-								
-								NodeList staffTypeTags = staffDetailsTag.getElementsByTagName("staff-type");
-								if (staffTypeTags.getLength() == 0) {
-									// We need to create the staff-type tag
-									
-									// Format the staff to be of "ossia" type
-									Element staffTypeTag = document.createElement("staff-type");
-									staffTypeTag.setTextContent("ossia");
-									staffDetailsTag.appendChild(staffTypeTag);
-								}
-								else {
-									// The staff-type tag already exists
-									Element staffTypeTag = (Element) staffTypeTags.item(0);
-									
-									// Make sure the content is set to "ossia"
-									staffTypeTag.setTextContent("ossia");
-								}
+								// The staff-type tag already exists
+								Element staffTypeTag = existingStaffTypeTag;
 								
+								// Make sure the content is set to "ossia"
+								staffTypeTag.setTextContent("ossia");
+								ChangeValidator.changed(staffTypeTag);
 							}
-						}
 						
+						}
 					}
+				
+				}
+				
+				// We're looking for a "new-system" or "new-page"
+				Element printTag = NodeSymbols.first(measureTag, MusicXMLSymbols.PRINT);
+				if (printTag != null) {
+					// Okay, there's a print tag
+					String newSystemAttribute = NodeSymbols.attribute(printTag, MusicXMLSymbols.NEW_SYSTEM);
+					String newPageAttribute   = NodeSymbols.attribute(printTag, MusicXMLSymbols.NEW_PAGE);
 					
-					// We're looking for a "new-system" or "new-page"
-					NodeList listOfPrints = measureTag.getElementsByTagName("print");
-					if (listOfPrints.getLength() != 0) {
-						// Okay, there's a print tag
-						Element printTag = (Element) listOfPrints.item(0);
-						String newSystemAttribute = printTag.getAttribute("new-system");
-						String newPageAttribute   = printTag.getAttribute("new-page");
+					if (newSystemAttribute.equalsIgnoreCase("yes") || newPageAttribute.equalsIgnoreCase("yes")) {
+						// This is the start of a new system! 
+						// So, we need to resolve the previous system and see if we need to change how we display it.
 						
-						if (newSystemAttribute.equalsIgnoreCase("yes") || newPageAttribute.equalsIgnoreCase("yes")) {
-							// This is the start of a new system! 
-							// So, we need to resolve the previous system and see if we need to change how we display it.
+						if (doesMusicHappenOnThisSystem != isMusicSetToDisplayAlready) {
+							// This means we need to either start displaying music on the previous system...
+							// ... or we need to turn it off.
 							
-							if (doesMusicHappenOnThisSystem != isMusicSetToDisplayAlready) {
-								// This means we need to either start displaying music on the previous system...
-								// ... or we need to turn it off.
+							Element attributesTagOfTheFirstMeasureOfThePreviousSystem = NodeSymbols.first(startOfSystemMeasure, MusicXMLSymbols.ATTRIBUTES);
+							if (attributesTagOfTheFirstMeasureOfThePreviousSystem == null) {
+								// We need to create the attributes tag.
+								Element attributesTag = document.createElement("attributes");
 								
-								NodeList attributesTagOfTheFirstMeasureOfThePreviousSystem = startOfSystemMeasure.getElementsByTagName("attributes");
-								if (attributesTagOfTheFirstMeasureOfThePreviousSystem.getLength() == 0) {
-									// We need to create the attributes tag.
-									Element attributesTag = document.createElement("attributes");
-									
+								Element staffDetailsTag = document.createElement("staff-details");
+								staffDetailsTag.setAttribute("print-object", doesMusicHappenOnThisSystem ? "yes" : "no"); // Set the staff to not display
+								attributesTag.appendChild(staffDetailsTag);
+								
+								Element firstNoteTag = NodeSymbols.first(startOfSystemMeasure, MusicXMLSymbols.NOTE);
+								if (firstNoteTag == null) {
+									// Just put it at the end (Finale will probably do weird stuff, but the fact is, this probably shouldn't happen)
+									startOfSystemMeasure.appendChild(attributesTag);
+								}
+								else {
+									// Put right before the <notes> tag
+									startOfSystemMeasure.insertBefore(attributesTag, firstNoteTag);
+								}
+								ChangeValidator.inserted(attributesTag);
+							}
+							else {
+								// The attributes tag already exists
+								Element attributesTag = attributesTagOfTheFirstMeasureOfThePreviousSystem;
+								
+								Element existingStaffDetailsTag = NodeSymbols.first(attributesTag, MusicXMLSymbols.STAFF_DETAILS);
+								if (existingStaffDetailsTag == null) {
+									// We need to create the staff-details tag
 									Element staffDetailsTag = document.createElement("staff-details");
 									staffDetailsTag.setAttribute("print-object", doesMusicHappenOnThisSystem ? "yes" : "no"); // Set the staff to not display
-									attributesTag.appendChild(staffDetailsTag);
 									
-									NodeList notesTags = startOfSystemMeasure.getElementsByTagName("note");
-									if (notesTags.getLength() == 0) {
-										// Just put it at the end (Finale will probably do weird stuff, but the fact is, this probably shouldn't happen)
-										startOfSystemMeasure.appendChild(attributesTag);
-									}
-									else {
-										// Put right before the <notes> tag
-										startOfSystemMeasure.insertBefore(attributesTag, (Element) notesTags.item(0));
-									}
-								}
-								else {
-									// The attributes tag already exists
-									Element attributesTag = (Element) attributesTagOfTheFirstMeasureOfThePreviousSystem.item(0);
+									// Since where we place this matters, we will find the first tag that's supposed to come after it, and put it before it.
+									int[] tagsThatComeAfterStaffDetailsTag = {MusicXMLSymbols.TRANSPOSE, MusicXMLSymbols.FOR_PART, MusicXMLSymbols.DIRECTIVE, MusicXMLSymbols.MEASURE_STYLE};
+									Element candidateTag = null;
 									
-									NodeList staffDetailsTags = attributesTag.getElementsByTagName("staff-details");
-									if (staffDetailsTags.getLength() == 0) {
-										// We need to create the staff-details tag
-										Element staffDetailsTag = document.createElement("staff-details");
-										staffDetailsTag.setAttribute("print-object", doesMusicHappenOnThisSystem ? "yes" : "no"); // Set the staff to not display
-										
-										// Since where we place this matters, we will find the first tag that's supposed to come after it, and put it before it.
-										String[] tagNamesThatComeAfterStaffDetailsTag = new String[] {"transpose", "for-part", "directive", "measure-style"};
-										Element candidateTag = null;
-										
-										// Go through the tags in order
-										for (String tagNameToPlaceBefore : tagNamesThatComeAfterStaffDetailsTag) {
-											NodeList candidateTags = attributesTag.getElementsByTagName(tagNameToPlaceBefore);
-											if (candidateTags.getLength() != 0) {
-												// Got a match! Use this candidate!
-												candidateTag = (Element) candidateTags.item(0);
-												break; // We were just looking for the first one we came across.
-											}
+									// Go through the tags in order
+									for (int tagToPlaceBefore : tagsThatComeAfterStaffDetailsTag) {
+										candidateTag = NodeSymbols.first(attributesTag, tagToPlaceBefore);
+										if (candidateTag != null) {
+											// Got a match! Use this candidate!
+											break; // We were just looking for the first one we came across.
 										}
-										
-										// Insert before its closest successor
-										attributesTag.insertBefore(staffDetailsTag, candidateTag);
-									}
-									else {
-										// The staff-details tag already exists
-										Element staffDetailsTag = (Element) staffDetailsTags.item(0);
-										staffDetailsTag.setAttribute("print-object", doesMusicHappenOnThisSystem ? "yes" : "no"); // Set the staff to not display
 									}
 									
+									// Insert before its closest successor
+									attributesTag.insertBefore(staffDetailsTag, candidateTag);
+									ChangeValidator.inserted(staffDetailsTag);
+								}
+								else {
+									// The staff-details tag already exists
+									Element staffDetailsTag = existingStaffDetailsTag;
+									staffDetailsTag.setAttribute("print-object", doesMusicHappenOnThisSystem ? "yes" : "no"); // Set the staff to not display
+									ChangeValidator.changed(staffDetailsTag);
 								}
-								
-								// Now that the tags have been properly made/updated...
-								// ... make it so the internal state of the display is up-to-date
-								isMusicSetToDisplayAlready = doesMusicHappenOnThisSystem; 
-							}
 							
-							// RESET FOR NEXT SYSTEM //
-							startOfSystemMeasure = measureTag; // Assign this measure as the new start of a system.
-							doesMusicHappenOnThisSystem = false;   // Reset for the new system
+							}
 							
+							// Now that the tags have been properly made/updated...
+							// ... make it so the internal state of the display is up-to-date
+							isMusicSetToDisplayAlready = doesMusicHappenOnThisSystem; 
 						}
-					}
+						
+						// RESET FOR NEXT SYSTEM //
+						startOfSystemMeasure = measureTag; // Assign this measure as the new start of a system.
+						doesMusicHappenOnThisSystem = false;   // Reset for the new system
 					
-					// If we haven't found any non-rest measures on this system, we need to keep looking.
-					if (!doesMusicHappenOnThisSystem) {
-						NodeList listOfNotes = measureTag.getElementsByTagName("note");
-						for (int k = 0; k < listOfNotes.getLength(); k++) {
-							Element noteTag = (Element) listOfNotes.item(k);
-							
-							// Check if there is a rest tag inside the note tag.
-							if (noteTag.getElementsByTagName("rest").getLength() == 0) {
-								// This note is NOT a rest, which means there is music here!
-								doesMusicHappenOnThisSystem = true;
-								break;
-							}
+					}
+				}
+				
+				// If we haven't found any non-rest measures on this system, we need to keep looking.
+				if (!doesMusicHappenOnThisSystem) {
+					List<Element> listOfNotes = NodeSymbols.elements(measureTag, MusicXMLSymbols.NOTE);
+					for (int k = 0; k < listOfNotes.size(); k++) {
+						CancellationToken.checkCurrent();
+						Element noteTag = listOfNotes.get(k);
+						
+						// Check if there is a rest tag inside the note tag.
+						if (NodeSymbols.first(noteTag, MusicXMLSymbols.REST) == null) {
+							// This note is NOT a rest, which means there is music here!
+							doesMusicHappenOnThisSystem = true;
+							break;
 						}
 					}
-					
 				}
+			
+			}
+			
+			// If there were no measures to look at (e.g. they were all reused from an incremental cleaning), there's nothing to resolve
+			if (startOfSystemMeasure == null) {
+				continue;
+			}
+			
+			// Finally, we need to resolve the last system of the part
+			if (doesMusicHappenOnThisSystem != isMusicSetToDisplayAlready) {
+				// This means we need to either start displaying music on the previous system...
+				// ... or we need to turn it off.
 				
-				// Finally, we need to resolve the last system of the part
-				if (doesMusicHappenOnThisSystem != isMusicSetToDisplayAlready) {
-					// This means we need to either start displaying music on the previous system...
-					// ... or we need to turn it off.
+				Element attributesTagOfTheFirstMeasureOfThePreviousSystem = NodeSymbols.first(startOfSystemMeasure, MusicXMLSymbols.ATTRIBUTES);
+				if (attributesTagOfTheFirstMeasureOfThePreviousSystem == null) {
+					// We need to create the attributes tag.
+					Element attributesTag = document.createElement("attributes");
 					
-					NodeList attributesTagOfTheFirstMeasureOfThePreviousSystem = startOfSystemMeasure.getElementsByTagName("attributes");
-					if (attributesTagOfTheFirstMeasureOfThePreviousSystem.getLength() == 0) {
-						// We need to create the attributes tag.
-						Element attributesTag = document.createElement("attributes");
-						
+					Element staffDetailsTag = document.createElement("staff-details");
+					staffDetailsTag.setAttribute("print-object", doesMusicHappenOnThisSystem ? "yes" : "no"); // Set the staff to not display
+					attributesTag.appendChild(staffDetailsTag);
+					
+					Element firstNoteTag = NodeSymbols.first(startOfSystemMeasure, MusicXMLSymbols.NOTE);
+					if (firstNoteTag == null) {
+						// Just put it at the end (Finale will probably do weird stuff, but the fact is, this probably shouldn't happen) 
+						startOfSystemMeasure.appendChild(attributesTag);
+					}
+					else {
+						// Put right before the <notes> tag
+						startOfSystemMeasure.insertBefore(attributesTag, firstNoteTag);
+					}
+					ChangeValidator.inserted(attributesTag);
+				
+				}
+				else {
+					// The attributes tag already exists
+					Element attributesTag = attributesTagOfTheFirstMeasureOfThePreviousSystem;
+					
+					Element existingStaffDetailsTag = NodeSymbols.first(attributesTag, MusicXMLSymbols.STAFF_DETAILS);
+					if (existingStaffDetailsTag == null) {
+						// We need to create the staff-details tag
 						Element staffDetailsTag = document.createElement("staff-details");
 						staffDetailsTag.setAttribute("print-object", doesMusicHappenOnThisSystem ? "yes" : "no"); // Set the staff to not display
-						attributesTag.appendChild(staffDetailsTag);
-						
-						NodeList notesTags = startOfSystemMeasure.getElementsByTagName("note");
-						if (notesTags.getLength() == 0) {
-							// Just put it at the end (Finale will probably do weird stuff, but the fact is, this probably shouldn't happen) 
-							startOfSystemMeasure.appendChild(attributesTag);
-						}
-						else {
-							// Put right before the <notes> tag
-							startOfSystemMeasure.insertBefore(attributesTag, (Element) notesTags.item(0));
-						}
 						
-					}
-					else {
-						// The attributes tag already exists
-						Element attributesTag = (Element) attributesTagOfTheFirstMeasureOfThePreviousSystem.item(0);
+						// Since where we place this matters, we will find the first tag that's supposed to come after it, and put it before it.
+						int[] tagsThatComeAfterStaffDetailsTag = {MusicXMLSymbols.TRANSPOSE, MusicXMLSymbols.FOR_PART, MusicXMLSymbols.DIRECTIVE, MusicXMLSymbols.MEASURE_STYLE};
+						Element candidateTag = null;
 						
-						NodeList staffDetailsTags = attributesTag.getElementsByTagName("staff-details");
-						if (staffDetailsTags.getLength() == 0) {
-							// We need to create the staff-details tag
-							Element staffDetailsTag = document.createElement("staff-details");
-							staffDetailsTag.setAttribute("print-object", doesMusicHappenOnThisSystem ? "yes" : "no"); // Set the staff to not display
-							
-							// Since where we place this matters, we will find the first tag that's supposed to come after it, and put it before it.
-							String[] tagNamesThatComeAfterStaffDetailsTag = new String[] {"transpose", "for-part", "directive", "measure-style"};
-							Element candidateTag = null;
-							
-							// Go through the tags in order
-							for (String tagNameToPlaceBefore : tagNamesThatComeAfterStaffDetailsTag) {
-								NodeList candidateTags = attributesTag.getElementsByTagName(tagNameToPlaceBefore);
-								if (candidateTags.getLength() != 0) {
-									// Got a match! Use this candidate!
-									candidateTag = (Element) candidateTags.item(0);
-									break; // We were just looking for the first one we came across.
-								}
+						// Go through the tags in order
+						for (int tagToPlaceBefore : tagsThatComeAfterStaffDetailsTag) {
+							candidateTag = NodeSymbols.first(attributesTag, tagToPlaceBefore);
+							if (candidateTag != null) {
+								// Got a match! Use this candidate!
+								break; // We were just looking for the first one we came across.
 							}
-							
-							// Insert before its closest successor
-							attributesTag.insertBefore(staffDetailsTag, candidateTag);
-						}
-						else {
-							// The staff-details tag already exists
-							Element staffDetailsTag = (Element) staffDetailsTags.item(0);
-							staffDetailsTag.setAttribute("print-object", doesMusicHappenOnThisSystem ? "yes" : "no"); // Set the staff to not display
 						}
 						
+						// Insert before its closest successor
+						attributesTag.insertBefore(staffDetailsTag, candidateTag);
+						ChangeValidator.inserted(staffDetailsTag);
+					}
+					else {
+						// The staff-details tag already exists
+						Element staffDetailsTag = existingStaffDetailsTag;
+						staffDetailsTag.setAttribute("print-object", doesMusicHappenOnThisSystem ? "yes" : "no"); // Set the staff to not display
+						ChangeValidator.changed(staffDetailsTag);
 					}
+				
 				}
 			}
 		}
@@ -1864,14 +2724,109 @@ public final class MusicXMLCleaner {
 	 * @throws TransformerException if there an issue creating or running the {@code Transformer}
 	 */
 	public static void writeToFile(File destinationFile) throws IOException, TransformerException {
-		if (validatedDoc == null) {
+		if (validatedScore == null) {
 			throw new IllegalArgumentException("there was no document to save"); // You are trying to save nothing? Why?! :(
 		}
+		writeToFile(validatedScore, destinationFile);
+		
+		// Now that the file has been saved, invalidate the document so the next run cannot use the old document.
+		validatedScore = null;
+	}
+	
+	/**
+	 * Saves a cleaned score to the provided file.
+	 * This will override the contents of the provided file.
+	 * @param score the score to save
+	 * @param destinationFile the file to save to
+	 * @throws IllegalArgumentException if the score or the destination file is null.
+	 * @throws IOException if there is an issue opening the {@code FileOutputStream}
+	 * @throws TransformerException if there an issue creating or running the {@code Transformer}
+	 */
+	public static void writeToFile(CleanedScore score, File destinationFile) throws IOException, TransformerException {
+		if (score == null) {
+			throw new IllegalArgumentException("there was no document to save"); // Still nothing. :(
+		}
 		else if (destinationFile == null) {
 			throw new IllegalArgumentException("file provided was null"); // You are trying to save to nothing? Why?! :(
 		}
 		System.out.println("Writing to file " + destinationFile + "...");
 		
+		// We may be about to overwrite the bytes we're reading from
+		DocumentSource.detachIfOverwriting(score.document, destinationFile);
+		
+		long allocationMark = AllocationStats.threadAllocatedBytes();
+		CleanerEvents.Span write = CleanerEvents.beginWrite();
+		boolean parallel = score.parallelWriting && !SourceTracker.isTracking(score.document);
+		long[] measureOffsets;
+		try (FileOutputStream out = new FileOutputStream(destinationFile)) {
+			if (parallel) {
+				measureOffsets = ParallelMusicXMLWriter.write(score.document, out.getChannel(), score.manifest == null ? null : "measure");
+			}
+			else {
+				measureOffsets = write(score, out);
+			}
+		}
+		CleanerEvents.endWrite(write, destinationFile.getPath(), destinationFile.length(), parallel);
+		score.allocations.record("write", allocationMark);
+		
+		if (score.manifest != null && measureOffsets != null) {
+			// Remember what every measure became, for next time
+			File manifestFile = MeasureManifest.getManifestFile(destinationFile);
+			score.manifest.save(manifestFile, destinationFile, measureOffsets);
+			System.out.println("Saved the manifest to " + manifestFile.getName());
+		}
+		
+		// Fin!
+		System.out.println("Write successful!");
+	}
+	
+	/**
+	 * Saves a cleaned score to the provided stream. The stream is flushed, but not closed.
+	 * @param score the score to save
+	 * @param out the stream to save to
+	 * @throws IllegalArgumentException if the score or the stream is null.
+	 * @throws IOException if there is an issue writing to the stream
+	 * @throws TransformerException if there an issue creating or running the {@code Transformer}
+	 */
+	public static void writeToStream(CleanedScore score, OutputStream out) throws IOException, TransformerException {
+		if (score == null) {
+			throw new IllegalArgumentException("there was no document to save"); // Nope. Still nothing. :(
+		}
+		else if (out == null) {
+			throw new IllegalArgumentException("stream provided was null");
+		}
+		long allocationMark = AllocationStats.threadAllocatedBytes();
+		write(score, out);
+		score.allocations.record("write", allocationMark);
+	}
+	
+	/**
+	 * Writes a cleaned score to a stream.
+	 * Documents that were parsed lazily, are preserving their formatting, or are being cleaned incrementally need raw bytes (or a record of where everything was written)
+	 * that the {@code Transformer} doesn't know about, so they are written with the {@link MusicXMLWriter} (or {@link PatchWriter}) instead.
+	 * @param score the score to write
+	 * @param out the stream to write to, which is flushed but not closed
+	 * @return the start and end of every measure written, packed as pairs, or {@code null} if they weren't recorded
+	 * @throws IOException if there is an issue writing to the stream
+	 * @throws TransformerException if there an issue creating or running the {@code Transformer}
+	 */
+	private static long[] write(CleanedScore score, OutputStream out) throws IOException, TransformerException {
+		Document document = score.document;
+		
+		if (SourceTracker.isTracking(document)) {
+			System.out.println("Preserving formatting; rewriting " + SourceTracker.get(document).getChangedCount() + " changed element(s).");
+			PatchWriter.write(document, out);
+			out.flush();
+			return null;
+		}
+		else if (LazySlices.isLazy(document) || score.manifest != null) {
+			MusicXMLWriter writer = new MusicXMLWriter(out);
+			writer.recordOffsets("measure");
+			writer.writeDocument(document);
+			writer.flush();
+			return writer.getRecordedOffsets();
+		}
+		
 		// Create a new factory and transformer
 		TransformerFactory factory = TransformerFactory.newInstance();
 		Transformer transformer = factory.newTransformer();
@@ -1881,28 +2836,21 @@ public final class MusicXMLCleaner {
 		transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
 		// Set UTF-8 Encoded
 		transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-		// Add the <!doctype>
-		transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, "-//Recordare//DTD MusicXML 3.1 Partwise//EN");
-		transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, "http://www.musicxml.org/dtds/partwise.dtd");
+		// Add the <!doctype>, for whichever version the score is
+		transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, MusicXMLWriter.getDoctypePublicId(MusicXMLConverter.getVersion(document)));
+		transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, MusicXMLWriter.DOCTYPE_SYSTEM);
 		// Remove "standalone" attribute from <xml> tag
-		validatedDoc.setXmlStandalone(true); 
+		document.setXmlStandalone(true); 
 		
-		// Export the data and open a file stream
-		DOMSource source = new DOMSource(validatedDoc);
-		OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(destinationFile), StandardCharsets.UTF_8);
+		// Export the data
+		DOMSource source = new DOMSource(document);
+		OutputStreamWriter writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
 		StreamResult result = new StreamResult(writer);
 		
-		// Write to the file
+		// Write to the stream
 		transformer.transform(source, result);
-		
-		// Close the file
-		writer.close();
-		
-		// Now that the file has been saved, invalidate the document so the next run cannot use the old document.
-		validatedDoc = null;
-		
-		// Fin!
-		System.out.println("Write successful!");
+		writer.flush();
+		return null;
 	}
-	
+
 }
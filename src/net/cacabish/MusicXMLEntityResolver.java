@@ -0,0 +1,137 @@
+package net.cacabish;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * An entity resolver that redirects the MusicXML DTDs and entity sets to the copies bundled with this program instead of fetching them online.
+ * The bundled files are only read once; after that, every resolver hands out the same bytes from memory. Only the bytes are kept: the parser still
+ * compiles the DTD into a grammar on every parse, since the JDK has no public way to share a compiled DTD between parsers.
+ * <br><br>
+ * Both the MusicXML 3.1 and 4.0 DTDs are bundled. Unless it's told which to use, a resolver picks one from the version in the public ID of the first thing it
+ * resolves, which is the DTD named in the score's DOCTYPE: scores that say they're 3.1 or older are validated against 3.1, and everything else against 4.0
+ * (which also accepts older scores). Use a new resolver for every parse, since it remembers what it picked.
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public class MusicXMLEntityResolver implements EntityResolver {
+	
+	/**
+	 * The bytes of every bundled file that has been resolved so far, keyed by resource path. Shared by every resolver.
+	 */
+	private static final ConcurrentHashMap<String, byte[]> RESOLVED = new ConcurrentHashMap<>();
+	
+	/**
+	 * Finds the version in a public ID, such as the 3.1 in {@code -//Recordare//DTD MusicXML 3.1 Partwise//EN}.
+	 */
+	private static final Pattern VERSION_PATTERN = Pattern.compile("MusicXML (\\d+)\\.(\\d+)");
+	
+	/**
+	 * The resource directory that the files are loaded from, or {@code null} if it hasn't been picked yet.
+	 */
+	private String schemaDirectory;
+	
+	/**
+	 * The version of MusicXML the DOCTYPE said the score is, or {@code null} if it didn't say (or nothing has been resolved yet).
+	 */
+	private String declaredVersion = null;
+	
+	/**
+	 * Constructs a resolver that picks the schema directory from the score's DOCTYPE.
+	 */
+	public MusicXMLEntityResolver() {
+		this.schemaDirectory = null;
+	}
+	
+	/**
+	 * Constructs a resolver that loads from the provided resource directory.
+	 * @param schemaDirectory the resource directory, ending with a slash
+	 */
+	public MusicXMLEntityResolver(String schemaDirectory) {
+		this.schemaDirectory = schemaDirectory;
+	}
+	
+	/**
+	 * @return the version of MusicXML the score's DOCTYPE said it is, such as {@code 3.1}, or {@code null} if it didn't say
+	 */
+	public String getDeclaredVersion() {
+		return declaredVersion;
+	}
+	
+	/**
+	 * Picks the bundled schema directory to validate a version of MusicXML with.
+	 * @param version the version, such as {@code 3.0}, or {@code null} if it isn't known
+	 * @return the resource directory, ending with a slash
+	 */
+	public static String getSchemaDirectory(String version) {
+		if (version != null) {
+			Matcher matcher = VERSION_PATTERN.matcher("MusicXML " + version);
+			if (matcher.matches() && (Integer.parseInt(matcher.group(1)) < 4)) {
+				return "/musicxml-3.1/schema/"; // Covers all of 3.x and older
+			}
+		}
+		return "/musicxml-4.0/schema/";
+	}
+	
+	@Override
+	public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+		if (schemaDirectory == null) {
+			// This is the DOCTYPE's DTD, so it decides which grammar the whole score is validated against
+			Matcher matcher = VERSION_PATTERN.matcher(publicId == null ? "" : publicId);
+			if (matcher.find()) {
+				declaredVersion = matcher.group(1) + "." + matcher.group(2);
+			}
+			schemaDirectory = getSchemaDirectory(declaredVersion);
+		}
+		
+		// Get the files from the local directory (or memory, if we've seen them before)
+		String resource = schemaDirectory + systemId.substring(systemId.lastIndexOf("/") + 1);
+		byte[] bytes = RESOLVED.get(resource);
+		if (bytes == null) {
+			bytes = readResource(resource);
+			if (bytes == null) {
+				// Things went wrong
+				throw new SAXException("Unrecognized System ID: " + systemId + ". This probably means this isn't a MusicXML file.");
+			}
+			RESOLVED.putIfAbsent(resource, bytes);
+		}
+		
+		// Return pointer to the file
+		InputSource source = new InputSource(new ByteArrayInputStream(bytes));
+		source.setPublicId(publicId);
+		source.setSystemId(systemId);
+		return source;
+	}
+	
+	/**
+	 * Reads a bundled file into memory.
+	 * @param resource the resource path of the file
+	 * @return the bytes of the file, or {@code null} if there is no such file
+	 * @throws IOException if there is an issue reading the file
+	 */
+	private byte[] readResource(String resource) throws IOException {
+		try (InputStream in = getClass().getResourceAsStream(resource)) {
+			if (in == null) {
+				return null;
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+	}
+
+}
@@ -0,0 +1,315 @@
+package net.cacabish;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+
+/**
+ * A profile of limits on what a score may contain, so that a crafted file can't make the cleaner use unbounded time or memory.
+ * <br><br>
+ * The limits are:
+ * <ul>
+ * <li>{@code maxFileSize}: the most bytes a file may have</li>
+ * <li>{@code maxEntityExpansions}: the most entity references the parser will expand, including the ones in the DTD itself
+ * (the MusicXML DTD takes about 700), which stops "billion laughs" files</li>
+ * <li>{@code maxDepth}: the most elements that may be nested inside one another</li>
+ * <li>{@code maxAttributes}: the most attributes one element may have</li>
+ * <li>{@code maxTextLength}: the most characters one piece of text may have</li>
+ * <li>{@code maxCredits}: the most {@code <credit>} elements a score may have</li>
+ * </ul>
+ * The parser enforces the entity, depth, and attribute limits itself with secure processing turned on. The rest are checked by the cleaner, either
+ * as the file is streamed in or right after it has been parsed, before any cleaning starts. A score that goes over a limit is rejected with a {@link LimitExceededException}.
+ * <br><br>
+ * {@link #DEFAULT} is generous enough for any score a person would actually write. {@link #UNTRUSTED} is for files from strangers, such as uploads to the HTTP service.
+ * Profiles can't be changed; {@link #with(String, long)} makes a changed copy, and {@link #strictest(ParsingLimits)} combines two.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class ParsingLimits {
+	
+	/**
+	 * The names of the limits, in the order they're stored.
+	 */
+	private static final String[] NAMES = {"maxFileSize", "maxEntityExpansions", "maxDepth", "maxAttributes", "maxTextLength", "maxCredits"};
+	
+	/**
+	 * The names the JDK's parser knows its limits by.
+	 */
+	private static final String ENTITY_EXPANSION_LIMIT = "http://www.oracle.com/xml/jaxp/properties/entityExpansionLimit",
+			MAX_ELEMENT_DEPTH = "http://www.oracle.com/xml/jaxp/properties/maxElementDepth",
+			ELEMENT_ATTRIBUTE_LIMIT = "http://www.oracle.com/xml/jaxp/properties/elementAttributeLimit";
+	
+	/**
+	 * The limits for files from people we trust.
+	 */
+	public static final ParsingLimits DEFAULT = new ParsingLimits("default", new long[] {Integer.MAX_VALUE, 64_000, 256, 10_000, 16 << 20, 10_000});
+	
+	/**
+	 * The limits for files from anyone at all.
+	 */
+	public static final ParsingLimits UNTRUSTED = new ParsingLimits("untrusted", new long[] {32 << 20, 2_000, 64, 64, 64 << 10, 1_000});
+	
+	/**
+	 * The name of the profile.
+	 */
+	private final String name;
+	
+	/**
+	 * The limits, in the same order as {@link #NAMES}.
+	 */
+	private final long[] limits;
+	
+	/**
+	 * Constructs a profile.
+	 * @param name the name of the profile
+	 * @param limits the limits, in the same order as {@link #NAMES}
+	 */
+	private ParsingLimits(String name, long[] limits) {
+		this.name = name;
+		this.limits = limits;
+	}
+	
+	/**
+	 * Looks up a profile by name.
+	 * @param name either {@code default} or {@code untrusted}
+	 * @return the profile
+	 * @throws IllegalArgumentException if there is no such profile
+	 */
+	public static ParsingLimits forName(String name) {
+		switch (name.trim().toLowerCase(Locale.ROOT)) {
+		case "default":
+			return DEFAULT;
+		case "untrusted":
+			return UNTRUSTED;
+		default:
+			throw new IllegalArgumentException("unknown limits profile: " + name);
+		}
+	}
+	
+	/**
+	 * Makes a copy of this profile with one limit changed.
+	 * @param limit the name of the limit, such as {@code maxDepth}
+	 * @param value the new limit, which must be positive
+	 * @return the new profile
+	 * @throws IllegalArgumentException if there is no such limit or the value isn't positive
+	 */
+	public ParsingLimits with(String limit, long value) {
+		int index = Arrays.asList(NAMES).indexOf(limit);
+		if (index == -1)
+			throw new IllegalArgumentException("unknown limit: " + limit);
+		if (value < 1 || (index != 0 && value > Integer.MAX_VALUE))
+			throw new IllegalArgumentException("limit " + limit + " is out of range: " + value);
+		
+		long[] changed = limits.clone();
+		changed[index] = value;
+		return new ParsingLimits(name.endsWith("*") ? name : name + "*", changed);
+	}
+	
+	/**
+	 * Combines this profile with another, taking the lower of each limit, so that a file within the result is within both.
+	 * @param other the other profile
+	 * @return the combined profile, which is this one if the two have the same limits
+	 */
+	public ParsingLimits strictest(ParsingLimits other) {
+		if (other == null)
+			throw new IllegalArgumentException("limits provided were null");
+		if (equals(other)) {
+			return this;
+		}
+		
+		long[] combined = new long[limits.length];
+		for (int i = 0; i < limits.length; i++) {
+			combined[i] = Math.min(limits[i], other.limits[i]);
+		}
+		return new ParsingLimits(name + "+" + other.name, combined);
+	}
+	
+	/**
+	 * @return the most bytes a file may have
+	 */
+	public long getMaxFileSize() {
+		return limits[0];
+	}
+	
+	/**
+	 * @return the most entity references the parser will expand
+	 */
+	public int getMaxEntityExpansions() {
+		return (int) limits[1];
+	}
+	
+	/**
+	 * @return the most elements that may be nested inside one another
+	 */
+	public int getMaxDepth() {
+		return (int) limits[2];
+	}
+	
+	/**
+	 * @return the most attributes one element may have
+	 */
+	public int getMaxAttributes() {
+		return (int) limits[3];
+	}
+	
+	/**
+	 * @return the most characters one piece of text may have
+	 */
+	public int getMaxTextLength() {
+		return (int) limits[4];
+	}
+	
+	/**
+	 * @return the most {@code <credit>} elements a score may have
+	 */
+	public int getMaxCredits() {
+		return (int) limits[5];
+	}
+	
+	/**
+	 * Turns on secure processing and the parser's own limits.
+	 * @param factory a factory for building documents
+	 * @throws IllegalStateException if the parser doesn't support secure processing
+	 */
+	public void configure(DocumentBuilderFactory factory) {
+		try {
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException("the XML parser doesn't support secure processing", e);
+		}
+		factory.setAttribute(ENTITY_EXPANSION_LIMIT, getMaxEntityExpansions());
+		factory.setAttribute(MAX_ELEMENT_DEPTH, getMaxDepth());
+		factory.setAttribute(ELEMENT_ATTRIBUTE_LIMIT, getMaxAttributes());
+	}
+	
+	/**
+	 * Turns on secure processing and the parser's own limits.
+	 * @param reader a streaming reader
+	 * @throws SAXNotRecognizedException if the reader doesn't know about a limit
+	 * @throws SAXNotSupportedException if the reader can't enforce a limit
+	 */
+	public void configure(XMLReader reader) throws SAXNotRecognizedException, SAXNotSupportedException {
+		reader.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		reader.setProperty(ENTITY_EXPANSION_LIMIT, getMaxEntityExpansions());
+		reader.setProperty(MAX_ELEMENT_DEPTH, getMaxDepth());
+		reader.setProperty(ELEMENT_ATTRIBUTE_LIMIT, getMaxAttributes());
+	}
+	
+	/**
+	 * Rejects a file that's too big.
+	 * @param size the size of the file, in bytes
+	 * @throws LimitExceededException if the file is too big
+	 */
+	public void checkFileSize(long size) throws LimitExceededException {
+		if (size > getMaxFileSize()) {
+			throw new LimitExceededException("maxFileSize", "the file is " + size + " bytes, but may be at most " + getMaxFileSize() + " bytes");
+		}
+	}
+	
+	/**
+	 * Rejects a piece of text that's too long.
+	 * @param length the number of characters in the text
+	 * @throws LimitExceededException if the text is too long
+	 */
+	public void checkTextLength(long length) throws LimitExceededException {
+		if (length > getMaxTextLength()) {
+			throw new LimitExceededException("maxTextLength", "a piece of text is longer than " + getMaxTextLength() + " characters");
+		}
+	}
+	
+	/**
+	 * Rejects a score with too many credits.
+	 * @param credits the number of credits
+	 * @throws LimitExceededException if there are too many
+	 */
+	public void checkCredits(int credits) throws LimitExceededException {
+		if (credits > getMaxCredits()) {
+			throw new LimitExceededException("maxCredits", "the score has more than " + getMaxCredits() + " credits");
+		}
+	}
+	
+	/**
+	 * Checks a freshly parsed document against the limits the parser doesn't enforce itself.
+	 * @param document the document
+	 * @throws LimitExceededException if the document goes over a limit
+	 */
+	public void check(Document document) throws LimitExceededException {
+		checkCredits(document.getElementsByTagName("credit").getLength());
+		
+		// Walk the tree once without recursion, looking at every piece of text
+		Node node = document.getDocumentElement();
+		while (node != null) {
+			if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+				checkTextLength(node.getNodeValue().length());
+			}
+			
+			if (node.getFirstChild() != null) {
+				node = node.getFirstChild();
+				continue;
+			}
+			while (node != null && node.getNextSibling() == null) {
+				node = node.getParentNode();
+				if (node == document) {
+					node = null;
+				}
+			}
+			if (node != null) {
+				node = node.getNextSibling();
+			}
+		}
+	}
+	
+	/**
+	 * Turns one of the parser's own limit errors into a {@link LimitExceededException}. Any other exception is returned as is.
+	 * @param e an exception from the parser
+	 * @return the exception to throw
+	 */
+	public static SAXException translate(SAXException e) {
+		String message = e.getMessage();
+		if (e instanceof LimitExceededException || message == null || !message.contains("JAXP000")) {
+			return e;
+		}
+		// The JDK's limit errors all start with a JAXP code, such as "JAXP00010001: The parser has encountered more than..."
+		String limit = message.contains("entity expansions") ? "maxEntityExpansions"
+				: message.contains("maxElementDepth") || message.contains("depth") ? "maxDepth"
+				: message.contains("attributes") ? "maxAttributes"
+				: "parser";
+		LimitExceededException translated = new LimitExceededException(limit, message);
+		translated.initCause(e);
+		return translated;
+	}
+	
+	/**
+	 * @return the name of the profile and every limit
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(name);
+		for (int i = 0; i < NAMES.length; i++) {
+			builder.append(i == 0 ? " (" : ", ").append(NAMES[i]).append('=').append(limits[i]);
+		}
+		return builder.append(')').toString();
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof ParsingLimits && Arrays.equals(limits, ((ParsingLimits) other).limits);
+	}
+	
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(limits);
+	}
+}
@@ -0,0 +1,252 @@
+package net.cacabish.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+import net.cacabish.CleaningOptions;
+import net.cacabish.xml.LazyDocumentBuilder;
+
+/**
+ * Keeps a batch from running out of memory by only starting a file once there's room for it in a memory budget.
+ * <br><br>
+ * Before a file is read, its cost is estimated from its size and a sniff of its first few bytes. A fully parsed score costs roughly
+ * {@value #DOM_BYTES_PER_BYTE} times its size in memory (plus the file's own bytes, which are held while it's cleaned), while a lazily parsed score
+ * costs roughly {@value #LAZY_BYTES_PER_BYTE} times its size. A file that's too big to share the budget fairly with the other cleaning threads is
+ * switched to lazy parsing if it can be, and a file that's too big for the whole budget is run alone. Files are let in strictly in the order they ask,
+ * so a big file waiting for room can't be starved by small files slipping past it.
+ * <br><br>
+ * A file cleaned with several profiles holds a fully parsed score for every profile (each cleans its own copy), so it costs that many times as much,
+ * and it's never switched to lazy parsing, since every profile needs the whole score.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class AdmissionController {
+	
+	/**
+	 * The rough memory cost of a fully parsed and cleaned score, per byte of the file.
+	 */
+	public static final int DOM_BYTES_PER_BYTE = 12;
+	
+	/**
+	 * The rough memory cost of a lazily parsed and cleaned score, per byte of the file.
+	 */
+	public static final int LAZY_BYTES_PER_BYTE = 6;
+	
+	/**
+	 * The number of bytes at the start of each file that are sniffed.
+	 */
+	private static final int SNIFF_LENGTH = 1024;
+	
+	/**
+	 * The estimated cost of one file, and how it should be cleaned.
+	 */
+	public static final class Admission {
+		/**
+		 * The estimated cost, in bytes, capped at the budget.
+		 */
+		final long cost;
+		/**
+		 * Whether the file should be parsed lazily, even if the options don't say so.
+		 */
+		final boolean lazy;
+		/**
+		 * Whether the file is too big to run alongside anything else.
+		 */
+		final boolean alone;
+		
+		Admission(long cost, boolean lazy, boolean alone) {
+			this.cost = cost;
+			this.lazy = lazy;
+			this.alone = alone;
+		}
+		
+		/**
+		 * @return the estimated cost, in bytes
+		 */
+		public long getCost() {
+			return cost;
+		}
+		
+		/**
+		 * @return true if the file has been switched to lazy parsing
+		 */
+		public boolean isLazy() {
+			return lazy;
+		}
+		
+		/**
+		 * @return true if the file is run alone
+		 */
+		public boolean isAlone() {
+			return alone;
+		}
+	}
+	
+	/**
+	 * The memory budget, in bytes.
+	 */
+	private final long budget;
+	
+	/**
+	 * The number of files that are expected to be cleaned at the same time. Each gets a fair share of the budget.
+	 */
+	private final int concurrency;
+	
+	/**
+	 * The files waiting for room, in the order they asked.
+	 */
+	private final ArrayDeque<Admission> waiting = new ArrayDeque<>();
+	
+	/**
+	 * The memory reserved by files that have been let in, and the most that has ever been reserved at once.
+	 */
+	private long reserved = 0, peakReserved = 0;
+	
+	/**
+	 * Counters for the summary.
+	 */
+	private long admitted = 0, switchedToLazy = 0, ranAlone = 0, waitedNanos = 0;
+	
+	/**
+	 * Constructs a controller.
+	 * @param budget the memory budget, in bytes
+	 * @param concurrency the number of files that are expected to be cleaned at the same time
+	 */
+	public AdmissionController(long budget, int concurrency) {
+		if (budget < 1)
+			throw new IllegalArgumentException("budget must be positive");
+		if (concurrency < 1)
+			throw new IllegalArgumentException("concurrency must be positive");
+		this.budget = budget;
+		this.concurrency = concurrency;
+	}
+	
+	/**
+	 * Returns the default budget: three quarters of the most memory the JVM will use.
+	 * @return the default budget, in bytes
+	 */
+	public static long getDefaultBudget() {
+		return Runtime.getRuntime().maxMemory() / 4 * 3;
+	}
+	
+	/**
+	 * Estimates the cost of a file and decides how it should be cleaned. Doesn't reserve anything.
+	 * @param file the file
+	 * @param options the options the file will be cleaned with
+	 * @param profiles the number of profiles the file will be cleaned with, or 0 if it will only be cleaned with the options
+	 * @return the estimate
+	 * @throws IOException if the file can't be read
+	 */
+	public Admission plan(File file, CleaningOptions options, int profiles) throws IOException {
+		if (profiles < 0)
+			throw new IllegalArgumentException("number of profiles can't be negative");
+		
+		long size;
+		ByteBuffer header;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			size = channel.size();
+			header = ByteBuffer.allocate((int) Math.min(size, SNIFF_LENGTH));
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+				// Keep reading
+			}
+			header.flip();
+		}
+		
+		if (profiles > 0) {
+			// One parsed score for each profile, and never lazy
+			long cost = size + (estimate(size, false, isUTF16(header)) - size) * profiles;
+			boolean alone = cost >= budget;
+			return new Admission(alone ? budget : cost, false, alone);
+		}
+		
+		boolean lazySupported = LazyDocumentBuilder.isSupported(header);
+		boolean lazy = options.lazyParsing && lazySupported;
+		long cost = estimate(size, lazy, isUTF16(header));
+		if (!lazy && lazySupported && cost > budget / concurrency) {
+			// Too big to share fairly, so see if being lazy helps
+			lazy = true;
+			cost = estimate(size, true, false);
+		}
+		
+		boolean alone = cost >= budget;
+		return new Admission(alone ? budget : cost, lazy && !options.lazyParsing, alone);
+	}
+	
+	/**
+	 * Estimates the cost of cleaning a file.
+	 * @param size the size of the file, in bytes
+	 * @param lazy whether the file will be parsed lazily
+	 * @param utf16 whether the file is UTF-16 encoded, which takes half as many characters per byte
+	 * @return the estimated cost, in bytes
+	 */
+	static long estimate(long size, boolean lazy, boolean utf16) {
+		long characters = utf16 ? size / 2 : size;
+		return size + characters * (lazy ? LAZY_BYTES_PER_BYTE : DOM_BYTES_PER_BYTE);
+	}
+	
+	/**
+	 * @param header the first few bytes of a file
+	 * @return true if the file looks UTF-16 encoded
+	 */
+	private static boolean isUTF16(ByteBuffer header) {
+		if (header.remaining() < 2) {
+			return false;
+		}
+		int first = header.get(header.position()) & 0xFF;
+		int second = header.get(header.position() + 1) & 0xFF;
+		return (first == 0xFE && second == 0xFF) || (first == 0xFF && second == 0xFE) || first == 0 || second == 0;
+	}
+	
+	/**
+	 * Waits until there's room for a file in the budget, then reserves it. Files are let in in the order they ask.
+	 * @param admission the file's estimate
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public synchronized void acquire(Admission admission) throws InterruptedException {
+		long start = System.nanoTime();
+		waiting.addLast(admission);
+		try {
+			while (waiting.peekFirst() != admission || reserved + admission.cost > budget) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			waiting.remove(admission);
+			notifyAll(); // Whoever was behind us may be able to go now
+			throw e;
+		}
+		waiting.removeFirst();
+		reserved += admission.cost;
+		peakReserved = Math.max(peakReserved, reserved);
+		admitted++;
+		if (admission.lazy) {
+			switchedToLazy++;
+		}
+		if (admission.alone) {
+			ranAlone++;
+		}
+		waitedNanos += System.nanoTime() - start;
+		notifyAll(); // The next file in line may fit too
+	}
+	
+	/**
+	 * Gives back the memory reserved for a file.
+	 * @param admission the file's estimate
+	 */
+	public synchronized void release(Admission admission) {
+		reserved -= admission.cost;
+		notifyAll();
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return String.format(Locale.US, "memory: budget %d MB, peak reserved %d MB, %d file(s) admitted (%d switched to lazy parsing, %d run alone), waited %.2f s",
+				budget >> 20, peakReserved >> 20, admitted, switchedToLazy, ranAlone, waitedNanos / 1e9);
+	}
+}
@@ -0,0 +1,124 @@
+package net.cacabish.batch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import net.cacabish.AllocationStats;
+
+/**
+ * How many bytes each step of cleaning allocated across a whole batch, so that it's easy to see which steps are behind the garbage collection.
+ * <br><br>
+ * Each step is reported by the bytes it allocated per element of every score in the batch, which stays about the same from one batch to the next
+ * however big the scores are. Every step is divided by the same total, even a step that only ran on some of the scores, so the steps can be compared
+ * side by side. That makes it something a batch can be held to: a budget for a step (in bytes per element) that the step goes over shows up in {@link #checkBudgets(Map)}.
+ * <br><br>
+ * A file cleaned with several profiles is still one file: the bytes each profile allocated are added together, but its elements are only counted once.
+ * Every method is safe to call from multiple threads.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class AllocationSummary {
+	
+	/**
+	 * The bytes each step allocated, in the order the steps were first seen.
+	 */
+	private final Map<String, Long> steps = new LinkedHashMap<>();
+	
+	/**
+	 * The number of files added.
+	 */
+	private long files = 0;
+	
+	/**
+	 * The number of elements in every file added whose size is known.
+	 */
+	private long elements = 0;
+	
+	/**
+	 * Constructs an empty summary.
+	 */
+	AllocationSummary() {}
+	
+	/**
+	 * Adds what cleaning and saving one file allocated.
+	 * @param scores the stats of every score cleaned from the file: one, or one for each profile
+	 */
+	synchronized void add(List<AllocationStats> scores) {
+		files++;
+		long fileElements = 0;
+		for (AllocationStats stats : scores) {
+			fileElements = Math.max(fileElements, stats.getElementCount()); // Every profile cleans the same score
+			for (Map.Entry<String, Long> step : stats.getBytes().entrySet()) {
+				steps.merge(step.getKey(), step.getValue(), Long::sum);
+			}
+		}
+		elements += fileElements;
+	}
+	
+	/**
+	 * @param step the name of a step, such as {@code parse}, {@code formatOssias} or {@code write}
+	 * @return the total bytes the step allocated
+	 */
+	public synchronized long getBytes(String step) {
+		return steps.getOrDefault(step, 0L);
+	}
+	
+	/**
+	 * @return the number of elements in every file added whose size is known, which every step's bytes per element is divided by
+	 */
+	public synchronized long getElementCount() {
+		return elements;
+	}
+	
+	/**
+	 * @param step the name of a step
+	 * @return the bytes the step allocated per element of every file in the batch, or {@code NaN} if it never ran (or the files' sizes are unknown)
+	 */
+	public synchronized double getBytesPerElement(String step) {
+		Long bytes = steps.get(step);
+		return bytes == null || elements == 0 ? Double.NaN : (double) bytes / elements;
+	}
+	
+	/**
+	 * Checks every step against its budget.
+	 * @param budgets the most bytes per element each step may allocate, keyed by the name of the step. A step that never ran is within its budget.
+	 * @return a description of every step that went over its budget, or an empty list if none did
+	 */
+	public synchronized List<String> checkBudgets(Map<String, Double> budgets) {
+		List<String> over = new ArrayList<>();
+		for (Map.Entry<String, Double> budget : budgets.entrySet()) {
+			double actual = getBytesPerElement(budget.getKey());
+			if (actual > budget.getValue()) {
+				over.add(String.format(Locale.US, "%s allocated %.1f B/element, over its budget of %.1f B/element", budget.getKey(), actual, budget.getValue()));
+			}
+		}
+		return over;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		if (steps.isEmpty()) {
+			return "allocation: not measured" + (files == 0 ? "" : " (this Java can't count allocated bytes)");
+		}
+		
+		// Biggest first
+		List<Map.Entry<String, Long>> sorted = new ArrayList<>(steps.entrySet());
+		sorted.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+		long total = 0;
+		for (Map.Entry<String, Long> step : sorted) {
+			total += step.getValue();
+		}
+		
+		StringBuilder summary = new StringBuilder(String.format(Locale.US, "allocation: %.1f MB across %d file(s) of %d element(s) in all", total / 1048576.0, files, elements));
+		for (Map.Entry<String, Long> step : sorted) {
+			summary.append(String.format(Locale.US, "%n  %-32s %10.1f MB %5.1f%% %10.1f B/element", step.getKey(), step.getValue() / 1048576.0,
+					total == 0 ? 0 : 100.0 * step.getValue() / total, getBytesPerElement(step.getKey())));
+		}
+		return summary.toString();
+	}
+}
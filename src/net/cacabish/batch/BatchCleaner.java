@@ -0,0 +1,258 @@
+package net.cacabish.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import net.cacabish.CleaningOptions;
+
+/**
+ * Cleans many files from the command line with a {@link BatchPipeline}.
+ * <br><br>
+ * Usage: {@code BatchCleaner [--readers N] [--cleaners N] [--writers N] [--queue N] [--memory-budget MB] [--timeout SECONDS] [--journal FILE [--max-attempts N]] [--cost-model FILE] [--output-dir DIR] [--allocation-budget STEP=BYTES]... [--option name=value]... [--profile NAME [--option name=value]...]... FILE|DIR...}
+ * <br><br>
+ * Files are started longest first (see {@link JobScheduler}). If a cost model file is given, how long each file took is remembered there,
+ * so that the next run can predict more accurately.
+ * <br><br>
+ * With a timeout, each file gets that many seconds to be cleaned, and any file that takes longer is reported as timed out. See {@link Watchdog}.
+ * <br><br>
+ * With a journal, every finished file is recorded as it finishes, so if the batch is interrupted, running it again with the same journal skips the files
+ * that were already cleaned. A file that fails is tried again on the next run, up to the maximum number of attempts (3 by default).
+ * Once the batch is over, a manifest of every file is written next to the journal, with {@code .manifest} added to its name. See {@link BatchJournal}.
+ * <br><br>
+ * The memory budget defaults to three quarters of the JVM's maximum heap. See {@link AdmissionController}.
+ * <br><br>
+ * The summary includes how many bytes each step (the parse, each cleaning operation, the write, and so on) allocated per element of the scores.
+ * An allocation budget holds a step to at most that many bytes per element; if any step goes over its budget, the batch exits with 3. See {@link AllocationSummary}.
+ * <br><br>
+ * With profiles, each file is parsed once and then cleaned once for each profile, and each profile's file is written with the profile's name before
+ * the extension (see {@link BatchPipeline#getProfileOutput(File, String)}). A profile starts with the options given before the first {@code --profile},
+ * and the options given after it change just that profile. Profiles can't be used with a journal.
+ * <br><br>
+ * Directories are searched (including subdirectories) for {@code .musicxml} and {@code .xml} files. Files are cleaned in place,
+ * unless an output directory is given, in which case each file is written there under the same path relative to the directory it was found in.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class BatchCleaner {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private BatchCleaner() {}
+	
+	/**
+	 * Finds every MusicXML file in the provided files and directories.
+	 * @param paths the files and directories
+	 * @param outputDirectory the directory to write cleaned files to, or {@code null} to clean in place
+	 * @return a job for every file found
+	 * @throws IOException if a directory can't be searched
+	 */
+	public static List<BatchJob> findJobs(List<File> paths, File outputDirectory) throws IOException {
+		List<BatchJob> jobs = new ArrayList<>();
+		for (File path : paths) {
+			if (path.isDirectory()) {
+				Path root = path.toPath();
+				List<Path> files;
+				try (Stream<Path> walk = Files.walk(root)) {
+					files = walk.filter(Files::isRegularFile).filter(BatchCleaner::isMusicXMLFile).sorted().collect(Collectors.toList());
+				}
+				for (Path file : files) {
+					File output = outputDirectory == null ? file.toFile() : new File(outputDirectory, root.relativize(file).toString());
+					jobs.add(new BatchJob(file.toFile(), output));
+				}
+			}
+			else {
+				jobs.add(new BatchJob(path, outputDirectory == null ? path : new File(outputDirectory, path.getName())));
+			}
+		}
+		return jobs;
+	}
+	
+	/**
+	 * @param file a file
+	 * @return true if the file's name looks like an uncompressed MusicXML file
+	 */
+	static boolean isMusicXMLFile(Path file) {
+		String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+		return name.endsWith(".musicxml") || name.endsWith(".xml");
+	}
+	
+	/**
+	 * Cleans the files described by the command line arguments, then prints a summary.
+	 * Exits with 0 if every file was cleaned, 1 if any failed, or 3 if they were all cleaned but a step went over its allocation budget.
+	 * @param args the command line arguments
+	 * @throws Exception if the batch can't be run
+	 */
+	public static void main(String[] args) throws Exception {
+		CleaningOptions options = CleaningOptions.fromCurrentFlags();
+		int readers = 2, cleaners = Runtime.getRuntime().availableProcessors(), writers = 2, queue = 4;
+		long memoryBudget = AdmissionController.getDefaultBudget();
+		File outputDirectory = null;
+		File costModelFile = null;
+		double timeout = 0;
+		File journalFile = null;
+		int maxAttempts = 3;
+		Map<String, Double> allocationBudgets = new LinkedHashMap<>();
+		Map<String, CleaningOptions> profiles = new LinkedHashMap<>();
+		CleaningOptions currentOptions = options;
+		List<File> paths = new ArrayList<>();
+		
+		for (int i = 0; i < args.length; i++) {
+			boolean hasValue = i + 1 < args.length;
+			if (args[i].equals("--readers") && hasValue) {
+				readers = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--cleaners") && hasValue) {
+				cleaners = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--writers") && hasValue) {
+				writers = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--queue") && hasValue) {
+				queue = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--memory-budget") && hasValue) {
+				memoryBudget = Long.parseLong(args[++i]) << 20;
+			}
+			else if (args[i].equals("--timeout") && hasValue) {
+				timeout = Double.parseDouble(args[++i]);
+			}
+			else if (args[i].equals("--journal") && hasValue) {
+				journalFile = new File(args[++i]);
+			}
+			else if (args[i].equals("--max-attempts") && hasValue) {
+				maxAttempts = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--cost-model") && hasValue) {
+				costModelFile = new File(args[++i]);
+			}
+			else if (args[i].equals("--output-dir") && hasValue) {
+				outputDirectory = new File(args[++i]);
+			}
+			else if (args[i].equals("--allocation-budget") && hasValue) {
+				String budget = args[++i];
+				int equals = budget.indexOf('=');
+				if (equals < 0) {
+					usage();
+				}
+				allocationBudgets.put(budget.substring(0, equals), Double.parseDouble(budget.substring(equals + 1)));
+			}
+			else if (args[i].equals("--option") && hasValue) {
+				String option = args[++i];
+				int equals = option.indexOf('=');
+				if (equals < 0) {
+					usage();
+				}
+				currentOptions.set(option.substring(0, equals), option.substring(equals + 1));
+			}
+			else if (args[i].equals("--profile") && hasValue) {
+				String profile = args[++i];
+				if (profile.isEmpty() || profiles.containsKey(profile)) {
+					usage();
+				}
+				currentOptions = options.copy();
+				profiles.put(profile, currentOptions);
+			}
+			else if (!args[i].startsWith("--")) {
+				paths.add(new File(args[i]));
+			}
+			else {
+				usage();
+			}
+		}
+		if (paths.isEmpty()) {
+			usage();
+		}
+		if (journalFile != null && !profiles.isEmpty()) {
+			System.err.println("A journal can't be kept when cleaning with profiles, since each file has more than one output.");
+			System.exit(2);
+		}
+		
+		// Start the longest files first
+		CostModel costModel = costModelFile == null ? new CostModel() : CostModel.load(costModelFile);
+		List<BatchJob> jobs = JobScheduler.orderLongestFirst(findJobs(paths, outputDirectory), costModel);
+		long predictedCleaning = JobScheduler.predictCleanMakespan(jobs, cleaners + writers); // Idle writers clean too
+		BatchPipeline pipeline = new BatchPipeline(options);
+		pipeline.setParallelism(readers, cleaners, writers);
+		pipeline.setQueueCapacity(queue);
+		pipeline.setTimeout(Math.round(timeout * 1000), TimeUnit.MILLISECONDS);
+		AdmissionController admissionController = new AdmissionController(memoryBudget, cleaners);
+		pipeline.setAdmissionController(admissionController);
+		BatchJournal journal = journalFile == null ? null : new BatchJournal(journalFile);
+		pipeline.setJournal(journal, maxAttempts);
+		pipeline.setProfiles(profiles.isEmpty() ? null : profiles);
+		
+		long start = System.nanoTime();
+		try {
+			pipeline.run(jobs);
+		} finally {
+			if (journal != null) {
+				journal.close();
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		
+		// Summarize
+		int failed = 0, timedOut = 0, skipped = 0;
+		System.out.println("");
+		System.out.println("===== Batch Summary =====");
+		for (BatchJob job : jobs) {
+			if (job.getStatus() == BatchJob.Status.TIMED_OUT) {
+				failed++;
+				timedOut++;
+				System.out.println("TIMED OUT " + job.getInput() + ": " + job.getError());
+			}
+			else if (job.getStatus() == BatchJob.Status.SKIPPED) {
+				skipped++;
+			}
+			else if (job.getStatus() != BatchJob.Status.SUCCEEDED) {
+				failed++;
+				System.out.println("FAILED " + job.getInput() + ": " + job.getError());
+			}
+		}
+		System.out.println(String.format(Locale.US, "Cleaned %d of %d file(s) in %.2f s%s%s.", jobs.size() - failed - skipped, jobs.size(), elapsed / 1e9,
+				timedOut == 0 ? "" : " (" + timedOut + " timed out)", skipped == 0 ? "" : ", skipping " + skipped + " already cleaned by an earlier run"));
+		for (StageMetrics metrics : pipeline.getMetrics()) {
+			System.out.println(metrics);
+		}
+		System.out.println(admissionController);
+		System.out.println(pipeline.getAllocations());
+		List<String> overBudget = pipeline.getAllocations().checkBudgets(allocationBudgets);
+		for (String step : overBudget) {
+			System.out.println("OVER BUDGET " + step);
+		}
+		System.out.println(String.format(Locale.US, "cleaning: predicted to take %.2f s%s; the whole batch took %.2f s", predictedCleaning / 1e9,
+				costModel.isFitted() ? " (not counting reading and writing)" : " (from file sizes alone; use --cost-model to learn from past runs)", elapsed / 1e9));
+		
+		if (costModelFile != null) {
+			costModel.record(jobs);
+			costModel.save(costModelFile);
+		}
+		if (journal != null) {
+			File manifestFile = new File(journalFile.getPath() + ".manifest");
+			journal.writeManifest(manifestFile, jobs);
+			System.out.println("Wrote the manifest of this batch to " + manifestFile + ".");
+		}
+		System.exit(failed != 0 ? 1 : overBudget.isEmpty() ? 0 : 3);
+	}
+	
+	/**
+	 * Prints how to use the batch cleaner and exits.
+	 */
+	private static void usage() {
+		System.err.println("Usage: BatchCleaner [--readers N] [--cleaners N] [--writers N] [--queue N] [--memory-budget MB] [--timeout SECONDS] [--journal FILE [--max-attempts N]] [--cost-model FILE] [--output-dir DIR] [--allocation-budget STEP=BYTES]... [--option name=value]... [--profile NAME [--option name=value]...]... FILE|DIR...");
+		System.exit(2);
+	}
+}
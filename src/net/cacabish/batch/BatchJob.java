@@ -0,0 +1,175 @@
+package net.cacabish.batch;
+
+import java.io.File;
+
+/**
+ * A single file to be cleaned as part of a batch, and what became of it.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class BatchJob {
+	
+	/**
+	 * What has become of a job.
+	 */
+	public enum Status {
+		/** The job hasn't finished yet. */
+		PENDING,
+		/** The file was cleaned and written. */
+		SUCCEEDED,
+		/** Something went wrong. See {@link BatchJob#getError()}. */
+		FAILED,
+		/** The file took longer than its time budget, and was given up on. */
+		TIMED_OUT,
+		/** An earlier run already cleaned the file. See {@link BatchJournal}. */
+		SKIPPED
+	}
+	
+	/**
+	 * The file to clean.
+	 */
+	private final File input;
+	
+	/**
+	 * The file to write the cleaned score to.
+	 */
+	private final File output;
+	
+	/**
+	 * What has become of the job. Only written by the stage that currently holds the job.
+	 */
+	private volatile Status status = Status.PENDING;
+	
+	/**
+	 * What went wrong, if the job failed.
+	 */
+	private volatile String error = null;
+	
+	/**
+	 * The number of bytes read.
+	 */
+	volatile long size = -1;
+	
+	/**
+	 * How long each stage spent on this job, in nanoseconds.
+	 */
+	volatile long readNanos, cleanNanos, writeNanos;
+	
+	/**
+	 * The SHA-256 hashes of the input and output, if a journal is being kept, in lowercase hexadecimal.
+	 */
+	volatile String inputHash, outputHash;
+	
+	/**
+	 * How long the job is predicted to take to clean, in nanoseconds, or -1 if there's no prediction.
+	 */
+	volatile long predictedNanos = -1;
+	
+	/**
+	 * Constructs a job.
+	 * @param input the file to clean
+	 * @param output the file to write the cleaned score to, which may be the same as the input
+	 */
+	public BatchJob(File input, File output) {
+		if (input == null || output == null)
+			throw new IllegalArgumentException("file provided was null");
+		this.input = input;
+		this.output = output;
+	}
+	
+	/**
+	 * @return the file to clean
+	 */
+	public File getInput() {
+		return input;
+	}
+	
+	/**
+	 * @return the file to write the cleaned score to
+	 */
+	public File getOutput() {
+		return output;
+	}
+	
+	/**
+	 * @return what has become of the job
+	 */
+	public Status getStatus() {
+		return status;
+	}
+	
+	/**
+	 * @return what went wrong, or {@code null} if the job hasn't failed
+	 */
+	public String getError() {
+		return error;
+	}
+	
+	/**
+	 * @return the number of bytes read, or -1 if the file hasn't been read
+	 */
+	public long getSize() {
+		return size;
+	}
+	
+	/**
+	 * @return how long the job spent being read, cleaned, and written, in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return readNanos + cleanNanos + writeNanos;
+	}
+	
+	/**
+	 * @return how long the job spent being cleaned (parsing included), in nanoseconds
+	 */
+	public long getCleanNanos() {
+		return cleanNanos;
+	}
+	
+	/**
+	 * @return how long the job was predicted to take to clean, in nanoseconds, or -1 if there's no prediction
+	 */
+	public long getPredictedNanos() {
+		return predictedNanos;
+	}
+	
+	/**
+	 * Marks the job as done.
+	 */
+	void succeed() {
+		status = Status.SUCCEEDED;
+	}
+	
+	/**
+	 * Marks the job as already done by an earlier run.
+	 */
+	void skip() {
+		status = Status.SKIPPED;
+	}
+	
+	/**
+	 * Marks the job as failed.
+	 * @param cause what went wrong
+	 */
+	void fail(Throwable cause) {
+		String message = cause.getMessage();
+		error = message == null ? cause.toString() : message.replace('\n', ' ');
+		status = Status.FAILED;
+	}
+	
+	/**
+	 * Marks the job as having run out of time.
+	 * @param cause the cancellation
+	 */
+	void timeOut(Throwable cause) {
+		fail(cause);
+		status = Status.TIMED_OUT;
+	}
+	
+	@Override
+	public String toString() {
+		return input.getPath() + " -> " + output.getPath() + " [" + status + (error == null ? "" : ": " + error) + "]";
+	}
+}
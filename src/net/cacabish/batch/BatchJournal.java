@@ -0,0 +1,305 @@
+package net.cacabish.batch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only record of every file a batch has finished with, so that an interrupted batch can pick up where it left off.
+ * <br><br>
+ * A line is appended (and flushed) as soon as each file succeeds or fails, holding its status, the hash of the input it was cleaned from,
+ * the hash of the output it was written to, and both paths. When the batch is run again with the same journal, a file is skipped if it was cleaned
+ * successfully from the same input and its output hasn't changed since, and a file that keeps failing is only retried a limited number of times.
+ * Files that were still in flight when the batch was interrupted have no line, so they're simply cleaned again.
+ * <br><br>
+ * Each line is tab separated: status, failed attempts, input hash, output hash, input path, output path, and error. Tabs, line breaks, and backslashes
+ * in the paths and error are escaped with a backslash. A line that was only half written when the batch was interrupted is ignored, and ended when
+ * the journal is opened again so that the next line starts on its own.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class BatchJournal implements AutoCloseable {
+	
+	/**
+	 * The number of fields on each line.
+	 */
+	private static final int FIELDS = 7;
+	
+	/**
+	 * What the journal last said about one file.
+	 */
+	public static final class Entry {
+		/**
+		 * How the file ended up. Either {@link BatchJob.Status#SUCCEEDED}, {@link BatchJob.Status#FAILED}, or {@link BatchJob.Status#TIMED_OUT}.
+		 */
+		final BatchJob.Status status;
+		/**
+		 * The number of times in a row the file has failed with this input, or 0 if it succeeded.
+		 */
+		final int failedAttempts;
+		/**
+		 * The hash of the input, and of the output if it was written (otherwise {@code null}).
+		 */
+		final String inputHash, outputHash;
+		/**
+		 * The paths of the input and output.
+		 */
+		final String input, output;
+		/**
+		 * What went wrong, or {@code null} if it succeeded.
+		 */
+		final String error;
+		
+		Entry(BatchJob.Status status, int failedAttempts, String inputHash, String outputHash, String input, String output, String error) {
+			this.status = status;
+			this.failedAttempts = failedAttempts;
+			this.inputHash = inputHash;
+			this.outputHash = outputHash;
+			this.input = input;
+			this.output = output;
+			this.error = error;
+		}
+		
+		/**
+		 * @return how the file ended up
+		 */
+		public BatchJob.Status getStatus() {
+			return status;
+		}
+		
+		/**
+		 * @return the number of times in a row the file has failed with the same input
+		 */
+		public int getFailedAttempts() {
+			return failedAttempts;
+		}
+	}
+	
+	/**
+	 * The last entry for each file, keyed by the absolute path of its input.
+	 */
+	private final Map<String, Entry> latest = new HashMap<>();
+	
+	/**
+	 * Appends to the journal file.
+	 */
+	private final Writer writer;
+	
+	/**
+	 * Opens a journal, reading whatever an earlier run recorded in it. The file is created if it doesn't exist.
+	 * @param file the journal file
+	 * @throws IOException if the file can't be read or opened for appending
+	 */
+	public BatchJournal(File file) throws IOException {
+		if (file == null)
+			throw new IllegalArgumentException("file provided was null");
+		
+		boolean halfWritten = false;
+		if (file.isFile()) {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					Entry entry = parse(line);
+					if (entry != null) {
+						latest.put(entry.input, entry);
+					}
+				}
+			}
+			try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+				if (in.length() > 0) {
+					in.seek(in.length() - 1);
+					halfWritten = in.read() != '\n';
+				}
+			}
+		}
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+		if (halfWritten) {
+			writer.write('\n'); // End the half-written line, so that it doesn't swallow the next one
+			writer.flush();
+		}
+	}
+	
+	/**
+	 * @param input the input file of a job
+	 * @return the last entry for the file, or {@code null} if it isn't in the journal
+	 */
+	public synchronized Entry lookup(File input) {
+		return latest.get(input.getAbsolutePath());
+	}
+	
+	/**
+	 * Checks whether a job was already done by an earlier run: it succeeded from the same input, and its output hasn't been touched since.
+	 * If the file was cleaned in place, the input that's there now is the output, so it's done if it matches the output instead.
+	 * @param job the job
+	 * @param inputHash the hash of the job's input as it is now
+	 * @return true if the job can be skipped
+	 * @throws IOException if the output can't be read
+	 * @throws InterruptedException if the thread is interrupted while reading the output
+	 */
+	public boolean isDone(BatchJob job, String inputHash) throws IOException, InterruptedException {
+		Entry entry = lookup(job.getInput());
+		if (entry == null || entry.status != BatchJob.Status.SUCCEEDED || !entry.output.equals(job.getOutput().getAbsolutePath())) {
+			return false;
+		}
+		if (inputHash.equals(entry.outputHash)) {
+			return true; // Cleaned in place
+		}
+		return inputHash.equals(entry.inputHash) && job.getOutput().isFile() && entry.outputHash.equals(hash(BatchPipeline.read(job.getOutput())));
+	}
+	
+	/**
+	 * Returns how many times in a row a job has failed with the same input it has now.
+	 * @param job the job
+	 * @param inputHash the hash of the job's input as it is now
+	 * @return the number of failed attempts, or 0 if the input has changed since it last failed (or it never has)
+	 */
+	public int getFailedAttempts(BatchJob job, String inputHash) {
+		Entry entry = lookup(job.getInput());
+		if (entry == null || !inputHash.equals(entry.inputHash)) {
+			return 0;
+		}
+		return entry.failedAttempts;
+	}
+	
+	/**
+	 * Appends a line for a job that has just succeeded, failed, or timed out, and flushes it straight away.
+	 * @param job the job
+	 * @throws IOException if the line can't be written
+	 */
+	public synchronized void record(BatchJob job) throws IOException {
+		BatchJob.Status status = job.getStatus();
+		if (status == BatchJob.Status.PENDING || status == BatchJob.Status.SKIPPED) {
+			throw new IllegalArgumentException("only finished jobs can be recorded");
+		}
+		
+		int failedAttempts = 0;
+		if (status != BatchJob.Status.SUCCEEDED) {
+			failedAttempts = getFailedAttempts(job, job.inputHash == null ? "" : job.inputHash) + 1;
+		}
+		Entry entry = new Entry(status, failedAttempts, job.inputHash, job.outputHash,
+				job.getInput().getAbsolutePath(), job.getOutput().getAbsolutePath(), job.getError());
+		latest.put(entry.input, entry);
+		
+		writer.write(format(entry));
+		writer.write('\n');
+		writer.flush();
+	}
+	
+	/**
+	 * Writes a manifest of a batch: the journal's last word on every job, one line each, in the same format as the journal.
+	 * Jobs that aren't in the journal (because the batch was interrupted before they finished) are listed as pending.
+	 * @param file the manifest file, which is overwritten
+	 * @param jobs the jobs of the batch
+	 * @throws IOException if the manifest can't be written
+	 */
+	public synchronized void writeManifest(File file, List<BatchJob> jobs) throws IOException {
+		try (Writer manifest = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			for (BatchJob job : jobs) {
+				Entry entry = lookup(job.getInput());
+				if (entry == null) {
+					entry = new Entry(BatchJob.Status.PENDING, 0, null, null, job.getInput().getAbsolutePath(), job.getOutput().getAbsolutePath(), null);
+				}
+				manifest.write(format(entry));
+				manifest.write('\n');
+			}
+		}
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+	
+	/**
+	 * @param bytes the bytes of a file
+	 * @return the SHA-256 hash of the bytes, in lowercase hexadecimal
+	 */
+	static String hash(ByteBuffer bytes) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e); // Every JVM is required to have it
+		}
+		digest.update(bytes.duplicate());
+		
+		byte[] hash = digest.digest();
+		StringBuilder builder = new StringBuilder(hash.length * 2);
+		for (byte b : hash) {
+			builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * @param entry an entry
+	 * @return the entry as a line, without the line break
+	 */
+	private static String format(Entry entry) {
+		return entry.status + "\t" + entry.failedAttempts + "\t" + (entry.inputHash == null ? "-" : entry.inputHash) + "\t"
+				+ (entry.outputHash == null ? "-" : entry.outputHash) + "\t" + escape(entry.input) + "\t" + escape(entry.output) + "\t"
+				+ (entry.error == null ? "-" : escape(entry.error));
+	}
+	
+	/**
+	 * @param line a line of the journal
+	 * @return the entry, or {@code null} if the line is malformed
+	 */
+	private static Entry parse(String line) {
+		String[] fields = line.split("\t", -1);
+		if (fields.length != FIELDS) {
+			return null;
+		}
+		try {
+			BatchJob.Status status = BatchJob.Status.valueOf(fields[0]);
+			int failedAttempts = Integer.parseInt(fields[1]);
+			return new Entry(status, failedAttempts, fields[2].equals("-") ? null : fields[2], fields[3].equals("-") ? null : fields[3],
+					unescape(fields[4]), unescape(fields[5]), fields[6].equals("-") ? null : unescape(fields[6]));
+		} catch (IllegalArgumentException e) {
+			return null; // Includes a bad number
+		}
+	}
+	
+	/**
+	 * @param text some text
+	 * @return the text with backslashes, tabs, and line breaks escaped
+	 */
+	private static String escape(String text) {
+		return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+	
+	/**
+	 * @param text escaped text
+	 * @return the text as it was before it was escaped
+	 */
+	private static String unescape(String text) {
+		StringBuilder builder = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\\' && i + 1 < text.length()) {
+				char next = text.charAt(++i);
+				builder.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+			}
+			else {
+				builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+}
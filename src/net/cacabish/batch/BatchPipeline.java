@@ -0,0 +1,584 @@
+package net.cacabish.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.cacabish.AllocationStats;
+import net.cacabish.CancellationToken;
+import net.cacabish.CleanedScore;
+import net.cacabish.CleaningOptions;
+import net.cacabish.MusicXMLCleaner;
+
+/**
+ * Cleans a batch of files in three overlapping stages, so that the disks and the CPUs are both kept busy:
+ * <ol>
+ * <li><b>read</b>: each file is read into memory with an {@code AsynchronousFileChannel}</li>
+ * <li><b>clean</b>: the bytes are parsed and cleaned</li>
+ * <li><b>write</b>: the cleaned score is written out</li>
+ * </ol>
+ * Each stage has its own threads, and the stages are connected by bounded queues. When a queue fills up, the stage feeding it waits,
+ * so a slow stage holds back the ones before it instead of letting unprocessed files pile up in memory.
+ * <br><br>
+ * A file that fails in any stage is marked as failed and dropped; the rest of the batch carries on.
+ * If an {@link AdmissionController} is set, each file reserves its share of the memory budget before it is read, and gives it back once it is written (or fails).
+ * See {@link StageMetrics} for how to tell which stage is the bottleneck.
+ * <br><br>
+ * Writing a score takes much less time than cleaning it, so whenever a write thread has nothing to write, it steals a job that's waiting to be cleaned
+ * and cleans (and writes) it itself. Jobs are started in the order they're given; see {@link JobScheduler} for a good order.
+ * <br><br>
+ * If a timeout is set, each file gets that long to be cleaned (parsing included). A file that runs out of time is stopped by a {@link Watchdog}
+ * and marked as timed out, and the thread moves on to the next file.
+ * <br><br>
+ * If a {@link BatchJournal} is set, each file is recorded in it as soon as it's finished with, and files that an earlier run already cleaned are skipped.
+ * <br><br>
+ * If profiles are set, each file is parsed once and cleaned with every profile's options, and each profile's score is written next to the job's output
+ * with the profile's name before the extension (see {@link #getProfileOutput(File, String)}), instead of to the output itself.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class BatchPipeline {
+	
+	/**
+	 * A job on its way through the pipeline, along with whatever the last stage produced for it.
+	 */
+	private static final class InFlight {
+		final BatchJob job;
+		AdmissionController.Admission admission;
+		ByteBuffer source;
+		/** The cleaned score, or one for each profile. */
+		List<CleanedScore> scores;
+		/** Whether the journal already settled the job, so there's nothing new to record. */
+		boolean settled;
+		
+		InFlight(BatchJob job) {
+			this.job = job;
+		}
+	}
+	
+	/**
+	 * Something a stage does to a job.
+	 */
+	private interface StageWork {
+		/**
+		 * @param item the job
+		 * @throws Exception if the job failed
+		 */
+		void process(InFlight item) throws Exception;
+	}
+	
+	/**
+	 * Put in a queue to tell one thread of the next stage that there's nothing more coming.
+	 */
+	private static final InFlight END = new InFlight(null);
+	
+	/**
+	 * How long a thread that can steal waits on its own queue before looking for a job to steal, in milliseconds.
+	 */
+	private static final long STEAL_AFTER_MILLIS = 10;
+	
+	/**
+	 * The options every file is cleaned with.
+	 */
+	private final CleaningOptions options;
+	
+	/**
+	 * The same options, but with lazy parsing turned on, for files the admission controller switches to lazy parsing.
+	 */
+	private final CleaningOptions lazyOptions;
+	
+	/**
+	 * The options of each profile, by name, or {@code null} to clean every file with just {@link #options}.
+	 */
+	private Map<String, CleaningOptions> profiles = null;
+	
+	/**
+	 * The admission controller, or {@code null} to let every file in straight away.
+	 */
+	private AdmissionController admissionController = null;
+	
+	/**
+	 * How long each file gets to be cleaned, in nanoseconds, or 0 for as long as it takes.
+	 */
+	private long timeoutNanos = 0;
+	
+	/**
+	 * The watchdog enforcing the timeout during a run, or {@code null} if there's no timeout.
+	 */
+	private Watchdog watchdog = null;
+	
+	/**
+	 * The journal of finished files, or {@code null} if none is kept.
+	 */
+	private BatchJournal journal = null;
+	
+	/**
+	 * The most times a file is tried, across runs, before it's given up on. Only applies if a journal is kept.
+	 */
+	private int maxAttempts = 3;
+	
+	/**
+	 * The number of threads in each stage.
+	 */
+	private int readers = 2, cleaners = Runtime.getRuntime().availableProcessors(), writers = 2;
+	
+	/**
+	 * The most jobs that can wait between two stages.
+	 */
+	private int queueCapacity = 4;
+	
+	/**
+	 * The counters from the last run.
+	 */
+	private StageMetrics readMetrics, cleanMetrics, writeMetrics;
+	
+	/**
+	 * What each step allocated in the last run.
+	 */
+	private AllocationSummary allocations = new AllocationSummary();
+	
+	/**
+	 * Constructs a pipeline.
+	 * @param options the options every file is cleaned with
+	 */
+	public BatchPipeline(CleaningOptions options) {
+		if (options == null)
+			throw new IllegalArgumentException("options provided were null");
+		this.options = options.copy();
+		this.lazyOptions = options.copy();
+		this.lazyOptions.lazyParsing = true;
+	}
+	
+	/**
+	 * Sets the number of threads in each stage.
+	 * @param readers the number of files read at the same time
+	 * @param cleaners the number of files cleaned at the same time
+	 * @param writers the number of files written at the same time
+	 */
+	public void setParallelism(int readers, int cleaners, int writers) {
+		if (readers < 1 || cleaners < 1 || writers < 1)
+			throw new IllegalArgumentException("every stage needs at least one thread");
+		this.readers = readers;
+		this.cleaners = cleaners;
+		this.writers = writers;
+	}
+	
+	/**
+	 * Sets how many jobs can wait between two stages. Every waiting job holds a whole file (or cleaned score) in memory.
+	 * @param queueCapacity the capacity of each queue
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity < 1)
+			throw new IllegalArgumentException("queue capacity must be positive");
+		this.queueCapacity = queueCapacity;
+	}
+	
+	/**
+	 * Sets the profiles to clean every file with. Each file is parsed once, and then every profile cleans its own copy of the score.
+	 * The options the pipeline was constructed with are then only used to plan each file's admission.
+	 * Profiles can't be used with a journal, since each file has more than one output.
+	 * @param profiles the options of each profile, by name, in the order they're cleaned, or {@code null} for no profiles
+	 */
+	public void setProfiles(Map<String, CleaningOptions> profiles) {
+		if (profiles == null) {
+			this.profiles = null;
+			return;
+		}
+		if (profiles.isEmpty())
+			throw new IllegalArgumentException("there must be at least one profile");
+		this.profiles = new LinkedHashMap<>();
+		for (Map.Entry<String, CleaningOptions> profile : profiles.entrySet()) {
+			if (profile.getKey() == null || profile.getKey().isEmpty() || profile.getValue() == null)
+				throw new IllegalArgumentException("profile provided was null");
+			this.profiles.put(profile.getKey(), profile.getValue().copy());
+		}
+	}
+	
+	/**
+	 * Where a profile's cleaned score is written: next to the job's output, with the profile's name before the extension,
+	 * so that {@code song.musicxml} becomes {@code song.print.musicxml} for a profile named {@code print}.
+	 * @param output the job's output
+	 * @param profile the name of the profile
+	 * @return the profile's output
+	 */
+	public static File getProfileOutput(File output, String profile) {
+		String name = output.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot <= 0) {
+			return new File(output.getParentFile(), name + "." + profile);
+		}
+		return new File(output.getParentFile(), name.substring(0, dot) + "." + profile + name.substring(dot));
+	}
+	
+	/**
+	 * Sets the admission controller that keeps the batch within a memory budget.
+	 * @param admissionController the controller, or {@code null} to let every file in straight away
+	 */
+	public void setAdmissionController(AdmissionController admissionController) {
+		this.admissionController = admissionController;
+	}
+	
+	/**
+	 * Sets how long each file gets to be cleaned. A file that takes longer is marked as timed out.
+	 * @param timeout the time budget, or 0 for as long as it takes
+	 * @param unit the unit of the budget
+	 */
+	public void setTimeout(long timeout, TimeUnit unit) {
+		if (timeout < 0)
+			throw new IllegalArgumentException("timeout can't be negative");
+		this.timeoutNanos = unit.toNanos(timeout);
+	}
+	
+	/**
+	 * Sets the journal that records each file as it's finished with. Files the journal says are already done are skipped,
+	 * and files that have already failed too many times with the same input are given up on without trying again.
+	 * @param journal the journal, or {@code null} to keep none
+	 * @param maxAttempts the most times a file is tried, across every run that shares the journal
+	 */
+	public void setJournal(BatchJournal journal, int maxAttempts) {
+		if (maxAttempts < 1)
+			throw new IllegalArgumentException("a file must be tried at least once");
+		this.journal = journal;
+		this.maxAttempts = maxAttempts;
+	}
+	
+	/**
+	 * Cleans every job, returning once all of them have succeeded or failed.
+	 * @param jobs the jobs
+	 * @return the same jobs, each marked as succeeded or failed
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	public List<BatchJob> run(List<BatchJob> jobs) throws InterruptedException {
+		if (journal != null && profiles != null)
+			throw new IllegalStateException("a journal can't be kept when cleaning with profiles");
+		readMetrics = new StageMetrics("read", readers);
+		cleanMetrics = new StageMetrics("clean", cleaners);
+		writeMetrics = new StageMetrics("write", writers);
+		allocations = new AllocationSummary();
+		
+		// The first queue only holds file names, so it can hold everything
+		BlockingQueue<InFlight> toRead = new LinkedBlockingQueue<>();
+		for (BatchJob job : jobs) {
+			toRead.add(new InFlight(job));
+		}
+		for (int i = 0; i < readers; i++) {
+			toRead.add(END);
+		}
+		BlockingQueue<InFlight> toClean = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<InFlight> toWrite = new ArrayBlockingQueue<>(queueCapacity);
+		
+		watchdog = timeoutNanos > 0 ? new Watchdog() : null;
+		
+		List<Thread> threads = new ArrayList<>();
+		threads.addAll(startStage(readers, readMetrics, toRead, toClean, cleaners, this::read, null, null));
+		threads.addAll(startStage(cleaners, cleanMetrics, toClean, toWrite, writers, this::clean, null, null));
+		// Writing is quick, so idle writers help with the cleaning
+		threads.addAll(startStage(writers, writeMetrics, toWrite, null, 0, this::write, toClean, item -> {
+			clean(item);
+			write(item);
+		}));
+		
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			for (Thread thread : threads) {
+				thread.interrupt();
+			}
+			throw e;
+		} finally {
+			if (watchdog != null) {
+				watchdog.close();
+			}
+		}
+		return jobs;
+	}
+	
+	/**
+	 * @return the counters for each stage from the last run, in order, or an empty list if nothing has been run
+	 */
+	public List<StageMetrics> getMetrics() {
+		List<StageMetrics> metrics = new ArrayList<>();
+		if (readMetrics != null) {
+			metrics.add(readMetrics);
+			metrics.add(cleanMetrics);
+			metrics.add(writeMetrics);
+		}
+		return metrics;
+	}
+	
+	/**
+	 * @return what each step of cleaning and saving allocated in the last run, counting every file that was saved
+	 */
+	public AllocationSummary getAllocations() {
+		return allocations;
+	}
+	
+	/**
+	 * Starts the threads of a stage.
+	 * Each thread takes jobs from its queue until it takes an {@link #END}. The last thread of the stage to finish tells every thread of the next stage to finish.
+	 * A job is passed on to the next stage unless it failed or was settled (see {@link #finish(InFlight)}).
+	 * @param count the number of threads
+	 * @param metrics the stage's counters
+	 * @param in the stage's queue
+	 * @param out the next stage's queue, or {@code null} if this is the last stage
+	 * @param nextCount the number of threads in the next stage
+	 * @param work what the stage does to each job
+	 * @param stealFrom the previous stage's queue, to take jobs from whenever this stage has nothing to do, or {@code null} to never steal
+	 * @param stolenWork what the stage does to each stolen job, which must finish everything the previous stage would've done
+	 * @return the threads
+	 */
+	private List<Thread> startStage(int count, StageMetrics metrics, BlockingQueue<InFlight> in, BlockingQueue<InFlight> out, int nextCount, StageWork work,
+			BlockingQueue<InFlight> stealFrom, StageWork stolenWork) {
+		AtomicInteger running = new AtomicInteger(count);
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Thread thread = new Thread(() -> {
+				boolean abandoned = false;
+				boolean stealing = stealFrom != null;
+				try {
+					while (true) {
+						metrics.recordDepth(in.size());
+						InFlight item;
+						StageWork itemWork = work;
+						if (!stealing) {
+							item = in.take();
+						}
+						else {
+							// Give our own queue a moment, then see if the previous stage has a job waiting that we can do instead
+							item = in.poll(STEAL_AFTER_MILLIS, TimeUnit.MILLISECONDS);
+							if (item == null) {
+								InFlight stolen = stealFrom.poll();
+								if (stolen == END) {
+									// The previous stage is nearly done, and that belongs to it
+									stealFrom.put(END);
+									stealing = false;
+								}
+								else if (stolen != null) {
+									item = stolen;
+									itemWork = stolenWork;
+									metrics.recordSteal();
+								}
+							}
+							if (item == null) {
+								continue;
+							}
+						}
+						if (item == END) {
+							break;
+						}
+						
+						long start = System.nanoTime();
+						boolean succeeded;
+						try {
+							itemWork.process(item);
+							succeeded = true;
+						} catch (CancellationException e) {
+							item.job.timeOut(e);
+							succeeded = false;
+						} catch (Exception e) {
+							item.job.fail(e);
+							succeeded = false;
+						}
+						metrics.recordWork(System.nanoTime() - start, succeeded);
+						if (!succeeded || out == null || item.job.getStatus() != BatchJob.Status.PENDING) {
+							// The job is done with, one way or another
+							finish(item);
+						}
+						else {
+							long waiting = System.nanoTime();
+							out.put(item);
+							metrics.recordBlocked(System.nanoTime() - waiting);
+						}
+					}
+				} catch (InterruptedException e) {
+					abandoned = true; // The whole run is being abandoned
+				} finally {
+					if (running.decrementAndGet() == 0 && out != null && !abandoned) {
+						try {
+							for (int j = 0; j < nextCount; j++) {
+								out.put(END);
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				}
+			}, "batch-" + metrics.getName() + "-" + i);
+			thread.start();
+			threads.add(thread);
+		}
+		return threads;
+	}
+	
+	/**
+	 * Lets go of a job that's leaving the pipeline, and records it in the journal.
+	 * @param item the job
+	 */
+	private void finish(InFlight item) {
+		if (item.admission != null) {
+			admissionController.release(item.admission);
+			item.admission = null;
+		}
+		item.source = null;
+		item.scores = null;
+		
+		if (journal != null && !item.settled) {
+			try {
+				journal.record(item.job);
+			} catch (IOException e) {
+				// The file itself is fine, so don't fail it. It'll just be cleaned again next time.
+				System.err.println("Unable to record " + item.job.getInput() + " in the journal: " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * The read stage: reads the whole file into memory.
+	 * If a journal is kept, the file is skipped if an earlier run already cleaned it, or failed if it has already failed too many times.
+	 * @param item the job
+	 * @throws IOException if the file can't be read, or has failed too many times
+	 * @throws InterruptedException if the thread is interrupted while waiting for the read
+	 */
+	private void read(InFlight item) throws IOException, InterruptedException {
+		if (admissionController != null) {
+			AdmissionController.Admission admission = admissionController.plan(item.job.getInput(), options, profiles == null ? 0 : profiles.size());
+			admissionController.acquire(admission);
+			item.admission = admission;
+		}
+		
+		long start = System.nanoTime();
+		item.source = read(item.job.getInput());
+		item.job.size = item.source.remaining();
+		
+		if (journal != null) {
+			String inputHash = BatchJournal.hash(item.source);
+			item.job.inputHash = inputHash;
+			if (journal.isDone(item.job, inputHash)) {
+				item.settled = true;
+				item.job.skip();
+			}
+			else {
+				int failedAttempts = journal.getFailedAttempts(item.job, inputHash);
+				if (failedAttempts >= maxAttempts) {
+					item.settled = true;
+					throw new IOException("gave up after " + failedAttempts + " failed attempt(s); last time: " + journal.lookup(item.job.getInput()).error);
+				}
+			}
+		}
+		item.job.readNanos = System.nanoTime() - start;
+	}
+	
+	/**
+	 * The clean stage: parses and cleans the bytes that were read (with every profile, if there are any), within the time budget if there is one.
+	 * @param item the job
+	 * @throws CancellationException if the file runs out of time
+	 * @throws Exception if the file can't be cleaned
+	 */
+	private void clean(InFlight item) throws Exception {
+		long start = System.nanoTime();
+		boolean lazy = item.admission != null && item.admission.isLazy();
+		CancellationToken token = new CancellationToken();
+		Watchdog.Watch watch = watchdog == null ? null : watchdog.watch(token, timeoutNanos);
+		CancellationToken.Binding binding = token.bind();
+		try {
+			if (profiles == null) {
+				item.scores = Collections.singletonList(MusicXMLCleaner.clean(item.source, item.job.getOutput(), lazy ? lazyOptions : options));
+			}
+			else {
+				List<File> previousOutputs = new ArrayList<>();
+				for (String profile : profiles.keySet()) {
+					previousOutputs.add(getProfileOutput(item.job.getOutput(), profile));
+				}
+				item.scores = MusicXMLCleaner.clean(item.source, previousOutputs, new ArrayList<>(profiles.values()));
+			}
+		} finally {
+			binding.close();
+			if (watch != null) {
+				watch.close();
+			}
+		}
+		item.source = null; // The score keeps it if it still needs it
+		item.job.cleanNanos = System.nanoTime() - start;
+	}
+	
+	/**
+	 * The write stage: writes the cleaned score out (or each profile's score).
+	 * @param item the job
+	 * @throws Exception if the score can't be written
+	 */
+	private void write(InFlight item) throws Exception {
+		long start = System.nanoTime();
+		File output = item.job.getOutput();
+		File parent = output.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("unable to create " + parent);
+		}
+		if (profiles == null) {
+			MusicXMLCleaner.writeToFile(item.scores.get(0), output);
+		}
+		else {
+			int i = 0;
+			for (String profile : profiles.keySet()) {
+				MusicXMLCleaner.writeToFile(item.scores.get(i++), getProfileOutput(output, profile));
+			}
+		}
+		List<AllocationStats> stats = new ArrayList<>();
+		for (CleanedScore score : item.scores) {
+			stats.add(score.getAllocations());
+		}
+		allocations.add(stats);
+		item.scores = null;
+		if (journal != null) {
+			item.job.outputHash = BatchJournal.hash(read(output));
+		}
+		item.job.writeNanos = System.nanoTime() - start;
+		item.job.succeed();
+	}
+	
+	/**
+	 * Reads a whole file into memory with an asynchronous channel.
+	 * @param file the file
+	 * @return the bytes of the file
+	 * @throws IOException if the file can't be read
+	 * @throws InterruptedException if the thread is interrupted while waiting for the read
+	 */
+	static ByteBuffer read(File file) throws IOException, InterruptedException {
+		try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(file.getName() + " is too large to read");
+			}
+			
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()) {
+				int read = channel.read(buffer, buffer.position()).get();
+				if (read < 0) {
+					break; // The file got shorter while we were reading it
+				}
+			}
+			buffer.flip();
+			return buffer;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package net.cacabish.batch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Predicts how long a file will take to clean, using how long files took in earlier runs.
+ * <br><br>
+ * If a file has been cleaned before and hasn't changed size, its last time is used as is. Otherwise, the time is predicted from the file's size with a straight line
+ * fitted to every file in the history. With too little history to fit a line, a rough default is used instead; this is only good for putting files in order.
+ * <br><br>
+ * The history is kept in a text file with one line per file: its size, how long it took to clean in nanoseconds, and its path, separated by tabs.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class CostModel {
+	
+	/**
+	 * The time every file takes regardless of size, in nanoseconds, when there's no history.
+	 */
+	private static final double DEFAULT_FIXED_NANOS = 50_000_000;
+	
+	/**
+	 * The time each byte of a file takes, in nanoseconds, when there's no history.
+	 */
+	private static final double DEFAULT_NANOS_PER_BYTE = 2_000;
+	
+	/**
+	 * The most files to remember. The ones seen least recently are forgotten first.
+	 */
+	private static final int MAX_HISTORY = 10_000;
+	
+	/**
+	 * The history, keyed by absolute path. Each value is the file's size and how long it took. Kept in the order the files were last seen.
+	 */
+	private final LinkedHashMap<String, long[]> history = new LinkedHashMap<>();
+	
+	/**
+	 * The fitted line. Recomputed whenever the history changes.
+	 */
+	private double fixedNanos = DEFAULT_FIXED_NANOS, nanosPerByte = DEFAULT_NANOS_PER_BYTE;
+	
+	/**
+	 * Whether the line was fitted to history, rather than the defaults.
+	 */
+	private boolean fitted = false;
+	
+	/**
+	 * Constructs a model with no history.
+	 */
+	public CostModel() {}
+	
+	/**
+	 * Loads a model from its history file. If the file doesn't exist, the model starts with no history.
+	 * @param file the history file
+	 * @return the model
+	 * @throws IOException if the file can't be read
+	 */
+	public static CostModel load(File file) throws IOException {
+		CostModel model = new CostModel();
+		if (!file.isFile()) {
+			return model;
+		}
+		
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", 3);
+				if (fields.length != 3) {
+					continue; // Not ours
+				}
+				try {
+					model.history.put(fields[2], new long[] {Long.parseLong(fields[0]), Long.parseLong(fields[1])});
+				} catch (NumberFormatException e) {
+					// Skip it
+				}
+			}
+		}
+		model.fit();
+		return model;
+	}
+	
+	/**
+	 * Saves the history.
+	 * @param file the history file
+	 * @throws IOException if the file can't be written
+	 */
+	public void save(File file) throws IOException {
+		try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			for (Map.Entry<String, long[]> entry : history.entrySet()) {
+				writer.write(entry.getValue()[0] + "\t" + entry.getValue()[1] + "\t" + entry.getKey());
+				writer.newLine();
+			}
+		}
+	}
+	
+	/**
+	 * Predicts how long a file will take to clean.
+	 * @param file the file
+	 * @param size the size of the file, in bytes
+	 * @return the prediction, in nanoseconds
+	 */
+	public long predict(File file, long size) {
+		long[] seen = history.get(file.getAbsolutePath());
+		if (seen != null && seen[0] == size) {
+			return seen[1];
+		}
+		return Math.max(0, Math.round(fixedNanos + nanosPerByte * size));
+	}
+	
+	/**
+	 * Remembers how long the successful jobs of a run took to clean. Reading and writing aren't counted, since they overlap with cleaning other files.
+	 * @param jobs the jobs
+	 */
+	public void record(Iterable<BatchJob> jobs) {
+		for (BatchJob job : jobs) {
+			if (job.getStatus() != BatchJob.Status.SUCCEEDED) {
+				continue; // A failure says nothing about how long it would've taken
+			}
+			String path = job.getInput().getAbsolutePath();
+			history.remove(path); // So that it moves to the end
+			history.put(path, new long[] {job.getSize(), job.getCleanNanos()});
+		}
+		
+		Iterator<String> oldest = history.keySet().iterator();
+		while (history.size() > MAX_HISTORY) {
+			oldest.next();
+			oldest.remove();
+		}
+		fit();
+	}
+	
+	/**
+	 * @return true if predictions come from history, rather than a rough default
+	 */
+	public boolean isFitted() {
+		return fitted;
+	}
+	
+	/**
+	 * Fits a straight line through the history with least squares.
+	 */
+	private void fit() {
+		int n = history.size();
+		double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+		for (long[] entry : history.values()) {
+			sumX += entry[0];
+			sumY += entry[1];
+			sumXX += (double) entry[0] * entry[0];
+			sumXY += (double) entry[0] * entry[1];
+		}
+		
+		double denominator = n * sumXX - sumX * sumX;
+		if (n < 2 || denominator <= 0) {
+			if (n > 0 && sumX > 0) {
+				// All one size, so all we can tell is the time per byte
+				fixedNanos = 0;
+				nanosPerByte = sumY / sumX;
+				fitted = true;
+			}
+			return;
+		}
+		
+		double slope = (n * sumXY - sumX * sumY) / denominator;
+		double intercept = (sumY - slope * sumX) / n;
+		if (slope <= 0) {
+			// Bigger files shouldn't be faster. The history is too noisy for a line, so just use the average time per byte.
+			slope = sumY / sumX;
+			intercept = 0;
+		}
+		fixedNanos = Math.max(0, intercept);
+		nanosPerByte = slope;
+		fitted = true;
+	}
+}
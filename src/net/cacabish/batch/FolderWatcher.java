@@ -0,0 +1,507 @@
+package net.cacabish.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import net.cacabish.CleanedScore;
+import net.cacabish.CleaningOptions;
+import net.cacabish.MusicXMLCleaner;
+import net.cacabish.daemon.CleanerDaemon;
+
+/**
+ * Watches a folder (and its subfolders) and cleans every MusicXML file that's saved into it, writing the cleaned file next to it.
+ * <br><br>
+ * Programs don't save a file all at once, so a file isn't cleaned until it has been quiet for a while: no events, and the same size and
+ * modification time twice in a row. Every event for a file in the meantime just pushes that back, so a burst of events becomes a single clean.
+ * Files that are ready are handed to a pool of worker threads, each of which is warmed up (see {@link CleanerDaemon#warmUp(CleaningOptions)}) before
+ * anything is watched, so that the first real file doesn't pay for loading the parsers. A file that changes again while it's being cleaned is cleaned again afterwards.
+ * <br><br>
+ * Cleaned files are named after their input with {@value #CLEANED_SUFFIX} before the extension (so {@code song.musicxml} becomes {@code song.cleaned.musicxml}),
+ * unless an output folder is given. By default, scores are cleaned incrementally, so re-exporting a score with a few changes only cleans the measures that changed.
+ * <br><br>
+ * Every file cleaned is recorded in an index (a {@link BatchJournal}), which is kept in the watched folder as {@value #INDEX_FILE_NAME} unless told otherwise.
+ * When the watcher starts, every file already in the folder is checked against the index, and only the files that are new or have changed since they were last
+ * cleaned are cleaned. A file that failed is not tried again until it's saved with different contents.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class FolderWatcher implements AutoCloseable {
+	
+	/**
+	 * How long a file must be quiet before it's cleaned, in milliseconds, if no other time is given.
+	 */
+	public static final long DEFAULT_QUIET_MILLIS = 1000;
+	
+	/**
+	 * Added to the name of each input (before the extension) to name its cleaned file.
+	 */
+	public static final String CLEANED_SUFFIX = ".cleaned";
+	
+	/**
+	 * The name of the index in the watched folder.
+	 */
+	public static final String INDEX_FILE_NAME = ".musicxml-cleaner-index";
+	
+	/**
+	 * The least time the watcher waits for events before checking on files that aren't ready yet, in milliseconds.
+	 */
+	private static final long MIN_POLL_MILLIS = 100;
+	
+	/**
+	 * A file that has changed but isn't ready to be cleaned yet.
+	 */
+	private static final class Pending {
+		/** When the file was last seen to change, from {@link System#nanoTime()}. */
+		long lastChanged;
+		/** The size and modification time of the file when it was last seen to change. */
+		long size, modified;
+	}
+	
+	/**
+	 * The folder being watched.
+	 */
+	private final Path root;
+	
+	/**
+	 * The folder cleaned files are written to, or {@code null} to write them next to their input.
+	 */
+	private final Path outputDirectory;
+	
+	/**
+	 * The options every file is cleaned with.
+	 */
+	private final CleaningOptions options;
+	
+	/**
+	 * The files that have already been cleaned.
+	 */
+	private final BatchJournal index;
+	
+	/**
+	 * Tells the watcher when something changes in the folder.
+	 */
+	private final WatchService watchService;
+	
+	/**
+	 * The folder each registered key is watching.
+	 */
+	private final Map<WatchKey, Path> directories = new HashMap<>();
+	
+	/**
+	 * The files that have changed but haven't been handed to a worker yet. Only touched by the watching thread.
+	 */
+	private final Map<Path, Pending> pending = new HashMap<>();
+	
+	/**
+	 * The files the workers are cleaning right now.
+	 */
+	private final Set<Path> running = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * The threads that clean the files.
+	 */
+	private final ExecutorService workers;
+	
+	/**
+	 * The number of worker threads.
+	 */
+	private final int threads;
+	
+	/**
+	 * How long a file must be quiet before it's cleaned, in nanoseconds.
+	 */
+	private final long quietNanos;
+	
+	/**
+	 * Constructs a watcher. Nothing is watched until {@link #watch()} is called.
+	 * @param root the folder to watch
+	 * @param outputDirectory the folder to write cleaned files to, or {@code null} to write them next to their input
+	 * @param indexFile the index of cleaned files, or {@code null} to keep it in the watched folder
+	 * @param threads the number of files cleaned at the same time
+	 * @param quietMillis how long a file must be quiet before it's cleaned, in milliseconds
+	 * @param options the options every file is cleaned with
+	 * @throws IOException if the index can't be opened or the folder can't be watched
+	 */
+	public FolderWatcher(File root, File outputDirectory, File indexFile, int threads, long quietMillis, CleaningOptions options) throws IOException {
+		if (root == null || options == null)
+			throw new IllegalArgumentException("folder or options provided were null");
+		if (!root.isDirectory())
+			throw new IOException(root + " is not a folder");
+		if (threads < 1)
+			throw new IllegalArgumentException("there must be at least one thread");
+		if (quietMillis < 0)
+			throw new IllegalArgumentException("quiet time can't be negative");
+		
+		this.root = root.toPath().toAbsolutePath().normalize();
+		this.outputDirectory = outputDirectory == null ? null : outputDirectory.toPath().toAbsolutePath().normalize();
+		this.options = options.copy();
+		this.index = new BatchJournal(indexFile == null ? this.root.resolve(INDEX_FILE_NAME).toFile() : indexFile);
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.threads = threads;
+		this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+		this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "folder-watcher-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Warms up every worker thread, so that each has its parsers loaded before the first real file arrives.
+	 * @throws InterruptedException if the thread is interrupted while waiting for the workers
+	 */
+	public void warmUp() throws InterruptedException {
+		// Every worker waits for the rest, so that each one gets exactly one warm-up
+		CountDownLatch started = new CountDownLatch(threads);
+		CountDownLatch finished = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			workers.execute(() -> {
+				try {
+					started.countDown();
+					started.await();
+					CleanerDaemon.warmUp(options);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (IOException e) {
+					System.out.println("Unable to warm up (" + e + "). Continuing anyway.");
+				} finally {
+					finished.countDown();
+				}
+			});
+		}
+		finished.await();
+	}
+	
+	/**
+	 * Cleans every file in the folder that isn't already in the index, then watches the folder and cleans every file saved into it, until closed.
+	 * @throws IOException if a folder can't be registered or searched
+	 * @throws InterruptedException if the thread is interrupted while waiting for events
+	 */
+	public void watch() throws IOException, InterruptedException {
+		register(root);
+		System.out.println("Watching " + root + "...");
+		
+		try {
+			while (true) {
+				// Sleep until something happens, or until the next pending file might be ready
+				WatchKey key;
+				if (pending.isEmpty()) {
+					key = watchService.take();
+				}
+				else {
+					long now = System.nanoTime();
+					long soonest = Long.MAX_VALUE;
+					for (Pending file : pending.values()) {
+						soonest = Math.min(soonest, file.lastChanged + quietNanos - now);
+					}
+					key = watchService.poll(Math.max(MIN_POLL_MILLIS, TimeUnit.NANOSECONDS.toMillis(soonest)), TimeUnit.MILLISECONDS);
+				}
+				
+				// Take everything that has piled up, so that a burst is handled all at once
+				while (key != null) {
+					handleEvents(key);
+					key = watchService.poll();
+				}
+				dispatchReadyFiles();
+			}
+		} catch (ClosedWatchServiceException e) {
+			// We've been closed
+		}
+		System.out.println("Stopped watching " + root + ".");
+	}
+	
+	/**
+	 * Stops watching. Files that are already being cleaned are allowed to finish.
+	 */
+	@Override
+	public void close() {
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			// It's closed either way
+		}
+		workers.shutdown();
+		try {
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			index.close();
+		} catch (IOException e) {
+			System.err.println("Unable to close the index: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Watches a folder and every folder inside it, and notes every input already in them as changed.
+	 * @param directory the folder
+	 * @throws IOException if the folder can't be registered or searched
+	 */
+	private void register(Path directory) throws IOException {
+		List<Path> found;
+		try (Stream<Path> walk = Files.walk(directory)) {
+			found = walk.collect(Collectors.toList());
+		}
+		for (Path path : found) {
+			if (Files.isDirectory(path)) {
+				if (outputDirectory == null || !path.startsWith(outputDirectory)) {
+					directories.put(path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+							StandardWatchEventKinds.ENTRY_DELETE), path);
+				}
+			}
+			else if (isInput(path)) {
+				changed(path);
+			}
+		}
+	}
+	
+	/**
+	 * Handles the events of one folder.
+	 * @param key the folder's key
+	 * @throws IOException if a new folder can't be registered
+	 */
+	private void handleEvents(WatchKey key) throws IOException {
+		Path directory = directories.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				// Too much happened at once to keep track of, so look at everything again. The index keeps this from cleaning anything twice.
+				System.out.println("Missed some events. Checking every file again.");
+				register(root);
+				continue;
+			}
+			if (directory == null) {
+				continue;
+			}
+			
+			Path path = directory.resolve((Path) event.context());
+			if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+				pending.remove(path);
+			}
+			else if (Files.isDirectory(path)) {
+				if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+					register(path);
+				}
+			}
+			else if (isInput(path)) {
+				changed(path);
+			}
+		}
+		if (!key.reset()) {
+			directories.remove(key); // The folder is gone
+		}
+	}
+	
+	/**
+	 * Notes that a file has changed, which restarts its quiet time.
+	 * @param path the file
+	 */
+	private void changed(Path path) {
+		Pending file = pending.computeIfAbsent(path, p -> new Pending());
+		file.lastChanged = System.nanoTime();
+		file.size = -1; // Not looked at yet
+		file.modified = -1;
+	}
+	
+	/**
+	 * Hands every file that has been quiet long enough to a worker.
+	 */
+	private void dispatchReadyFiles() {
+		long now = System.nanoTime();
+		Iterator<Map.Entry<Path, Pending>> iterator = pending.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Path, Pending> entry = iterator.next();
+			Path path = entry.getKey();
+			Pending file = entry.getValue();
+			if (now - file.lastChanged < quietNanos || running.contains(path)) {
+				continue; // Not yet, or wait for the clean that's already going to finish first
+			}
+			
+			BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			} catch (IOException e) {
+				iterator.remove(); // It's gone
+				continue;
+			}
+			long size = attributes.size();
+			long modified = attributes.lastModifiedTime().toMillis();
+			if (size == 0 || size != file.size || modified != file.modified) {
+				// Still being written, even if there hasn't been an event about it. Give it another quiet time.
+				file.lastChanged = now;
+				file.size = size;
+				file.modified = modified;
+				continue;
+			}
+			
+			iterator.remove();
+			running.add(path);
+			workers.execute(() -> clean(path));
+		}
+	}
+	
+	/**
+	 * Cleans one file, unless the index says it has already been cleaned (or has already failed) with the same contents.
+	 * @param path the file
+	 */
+	private void clean(Path path) {
+		BatchJob job = new BatchJob(path.toFile(), getOutput(path).toFile());
+		try {
+			long start = System.nanoTime();
+			ByteBuffer source = BatchPipeline.read(job.getInput());
+			job.size = source.remaining();
+			job.inputHash = BatchJournal.hash(source);
+			if (index.isDone(job, job.inputHash)) {
+				job.skip();
+				return;
+			}
+			if (index.getFailedAttempts(job, job.inputHash) > 0) {
+				job.skip(); // The same bytes will fail the same way
+				System.out.println("Not cleaning " + path + " again, since it failed before. Save it again to retry.");
+				return;
+			}
+			
+			CleanedScore score = MusicXMLCleaner.clean(source, job.getOutput(), options);
+			job.cleanNanos = System.nanoTime() - start;
+			File parent = job.getOutput().getAbsoluteFile().getParentFile();
+			if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+				throw new IOException("unable to create " + parent);
+			}
+			MusicXMLCleaner.writeToFile(score, job.getOutput());
+			job.outputHash = BatchJournal.hash(BatchPipeline.read(job.getOutput()));
+			job.writeNanos = System.nanoTime() - start - job.cleanNanos;
+			job.succeed();
+			System.out.println(String.format(Locale.US, "Cleaned %s to %s in %.2f s.", path, job.getOutput(), job.getTotalNanos() / 1e9));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return; // Shutting down, so it'll be picked up next time
+		} catch (Exception e) {
+			job.fail(e);
+			System.out.println("Unable to clean " + path + ": " + job.getError());
+		} finally {
+			running.remove(path);
+		}
+		
+		try {
+			index.record(job);
+		} catch (IOException e) {
+			System.err.println("Unable to record " + path + " in the index: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * @param path a file in the watched folder
+	 * @return true if the file should be cleaned: it's a MusicXML file, and isn't a cleaned file or hidden
+	 */
+	private boolean isInput(Path path) {
+		String name = path.getFileName().toString();
+		if (name.startsWith(".") || name.startsWith("~") || !BatchCleaner.isMusicXMLFile(path)) {
+			return false;
+		}
+		if (outputDirectory != null) {
+			return !path.startsWith(outputDirectory);
+		}
+		return !name.substring(0, name.lastIndexOf('.')).endsWith(CLEANED_SUFFIX);
+	}
+	
+	/**
+	 * @param path an input
+	 * @return where the input's cleaned file is written
+	 */
+	private Path getOutput(Path path) {
+		if (outputDirectory != null) {
+			return outputDirectory.resolve(root.relativize(path));
+		}
+		String name = path.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return path.resolveSibling(name.substring(0, dot) + CLEANED_SUFFIX + name.substring(dot));
+	}
+	
+	/**
+	 * Watches a folder until the JVM is stopped.
+	 * Usage: {@code FolderWatcher [--threads N] [--quiet MILLIS] [--index FILE] [--output-dir DIR] [--option name=value]... DIR}
+	 * @param args the command line arguments
+	 * @throws Exception if the folder can't be watched
+	 */
+	public static void main(String[] args) throws Exception {
+		CleaningOptions options = CleaningOptions.fromCurrentFlags();
+		options.incrementalCleaning = true;
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		long quietMillis = DEFAULT_QUIET_MILLIS;
+		File indexFile = null;
+		File outputDirectory = null;
+		List<File> folders = new ArrayList<>();
+		
+		for (int i = 0; i < args.length; i++) {
+			boolean hasValue = i + 1 < args.length;
+			if (args[i].equals("--threads") && hasValue) {
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--quiet") && hasValue) {
+				quietMillis = Long.parseLong(args[++i]);
+			}
+			else if (args[i].equals("--index") && hasValue) {
+				indexFile = new File(args[++i]);
+			}
+			else if (args[i].equals("--output-dir") && hasValue) {
+				outputDirectory = new File(args[++i]);
+			}
+			else if (args[i].equals("--option") && hasValue) {
+				String option = args[++i];
+				int equals = option.indexOf('=');
+				if (equals < 0) {
+					usage();
+				}
+				options.set(option.substring(0, equals), option.substring(equals + 1));
+			}
+			else if (!args[i].startsWith("--")) {
+				folders.add(new File(args[i]));
+			}
+			else {
+				usage();
+			}
+		}
+		if (folders.size() != 1) {
+			usage();
+		}
+		
+		FolderWatcher watcher = new FolderWatcher(folders.get(0), outputDirectory, indexFile, threads, quietMillis, options);
+		Runtime.getRuntime().addShutdownHook(new Thread(watcher::close));
+		watcher.warmUp();
+		watcher.watch();
+	}
+	
+	/**
+	 * Prints how to use the watcher and exits.
+	 */
+	private static void usage() {
+		System.err.println("Usage: FolderWatcher [--threads N] [--quiet MILLIS] [--index FILE] [--output-dir DIR] [--option name=value]... DIR");
+		System.exit(2);
+	}
+}
@@ -0,0 +1,67 @@
+package net.cacabish.batch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Puts the jobs of a batch in the order that should finish soonest, and predicts how long their cleaning will take.
+ * <br><br>
+ * Jobs are ordered longest first. When the longest files start first, the short ones fill in the gaps at the end,
+ * instead of one thread grinding away on a huge file that happened to come last while every other thread sits idle.
+ * The pipeline hands the jobs to its readers in this order, but that's as far as the order goes: a small file can overtake a large one while both
+ * are being read, and the {@link AdmissionController} may hold a file back until there's memory for it. So the jobs reach the cleaners roughly
+ * longest first, and not always exactly.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class JobScheduler {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private JobScheduler() {}
+	
+	/**
+	 * Predicts how long each job will take, and orders them longest first.
+	 * @param jobs the jobs
+	 * @param model the cost model to predict with
+	 * @return a new list of the same jobs, longest first
+	 */
+	public static List<BatchJob> orderLongestFirst(List<BatchJob> jobs, CostModel model) {
+		for (BatchJob job : jobs) {
+			job.predictedNanos = model.predict(job.getInput(), job.getInput().length());
+		}
+		
+		List<BatchJob> ordered = new ArrayList<>(jobs);
+		ordered.sort(Comparator.comparingLong(BatchJob::getPredictedNanos).reversed());
+		return ordered;
+	}
+	
+	/**
+	 * Predicts how long the clean stage of a batch will take from start to finish, if each thread takes the next job in order as soon as it's free.
+	 * Only cleaning is modelled, since that's what the cost model predicts. Reading and writing mostly overlap with it, but the first file still has
+	 * to be read before anything is cleaned and the last one written after, so the whole batch takes a little longer.
+	 * @param jobs the jobs, in the order they'll be started, with predictions from {@link #orderLongestFirst(List, CostModel)}
+	 * @param workers the number of threads that clean, which includes any that help out when they have nothing else to do
+	 * @return the predicted time, in nanoseconds
+	 */
+	public static long predictCleanMakespan(List<BatchJob> jobs, int workers) {
+		// Each entry is the time a thread will be free
+		PriorityQueue<Long> freeAt = new PriorityQueue<>();
+		for (int i = 0; i < workers; i++) {
+			freeAt.add(0L);
+		}
+		
+		long makespan = 0;
+		for (BatchJob job : jobs) {
+			long finish = freeAt.poll() + job.getPredictedNanos();
+			freeAt.add(finish);
+			makespan = Math.max(makespan, finish);
+		}
+		return makespan;
+	}
+}
@@ -0,0 +1,168 @@
+package net.cacabish.batch;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Counters for one stage of a {@link BatchPipeline}, so that it's easy to see which stage is holding up the others.
+ * <br><br>
+ * The queue depth is sampled every time the stage takes a job from its queue. A stage whose queue is usually empty is starved by the stage before it;
+ * a stage whose queue is usually full is the bottleneck. The time spent waiting to hand a job to the next stage shows the same thing from the other side.
+ * Every counter is safe to update from multiple threads.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class StageMetrics {
+	
+	/**
+	 * The name of the stage.
+	 */
+	private final String name;
+	
+	/**
+	 * The number of threads working in the stage.
+	 */
+	private final int threads;
+	
+	/**
+	 * The number of jobs the stage has finished with.
+	 */
+	private final AtomicLong processed = new AtomicLong();
+	/**
+	 * The number of jobs that failed in the stage.
+	 */
+	private final AtomicLong failed = new AtomicLong();
+	/**
+	 * The total time spent working, in nanoseconds.
+	 */
+	private final AtomicLong busyNanos = new AtomicLong();
+	/**
+	 * The total time spent waiting for room in the next queue, in nanoseconds.
+	 */
+	private final AtomicLong blockedNanos = new AtomicLong();
+	/**
+	 * The number of jobs stolen from the previous stage.
+	 */
+	private final AtomicLong stolen = new AtomicLong();
+	/**
+	 * The number of times the queue depth was sampled, and the sum and maximum of the samples.
+	 */
+	private final AtomicLong depthSamples = new AtomicLong();
+	private final AtomicLong depthTotal = new AtomicLong();
+	private final LongAccumulator depthMax = new LongAccumulator(Math::max, 0);
+	
+	/**
+	 * Constructs a set of counters.
+	 * @param name the name of the stage
+	 * @param threads the number of threads working in the stage
+	 */
+	StageMetrics(String name, int threads) {
+		this.name = name;
+		this.threads = threads;
+	}
+	
+	/**
+	 * Records the depth of the stage's queue.
+	 * @param depth the number of jobs waiting
+	 */
+	void recordDepth(int depth) {
+		depthSamples.incrementAndGet();
+		depthTotal.addAndGet(depth);
+		depthMax.accumulate(depth);
+	}
+	
+	/**
+	 * Records a job the stage has finished with.
+	 * @param nanos how long the stage spent on it
+	 * @param succeeded whether the stage succeeded
+	 */
+	void recordWork(long nanos, boolean succeeded) {
+		processed.incrementAndGet();
+		busyNanos.addAndGet(nanos);
+		if (!succeeded) {
+			failed.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Records time spent waiting for the next stage to make room.
+	 * @param nanos how long the stage waited
+	 */
+	void recordBlocked(long nanos) {
+		blockedNanos.addAndGet(nanos);
+	}
+	
+	/**
+	 * Records a job stolen from the previous stage.
+	 */
+	void recordSteal() {
+		stolen.incrementAndGet();
+	}
+	
+	/**
+	 * @return the name of the stage
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return the number of jobs the stage has finished with, successfully or not
+	 */
+	public long getProcessed() {
+		return processed.get();
+	}
+	
+	/**
+	 * @return the number of jobs that failed in this stage
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+	
+	/**
+	 * @return the total time the stage's threads spent working, in nanoseconds
+	 */
+	public long getBusyNanos() {
+		return busyNanos.get();
+	}
+	
+	/**
+	 * @return the total time the stage's threads spent waiting for room in the next stage's queue, in nanoseconds
+	 */
+	public long getBlockedNanos() {
+		return blockedNanos.get();
+	}
+	
+	/**
+	 * @return the number of jobs this stage stole from the previous stage
+	 */
+	public long getStolen() {
+		return stolen.get();
+	}
+	
+	/**
+	 * @return the average depth of the stage's queue
+	 */
+	public double getAverageDepth() {
+		long samples = depthSamples.get();
+		return samples == 0 ? 0 : (double) depthTotal.get() / samples;
+	}
+	
+	/**
+	 * @return the deepest the stage's queue has been
+	 */
+	public long getMaxDepth() {
+		return depthMax.get();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "%-6s %2d thread(s), %d file(s) (%d failed%s), busy %.2f s, blocked %.2f s, queue depth avg %.1f / max %d",
+				name + ":", threads, getProcessed(), getFailed(), stolen.get() == 0 ? "" : ", " + stolen.get() + " stolen",
+				busyNanos.get() / 1e9, blockedNanos.get() / 1e9, getAverageDepth(), getMaxDepth());
+	}
+}
@@ -0,0 +1,95 @@
+package net.cacabish.batch;
+
+import java.util.Locale;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.cacabish.CancellationToken;
+
+/**
+ * Enforces a time budget on each file of a batch, so that one pathological file can't hold up a worker forever.
+ * <br><br>
+ * A single background thread keeps a timer for every file being cleaned. If a file runs out of time, its {@link CancellationToken} is cancelled,
+ * and the thread cleaning it stops at its next check and marks the file as timed out. The watchdog never interrupts or stops a thread itself.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class Watchdog implements AutoCloseable {
+	
+	/**
+	 * A timer for one file. Closing it stops the timer.
+	 */
+	public static final class Watch implements AutoCloseable {
+		/**
+		 * The pending timeout.
+		 */
+		private final ScheduledFuture<?> timeout;
+		
+		Watch(ScheduledFuture<?> timeout) {
+			this.timeout = timeout;
+		}
+		
+		@Override
+		public void close() {
+			timeout.cancel(false);
+		}
+	}
+	
+	/**
+	 * The thread that keeps the timers.
+	 */
+	private final ScheduledThreadPoolExecutor timer;
+	
+	/**
+	 * The number of files that have run out of time.
+	 */
+	private final AtomicLong timedOut = new AtomicLong();
+	
+	/**
+	 * Constructs a watchdog and starts its thread.
+	 */
+	public Watchdog() {
+		timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "batch-watchdog");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.setRemoveOnCancelPolicy(true); // Most files finish in time, so don't let their timers pile up
+	}
+	
+	/**
+	 * Starts a timer that cancels the token once the time is up.
+	 * @param token the token of the file being cleaned
+	 * @param timeoutNanos the time budget, in nanoseconds
+	 * @return the timer, which should be closed once the file is done
+	 */
+	public Watch watch(CancellationToken token, long timeoutNanos) {
+		if (token == null)
+			throw new IllegalArgumentException("token provided was null");
+		if (timeoutNanos < 1)
+			throw new IllegalArgumentException("timeout must be positive");
+		return new Watch(timer.schedule(() -> {
+			timedOut.incrementAndGet();
+			token.cancel(String.format(Locale.US, "timed out after %.1f s", timeoutNanos / 1e9));
+		}, timeoutNanos, TimeUnit.NANOSECONDS));
+	}
+	
+	/**
+	 * @return the number of files that have run out of time
+	 */
+	public long getTimedOut() {
+		return timedOut.get();
+	}
+	
+	/**
+	 * Stops the watchdog's thread. Any timers still running are dropped.
+	 */
+	@Override
+	public void close() {
+		timer.shutdownNow();
+	}
+}
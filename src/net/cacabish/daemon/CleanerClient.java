@@ -0,0 +1,136 @@
+package net.cacabish.daemon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A tiny client for the {@link CleanerDaemon}. It sends one request, prints the daemon's answer, and exits with 0 if the answer was {@code OK} or 1 otherwise.
+ * The daemon's token is read from the file the daemon wrote it to (see {@link CleanerDaemon#getTokenFile(int)}), so the client must be run by the same user.
+ * <br><br>
+ * Usage: {@code CleanerClient [--port N] [--output FILE] [--previous FILE] [--option name=value]... FILE}
+ * <br>
+ * or: {@code CleanerClient [--port N] --ping|--shutdown}
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class CleanerClient {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private CleanerClient() {}
+	
+	/**
+	 * Sends a request to a daemon on this machine and waits for the answer.
+	 * @param port the port the daemon is listening on
+	 * @param request the lines of the request, without the {@code AUTH} line, which is added from the daemon's token file
+	 * @return the daemon's answer
+	 * @throws IOException if the token can't be read, or the daemon can't be reached or hangs up without answering
+	 */
+	public static String send(int port, List<String> request) throws IOException {
+		File tokenFile = CleanerDaemon.getTokenFile(port);
+		String token;
+		try {
+			token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.US_ASCII).trim();
+		} catch (IOException e) {
+			throw new IOException("unable to read the daemon's token from " + tokenFile + "; is the daemon running?", e);
+		}
+		
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+				Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+			out.write("AUTH " + token);
+			out.write('\n');
+			for (String line : request) {
+				out.write(line);
+				out.write('\n');
+			}
+			out.flush();
+			
+			String response = in.readLine();
+			if (response == null) {
+				throw new IOException("the daemon hung up without answering");
+			}
+			return response;
+		}
+	}
+	
+	/**
+	 * Sends the request described by the command line arguments.
+	 * @param args the command line arguments
+	 */
+	public static void main(String[] args) {
+		int port = CleanerDaemon.DEFAULT_PORT;
+		List<String> request = new ArrayList<>();
+		List<String> extras = new ArrayList<>();
+		String file = null;
+		
+		for (int i = 0; i < args.length; i++) {
+			boolean hasValue = i + 1 < args.length;
+			if (args[i].equals("--port") && hasValue) {
+				port = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--output") && hasValue) {
+				extras.add("OUTPUT " + new File(args[++i]).getAbsolutePath());
+			}
+			else if (args[i].equals("--previous") && hasValue) {
+				extras.add("PREVIOUS " + new File(args[++i]).getAbsolutePath());
+			}
+			else if (args[i].equals("--option") && hasValue) {
+				extras.add("OPTION " + args[++i]);
+			}
+			else if (args[i].equals("--ping")) {
+				request.add("PING");
+			}
+			else if (args[i].equals("--shutdown")) {
+				request.add("SHUTDOWN");
+			}
+			else if (!args[i].startsWith("--") && file == null) {
+				file = args[i];
+			}
+			else {
+				usage();
+			}
+		}
+		
+		if (file != null && request.isEmpty()) {
+			// The daemon's working directory isn't ours, so send absolute paths
+			request.add("CLEAN " + new File(file).getAbsolutePath());
+			request.addAll(extras);
+			request.add("END");
+		}
+		else if (file != null || request.size() != 1 || !extras.isEmpty()) {
+			usage();
+		}
+		
+		try {
+			String response = send(port, request);
+			System.out.println(response);
+			System.exit(response.startsWith("OK") ? 0 : 1);
+		} catch (IOException e) {
+			System.out.println("ERROR unable to reach the daemon on port " + port + " (" + e.getMessage() + ")");
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Prints how to use the client and exits.
+	 */
+	private static void usage() {
+		System.err.println("Usage: CleanerClient [--port N] [--output FILE] [--previous FILE] [--option name=value]... FILE");
+		System.err.println("   or: CleanerClient [--port N] --ping|--shutdown");
+		System.exit(2);
+	}
+}
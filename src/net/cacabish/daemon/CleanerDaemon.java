@@ -0,0 +1,539 @@
+package net.cacabish.daemon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.cacabish.CleanedScore;
+import net.cacabish.CleaningOptions;
+import net.cacabish.MeasureManifest;
+import net.cacabish.MusicXMLCleaner;
+
+/**
+ * A long-running cleaner that scripts can send files to, so that they don't have to start a new JVM (and load the parsers and read the DTD files all over again) for every file.
+ * <br><br>
+ * The daemon listens on a port of the loopback address only. Each connection starts by proving it belongs to the same user as the daemon:
+ * when the daemon starts, it writes a random token to a file in the user's home directory that only the user can read (see {@link #getTokenFile(int)}),
+ * and the first line of every connection must be {@code AUTH <token>}. After that, the connection sends one or more requests, one line at a time:
+ * <pre>
+ * CLEAN /path/to/score.musicxml
+ * OUTPUT /path/to/cleaned.musicxml      (optional; by default, the score is cleaned in place)
+ * PREVIOUS /path/to/last/cleaned.musicxml (optional; only used when cleaning incrementally)
+ * OPTION name=value                     (optional and repeatable; see {@link CleaningOptions#set(String, String)})
+ * END
+ * </pre>
+ * The daemon answers each request with a single line: either {@code OK <output file>} or {@code ERROR <message>}.
+ * The single-line requests {@code PING} (answered with {@code OK}) and {@code SHUTDOWN} (which stops the daemon) are also understood.
+ * A line that isn't part of a valid request (or a wrong token) is answered with {@code ERROR} and the connection is closed, so that nothing else
+ * (such as a web page posting to the port) can get a request in after a few lines of garbage.
+ * <br><br>
+ * Every path must be absolute, name a {@code .musicxml} or {@code .xml} file that isn't a symbolic link, and be inside one of the daemon's allowed
+ * directories (the user's home directory, unless told otherwise). Only the options in {@link #ALLOWED_OPTIONS} can be set, so a request can't make
+ * the daemon read any other file (such as a font mapping file) or loosen its limits.
+ * See {@link CleanerClient} for a client.
+ * <br><br>
+ * Requests from different connections are cleaned at the same time, each with its own copy of the daemon's default options.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class CleanerDaemon {
+	
+	/**
+	 * The port the daemon listens on if no other port is given.
+	 */
+	public static final int DEFAULT_PORT = 47317;
+	
+	/**
+	 * How long a connection may sit idle before the daemon hangs up on it, in milliseconds.
+	 */
+	private static final int IDLE_TIMEOUT = 5 * 60 * 1000;
+	
+	/**
+	 * The options a request may set. Anything that reads a file ({@code fontMapper}) or changes the limits is set when the daemon is started instead.
+	 */
+	public static final Set<String> ALLOWED_OPTIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			"addMiniTitlesAndPageNumbers", "addSystemMeasureNumbers", "removeDuplicateCopyrightInfo", "correctTempoMarking",
+			"centerCreditsHorizontally", "offsetSystemMargins", "makeRepeatTextsBold", "addPeriodsToVoltaTexts",
+			"addSwing8thsWhereSwingDirection", "replaceEdwinAndFreeSerifWithTimesNewRoman", "formatOssias",
+			"lazyParsing", "backgroundValidation", "parallelParsing", "validateChanges",
+			"preserveFormatting", "incrementalCleaning", "outputVersion", "parallelWriting")));
+	
+	/**
+	 * The number of random bytes in a token.
+	 */
+	private static final int TOKEN_BYTES = 32;
+	
+	/**
+	 * A tiny score that is cleaned when the daemon starts, so that every class is loaded and every DTD file is read before the first real request comes in.
+	 */
+	private static final String WARM_UP_SCORE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<!DOCTYPE score-partwise PUBLIC \"-//Recordare//DTD MusicXML 4.0 Partwise//EN\" \"http://www.musicxml.org/dtds/partwise.dtd\">\n"
+			+ "<score-partwise version=\"4.0\">\n"
+			+ "  <work>\n"
+			+ "    <work-title>Warm-up</work-title>\n"
+			+ "  </work>\n"
+			+ "  <defaults>\n"
+			+ "    <scaling>\n"
+			+ "      <millimeters>7</millimeters>\n"
+			+ "      <tenths>40</tenths>\n"
+			+ "    </scaling>\n"
+			+ "    <page-layout>\n"
+			+ "      <page-height>1596</page-height>\n"
+			+ "      <page-width>1233</page-width>\n"
+			+ "      <page-margins type=\"both\">\n"
+			+ "        <left-margin>85</left-margin>\n"
+			+ "        <right-margin>85</right-margin>\n"
+			+ "        <top-margin>85</top-margin>\n"
+			+ "        <bottom-margin>85</bottom-margin>\n"
+			+ "      </page-margins>\n"
+			+ "    </page-layout>\n"
+			+ "    <word-font font-family=\"Edwin\" font-size=\"10\"/>\n"
+			+ "  </defaults>\n"
+			+ "  <credit page=\"1\">\n"
+			+ "    <credit-words default-x=\"616\" default-y=\"1511\" justify=\"center\" valign=\"top\" font-size=\"22\">Warm-up</credit-words>\n"
+			+ "  </credit>\n"
+			+ "  <part-list>\n"
+			+ "    <score-part id=\"P1\">\n"
+			+ "      <part-name>Piano</part-name>\n"
+			+ "    </score-part>\n"
+			+ "  </part-list>\n"
+			+ "  <part id=\"P1\">\n"
+			+ "    <measure number=\"1\">\n"
+			+ "      <print>\n"
+			+ "        <system-layout>\n"
+			+ "          <system-margins>\n"
+			+ "            <left-margin>50</left-margin>\n"
+			+ "            <right-margin>0</right-margin>\n"
+			+ "          </system-margins>\n"
+			+ "          <top-system-distance>170</top-system-distance>\n"
+			+ "        </system-layout>\n"
+			+ "      </print>\n"
+			+ "      <attributes>\n"
+			+ "        <divisions>1</divisions>\n"
+			+ "        <time>\n"
+			+ "          <beats>4</beats>\n"
+			+ "          <beat-type>4</beat-type>\n"
+			+ "        </time>\n"
+			+ "        <clef>\n"
+			+ "          <sign>G</sign>\n"
+			+ "          <line>2</line>\n"
+			+ "        </clef>\n"
+			+ "      </attributes>\n"
+			+ "      <direction placement=\"above\">\n"
+			+ "        <direction-type>\n"
+			+ "          <words>Swing</words>\n"
+			+ "        </direction-type>\n"
+			+ "      </direction>\n"
+			+ "      <note>\n"
+			+ "        <rest/>\n"
+			+ "        <duration>4</duration>\n"
+			+ "        <type>whole</type>\n"
+			+ "      </note>\n"
+			+ "    </measure>\n"
+			+ "  </part>\n"
+			+ "</score-partwise>\n";
+	
+	/**
+	 * The socket the daemon listens on.
+	 */
+	private final ServerSocket serverSocket;
+	
+	/**
+	 * The threads that handle connections.
+	 */
+	private final ExecutorService workers;
+	
+	/**
+	 * The options every request starts with, before its own options are applied.
+	 */
+	private final CleaningOptions defaults;
+	
+	/**
+	 * The token every connection must start with.
+	 */
+	private final byte[] token;
+	
+	/**
+	 * The file the token was written to.
+	 */
+	private final File tokenFile;
+	
+	/**
+	 * The directories every path in a request must be inside, as real paths.
+	 */
+	private final List<Path> allowedDirectories = new ArrayList<>();
+	
+	/**
+	 * Constructs a daemon that only cleans files inside the user's home directory, and opens its socket. Nothing is accepted until {@link #serve()} is called.
+	 * @param port the port to listen on, or 0 to pick any free port
+	 * @param threads the most connections to handle at the same time
+	 * @param defaults the options every request starts with
+	 * @throws IOException if the socket can't be opened or the token can't be written
+	 */
+	public CleanerDaemon(int port, int threads, CleaningOptions defaults) throws IOException {
+		this(port, threads, defaults, Collections.singletonList(new File(System.getProperty("user.home"))));
+	}
+	
+	/**
+	 * Constructs a daemon, opens its socket, and writes its token (see {@link #getTokenFile(int)}). Nothing is accepted until {@link #serve()} is called.
+	 * @param port the port to listen on, or 0 to pick any free port
+	 * @param threads the most connections to handle at the same time
+	 * @param defaults the options every request starts with
+	 * @param allowedDirectories the directories every file a request names must be inside
+	 * @throws IOException if the socket can't be opened, an allowed directory doesn't exist, or the token can't be written
+	 */
+	public CleanerDaemon(int port, int threads, CleaningOptions defaults, List<File> allowedDirectories) throws IOException {
+		if (threads < 1)
+			throw new IllegalArgumentException("there must be at least one thread");
+		if (defaults == null)
+			throw new IllegalArgumentException("options provided were null");
+		if (allowedDirectories == null || allowedDirectories.isEmpty())
+			throw new IllegalArgumentException("allowed directories provided were null or empty");
+		for (File directory : allowedDirectories) {
+			this.allowedDirectories.add(directory.toPath().toRealPath());
+		}
+		
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "cleaner-daemon-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.defaults = defaults.copy();
+		
+		byte[] random = new byte[TOKEN_BYTES];
+		new SecureRandom().nextBytes(random);
+		StringBuilder hex = new StringBuilder();
+		for (byte b : random) {
+			hex.append(String.format(Locale.ROOT, "%02x", b));
+		}
+		this.token = hex.toString().getBytes(StandardCharsets.US_ASCII);
+		this.tokenFile = getTokenFile(getPort());
+		try {
+			writeToken(tokenFile, hex.toString());
+		} catch (IOException e) {
+			serverSocket.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Where a daemon on a port keeps its token: {@code .musicxml-cleaner-daemon-<port>.token} in the user's home directory.
+	 * @param port the daemon's port
+	 * @return the token file
+	 */
+	public static File getTokenFile(int port) {
+		return new File(System.getProperty("user.home"), ".musicxml-cleaner-daemon-" + port + ".token");
+	}
+	
+	/**
+	 * Writes a token to a new file that only the user can read, replacing any old one.
+	 * @param file the file
+	 * @param token the token
+	 * @throws IOException if the file can't be written
+	 */
+	private static void writeToken(File file, String token) throws IOException {
+		Path path = file.toPath();
+		Files.deleteIfExists(path);
+		try {
+			if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+				Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+			}
+			else {
+				Files.createFile(path);
+				file.setReadable(false, false);
+				file.setWritable(false, false);
+				file.setReadable(true, true);
+				file.setWritable(true, true);
+			}
+		} catch (FileAlreadyExistsException e) {
+			throw new IOException("someone else created " + file + " first");
+		}
+		Files.write(path, token.getBytes(StandardCharsets.US_ASCII));
+	}
+	
+	/**
+	 * @return the port the daemon is listening on
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * Cleans a tiny built-in score, both normally and lazily and as both MusicXML 4.0 and 3.1, so that the parsers and writers are loaded and the DTD files for each version are in memory.
+	 * @throws IOException if the temporary files can't be written
+	 */
+	public void warmUp() throws IOException {
+		warmUp(defaults);
+	}
+	
+	/**
+	 * Cleans a tiny built-in score, both normally and lazily and as both MusicXML 4.0 and 3.1, so that the parsers and writers are loaded and the DTD files for each version are in memory.
+	 * Each thread keeps its own parser, so anything with a pool of threads should warm up every thread.
+	 * @param defaults the options the real scores will be cleaned with
+	 * @throws IOException if the temporary files can't be written
+	 */
+	public static void warmUp(CleaningOptions defaults) throws IOException {
+		long start = System.nanoTime();
+		File input = File.createTempFile("cleaner-warm-up", ".musicxml");
+		File output = File.createTempFile("cleaner-warm-up", ".cleaned.musicxml");
+		try {
+			CleaningOptions options = defaults.copy();
+			options.incrementalCleaning = false;
+			for (String version : new String[] {"4.0", "3.1"}) {
+				Files.write(input.toPath(), WARM_UP_SCORE.replace("4.0", version).getBytes(StandardCharsets.UTF_8));
+				for (boolean lazy : new boolean[] {false, true}) {
+					options.lazyParsing = lazy;
+					MusicXMLCleaner.writeToFile(MusicXMLCleaner.clean(input, null, options), output);
+				}
+			}
+		} catch (Exception e) {
+			// Not being warm isn't the end of the world
+			System.out.println("Unable to warm up (" + e + "). Continuing anyway.");
+		} finally {
+			input.delete();
+			output.delete();
+			MeasureManifest.getManifestFile(output).delete();
+		}
+		System.out.println("Warmed up in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+	}
+	
+	/**
+	 * Accepts connections until the daemon is shut down.
+	 * @throws IOException if there is an issue accepting a connection
+	 */
+	public void serve() throws IOException {
+		System.out.println("Listening on " + serverSocket.getInetAddress().getHostAddress() + ":" + getPort() + "...");
+		try {
+			while (!serverSocket.isClosed()) {
+				Socket socket;
+				try {
+					socket = serverSocket.accept();
+				} catch (SocketException e) {
+					if (serverSocket.isClosed()) {
+						break; // We've been shut down
+					}
+					throw e;
+				}
+				workers.execute(() -> handle(socket));
+			}
+		} finally {
+			workers.shutdown();
+			tokenFile.delete();
+		}
+		System.out.println("Daemon stopped.");
+	}
+	
+	/**
+	 * Stops accepting connections. Requests that are already being cleaned are allowed to finish.
+	 */
+	public void shutdown() {
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// It's closed either way
+		}
+	}
+	
+	/**
+	 * Answers every request on a connection until the client hangs up, or sends something that isn't a valid request.
+	 * @param socket the connection
+	 */
+	private void handle(Socket socket) {
+		try (Socket s = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)) {
+			s.setSoTimeout(IDLE_TIMEOUT);
+			
+			try {
+				String line = in.readLine();
+				if (line == null || !line.startsWith("AUTH ")
+						|| !MessageDigest.isEqual(token, line.substring(5).trim().getBytes(StandardCharsets.US_ASCII))) {
+					throw new ProtocolException("not authorized");
+				}
+				
+				while ((line = in.readLine()) != null) {
+					if (line.isEmpty()) {
+						continue;
+					}
+					
+					String response;
+					if (line.equals("PING")) {
+						response = "OK";
+					}
+					else if (line.equals("SHUTDOWN")) {
+						response = "OK";
+						shutdown();
+					}
+					else if (line.startsWith("CLEAN ")) {
+						response = clean(line.substring(6), in);
+					}
+					else {
+						throw new ProtocolException("unknown request: " + line);
+					}
+					
+					out.write(response);
+					out.write('\n');
+					out.flush();
+				}
+			} catch (ProtocolException e) {
+				// Whoever this is, they aren't speaking our protocol, so don't read another line from them
+				out.write("ERROR " + e.getMessage().replace('\n', ' '));
+				out.write('\n');
+				out.flush();
+			}
+		} catch (IOException e) {
+			System.out.println("Connection dropped (" + e.getMessage() + ").");
+		}
+	}
+	
+	/**
+	 * Reads the rest of a {@code CLEAN} request, then cleans the file.
+	 * @param path the file to clean
+	 * @param in the rest of the request
+	 * @return the response
+	 * @throws ProtocolException if a line of the request isn't valid, in which case the connection should be closed
+	 * @throws IOException if there is an issue reading the request
+	 */
+	private String clean(String path, BufferedReader in) throws IOException {
+		File file = checkPath(path);
+		File output = file;
+		File previous = null;
+		CleaningOptions options = defaults.copy();
+		
+		String line;
+		while ((line = in.readLine()) != null && !line.equals("END")) {
+			if (line.startsWith("OUTPUT ")) {
+				output = checkPath(line.substring(7));
+			}
+			else if (line.startsWith("PREVIOUS ")) {
+				previous = checkPath(line.substring(9));
+			}
+			else if (line.startsWith("OPTION ")) {
+				int equals = line.indexOf('=');
+				if (equals < 0) {
+					throw new ProtocolException("malformed option: " + line.substring(7));
+				}
+				String name = line.substring(7, equals).trim();
+				if (!ALLOWED_OPTIONS.contains(name)) {
+					throw new ProtocolException("option not allowed: " + name);
+				}
+				try {
+					options.set(name, line.substring(equals + 1).trim());
+				} catch (IllegalArgumentException e) {
+					throw new ProtocolException(e.getMessage());
+				}
+			}
+			else if (!line.isEmpty()) {
+				throw new ProtocolException("unknown request line: " + line);
+			}
+		}
+		if (line == null) {
+			throw new IOException("request ended without END");
+		}
+		
+		try {
+			CleanedScore score = MusicXMLCleaner.clean(file, previous == null ? output : previous, options);
+			MusicXMLCleaner.writeToFile(score, output);
+			return "OK " + output.getPath();
+		} catch (Exception e) {
+			return "ERROR " + String.valueOf(e.getMessage()).replace('\n', ' ');
+		}
+	}
+	
+	/**
+	 * Checks that a path in a request is one the daemon may read and write: an absolute path to a {@code .musicxml} or {@code .xml} file
+	 * that isn't a symbolic link, in a directory that is (once every link is followed) inside one of the allowed directories.
+	 * @param path the path
+	 * @return the file
+	 * @throws ProtocolException if the path isn't allowed
+	 */
+	private File checkPath(String path) throws ProtocolException {
+		File file = new File(path.trim());
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		if (!file.isAbsolute() || !(name.endsWith(".musicxml") || name.endsWith(".xml"))) {
+			throw new ProtocolException("not an absolute path to a MusicXML file: " + path);
+		}
+		
+		Path normalized = file.toPath().normalize();
+		Path directory;
+		try {
+			directory = normalized.getParent().toRealPath();
+		} catch (IOException e) {
+			throw new ProtocolException("no such directory: " + normalized.getParent());
+		}
+		if (Files.isSymbolicLink(normalized) || Files.isDirectory(normalized, LinkOption.NOFOLLOW_LINKS)) {
+			throw new ProtocolException("not a regular file: " + path);
+		}
+		for (Path allowed : allowedDirectories) {
+			if (directory.startsWith(allowed)) {
+				return directory.resolve(normalized.getFileName()).toFile();
+			}
+		}
+		throw new ProtocolException("not inside an allowed directory: " + path);
+	}
+	
+	/**
+	 * Starts a daemon with the default options and runs it until it is shut down.
+	 * Usage: {@code CleanerDaemon [--port N] [--threads N] [--allow DIR]...}
+	 * <br><br>
+	 * Each {@code --allow} adds a directory that requests may clean files in. Without any, only the user's home directory is allowed.
+	 * @param args the command line arguments
+	 * @throws IOException if the daemon can't be started
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = DEFAULT_PORT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<File> allowedDirectories = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--port") && i + 1 < args.length) {
+				port = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--allow") && i + 1 < args.length) {
+				allowedDirectories.add(new File(args[++i]));
+			}
+			else {
+				System.err.println("Usage: CleanerDaemon [--port N] [--threads N] [--allow DIR]...");
+				System.exit(2);
+			}
+		}
+		
+		if (allowedDirectories.isEmpty()) {
+			allowedDirectories.add(new File(System.getProperty("user.home")));
+		}
+		CleanerDaemon daemon = new CleanerDaemon(port, threads, CleaningOptions.fromCurrentFlags(), allowedDirectories);
+		daemon.warmUp();
+		daemon.serve();
+	}
+}
@@ -0,0 +1,487 @@
+package net.cacabish.daemon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.xml.sax.SAXException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import net.cacabish.CleanedScore;
+import net.cacabish.CleaningOptions;
+import net.cacabish.LimitExceededException;
+import net.cacabish.MusicXMLCleaner;
+import net.cacabish.ParsingLimits;
+
+/**
+ * A small HTTP service that cleans scores sent to it, using the HTTP server built into the JDK. Nothing is written to disk.
+ * <br><br>
+ * {@code POST /clean} with the score as the body. Options are given as query parameters, e.g. {@code /clean?lazyParsing=true&formatOssias=false}
+ * (see {@link CleaningOptions#set(String, String)}). The body may be gzipped if it is sent with {@code Content-Encoding: gzip}.
+ * The whole body is read (and checked against the size limit) before the request waits for a cleaning slot, so a client that sends slowly
+ * never holds up the cleaning. It must arrive within {@value #READ_TIMEOUT} seconds; the JDK's server drops the connection of a client that stops sending altogether
+ * (see {@code sun.net.httpserver.maxReqTime}, which is set to the same unless it already has been).
+ * The cleaned score is written out in full before it is sent back (so a score that fails to write is a 500, never a cut-off 200), gzipped if the client sends {@code Accept-Encoding: gzip}.
+ * <br>
+ * {@code GET /health} answers {@code OK}.
+ * <br><br>
+ * Errors are answered with a plain text message and one of these statuses:
+ * <ul>
+ * <li>400 if an option is unknown, malformed, or not allowed, or the body isn't valid gzip</li>
+ * <li>405 if the wrong method is used</li>
+ * <li>408 if the body took too long to arrive</li>
+ * <li>413 if the score is larger than the size limit (after unzipping) or than the limits allow</li>
+ * <li>422 if the score isn't valid MusicXML, or goes over one of its other limits (see {@link ParsingLimits})</li>
+ * <li>503 if too many scores are already being cleaned and none finished in time</li>
+ * </ul>
+ * Options that would read files on the server's machine ({@code fontMapper}), need a previous output ({@code incrementalCleaning}), or start threads
+ * of their own that the limit on concurrent scores wouldn't count ({@code parallelParsing}, {@code parallelWriting} and {@code backgroundValidation}) are not allowed,
+ * and neither are the limits, which are set when the server is started ({@link ParsingLimits#UNTRUSTED} unless told otherwise).
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class CleanerHttpServer {
+	
+	/**
+	 * The port the server listens on if no other port is given.
+	 */
+	public static final int DEFAULT_PORT = 47318;
+	
+	/**
+	 * The largest score accepted if no other limit is given, in bytes. This is after unzipping.
+	 */
+	public static final int DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+	
+	/**
+	 * The MIME type of an uncompressed MusicXML file.
+	 */
+	private static final String MUSICXML_TYPE = "application/vnd.recordare.musicxml+xml";
+	
+	/**
+	 * How long a request waits for a free cleaning slot before giving up, in seconds.
+	 */
+	private static final int SLOT_TIMEOUT = 30;
+	
+	/**
+	 * How long the body of a request may take to arrive, in seconds.
+	 */
+	private static final int READ_TIMEOUT = 30;
+	
+	/**
+	 * The system property the JDK's server reads the longest time a request may take to arrive from, in seconds.
+	 */
+	private static final String MAX_REQUEST_TIME = "sun.net.httpserver.maxReqTime";
+	
+	/**
+	 * The options that can't be set in a request.
+	 */
+	private static final Set<String> FORBIDDEN_OPTIONS = new HashSet<>(Arrays.asList("fontMapper", "incrementalCleaning",
+			"parallelParsing", "parallelWriting", "backgroundValidation"));
+	
+	/**
+	 * The server itself.
+	 */
+	private final HttpServer server;
+	
+	/**
+	 * The threads that handle requests.
+	 */
+	private final ExecutorService workers;
+	
+	/**
+	 * Limits how many scores are cleaned at the same time, since every score being cleaned is held in memory.
+	 */
+	final Semaphore cleaningSlots;
+	
+	/**
+	 * How long a request waits for a free cleaning slot before giving up, in seconds. Only changed by tests, so they don't have to wait.
+	 */
+	int slotTimeout = SLOT_TIMEOUT;
+	
+	/**
+	 * The largest score accepted, in bytes.
+	 */
+	private final int maxBytes;
+	
+	/**
+	 * The options every request starts with, before its own options are applied.
+	 */
+	private final CleaningOptions defaults;
+	
+	static {
+		// The JDK's server only reads this the first time a server is made
+		if (System.getProperty(MAX_REQUEST_TIME) == null) {
+			System.setProperty(MAX_REQUEST_TIME, String.valueOf(READ_TIMEOUT));
+		}
+	}
+	
+	/**
+	 * Constructs a server and opens its socket. Nothing is accepted until {@link #start()} is called.
+	 * @param address the address to listen on
+	 * @param maxConcurrent the most scores to clean at the same time
+	 * @param maxBytes the largest score to accept, in bytes
+	 * @param defaults the options every request starts with
+	 * @throws IOException if the socket can't be opened
+	 */
+	public CleanerHttpServer(InetSocketAddress address, int maxConcurrent, int maxBytes, CleaningOptions defaults) throws IOException {
+		if (maxConcurrent < 1)
+			throw new IllegalArgumentException("must be able to clean at least one score at a time");
+		if (maxBytes < 1)
+			throw new IllegalArgumentException("size limit must be positive");
+		if (defaults == null)
+			throw new IllegalArgumentException("options provided were null");
+		
+		this.cleaningSlots = new Semaphore(maxConcurrent, true);
+		this.maxBytes = maxBytes;
+		this.defaults = defaults.copy();
+		
+		// Twice as many threads as slots, so that requests can be read in (and turned away) while others are being cleaned
+		this.workers = Executors.newFixedThreadPool(maxConcurrent * 2, runnable -> {
+			Thread thread = new Thread(runnable, "cleaner-http-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server = HttpServer.create(address, 0);
+		this.server.setExecutor(workers);
+		this.server.createContext("/clean", this::handleClean);
+		this.server.createContext("/health", exchange -> respond(exchange, 200, "OK"));
+	}
+	
+	/**
+	 * @return the port the server is listening on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+	
+	/**
+	 * Starts accepting requests in the background.
+	 */
+	public void start() {
+		server.start();
+		System.out.println("Listening on http://" + server.getAddress().getAddress().getHostAddress() + ":" + getPort() + "/clean ...");
+	}
+	
+	/**
+	 * Stops accepting requests, giving requests in progress a few seconds to finish.
+	 */
+	public void stop() {
+		server.stop(5);
+		workers.shutdown();
+	}
+	
+	/**
+	 * Handles a request to clean a score.
+	 * @param exchange the request
+	 * @throws IOException if there is an issue talking to the client
+	 */
+	private void handleClean(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals("POST")) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				respond(exchange, 405, "Send the score with POST.");
+				return;
+			}
+			
+			// Check the options before reading anything
+			CleaningOptions options;
+			try {
+				options = parseOptions(exchange.getRequestURI().getRawQuery());
+			} catch (IllegalArgumentException e) {
+				respond(exchange, 400, e.getMessage());
+				return;
+			}
+			
+			String length = exchange.getRequestHeaders().getFirst("Content-Length");
+			if (length != null && isLongerThan(length, maxBytes)) {
+				respond(exchange, 413, "Scores may be at most " + maxBytes + " bytes.");
+				return;
+			}
+			
+			// Read the whole score before taking a cleaning slot, so that a slow client only ties up its own thread
+			ByteBuffer source;
+			try {
+				source = readBody(exchange);
+			} catch (ZipException e) {
+				respond(exchange, 400, "The body isn't valid gzip: " + e.getMessage());
+				return;
+			} catch (SocketTimeoutException e) {
+				respond(exchange, 408, e.getMessage());
+				return;
+			}
+			if (source == null) {
+				respond(exchange, 413, "Scores may be at most " + maxBytes + " bytes.");
+				return;
+			}
+			
+			clean(exchange, source, options);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			respond(exchange, 503, "The server is shutting down.");
+		} finally {
+			exchange.close();
+		}
+	}
+	
+	/**
+	 * Reads the body of a request, unzipping it if it's gzipped.
+	 * @param exchange the request
+	 * @return the body, or {@code null} if it's larger than the size limit
+	 * @throws ZipException if the body is meant to be gzipped but isn't
+	 * @throws SocketTimeoutException if the body took longer than {@value #READ_TIMEOUT} seconds to arrive
+	 * @throws IOException if there is an issue talking to the client
+	 */
+	private ByteBuffer readBody(HttpExchange exchange) throws IOException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(READ_TIMEOUT);
+		InputStream in = exchange.getRequestBody();
+		if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+			in = new GZIPInputStream(in);
+		}
+		return readAtMost(in, maxBytes, deadline);
+	}
+	
+	/**
+	 * Cleans and sends back a score, waiting for a cleaning slot to clean it in.
+	 * @param exchange the request
+	 * @param source the score
+	 * @param options the options to clean with
+	 * @throws IOException if there is an issue talking to the client
+	 * @throws InterruptedException if the thread is interrupted while waiting for a slot
+	 */
+	private void clean(HttpExchange exchange, ByteBuffer source, CleaningOptions options) throws IOException, InterruptedException {
+		if (!cleaningSlots.tryAcquire(slotTimeout, TimeUnit.SECONDS)) {
+			exchange.getResponseHeaders().set("Retry-After", String.valueOf(SLOT_TIMEOUT));
+			respond(exchange, 503, "Too many scores are being cleaned right now. Try again later.");
+			return;
+		}
+		CleanedScore score;
+		try {
+			score = MusicXMLCleaner.clean(source, options);
+		} catch (LimitExceededException e) {
+			if (e.getLimit().equals("maxFileSize")) {
+				respond(exchange, 413, "Score is too large: " + e.getMessage());
+			}
+			else {
+				respond(exchange, 422, "Rejected: " + e.getMessage());
+			}
+			return;
+		} catch (SAXException e) {
+			respond(exchange, 422, "Not a valid MusicXML file: " + e.getMessage());
+			return;
+		} catch (Exception e) {
+			respond(exchange, 500, "Unable to clean the score: " + e);
+			return;
+		} finally {
+			cleaningSlots.release();
+		}
+		
+		// Write the whole result first, so that a failure can still be reported properly
+		boolean gzip = acceptsGzip(exchange);
+		ByteArrayOutputStream cleaned = new ByteArrayOutputStream(source.capacity() / (gzip ? 8 : 1) + 8192);
+		try (OutputStream out = gzip ? new GZIPOutputStream(cleaned, 8192) : cleaned) {
+			MusicXMLCleaner.writeToStream(score, out);
+		} catch (Exception e) {
+			respond(exchange, 500, "Unable to write the cleaned score: " + e);
+			return;
+		}
+		
+		exchange.getResponseHeaders().set("Content-Type", MUSICXML_TYPE);
+		if (gzip) {
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+		exchange.sendResponseHeaders(200, cleaned.size());
+		try (OutputStream body = exchange.getResponseBody()) {
+			cleaned.writeTo(body);
+		}
+	}
+	
+	/**
+	 * Builds the options for a request from its query string.
+	 * @param rawQuery the raw query string, or {@code null}
+	 * @return the options
+	 * @throws IllegalArgumentException if an option is unknown, malformed, or not allowed
+	 */
+	private CleaningOptions parseOptions(String rawQuery) {
+		CleaningOptions options = defaults.copy();
+		options.incrementalCleaning = false;
+		// One score, one thread, so that the cleaning slots really do limit the threads
+		options.parallelParsing = false;
+		options.parallelWriting = false;
+		options.backgroundValidation = false;
+		if (rawQuery == null || rawQuery.isEmpty()) {
+			return options;
+		}
+		
+		for (String parameter : rawQuery.split("&")) {
+			if (parameter.isEmpty()) {
+				continue;
+			}
+			int equals = parameter.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("malformed option: " + parameter);
+			}
+			String name = decode(parameter.substring(0, equals));
+			if (FORBIDDEN_OPTIONS.contains(name) || name.equals("limits") || name.startsWith("limits.")) {
+				throw new IllegalArgumentException("option not allowed: " + name);
+			}
+			try {
+				options.set(name, decode(parameter.substring(equals + 1)));
+			} catch (IOException e) {
+				throw new IllegalArgumentException(e.getMessage()); // Only the font mapper reads files, and it's forbidden anyway
+			}
+		}
+		return options;
+	}
+	
+	/**
+	 * Decodes part of a query string.
+	 * @param text the encoded text
+	 * @return the decoded text
+	 */
+	private static String decode(String text) {
+		try {
+			return URLDecoder.decode(text, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e); // Every JVM has UTF-8
+		}
+	}
+	
+	/**
+	 * Checks a {@code Content-Length} header against a limit.
+	 * @param length the header
+	 * @param limit the limit
+	 * @return true if the length is over the limit (or isn't a number)
+	 */
+	private static boolean isLongerThan(String length, int limit) {
+		try {
+			return Long.parseLong(length.trim()) > limit;
+		} catch (NumberFormatException e) {
+			return true;
+		}
+	}
+	
+	/**
+	 * Reads a stream to the end, as long as it isn't too long and doesn't take too long.
+	 * @param in the stream
+	 * @param limit the most bytes to read
+	 * @param deadline when reading must be done by, as a {@link System#nanoTime()}
+	 * @return the bytes, or {@code null} if there were more than {@code limit} of them
+	 * @throws SocketTimeoutException if the deadline passed before the end of the stream
+	 * @throws IOException if there is an issue reading the stream
+	 */
+	private static ByteBuffer readAtMost(InputStream in, int limit, long deadline) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			if (bytes.size() + read > limit) {
+				return null;
+			}
+			if (System.nanoTime() - deadline > 0) {
+				throw new SocketTimeoutException("The score took longer than " + READ_TIMEOUT + " seconds to arrive.");
+			}
+			bytes.write(buffer, 0, read);
+		}
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+	
+	/**
+	 * @param exchange the request
+	 * @return true if the client accepts gzipped responses
+	 */
+	private static boolean acceptsGzip(HttpExchange exchange) {
+		for (String header : exchange.getRequestHeaders().getOrDefault("Accept-Encoding", Collections.emptyList())) {
+			for (String coding : header.split(",")) {
+				String name = coding.trim().toLowerCase(Locale.ROOT);
+				if (name.equals("gzip") || (name.startsWith("gzip;") && !name.replace(" ", "").endsWith("q=0"))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Sends a short plain text response.
+	 * @param exchange the request
+	 * @param status the HTTP status
+	 * @param message the message
+	 * @throws IOException if there is an issue talking to the client
+	 */
+	private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream body = exchange.getResponseBody()) {
+			body.write(bytes);
+		}
+	}
+	
+	/**
+	 * Starts a server with the default options and runs it until the JVM is stopped.
+	 * Usage: {@code CleanerHttpServer [--bind ADDRESS] [--port N] [--concurrent N] [--max-bytes N] [--limits NAME]}
+	 * <br>
+	 * By default, the server only listens on the loopback address, and holds scores to the {@code untrusted} limits.
+	 * @param args the command line arguments
+	 * @throws IOException if the server can't be started
+	 */
+	public static void main(String[] args) throws IOException {
+		InetAddress bind = InetAddress.getLoopbackAddress();
+		int port = DEFAULT_PORT;
+		int concurrent = Runtime.getRuntime().availableProcessors();
+		int maxBytes = DEFAULT_MAX_BYTES;
+		ParsingLimits limits = ParsingLimits.UNTRUSTED;
+		for (int i = 0; i < args.length; i++) {
+			boolean hasValue = i + 1 < args.length;
+			if (args[i].equals("--bind") && hasValue) {
+				bind = InetAddress.getByName(args[++i]);
+			}
+			else if (args[i].equals("--port") && hasValue) {
+				port = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--concurrent") && hasValue) {
+				concurrent = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--max-bytes") && hasValue) {
+				maxBytes = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--limits") && hasValue) {
+				limits = ParsingLimits.forName(args[++i]);
+			}
+			else {
+				System.err.println("Usage: CleanerHttpServer [--bind ADDRESS] [--port N] [--concurrent N] [--max-bytes N] [--limits NAME]");
+				System.exit(2);
+			}
+		}
+		
+		CleaningOptions defaults = CleaningOptions.fromCurrentFlags();
+		defaults.limits = limits;
+		CleanerHttpServer server = new CleanerHttpServer(new InetSocketAddress(bind, port), concurrent, maxBytes, defaults);
+		server.start();
+	}
+}
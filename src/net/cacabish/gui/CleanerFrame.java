@@ -21,6 +21,7 @@ import javax.net.ssl.HttpsURLConnection;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JEditorPane;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -40,6 +41,7 @@ import javax.swing.event.HyperlinkEvent;
 import javax.swing.event.HyperlinkListener;
 import javax.swing.filechooser.FileFilter;
 
+import net.cacabish.FontMapper;
 import net.cacabish.MusicXMLCleaner;
 
 /**
@@ -158,6 +160,17 @@ public class CleanerFrame extends JFrame {
 		});
 		menuFile.add(menuItemOpenFile);
 		
+		JMenuItem menuItemLoadFontMapping = new JMenuItem("Load Font Mapping...");
+		menuItemLoadFontMapping.setToolTipText("<html>Loads a text file of font replacements, one per line, in the form <tt>Source Font = Target Font</tt>.</html>");
+		menuItemLoadFontMapping.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				showFileChooserAndLoadFontMapping();
+			}
+		});
+		menuFile.add(menuItemLoadFontMapping);
+		
 		JSeparator separator = new JSeparator();
 		menuFile.add(separator);
 		
@@ -171,6 +184,51 @@ public class CleanerFrame extends JFrame {
 		});
 		menuFile.add(menuItemExit);
 		
+		JMenu menuSettings = new JMenu("Settings");
+		menuBar.add(menuSettings);
+		
+		JCheckBoxMenuItem menuItemLazyParsing = new JCheckBoxMenuItem("Lazy Parsing (Uses Less Memory)");
+		menuItemLazyParsing.setToolTipText("<html>If checked, notes are kept as raw text until an operation needs them."
+				+ "<br>This uses much less memory for large scores. Requires a UTF-8 encoded file.</html>");
+		menuItemLazyParsing.setSelected(MusicXMLCleaner.lazyParsing); // Set the default
+		menuItemLazyParsing.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				// When the item is ticked or unticked, update the flag.
+				MusicXMLCleaner.lazyParsing = menuItemLazyParsing.isSelected();
+			}
+		});
+		menuSettings.add(menuItemLazyParsing);
+		
+		JCheckBoxMenuItem menuItemPreserveFormatting = new JCheckBoxMenuItem("Preserve Original Formatting");
+		menuItemPreserveFormatting.setToolTipText("<html>If checked, only the parts of the file that were changed are rewritten when saving."
+				+ "<br>Everything else is kept exactly as it was, so the changes are easy to compare. Requires a UTF-8 encoded file.</html>");
+		menuItemPreserveFormatting.setSelected(MusicXMLCleaner.preserveFormatting); // Set the default
+		menuItemPreserveFormatting.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				// When the item is ticked or unticked, update the flag.
+				MusicXMLCleaner.preserveFormatting = menuItemPreserveFormatting.isSelected();
+			}
+		});
+		menuSettings.add(menuItemPreserveFormatting);
+		
+		JCheckBoxMenuItem menuItemIncrementalCleaning = new JCheckBoxMenuItem("Incremental Re-cleaning (Reuses Unchanged Measures)");
+		menuItemIncrementalCleaning.setToolTipText("<html>If checked, a manifest is saved beside each cleaned file."
+				+ "<br>When the score is re-exported and cleaned again, only the measures that changed are cleaned again.</html>");
+		menuItemIncrementalCleaning.setSelected(MusicXMLCleaner.incrementalCleaning); // Set the default
+		menuItemIncrementalCleaning.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				// When the item is ticked or unticked, update the flag.
+				MusicXMLCleaner.incrementalCleaning = menuItemIncrementalCleaning.isSelected();
+			}
+		});
+		menuSettings.add(menuItemIncrementalCleaning);
+		
 		JMenu menuHelp = new JMenu("Help");
 		menuBar.add(menuHelp);
 		
@@ -594,6 +652,33 @@ public class CleanerFrame extends JFrame {
 		}
 	}
 	
+	/**
+	 * Shows a JFileChooser and then loads the font mapping selected, if one is chosen.
+	 */
+	private void showFileChooserAndLoadFontMapping() {
+		// Open the file chooser
+		final JFileChooser fileChooser = new JFileChooser();
+		fileChooser.setMultiSelectionEnabled(false);
+		
+		// Show the file chooser and get the response
+		int response = fileChooser.showOpenDialog(contentPane);
+		if (response != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		
+		File file = fileChooser.getSelectedFile();
+		try {
+			FontMapper mapper = FontMapper.load(file);
+			MusicXMLCleaner.fontMapper = mapper;
+			
+			JOptionPane.showMessageDialog(contentPane, "Loaded " + mapper.getMappings().size() + " font mapping(s) from " + file.getName(),
+					"Font Mapping Loaded", JOptionPane.INFORMATION_MESSAGE);
+		} catch (Exception e) {
+			JOptionPane.showMessageDialog(contentPane, "Unable to load " + file.getName() + ". Reason: " + e.getMessage(),
+					"Failed to Load Font Mapping", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+	
 	/**
 	 * Loads a .musicxml file, preparatory to be run through the cleaner methods
 	 * @param fileToLoad the file to load
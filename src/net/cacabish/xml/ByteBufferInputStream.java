@@ -0,0 +1,73 @@
+package net.cacabish.xml;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@code InputStream} that reads from a region of a {@code ByteBuffer}, such as a memory-mapped file, without copying it first.
+ * The buffer's own position and limit are never modified.
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public class ByteBufferInputStream extends InputStream {
+	
+	/**
+	 * A private view of the buffer, so that reading doesn't disturb anyone else using the buffer.
+	 */
+	private final ByteBuffer view;
+	
+	/**
+	 * Constructs a stream over the buffer's remaining bytes.
+	 * @param buffer the buffer to read from
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		this(buffer, buffer.position(), buffer.limit());
+	}
+	
+	/**
+	 * Constructs a stream over a region of the buffer.
+	 * @param buffer the buffer to read from
+	 * @param start the index of the first byte to read
+	 * @param end the index one past the last byte to read
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer, int start, int end) {
+		view = buffer.duplicate();
+		view.limit(end);
+		view.position(start);
+	}
+	
+	@Override
+	public int read() {
+		if (!view.hasRemaining()) {
+			return -1;
+		}
+		return view.get() & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		if (!view.hasRemaining()) {
+			return -1;
+		}
+		int count = Math.min(len, view.remaining());
+		view.get(b, off, count);
+		return count;
+	}
+	
+	@Override
+	public long skip(long n) {
+		int count = (int) Math.max(0, Math.min(n, view.remaining()));
+		view.position(view.position() + count);
+		return count;
+	}
+	
+	@Override
+	public int available() {
+		return view.remaining();
+	}
+
+}
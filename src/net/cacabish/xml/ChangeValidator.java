@@ -0,0 +1,423 @@
+package net.cacabish.xml;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DeclHandler;
+
+import net.cacabish.MusicXMLEntityResolver;
+
+/**
+ * Checks that cleaning kept a valid score valid, by checking only the elements that were actually touched against the MusicXML grammar.
+ * <br><br>
+ * While a score is being cleaned, each cleaning operation tells the validator about the elements it changes ({@link #changed(Element)}) and the ones it
+ * inserts ({@link #inserted(Element)}). Afterwards, each changed element's children are checked against its content model and its attributes against its
+ * attribute list, and each inserted element is checked along with everything inside it and the element it was inserted into. Nothing else is looked at,
+ * so the check is much cheaper than validating the whole output again, and recording costs next to nothing, since the DOM doesn't have to dispatch
+ * a mutation event for every change. An operation that forgets to say what it touched just goes unchecked.
+ * <br><br>
+ * The content models are read from the bundled DTD for the score's version, and compiled into regular expressions over the names of an element's children.
+ * This is done once per version, the first time it's needed, and shared by every thread after that.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class ChangeValidator {
+	
+	/**
+	 * The user data key under which the validator is stored on the document.
+	 */
+	private static final String VALIDATOR_KEY = "net.cacabish.xml.ChangeValidator";
+	
+	/**
+	 * The compiled grammar for each schema directory.
+	 */
+	private static final ConcurrentHashMap<String, Grammar> GRAMMARS = new ConcurrentHashMap<>();
+	
+	/**
+	 * The rules for one element, as declared in the DTD.
+	 */
+	private static final class Rules {
+		/**
+		 * Matches the names of the element's children, each followed by a space. {@code null} if the element has mixed content.
+		 */
+		Pattern children;
+		/**
+		 * The children allowed in mixed content, or in {@code ANY} content (where it's {@code null}).
+		 */
+		Set<String> mixed = Collections.emptySet();
+		/**
+		 * Whether the element may contain text.
+		 */
+		boolean text;
+		/**
+		 * The declared attributes, mapped to their allowed values (or {@code null} if any value is allowed).
+		 */
+		final Map<String, Set<String>> attributes = new HashMap<>();
+		/**
+		 * The attributes that must be there.
+		 */
+		final Set<String> required = new HashSet<>();
+	}
+	
+	/**
+	 * Every element's rules, for one version of MusicXML.
+	 */
+	private static final class Grammar implements DeclHandler {
+		/**
+		 * The rules, keyed by element name.
+		 */
+		final Map<String, Rules> rules = new HashMap<>();
+		
+		@Override
+		public void elementDecl(String name, String model) {
+			Rules element = rules.computeIfAbsent(name, n -> new Rules());
+			if (model.equals("EMPTY")) {
+				element.children = Pattern.compile("");
+			}
+			else if (model.equals("ANY")) {
+				element.text = true;
+				element.mixed = null;
+			}
+			else if (model.startsWith("(#PCDATA")) {
+				// Mixed content is always (#PCDATA|a|b)*, so only which children may appear matters, not their order
+				element.text = true;
+				element.mixed = new HashSet<>();
+				for (String child : model.replaceAll("[()*\\s]", "").split("\\|")) {
+					if (!child.equals("#PCDATA")) {
+						element.mixed.add(child);
+					}
+				}
+			}
+			else {
+				element.children = Pattern.compile(compile(model));
+			}
+		}
+		
+		@Override
+		public void attributeDecl(String element, String name, String type, String mode, String value) {
+			Set<String> values = null;
+			if (type.startsWith("(")) {
+				values = new HashSet<>();
+				Collections.addAll(values, type.substring(1, type.length() - 1).split("\\|"));
+			}
+			Rules rules = this.rules.computeIfAbsent(element, n -> new Rules());
+			rules.attributes.put(name, values);
+			if ("#REQUIRED".equals(mode)) {
+				rules.required.add(name);
+			}
+		}
+		
+		@Override
+		public void internalEntityDecl(String name, String value) {
+			// Entities are already expanded in the declarations
+		}
+		
+		@Override
+		public void externalEntityDecl(String name, String publicId, String systemId) {
+			// Same here
+		}
+		
+		/**
+		 * Turns a DTD content model, such as {@code (a,(b|c)*,d?)}, into a regular expression over child names that are each followed by a space.
+		 * @param model the content model
+		 * @return the regular expression
+		 */
+		private static String compile(String model) {
+			StringBuilder regex = new StringBuilder(model.length() * 2);
+			for (int i = 0; i < model.length(); i++) {
+				char c = model.charAt(i);
+				if (c == '(') {
+					regex.append("(?:");
+				}
+				else if (c == ')' || c == '|' || c == '?' || c == '*' || c == '+') {
+					regex.append(c);
+				}
+				else if (c == ',' || Character.isWhitespace(c)) {
+					// Sequences are just one name after another
+				}
+				else {
+					int end = i;
+					while (end < model.length() && "()|,?*+".indexOf(model.charAt(end)) == -1 && !Character.isWhitespace(model.charAt(end))) {
+						end++;
+					}
+					regex.append("(?:").append(Pattern.quote(model.substring(i, end) + " ")).append(')');
+					i = end - 1;
+				}
+			}
+			return regex.toString();
+		}
+	}
+	
+	/**
+	 * The document being watched.
+	 */
+	private final Document document;
+	
+	/**
+	 * The elements whose own attributes or children were changed.
+	 */
+	private final Set<Element> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+	
+	/**
+	 * The elements that were inserted, along with everything inside them.
+	 */
+	private final Set<Element> inserted = Collections.newSetFromMap(new IdentityHashMap<>());
+	
+	/**
+	 * Constructs a validator. Use {@link #watch(Document)}.
+	 * @param document the document to watch
+	 */
+	private ChangeValidator(Document document) {
+		this.document = document;
+	}
+	
+	/**
+	 * Starts recording the changes made to a document. This should be done right before cleaning it.
+	 * @param document the document
+	 * @return the validator
+	 */
+	public static ChangeValidator watch(Document document) {
+		if (document == null)
+			throw new IllegalArgumentException("document provided was null");
+		
+		ChangeValidator validator = new ChangeValidator(document);
+		document.setUserData(VALIDATOR_KEY, validator, null);
+		return validator;
+	}
+	
+	/**
+	 * @param node a node
+	 * @return the validator recording the changes to the node's document, or {@code null} if there isn't one
+	 */
+	private static ChangeValidator get(Node node) {
+		Document document = node.getNodeType() == Node.DOCUMENT_NODE ? (Document) node : node.getOwnerDocument();
+		return document == null ? null : (ChangeValidator) document.getUserData(VALIDATOR_KEY);
+	}
+	
+	/**
+	 * Records that an element's attributes, text, or children were changed (including children being removed), if its document is being watched.
+	 * Call it on the parent of a child that's about to be removed.
+	 * @param element the element
+	 */
+	public static void changed(Element element) {
+		ChangeValidator validator = get(element);
+		if (validator != null) {
+			validator.changed.add(element);
+		}
+	}
+	
+	/**
+	 * Records that an element was inserted, if its document is being watched. The element, everything inside it, and the element it was inserted into
+	 * are all checked, so this only needs to be called once, right after it's inserted.
+	 * @param element the element
+	 */
+	public static void inserted(Element element) {
+		ChangeValidator validator = get(element);
+		if (validator != null) {
+			validator.inserted.add(element);
+		}
+	}
+	
+	/**
+	 * Stops recording and checks every element that was touched.
+	 * @return the number of elements checked
+	 * @throws SAXException if a touched element doesn't match the grammar
+	 */
+	public int check() throws SAXException {
+		document.setUserData(VALIDATOR_KEY, null, null);
+		
+		Grammar grammar = getGrammar(MusicXMLEntityResolver.getSchemaDirectory(MusicXMLConverter.getVersion(document)));
+		int checked = 0;
+		for (Element element : inserted) {
+			if (isAttached(element)) {
+				checked += checkSubtree(grammar, element);
+				if (element.getParentNode().getNodeType() == Node.ELEMENT_NODE) {
+					changed.add((Element) element.getParentNode());
+				}
+			}
+		}
+		for (Element element : changed) {
+			if (isAttached(element)) {
+				checkElement(grammar, element);
+				checked++;
+			}
+		}
+		changed.clear();
+		inserted.clear();
+		return checked;
+	}
+	
+	/**
+	 * @param node a node
+	 * @return true if the node is still in the document
+	 */
+	private boolean isAttached(Node node) {
+		while (node.getParentNode() != null) {
+			node = node.getParentNode();
+		}
+		return node == document;
+	}
+	
+	/**
+	 * Checks an element and everything inside it.
+	 * @param grammar the grammar
+	 * @param element the element
+	 * @return the number of elements checked
+	 * @throws SAXException if an element doesn't match the grammar
+	 */
+	private static int checkSubtree(Grammar grammar, Element element) throws SAXException {
+		checkElement(grammar, element);
+		int checked = 1;
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE) {
+				checked += checkSubtree(grammar, (Element) child);
+			}
+		}
+		return checked;
+	}
+	
+	/**
+	 * Checks an element's attributes and children (but not the children's own contents).
+	 * @param grammar the grammar
+	 * @param element the element
+	 * @throws SAXException if the element doesn't match the grammar
+	 */
+	private static void checkElement(Grammar grammar, Element element) throws SAXException {
+		String name = element.getTagName();
+		Rules rules = grammar.rules.get(name);
+		if (rules == null) {
+			throw invalid(element, "isn't a MusicXML element");
+		}
+		
+		// Attributes
+		NamedNodeMap attributes = element.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Attr attribute = (Attr) attributes.item(i);
+			if (!rules.attributes.containsKey(attribute.getName())) {
+				throw invalid(element, "has an undeclared attribute \"" + attribute.getName() + "\"");
+			}
+			Set<String> values = rules.attributes.get(attribute.getName());
+			if (values != null && !values.contains(attribute.getValue())) {
+				throw invalid(element, "has \"" + attribute.getValue() + "\" for \"" + attribute.getName() + "\", which must be one of " + values);
+			}
+		}
+		for (String required : rules.required) {
+			if (!element.hasAttribute(required)) {
+				throw invalid(element, "is missing the attribute \"" + required + "\"");
+			}
+		}
+		
+		// Children
+		StringBuilder children = new StringBuilder();
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			String childName;
+			switch (child.getNodeType()) {
+			case Node.ELEMENT_NODE:
+				childName = child.getNodeName();
+				break;
+			case Node.PROCESSING_INSTRUCTION_NODE:
+				if (!LazySlices.isSlice(child) && !LazySlices.isReusedSlice(child)) {
+					continue;
+				}
+				childName = LazySlices.getSliceName((ProcessingInstruction) child); // It stands in for an element
+				break;
+			case Node.TEXT_NODE:
+			case Node.CDATA_SECTION_NODE:
+				if (!rules.text && !child.getNodeValue().trim().isEmpty()) {
+					throw invalid(element, "may not contain text");
+				}
+				continue;
+			default:
+				continue;
+			}
+			
+			if (rules.children == null) {
+				if (rules.mixed != null && !rules.mixed.contains(childName)) {
+					throw invalid(element, "may not contain <" + childName + ">");
+				}
+			}
+			else {
+				children.append(childName).append(' ');
+			}
+		}
+		if (rules.children != null && !rules.children.matcher(children).matches()) {
+			throw invalid(element, "has children that don't fit its content model: " + (children.length() == 0 ? "(none)" : children.toString().trim()));
+		}
+	}
+	
+	/**
+	 * Describes where an invalid element is.
+	 * @param element the element
+	 * @param problem what's wrong with it
+	 * @return the exception to throw
+	 */
+	private static SAXException invalid(Element element, String problem) {
+		String where = "";
+		for (Node ancestor = element; ancestor != null && ancestor.getNodeType() == Node.ELEMENT_NODE; ancestor = ancestor.getParentNode()) {
+			if (ancestor.getNodeName().equals("measure")) {
+				where = " in measure " + ((Element) ancestor).getAttribute("number");
+				break;
+			}
+		}
+		return new SAXException("Cleaning produced an invalid score: <" + element.getTagName() + ">" + where + " " + problem);
+	}
+	
+	/**
+	 * Returns the compiled grammar for a schema directory, compiling it if this is the first time it has been asked for.
+	 * @param schemaDirectory the resource directory of the DTD
+	 * @return the grammar
+	 * @throws SAXException if the DTD can't be read
+	 */
+	private static Grammar getGrammar(String schemaDirectory) throws SAXException {
+		Grammar grammar = GRAMMARS.get(schemaDirectory);
+		if (grammar != null) {
+			return grammar;
+		}
+		
+		grammar = new Grammar();
+		readDeclarations(schemaDirectory, grammar);
+		
+		// Two threads may compile the same grammar at the same time, but only one of them is kept
+		Grammar existing = GRAMMARS.putIfAbsent(schemaDirectory, grammar);
+		return existing == null ? grammar : existing;
+	}
+	
+	/**
+	 * Reads every declaration in the partwise DTD, with all of its parameter entities expanded, by letting the parser read it for a tiny document.
+	 * @param schemaDirectory the resource directory of the DTD
+	 * @param handler the handler every declaration is reported to
+	 * @throws SAXException if the DTD can't be read
+	 */
+	static void readDeclarations(String schemaDirectory, DeclHandler handler) throws SAXException {
+		try {
+			XMLReader reader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+			reader.setEntityResolver(new MusicXMLEntityResolver(schemaDirectory));
+			reader.setProperty("http://xml.org/sax/properties/declaration-handler", handler);
+			reader.parse(new InputSource(new StringReader("<!DOCTYPE score-partwise SYSTEM \"partwise.dtd\"><score-partwise/>")));
+		} catch (ParserConfigurationException | IOException e) {
+			throw new SAXException("Unable to read the MusicXML grammar from " + schemaDirectory, e);
+		}
+	}
+}
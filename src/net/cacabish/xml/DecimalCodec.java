@@ -0,0 +1,237 @@
+package net.cacabish.xml;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Reads and writes the decimals that MusicXML uses for tenths and other layout values, without the garbage that {@code Double.parseDouble} and {@code String.format} leave behind.
+ * <br><br>
+ * Reading gives exactly what {@code Double.parseDouble} would, and writing gives exactly what {@code String.format(Locale.US, "%.Nf", value)} would.
+ * Anything outside of what layout values look like (exponents, very long or very large numbers, {@code NaN}, and so on) is handed to those instead.
+ * A codec keeps the buffer it writes into, so use one codec per thread.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class DecimalCodec {
+	
+	/**
+	 * The most decimal places {@link #format(double, int)} will write.
+	 */
+	public static final int MAX_DECIMALS = 9;
+	
+	/**
+	 * The powers of ten that a {@code double} holds exactly.
+	 */
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	
+	/**
+	 * The powers of ten up to 10<sup>{@link #MAX_DECIMALS}</sup>, as {@code long}s.
+	 */
+	private static final long[] SCALES = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L};
+	
+	/**
+	 * The largest significand that a {@code double} holds exactly.
+	 */
+	private static final long MAX_EXACT = 1L << 53;
+	
+	/**
+	 * How large a value, in units of its last decimal place, can be written without help.
+	 * Below this, a {@code double} is precise enough that no two decimals one place longer than the output round to the same {@code double}.
+	 */
+	private static final double MAX_UNITS = 1e14;
+	
+	/**
+	 * Where a value is written before it becomes a string.
+	 */
+	private final char[] buffer = new char[32];
+	
+	/**
+	 * Creates a codec with its own buffer.
+	 */
+	public DecimalCodec() {}
+	
+	/**
+	 * Reads a decimal, exactly like {@code Double.parseDouble}.
+	 * @param text the text of the decimal
+	 * @return its value
+	 * @throws NumberFormatException if the text isn't a number
+	 */
+	public static double parse(CharSequence text) {
+		if (text == null) {
+			throw new IllegalArgumentException("The text provided was null");
+		}
+		return parse(text, null, 0, text.length());
+	}
+	
+	/**
+	 * Reads a decimal written in ASCII, exactly like {@code Double.parseDouble}.
+	 * @param bytes the bytes holding the decimal, which are read by index so the buffer's position and limit don't matter
+	 * @param start the index of the first byte
+	 * @param end the index one past the last byte
+	 * @return its value
+	 * @throws NumberFormatException if the bytes aren't a number
+	 */
+	public static double parse(ByteBuffer bytes, int start, int end) {
+		if (bytes == null) {
+			throw new IllegalArgumentException("The buffer provided was null");
+		}
+		return parse(null, bytes, start, end);
+	}
+	
+	/**
+	 * Reads a decimal from either the text or the bytes. A plain decimal with a significand of at most 2<sup>53</sup> and at most 22 decimal places
+	 * is one exact {@code long} divided by one exact power of ten, which a single (correctly rounded) division gets exactly right.
+	 * @param text the text, or {@code null} to read the bytes
+	 * @param bytes the bytes, if there is no text
+	 * @param start the index of the first character
+	 * @param end the index one past the last character
+	 * @return the value
+	 * @throws NumberFormatException if it isn't a number
+	 */
+	private static double parse(CharSequence text, ByteBuffer bytes, int start, int end) {
+		// Trim like String.trim() does
+		int from = start, to = end;
+		while (from < to && charAt(text, bytes, from) <= ' ') {
+			from++;
+		}
+		while (to > from && charAt(text, bytes, to - 1) <= ' ') {
+			to--;
+		}
+		
+		int i = from;
+		boolean negative = false;
+		if (i < to && (charAt(text, bytes, i) == '-' || charAt(text, bytes, i) == '+')) {
+			negative = charAt(text, bytes, i) == '-';
+			i++;
+		}
+		
+		long significand = 0;
+		int digits = 0, decimals = 0;
+		boolean point = false;
+		for (; i < to; i++) {
+			char c = charAt(text, bytes, i);
+			if (c >= '0' && c <= '9') {
+				if (significand > (MAX_EXACT - 9) / 10) {
+					return fallback(text, bytes, start, end); // Too many digits to be exact
+				}
+				significand = significand * 10 + (c - '0');
+				digits++;
+				if (point) {
+					decimals++;
+				}
+			}
+			else if (c == '.' && !point) {
+				point = true;
+			}
+			else {
+				return fallback(text, bytes, start, end); // An exponent, a suffix, a word, or garbage
+			}
+		}
+		if (digits == 0 || decimals >= POWERS_OF_TEN.length) {
+			return fallback(text, bytes, start, end);
+		}
+		
+		double value = decimals == 0 ? significand : significand / POWERS_OF_TEN[decimals];
+		return negative ? -value : value;
+	}
+	
+	/**
+	 * @param text the text, or {@code null} to read the bytes
+	 * @param bytes the bytes, if there is no text
+	 * @param index the index of the character
+	 * @return the character there; a byte above ASCII becomes a character that can't be part of a number
+	 */
+	private static char charAt(CharSequence text, ByteBuffer bytes, int index) {
+		return text != null ? text.charAt(index) : (char) (bytes.get(index) & 0xFF);
+	}
+	
+	/**
+	 * Hands anything the fast path doesn't cover to {@code Double.parseDouble}.
+	 * @param text the text, or {@code null} to read the bytes
+	 * @param bytes the bytes, if there is no text
+	 * @param start the index of the first character
+	 * @param end the index one past the last character
+	 * @return the value
+	 * @throws NumberFormatException if it isn't a number
+	 */
+	private static double fallback(CharSequence text, ByteBuffer bytes, int start, int end) {
+		if (text != null) {
+			return Double.parseDouble(text.subSequence(start, end).toString());
+		}
+		byte[] copy = new byte[end - start];
+		ByteBuffer view = bytes.duplicate();
+		view.limit(end);
+		view.position(start);
+		view.get(copy);
+		return Double.parseDouble(new String(copy, StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Writes a value with a fixed number of decimal places, exactly like {@code String.format(Locale.US, "%.Nf", value)}.
+	 * <br><br>
+	 * Like {@code String.format}, this rounds half up on the shortest decimal that reads back as the value (the one {@code Double.toString} gives),
+	 * not on the value's exact binary expansion, so {@code 2.675} is written as {@code 2.68} to two places.
+	 * @param value the value
+	 * @param decimals how many decimal places to write, from 0 to {@link #MAX_DECIMALS}
+	 * @return the value as text
+	 */
+	public String format(double value, int decimals) {
+		if (decimals < 0 || decimals > MAX_DECIMALS) {
+			throw new IllegalArgumentException("The number of decimal places provided was out of range: " + decimals);
+		}
+		
+		long scale = SCALES[decimals];
+		double magnitude = Math.abs(value);
+		if (!(magnitude * scale < MAX_UNITS)) {
+			// NaN, the infinities and huge values
+			return String.format(Locale.US, "%." + decimals + "f", value);
+		}
+		
+		// Find the number of units (of the last decimal place) to write, which is the number of halfway points at or below the value
+		long units = (long) (magnitude * scale);
+		while (magnitude >= halfway(units, scale)) {
+			units++;
+		}
+		while (units > 0 && magnitude < halfway(units - 1, scale)) {
+			units--;
+		}
+		
+		// Write it out backwards from the last digit
+		int position = buffer.length;
+		long whole = units / scale;
+		long fraction = units % scale;
+		for (int i = 0; i < decimals; i++) {
+			buffer[--position] = (char) ('0' + fraction % 10);
+			fraction /= 10;
+		}
+		if (decimals > 0) {
+			buffer[--position] = '.';
+		}
+		do {
+			buffer[--position] = (char) ('0' + whole % 10);
+			whole /= 10;
+		} while (whole > 0);
+		if (Double.doubleToRawLongBits(value) < 0) {
+			buffer[--position] = '-'; // Even when it rounds to zero, as String.format does
+		}
+		return new String(buffer, position, buffer.length - position);
+	}
+	
+	/**
+	 * Finds the {@code double} nearest the halfway point between two units, which is where rounding half up starts going up.
+	 * If the value is exactly this {@code double}, then its shortest decimal is the halfway point itself, since every other decimal that short is too far away to read back as it.
+	 * Both operands are exact, so the division gives the nearest {@code double}.
+	 * @param units a number of units
+	 * @param scale the number of units in one
+	 * @return the {@code double} nearest {@code units + 0.5} units
+	 */
+	private static double halfway(long units, long scale) {
+		return (2 * units + 1) / (2.0 * scale);
+	}
+}
@@ -0,0 +1,126 @@
+package net.cacabish.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.w3c.dom.Document;
+
+/**
+ * Keeps track of the original bytes a document was parsed from, for anything that needs to copy them back out verbatim
+ * (such as {@link LazySlices} and the {@link PatchWriter}).
+ * <br><br>
+ * The bytes are stored on the document itself as user data, so they live exactly as long as the document does.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class DocumentSource {
+	
+	/**
+	 * The user data key under which the source buffer is stored on the document.
+	 */
+	private static final String BUFFER_KEY = "net.cacabish.xml.DocumentSource.buffer";
+	
+	/**
+	 * The user data key under which the source file is stored on the document.
+	 */
+	private static final String FILE_KEY = "net.cacabish.xml.DocumentSource.file";
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private DocumentSource() {}
+	
+	/**
+	 * Memory-maps a file for reading. The mapping stays valid after this method returns.
+	 * @param file the file to map
+	 * @return the mapped bytes of the entire file
+	 * @throws IOException if there is an issue opening or mapping the file
+	 */
+	public static ByteBuffer map(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+	
+	/**
+	 * Attaches the source bytes (and file, if there is one) to a document.
+	 * @param document the document
+	 * @param buffer the bytes the document was parsed from
+	 * @param file the file the bytes came from, or {@code null}
+	 */
+	public static void set(Document document, ByteBuffer buffer, File file) {
+		document.setUserData(BUFFER_KEY, buffer, null);
+		document.setUserData(FILE_KEY, file, null);
+	}
+	
+	/**
+	 * Returns the bytes the document was parsed from.
+	 * @param document the document
+	 * @return the source bytes, or {@code null} if they weren't kept
+	 */
+	public static ByteBuffer getBuffer(Document document) {
+		return document == null ? null : (ByteBuffer) document.getUserData(BUFFER_KEY);
+	}
+	
+	/**
+	 * Returns the file the document was parsed from.
+	 * @param document the document
+	 * @return the source file, or {@code null} if it wasn't kept or the document didn't come from a file
+	 */
+	public static File getFile(Document document) {
+		return document == null ? null : (File) document.getUserData(FILE_KEY);
+	}
+	
+	/**
+	 * Copies the source bytes onto the heap, so that the document no longer depends on the source file.
+	 * This must be done before overwriting the source file with the document.
+	 * @param document the document
+	 */
+	public static void detach(Document document) {
+		ByteBuffer source = getBuffer(document);
+		if (source == null || !source.isDirect()) {
+			return; // Nothing to detach
+		}
+		
+		ByteBuffer copy = ByteBuffer.allocate(source.capacity());
+		ByteBuffer view = source.duplicate();
+		view.clear();
+		copy.put(view);
+		copy.flip();
+		set(document, copy, null);
+	}
+	
+	/**
+	 * Detaches the source if the destination is the file the document was parsed from.
+	 * @param document the document
+	 * @param destination the file about to be written
+	 * @throws IOException if there is an issue resolving the files' paths
+	 */
+	public static void detachIfOverwriting(Document document, File destination) throws IOException {
+		File file = getFile(document);
+		if (file != null && destination != null && file.getCanonicalFile().equals(destination.getCanonicalFile())) {
+			detach(document);
+		}
+	}
+	
+	/**
+	 * Copies a range of the source bytes to a byte array.
+	 * @param document the document
+	 * @param start the index of the first byte
+	 * @param end the index one past the last byte
+	 * @return the bytes
+	 */
+	public static byte[] copyRange(Document document, int start, int end) {
+		ByteBuffer view = getBuffer(document).duplicate();
+		view.limit(end);
+		view.position(start);
+		byte[] bytes = new byte[end - start];
+		view.get(bytes);
+		return bytes;
+	}
+}
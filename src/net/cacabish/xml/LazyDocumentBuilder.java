@@ -0,0 +1,457 @@
+package net.cacabish.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+import org.xml.sax.Attributes;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+
+import net.cacabish.CancellationToken;
+import net.cacabish.LimitExceededException;
+import net.cacabish.ParsingLimits;
+import net.cacabish.XMLValidationErrorHandler;
+
+/**
+ * Builds a validated MusicXML document in which the bulky, measure-level musical content is left as slices of the original bytes.
+ * <br><br>
+ * Any {@code <note>}, {@code <backup>}, {@code <forward>}, or {@code <harmony>} element directly inside a {@code <measure>} is not turned into DOM nodes.
+ * See {@link LazySlices} for how those slices are handled afterwards.
+ * <br><br>
+ * The whole file is still validated against the DTD, just as it is when building a normal document. Validation is done in a single streaming pass,
+ * with the DOM being built from that same pass, so nothing is parsed twice.
+ * The file is memory-mapped and must be encoded in UTF-8 (or plain ASCII), which is what MuseScore always exports.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class LazyDocumentBuilder {
+	
+	/**
+	 * The elements that are left as slices when they appear directly inside a {@code <measure>}.
+	 */
+	static final String[] LAZY_ELEMENTS = {"note", "backup", "forward", "harmony"};
+	
+	/**
+	 * The same names as {@link #LAZY_ELEMENTS}, as bytes, for scanning.
+	 */
+	private static final byte[][] LAZY_ELEMENT_BYTES;
+	
+	/**
+	 * The name of the element whose children may be left as slices.
+	 */
+	private static final byte[] MEASURE_BYTES = "measure".getBytes(StandardCharsets.US_ASCII);
+	
+	/**
+	 * The SAX parser factory used for the validating pass.
+	 */
+	private static final SAXParserFactory SPF;
+	
+	/**
+	 * The DOM factory used to create the (empty) document that gets filled in.
+	 */
+	private static final DocumentBuilderFactory DBF;
+	
+	static {
+		LAZY_ELEMENT_BYTES = new byte[LAZY_ELEMENTS.length][];
+		for (int i = 0; i < LAZY_ELEMENTS.length; i++) {
+			LAZY_ELEMENT_BYTES[i] = LAZY_ELEMENTS[i].getBytes(StandardCharsets.US_ASCII);
+		}
+		
+		SPF = SAXParserFactory.newInstance();
+		SPF.setValidating(true);
+		SPF.setNamespaceAware(false);
+		
+		DBF = DocumentBuilderFactory.newInstance();
+	}
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private LazyDocumentBuilder() {}
+	
+	/**
+	 * Checks if a buffer holds a document this builder can handle, i.e. one that is UTF-8 or ASCII encoded.
+	 * @param source the buffer to check
+	 * @return true if the buffer can be built lazily
+	 */
+	public static boolean isSupported(ByteBuffer source) {
+		int start = source.position();
+		int length = Math.min(source.remaining(), 200);
+		if (length >= 2) {
+			int first = source.get(start) & 0xFF;
+			int second = source.get(start + 1) & 0xFF;
+			if ((first == 0xFE && second == 0xFF) || (first == 0xFF && second == 0xFE) || first == 0 || second == 0) {
+				return false; // UTF-16 in some form
+			}
+		}
+		
+		// Look for an encoding in the XML declaration
+		byte[] prolog = new byte[length];
+		for (int i = 0; i < length; i++) {
+			prolog[i] = source.get(start + i);
+		}
+		String declaration = new String(prolog, StandardCharsets.ISO_8859_1);
+		if (declaration.startsWith("\u00EF\u00BB\u00BF")) {
+			declaration = declaration.substring(3); // Skip the UTF-8 byte order mark
+		}
+		int end = declaration.indexOf("?>");
+		if (!declaration.startsWith("<?xml")) {
+			return true; // No declaration means UTF-8
+		}
+		if (end == -1) {
+			return false; // Something strange is going on
+		}
+		declaration = declaration.substring(0, end).toLowerCase(Locale.ROOT);
+		int encoding = declaration.indexOf("encoding");
+		if (encoding == -1) {
+			return true; // No encoding means UTF-8
+		}
+		String rest = declaration.substring(encoding);
+		return rest.contains("utf-8") || rest.contains("utf8") || rest.contains("us-ascii") || rest.contains("\"ascii") || rest.contains("'ascii");
+	}
+	
+	/**
+	 * Memory-maps the file and builds a lazy, validated document from it.
+	 * @param file the file to parse
+	 * @param resolver the entity resolver for the DTD
+	 * @return the document
+	 * @throws ParserConfigurationException throws if there is a problem getting a new parser
+	 * @throws SAXException throws if there is an error when parsing or validating the file
+	 * @throws IOException throws if there is an I/O error reading the file or the file isn't UTF-8
+	 */
+	public static Document parse(File file, EntityResolver resolver) throws ParserConfigurationException, SAXException, IOException {
+		return parse(file, resolver, ParsingLimits.DEFAULT);
+	}
+	
+	/**
+	 * Memory-maps the file and builds a lazy, validated document from it, rejecting it if it goes over any of the limits.
+	 * @param file the file to parse
+	 * @param resolver the entity resolver for the DTD
+	 * @param limits the limits the file must stay within
+	 * @return the document
+	 * @throws ParserConfigurationException throws if there is a problem getting a new parser
+	 * @throws SAXException throws if there is an error when parsing or validating the file, or a {@link LimitExceededException} if it goes over a limit
+	 * @throws IOException throws if there is an I/O error reading the file or the file isn't UTF-8
+	 */
+	public static Document parse(File file, EntityResolver resolver, ParsingLimits limits) throws ParserConfigurationException, SAXException, IOException {
+		if (file == null)
+			throw new IllegalArgumentException("file provided was null");
+		
+		ByteBuffer source = DocumentSource.map(file);
+		
+		Document document = parse(source, resolver, limits);
+		LazySlices.setSource(document, source, file);
+		return document;
+	}
+	
+	/**
+	 * Builds a lazy, validated document from a buffer. The buffer must not change for as long as the document is in use.
+	 * @param source the bytes of the document, from its position to its limit
+	 * @param resolver the entity resolver for the DTD
+	 * @return the document
+	 * @throws ParserConfigurationException throws if there is a problem getting a new parser
+	 * @throws SAXException throws if there is an error when parsing or validating the bytes
+	 * @throws IOException throws if there is an I/O error reading the bytes or the bytes aren't UTF-8
+	 */
+	public static Document parse(ByteBuffer source, EntityResolver resolver) throws ParserConfigurationException, SAXException, IOException {
+		return parse(source, resolver, ParsingLimits.DEFAULT);
+	}
+	
+	/**
+	 * Builds a lazy, validated document from a buffer, rejecting it if it goes over any of the limits. The buffer must not change for as long as the document is in use.
+	 * @param source the bytes of the document, from its position to its limit
+	 * @param resolver the entity resolver for the DTD
+	 * @param limits the limits the bytes must stay within
+	 * @return the document
+	 * @throws ParserConfigurationException throws if there is a problem getting a new parser
+	 * @throws SAXException throws if there is an error when parsing or validating the bytes, or a {@link LimitExceededException} if they go over a limit
+	 * @throws IOException throws if there is an I/O error reading the bytes or the bytes aren't UTF-8
+	 */
+	public static Document parse(ByteBuffer source, EntityResolver resolver, ParsingLimits limits) throws ParserConfigurationException, SAXException, IOException {
+		if (limits == null)
+			throw new IllegalArgumentException("limits provided was null");
+		if (!isSupported(source)) {
+			throw new IOException("lazy parsing requires a UTF-8 encoded file");
+		}
+		
+		// First, find where every lazy element is. This is a quick scan that doesn't decode anything.
+		int[] ranges = findLazyElements(source, limits);
+		
+		// Next, parse and validate everything, building the DOM as we go but skipping the lazy elements
+		Document document = DBF.newDocumentBuilder().newDocument();
+		LazyHandler handler = new LazyHandler(document, ranges, limits);
+		XMLValidationErrorHandler errorHandler = new XMLValidationErrorHandler();
+		
+		XMLReader reader = SPF.newSAXParser().getXMLReader();
+		reader.setContentHandler(handler);
+		reader.setErrorHandler(errorHandler);
+		reader.setEntityResolver(resolver);
+		reader.setProperty("http://xml.org/sax/properties/lexical-handler", handler);
+		limits.configure(reader);
+		try {
+			reader.parse(new InputSource(CancellationToken.checking(new ByteBufferInputStream(source))));
+		} catch (SAXException e) {
+			throw ParsingLimits.translate(e); // In case it was one of the parser's own limits
+		}
+		
+		if (!errorHandler.isValid()) {
+			throw ParsingLimits.translate(errorHandler.getException());
+		}
+		if (handler.sliceCount * 2 != ranges.length) {
+			throw new SAXException("lazy parse found " + handler.sliceCount + " slices but expected " + (ranges.length / 2));
+		}
+		
+		LazySlices.setSource(document, source, null);
+		return document;
+	}
+	
+	/**
+	 * Scans for every lazy element directly inside a {@code <measure>}.
+	 * @param source the bytes of the document
+	 * @param limits the limits, so that a file nested too deeply is rejected before the real parse even starts
+	 * @return the start and end of every lazy element, in document order, packed as pairs
+	 */
+	private static int[] findLazyElements(ByteBuffer source, ParsingLimits limits) throws SAXException {
+		XMLByteScanner scanner = new XMLByteScanner(source);
+		int[] ranges = new int[1024];
+		int count = 0;
+		int measureDepth = -1;
+		
+		int event;
+		int events = 0;
+		while ((event = scanner.next()) != XMLByteScanner.END_DOCUMENT) {
+			if ((++events & 0xFFF) == 0) {
+				CancellationToken.checkCurrent(); // Every so often
+			}
+			if (event == XMLByteScanner.START_ELEMENT) {
+				if (scanner.getDepth() > limits.getMaxDepth()) {
+					throw new LimitExceededException("maxDepth", "elements are nested more than " + limits.getMaxDepth() + " deep");
+				}
+				if (measureDepth == -1) {
+					if (scanner.nameEquals(MEASURE_BYTES)) {
+						measureDepth = scanner.getDepth();
+					}
+				}
+				else if (scanner.getDepth() == measureDepth + 1 && isLazyElement(scanner)) {
+					int start = scanner.getTagStart();
+					int end = scanner.skipElement();
+					
+					if (count + 2 > ranges.length) {
+						int[] bigger = new int[ranges.length * 2];
+						System.arraycopy(ranges, 0, bigger, 0, count);
+						ranges = bigger;
+					}
+					ranges[count++] = start;
+					ranges[count++] = end;
+				}
+			}
+			else if (event == XMLByteScanner.END_ELEMENT && scanner.getDepth() < measureDepth) {
+				// We've left the measure
+				measureDepth = -1;
+			}
+		}
+		
+		int[] trimmed = new int[count];
+		System.arraycopy(ranges, 0, trimmed, 0, count);
+		return trimmed;
+	}
+	
+	/**
+	 * @return true if the scanner's current tag is one of the lazy elements
+	 */
+	private static boolean isLazyElement(XMLByteScanner scanner) {
+		for (byte[] name : LAZY_ELEMENT_BYTES) {
+			if (scanner.nameEquals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return true if the name is one of the lazy elements
+	 */
+	private static boolean isLazyElement(String name) {
+		for (String lazyName : LAZY_ELEMENTS) {
+			if (lazyName.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * The SAX handler that builds the DOM, swapping lazy elements for slices.
+	 */
+	private static class LazyHandler extends DefaultHandler2 {
+		
+		/**
+		 * The document being built.
+		 */
+		private final Document document;
+		
+		/**
+		 * The byte ranges of the lazy elements, packed as pairs.
+		 */
+		private final int[] ranges;
+		
+		/**
+		 * The node new children are added to.
+		 */
+		private Node current;
+		
+		/**
+		 * Text that has been reported but not yet added to the tree.
+		 */
+		private final StringBuilder pendingText = new StringBuilder();
+		
+		/**
+		 * How deep we are inside a lazy element that's being skipped. Zero when not skipping.
+		 */
+		private int skipDepth = 0;
+		
+		/**
+		 * The number of slices created so far.
+		 */
+		private int sliceCount = 0;
+		
+		/**
+		 * Whether we're inside the DTD, where comments shouldn't be added to the tree.
+		 */
+		private boolean inDTD = false;
+		
+		/**
+		 * The limits the document must stay within.
+		 */
+		private final ParsingLimits limits;
+		
+		/**
+		 * The number of characters in the current piece of text, including text that's being skipped.
+		 */
+		private long textLength = 0;
+		
+		/**
+		 * The number of credits seen so far.
+		 */
+		private int credits = 0;
+		
+		LazyHandler(Document document, int[] ranges, ParsingLimits limits) {
+			this.document = document;
+			this.ranges = ranges;
+			this.current = document;
+			this.limits = limits;
+		}
+		
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			textLength = 0;
+			if (skipDepth > 0) {
+				skipDepth++;
+				return;
+			}
+			flushText();
+			
+			if (current.getNodeType() == Node.ELEMENT_NODE && "measure".equals(current.getNodeName()) && isLazyElement(qName)) {
+				// Swap this element for a slice and skip over everything inside it
+				if (sliceCount * 2 >= ranges.length) {
+					throw new SAXException("lazy parse found more slices than expected");
+				}
+				current.appendChild(LazySlices.createSlice(document, qName, ranges[sliceCount * 2], ranges[sliceCount * 2 + 1]));
+				sliceCount++;
+				skipDepth = 1;
+				return;
+			}
+			
+			if ("credit".equals(qName)) {
+				limits.checkCredits(++credits);
+			}
+			
+			Element element = document.createElement(qName);
+			for (int i = 0; i < attributes.getLength(); i++) {
+				element.setAttribute(attributes.getQName(i), attributes.getValue(i));
+			}
+			current.appendChild(element);
+			current = element;
+		}
+		
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			textLength = 0;
+			if (skipDepth > 0) {
+				skipDepth--;
+				return;
+			}
+			flushText();
+			current = current.getParentNode();
+		}
+		
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			// Checked as it streams in, so that a huge piece of text is rejected before it's all been buffered
+			textLength += length;
+			limits.checkTextLength(textLength);
+			if (skipDepth == 0 && current != document) {
+				pendingText.append(ch, start, length);
+			}
+		}
+		
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) {
+			// Whitespace between elements isn't kept, just like the normal parser
+		}
+		
+		@Override
+		public void processingInstruction(String target, String data) {
+			if (skipDepth == 0) {
+				flushText();
+				current.appendChild(document.createProcessingInstruction(target, data));
+			}
+		}
+		
+		@Override
+		public void comment(char[] ch, int start, int length) {
+			if (skipDepth == 0 && !inDTD) {
+				flushText();
+				current.appendChild(document.createComment(new String(ch, start, length)));
+			}
+		}
+		
+		@Override
+		public void startDTD(String name, String publicId, String systemId) {
+			inDTD = true;
+		}
+		
+		@Override
+		public void endDTD() {
+			inDTD = false;
+		}
+		
+		/**
+		 * Adds any pending text to the tree as a single text node.
+		 */
+		private void flushText() {
+			if (pendingText.length() == 0) {
+				return;
+			}
+			Text text = document.createTextNode(pendingText.toString());
+			current.appendChild(text);
+			pendingText.setLength(0);
+		}
+	}
+}
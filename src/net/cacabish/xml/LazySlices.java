@@ -0,0 +1,415 @@
+package net.cacabish.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import net.cacabish.MusicXMLEntityResolver;
+
+/**
+ * Helpers for documents built by the {@link LazyDocumentBuilder}.
+ * <br><br>
+ * In a lazy document, some subtrees are not turned into DOM nodes. Instead, each one is replaced by a placeholder processing instruction
+ * (a "slice") that remembers where the subtree's bytes are in the original file. Slices are written back verbatim by the {@link MusicXMLWriter}
+ * and only turned into real DOM nodes when an operation asks for them with {@link #expand(Element)} or {@link #expandSlicesContaining(Document, String)}.
+ * <br><br>
+ * Every method here is safe to call on a document that isn't lazy; they simply do nothing.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class LazySlices {
+	
+	/**
+	 * The target of the placeholder processing instructions.
+	 */
+	public static final String TARGET = "musicxml-cleaner-slice";
+	
+	/**
+	 * The target of the placeholder processing instructions that stand in for previously cleaned output.
+	 */
+	public static final String REUSED_TARGET = "musicxml-cleaner-reused";
+	
+	/**
+	 * The user data key under which the previously cleaned output is stored on the document.
+	 */
+	private static final String REUSED_KEY = "net.cacabish.xml.LazySlices.reused";
+	
+	/**
+	 * The user data key that marks a document as lazy.
+	 */
+	private static final String LAZY_KEY = "net.cacabish.xml.LazySlices.lazy";
+	
+	/**
+	 * The factory used to expand slices. Slices were already validated when the document was built, so this doesn't validate them again.
+	 */
+	private static final DocumentBuilderFactory EXPANSION_DBF;
+	
+	static {
+		EXPANSION_DBF = DocumentBuilderFactory.newInstance();
+		EXPANSION_DBF.setValidating(false);
+	}
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private LazySlices() {}
+	
+	/**
+	 * Checks if this document was built lazily and may contain slices.
+	 * @param document the document to check
+	 * @return true if the document was built by the {@link LazyDocumentBuilder}
+	 */
+	public static boolean isLazy(Document document) {
+		return document != null && document.getUserData(LAZY_KEY) != null && DocumentSource.getBuffer(document) != null;
+	}
+	
+	/**
+	 * Returns the buffer the document's slices refer to.
+	 * @param document the document
+	 * @return the source buffer, or {@code null} if the document isn't lazy
+	 */
+	public static ByteBuffer getSource(Document document) {
+		return isLazy(document) ? DocumentSource.getBuffer(document) : null;
+	}
+	
+	/**
+	 * Marks a document as lazy and attaches the source buffer (and file, if there is one) to it.
+	 * @param document the document
+	 * @param source the buffer the document's slices refer to
+	 * @param sourceFile the file the buffer came from, or {@code null}
+	 */
+	static void setSource(Document document, ByteBuffer source, File sourceFile) {
+		DocumentSource.set(document, source, sourceFile);
+		document.setUserData(LAZY_KEY, Boolean.TRUE, null);
+	}
+	
+	/**
+	 * Attaches previously cleaned output to a document, so that reused slices can be written from it.
+	 * @param document the document
+	 * @param output the previously cleaned bytes the document's reused slices refer to
+	 */
+	public static void setReusedSource(Document document, ByteBuffer output) {
+		document.setUserData(REUSED_KEY, output, null);
+	}
+	
+	/**
+	 * Returns the previously cleaned output the document's reused slices refer to.
+	 * @param document the document
+	 * @return the previously cleaned bytes, or {@code null} if there are none
+	 */
+	public static ByteBuffer getReusedSource(Document document) {
+		return document == null ? null : (ByteBuffer) document.getUserData(REUSED_KEY);
+	}
+	
+	/**
+	 * Creates a reused slice in place of a subtree that has already been cleaned before.
+	 * Unlike a normal slice, it is never expanded; it is only ever written back out.
+	 * @param document the document that will own the slice, which must have its reused source attached
+	 * @param name the tag name of the subtree's root element
+	 * @param start the index of the first byte of the cleaned subtree in the reused source
+	 * @param end the index one past the last byte of the cleaned subtree in the reused source
+	 * @return the slice, ready to be inserted
+	 */
+	public static ProcessingInstruction createReusedSlice(Document document, String name, int start, int end) {
+		return document.createProcessingInstruction(REUSED_TARGET, name + ' ' + start + ' ' + (end - start));
+	}
+	
+	/**
+	 * Checks if the node is a reused slice.
+	 * @param node the node to check
+	 * @return true if the node is a reused slice
+	 */
+	public static boolean isReusedSlice(Node node) {
+		return node != null && node.getNodeType() == Node.PROCESSING_INSTRUCTION_NODE && REUSED_TARGET.equals(((ProcessingInstruction) node).getTarget());
+	}
+	
+	/**
+	 * Creates a slice in place of a subtree.
+	 * @param document the document that will own the slice
+	 * @param name the tag name of the subtree's root element
+	 * @param start the index of the first byte of the subtree
+	 * @param end the index one past the last byte of the subtree
+	 * @return the slice, ready to be inserted
+	 */
+	static ProcessingInstruction createSlice(Document document, String name, int start, int end) {
+		return document.createProcessingInstruction(TARGET, name + ' ' + start + ' ' + (end - start));
+	}
+	
+	/**
+	 * Checks if the node is a slice.
+	 * @param node the node to check
+	 * @return true if the node is a slice
+	 */
+	public static boolean isSlice(Node node) {
+		return node != null && node.getNodeType() == Node.PROCESSING_INSTRUCTION_NODE && TARGET.equals(((ProcessingInstruction) node).getTarget());
+	}
+	
+	/**
+	 * Returns the tag name of the element a slice stands in for.
+	 * @param slice the slice
+	 * @return the tag name
+	 */
+	public static String getSliceName(ProcessingInstruction slice) {
+		String data = slice.getData();
+		return data.substring(0, data.indexOf(' '));
+	}
+	
+	/**
+	 * Returns the byte range a slice stands in for.
+	 * @param slice the slice
+	 * @return a two element array of the index of the first byte and the number of bytes
+	 */
+	public static int[] getSliceRange(ProcessingInstruction slice) {
+		String data = slice.getData();
+		int first = data.indexOf(' ');
+		int second = data.indexOf(' ', first + 1);
+		return new int[] {Integer.parseInt(data.substring(first + 1, second)), Integer.parseInt(data.substring(second + 1))};
+	}
+	
+	/**
+	 * Writes the bytes a slice stands in for, exactly as they were in the source (or in the previous output, for a reused slice).
+	 * @param slice the slice
+	 * @param out the stream to write to
+	 * @throws IOException if there is an issue writing
+	 */
+	public static void writeSlice(ProcessingInstruction slice, OutputStream out) throws IOException {
+		writeSlice(slice, isReusedSlice(slice) ? getReusedSource(slice.getOwnerDocument()) : getSource(slice.getOwnerDocument()), out);
+	}
+	
+	/**
+	 * Writes the bytes a slice stands in for from a source that has already been looked up, which (unlike looking it up) is safe to do
+	 * while other threads are reading the same document.
+	 * @param slice the slice
+	 * @param source the bytes the slice refers to: the document's source, or its previous output for a reused slice
+	 * @param out the stream to write to
+	 * @throws IOException if there is an issue writing
+	 */
+	static void writeSlice(ProcessingInstruction slice, ByteBuffer source, OutputStream out) throws IOException {
+		if (source == null) {
+			throw new IllegalStateException("slice has no source to write from");
+		}
+		
+		int[] range = getSliceRange(slice);
+		if (source.hasArray()) {
+			out.write(source.array(), source.arrayOffset() + range[0], range[1]);
+		}
+		else {
+			byte[] chunk = new byte[Math.min(range[1], 8192)];
+			ByteBuffer view = source.duplicate();
+			view.limit(range[0] + range[1]);
+			view.position(range[0]);
+			while (view.hasRemaining()) {
+				int count = Math.min(chunk.length, view.remaining());
+				view.get(chunk, 0, count);
+				out.write(chunk, 0, count);
+			}
+		}
+	}
+	
+	/**
+	 * Expands every slice that is a direct child of the element into real DOM nodes.
+	 * @param parent the element whose slices should be expanded
+	 * @return the number of slices expanded
+	 * @throws IllegalStateException if a slice cannot be expanded, which should only happen if the source has been tampered with
+	 */
+	public static int expand(Element parent) {
+		if (parent == null || !isLazy(parent.getOwnerDocument())) {
+			return 0;
+		}
+		
+		int expanded = 0;
+		Node child = parent.getFirstChild();
+		while (child != null) {
+			Node next = child.getNextSibling();
+			if (isSlice(child)) {
+				expandSlice((ProcessingInstruction) child);
+				expanded++;
+			}
+			child = next;
+		}
+		return expanded;
+	}
+	
+	/**
+	 * Expands every slice in the document whose bytes contain the given text. Slices without the text are left alone.
+	 * This is useful for operations that only care about a particular attribute or element, such as {@code font-family}.
+	 * @param document the document
+	 * @param asciiText the text to look for. Must be ASCII.
+	 * @return the number of slices expanded
+	 */
+	public static int expandSlicesContaining(Document document, String asciiText) {
+		ByteBuffer source = getSource(document);
+		if (source == null) {
+			return 0;
+		}
+		
+		byte[] pattern = asciiText.getBytes(StandardCharsets.US_ASCII);
+		List<ProcessingInstruction> matches = new ArrayList<>();
+		
+		// Slices only ever live directly inside a <measure>
+		NodeList measures = document.getElementsByTagName("measure");
+		for (int i = 0; i < measures.getLength(); i++) {
+			for (Node child = measures.item(i).getFirstChild(); child != null; child = child.getNextSibling()) {
+				if (isSlice(child)) {
+					int[] range = getSliceRange((ProcessingInstruction) child);
+					if (contains(source, range[0], range[0] + range[1], pattern)) {
+						matches.add((ProcessingInstruction) child);
+					}
+				}
+			}
+		}
+		
+		// Expand afterwards, since expanding modifies the live node lists
+		for (ProcessingInstruction slice : matches) {
+			expandSlice(slice);
+		}
+		return matches.size();
+	}
+	
+	/**
+	 * Counts the slices in a document.
+	 * @param document the document
+	 * @return the number of slices that have not been expanded
+	 */
+	public static int countSlices(Document document) {
+		if (!isLazy(document)) {
+			return 0;
+		}
+		
+		int count = 0;
+		NodeList measures = document.getElementsByTagName("measure");
+		for (int i = 0; i < measures.getLength(); i++) {
+			for (Node child = measures.item(i).getFirstChild(); child != null; child = child.getNextSibling()) {
+				if (isSlice(child)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Replaces a single slice with the DOM nodes it stands in for.
+	 * @param slice the slice to expand
+	 */
+	private static void expandSlice(ProcessingInstruction slice) {
+		Document document = slice.getOwnerDocument();
+		ByteBuffer source = getSource(document);
+		int[] range = getSliceRange(slice);
+		
+		try {
+			Element element = parseSlice(source, range[0], range[0] + range[1]);
+			Node imported = document.importNode(element, true);
+			removeIgnorableWhitespace(imported);
+			
+			SourceTracker tracker = SourceTracker.get(document);
+			if (tracker != null) {
+				// Expanding isn't a modification, and the expanded nodes still came from the source
+				tracker.replaceSlice(slice, (Element) imported);
+			}
+			else {
+				slice.getParentNode().replaceChild(imported, slice);
+			}
+		} catch (ParserConfigurationException | SAXException | IOException e) {
+			throw new IllegalStateException("unable to expand <" + getSliceName(slice) + "> at byte " + range[0] + ": " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Parses a slice's bytes into a standalone element.
+	 * If the slice uses any named entities, the MusicXML entity sets are declared so that they can be resolved.
+	 * @param source the source buffer
+	 * @param start the index of the first byte of the slice
+	 * @param end the index one past the last byte of the slice
+	 * @return the parsed element
+	 */
+	private static Element parseSlice(ByteBuffer source, int start, int end) throws ParserConfigurationException, SAXException, IOException {
+		String prologue = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+		if (contains(source, start, end, new byte[] {'&'})) {
+			prologue += "<!DOCTYPE slice ["
+					+ "<!ENTITY % isolat1 SYSTEM \"isolat1.ent\"> %isolat1;"
+					+ "<!ENTITY % isolat2 SYSTEM \"isolat2.ent\"> %isolat2;"
+					+ "]>";
+		}
+		prologue += "<slice>";
+		
+		InputStream stream = new SequenceInputStream(
+				new SequenceInputStream(new ByteArrayInputStream(prologue.getBytes(StandardCharsets.UTF_8)), new ByteBufferInputStream(source, start, end)),
+				new ByteArrayInputStream("</slice>".getBytes(StandardCharsets.UTF_8)));
+		
+		DocumentBuilder builder = EXPANSION_DBF.newDocumentBuilder();
+		builder.setEntityResolver(new MusicXMLEntityResolver());
+		Document fragment = builder.parse(new InputSource(stream));
+		
+		for (Node child = fragment.getDocumentElement().getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE) {
+				return (Element) child;
+			}
+		}
+		throw new SAXException("slice did not contain an element");
+	}
+	
+	/**
+	 * Removes the whitespace-only text nodes that sit between elements, just like a validating parser would.
+	 * @param node the root of the subtree to clean up
+	 */
+	private static void removeIgnorableWhitespace(Node node) {
+		boolean hasElementChildren = false;
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE) {
+				hasElementChildren = true;
+				removeIgnorableWhitespace(child);
+			}
+		}
+		if (!hasElementChildren) {
+			return; // Text-only content is meaningful, leave it be
+		}
+		
+		Node child = node.getFirstChild();
+		while (child != null) {
+			Node next = child.getNextSibling();
+			if (child.getNodeType() == Node.TEXT_NODE && child.getNodeValue().trim().isEmpty()) {
+				node.removeChild(child);
+			}
+			child = next;
+		}
+	}
+	
+	/**
+	 * @return true if the pattern occurs within the region of the buffer
+	 */
+	private static boolean contains(ByteBuffer buffer, int start, int end, byte[] pattern) {
+		int last = end - pattern.length;
+		outer:
+		for (int i = start; i <= last; i++) {
+			for (int j = 0; j < pattern.length; j++) {
+				if (buffer.get(i + j) != pattern[j]) {
+					continue outer;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,203 @@
+package net.cacabish.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Converts scores between the formats and versions of MusicXML, using the stylesheets that come with the MusicXML schema.
+ * <br><br>
+ * Compiling a stylesheet takes far longer than running it, so each one is compiled the first time it's needed and then shared by every thread for
+ * the rest of the run. A compiled stylesheet ({@link Templates}) is thread-safe; only the {@code Transformer} made from it for each conversion isn't.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class MusicXMLConverter {
+	
+	/**
+	 * The resource directory the stylesheets are loaded from. The 4.0 stylesheets can convert all the way down to 1.0.
+	 */
+	private static final String STYLESHEET_DIRECTORY = "/musicxml-4.0/schema/";
+	
+	/**
+	 * Every version a score can be converted down to, newest first. Converting from one version to the next is done by the stylesheet
+	 * named after the next one, so that going from 4.0 to 3.0 means running {@code to31.xsl} and then {@code to30.xsl}.
+	 */
+	private static final List<String> VERSIONS = Arrays.asList("4.0", "3.1", "3.0", "2.0", "1.1", "1.0");
+	
+	/**
+	 * Every stylesheet compiled so far, keyed by file name. Shared by every thread.
+	 */
+	private static final ConcurrentHashMap<String, Templates> TEMPLATES = new ConcurrentHashMap<>();
+	
+	/**
+	 * The user data key under which the version named in a score's DOCTYPE is stored on the document.
+	 */
+	private static final String DECLARED_VERSION_KEY = "net.cacabish.xml.MusicXMLConverter.declaredVersion";
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private MusicXMLConverter() {}
+	
+	/**
+	 * @param document a score
+	 * @return true if the score is timewise (parts inside measures) rather than partwise (measures inside parts)
+	 */
+	public static boolean isTimewise(Document document) {
+		return document.getDocumentElement() != null && document.getDocumentElement().getTagName().equals("score-timewise");
+	}
+	
+	/**
+	 * @param version a MusicXML version, such as {@code 3.1}
+	 * @return true if a score can be converted down to that version
+	 */
+	public static boolean isSupportedVersion(String version) {
+		return VERSIONS.contains(version);
+	}
+	
+	/**
+	 * Remembers the version a freshly parsed score's DOCTYPE named, so that it can be saved with the same DOCTYPE.
+	 * @param document the score
+	 * @param version the version, such as {@code 3.1}, or {@code null} if the DOCTYPE didn't name one
+	 */
+	public static void setDeclaredVersion(Document document, String version) {
+		document.setUserData(DECLARED_VERSION_KEY, version, null);
+	}
+	
+	/**
+	 * Returns the version a score says it is: the version its DOCTYPE named, or else its {@code version} attribute. A score that doesn't say is assumed
+	 * to be the newest version, since that's the grammar it was validated against, and converting it down is harmless if it's actually older.
+	 * @param document a score
+	 * @return the version, such as {@code 4.0}
+	 */
+	public static String getVersion(Document document) {
+		String declared = (String) document.getUserData(DECLARED_VERSION_KEY);
+		if (declared != null) {
+			return declared;
+		}
+		
+		// The DTD fills in a version of 1.0 when there isn't one, so only trust the attribute if it was actually in the file
+		Attr version = document.getDocumentElement().getAttributeNode("version");
+		if (version == null || !version.getSpecified()) {
+			return VERSIONS.get(0);
+		}
+		return version.getValue();
+	}
+	
+	/**
+	 * Makes a deep copy of a score, with the same declared version, so that it can be cleaned without changing the original.
+	 * Only the score itself is copied: nothing else attached to it (such as the bytes it was parsed from) comes along, so the copy is always saved normally.
+	 * @param document the score, which must not be lazy
+	 * @return the copy
+	 */
+	public static Document copy(Document document) {
+		Document copy = (Document) document.cloneNode(true);
+		setDeclaredVersion(copy, (String) document.getUserData(DECLARED_VERSION_KEY));
+		return copy;
+	}
+	
+	/**
+	 * Converts a timewise score to a partwise one. Any lazy parts of the score are expanded first.
+	 * @param document the timewise score
+	 * @return a new, partwise score. It isn't lazy, even if the timewise score was.
+	 * @throws TransformerException if the conversion fails
+	 */
+	public static Document toPartwise(Document document) throws TransformerException {
+		if (!isTimewise(document)) {
+			throw new IllegalArgumentException("the score is not timewise");
+		}
+		Document partwise = transform(document, "timepart.xsl");
+		setDeclaredVersion(partwise, (String) document.getUserData(DECLARED_VERSION_KEY));
+		return partwise;
+	}
+	
+	/**
+	 * Converts a partwise score down to an older version of MusicXML, one version at a time. Any lazy parts of the score are expanded first.
+	 * A score that's already at (or below) that version is returned as is.
+	 * @param document the partwise score
+	 * @param version the version to convert to, such as {@code 3.0}
+	 * @return a new score at that version, or the same score if there was nothing to do. The new score isn't lazy, even if the old one was.
+	 * @throws IllegalArgumentException if the version isn't one that can be converted to
+	 * @throws TransformerException if the conversion fails
+	 */
+	public static Document downConvert(Document document, String version) throws TransformerException {
+		int target = VERSIONS.indexOf(version);
+		if (target == -1)
+			throw new IllegalArgumentException("can't convert to MusicXML " + version);
+		
+		int current = VERSIONS.indexOf(getVersion(document));
+		if (current == -1) {
+			current = 0; // Some version we don't know about, so presumably a newer one
+		}
+		for (int i = current + 1; i <= target; i++) {
+			document = transform(document, "to" + VERSIONS.get(i).replace(".", "") + ".xsl");
+		}
+		return document;
+	}
+	
+	/**
+	 * Runs a stylesheet over a score.
+	 * @param document the score, which isn't changed (apart from having its lazy parts expanded)
+	 * @param stylesheet the file name of the stylesheet
+	 * @return the new score
+	 * @throws TransformerException if the stylesheet can't be compiled or fails
+	 */
+	private static Document transform(Document document, String stylesheet) throws TransformerException {
+		// The stylesheet can't see inside slices
+		if (LazySlices.isLazy(document)) {
+			NodeList measures = document.getElementsByTagName("measure");
+			for (int i = 0; i < measures.getLength(); i++) {
+				LazySlices.expand((Element) measures.item(i));
+			}
+		}
+		
+		DOMResult result = new DOMResult();
+		getTemplates(stylesheet).newTransformer().transform(new DOMSource(document), result);
+		return (Document) result.getNode();
+	}
+	
+	/**
+	 * Returns a compiled stylesheet, compiling it if this is the first time it has been asked for.
+	 * @param stylesheet the file name of the stylesheet
+	 * @return the compiled stylesheet
+	 * @throws TransformerConfigurationException if the stylesheet is missing or can't be compiled
+	 */
+	private static Templates getTemplates(String stylesheet) throws TransformerConfigurationException {
+		Templates templates = TEMPLATES.get(stylesheet);
+		if (templates == null) {
+			String resource = STYLESHEET_DIRECTORY + stylesheet;
+			try (InputStream in = MusicXMLConverter.class.getResourceAsStream(resource)) {
+				if (in == null) {
+					throw new TransformerConfigurationException("Missing stylesheet: " + resource);
+				}
+				// Two threads may compile the same stylesheet at the same time, but only one of them is kept
+				templates = TransformerFactory.newInstance().newTemplates(new StreamSource(in, MusicXMLConverter.class.getResource(resource).toString()));
+			} catch (IOException e) {
+				throw new TransformerConfigurationException("Unable to read stylesheet: " + resource, e);
+			}
+			Templates existing = TEMPLATES.putIfAbsent(stylesheet, templates);
+			if (existing != null) {
+				templates = existing;
+			}
+		}
+		return templates;
+	}
+}
@@ -0,0 +1,1795 @@
+package net.cacabish.xml;
+
+/**
+ * The name of every element and attribute in the MusicXML schema, each with a fixed ID, so that names can be compared and switched on as {@code int}s.
+ * A {@link ScoreTree} gives every name in this table its ID here; any other name is given an ID of at least {@link #COUNT}.
+ * {@link NodeSymbols} looks up the same IDs for the nodes of a DOM.
+ * <br><br>
+ * This file is generated from {@code musicxml.xsd} by {@link SymbolTableGenerator}. Don't edit it by hand.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class MusicXMLSymbols {
+	
+	/** {@code abbreviated} */
+	public static final int ABBREVIATED = 0;
+	/** {@code above} */
+	public static final int ABOVE = 1;
+	/** {@code accelerate} */
+	public static final int ACCELERATE = 2;
+	/** {@code accent} */
+	public static final int ACCENT = 3;
+	/** {@code accidental} */
+	public static final int ACCIDENTAL = 4;
+	/** {@code accidental-mark} */
+	public static final int ACCIDENTAL_MARK = 5;
+	/** {@code accidental-text} */
+	public static final int ACCIDENTAL_TEXT = 6;
+	/** {@code accord} */
+	public static final int ACCORD = 7;
+	/** {@code accordion-high} */
+	public static final int ACCORDION_HIGH = 8;
+	/** {@code accordion-low} */
+	public static final int ACCORDION_LOW = 9;
+	/** {@code accordion-middle} */
+	public static final int ACCORDION_MIDDLE = 10;
+	/** {@code accordion-registration} */
+	public static final int ACCORDION_REGISTRATION = 11;
+	/** {@code actual-notes} */
+	public static final int ACTUAL_NOTES = 12;
+	/** {@code additional} */
+	public static final int ADDITIONAL = 13;
+	/** {@code after-barline} */
+	public static final int AFTER_BARLINE = 14;
+	/** {@code after-jump} */
+	public static final int AFTER_JUMP = 15;
+	/** {@code alter} */
+	public static final int ALTER = 16;
+	/** {@code alternate} */
+	public static final int ALTERNATE = 17;
+	/** {@code appearance} */
+	public static final int APPEARANCE = 18;
+	/** {@code approach} */
+	public static final int APPROACH = 19;
+	/** {@code arpeggiate} */
+	public static final int ARPEGGIATE = 20;
+	/** {@code arrangement} */
+	public static final int ARRANGEMENT = 21;
+	/** {@code arrow} */
+	public static final int ARROW = 22;
+	/** {@code arrow-direction} */
+	public static final int ARROW_DIRECTION = 23;
+	/** {@code arrow-style} */
+	public static final int ARROW_STYLE = 24;
+	/** {@code arrowhead} */
+	public static final int ARROWHEAD = 25;
+	/** {@code articulations} */
+	public static final int ARTICULATIONS = 26;
+	/** {@code artificial} */
+	public static final int ARTIFICIAL = 27;
+	/** {@code assess} */
+	public static final int ASSESS = 28;
+	/** {@code attack} */
+	public static final int ATTACK = 29;
+	/** {@code attribute} */
+	public static final int ATTRIBUTE = 30;
+	/** {@code attributes} */
+	public static final int ATTRIBUTES = 31;
+	/** {@code backup} */
+	public static final int BACKUP = 32;
+	/** {@code bar-style} */
+	public static final int BAR_STYLE = 33;
+	/** {@code barline} */
+	public static final int BARLINE = 34;
+	/** {@code barre} */
+	public static final int BARRE = 35;
+	/** {@code base-pitch} */
+	public static final int BASE_PITCH = 36;
+	/** {@code bass} */
+	public static final int BASS = 37;
+	/** {@code bass-alter} */
+	public static final int BASS_ALTER = 38;
+	/** {@code bass-separator} */
+	public static final int BASS_SEPARATOR = 39;
+	/** {@code bass-step} */
+	public static final int BASS_STEP = 40;
+	/** {@code beam} */
+	public static final int BEAM = 41;
+	/** {@code beat-repeat} */
+	public static final int BEAT_REPEAT = 42;
+	/** {@code beat-type} */
+	public static final int BEAT_TYPE = 43;
+	/** {@code beat-unit} */
+	public static final int BEAT_UNIT = 44;
+	/** {@code beat-unit-dot} */
+	public static final int BEAT_UNIT_DOT = 45;
+	/** {@code beat-unit-tied} */
+	public static final int BEAT_UNIT_TIED = 46;
+	/** {@code beater} */
+	public static final int BEATER = 47;
+	/** {@code beats} */
+	public static final int BEATS = 48;
+	/** {@code bend} */
+	public static final int BEND = 49;
+	/** {@code bend-alter} */
+	public static final int BEND_ALTER = 50;
+	/** {@code bezier-offset} */
+	public static final int BEZIER_OFFSET = 51;
+	/** {@code bezier-offset2} */
+	public static final int BEZIER_OFFSET2 = 52;
+	/** {@code bezier-x} */
+	public static final int BEZIER_X = 53;
+	/** {@code bezier-x2} */
+	public static final int BEZIER_X2 = 54;
+	/** {@code bezier-y} */
+	public static final int BEZIER_Y = 55;
+	/** {@code bezier-y2} */
+	public static final int BEZIER_Y2 = 56;
+	/** {@code blank-page} */
+	public static final int BLANK_PAGE = 57;
+	/** {@code bookmark} */
+	public static final int BOOKMARK = 58;
+	/** {@code bottom-margin} */
+	public static final int BOTTOM_MARGIN = 59;
+	/** {@code bottom-staff} */
+	public static final int BOTTOM_STAFF = 60;
+	/** {@code bracket} */
+	public static final int BRACKET = 61;
+	/** {@code bracket-degrees} */
+	public static final int BRACKET_DEGREES = 62;
+	/** {@code brass-bend} */
+	public static final int BRASS_BEND = 63;
+	/** {@code breath-mark} */
+	public static final int BREATH_MARK = 64;
+	/** {@code caesura} */
+	public static final int CAESURA = 65;
+	/** {@code cancel} */
+	public static final int CANCEL = 66;
+	/** {@code capo} */
+	public static final int CAPO = 67;
+	/** {@code cautionary} */
+	public static final int CAUTIONARY = 68;
+	/** {@code chord} */
+	public static final int CHORD = 69;
+	/** {@code chromatic} */
+	public static final int CHROMATIC = 70;
+	/** {@code circular-arrow} */
+	public static final int CIRCULAR_ARROW = 71;
+	/** {@code clef} */
+	public static final int CLEF = 72;
+	/** {@code clef-octave-change} */
+	public static final int CLEF_OCTAVE_CHANGE = 73;
+	/** {@code coda} */
+	public static final int CODA = 74;
+	/** {@code color} */
+	public static final int COLOR = 75;
+	/** {@code concert-score} */
+	public static final int CONCERT_SCORE = 76;
+	/** {@code creator} */
+	public static final int CREATOR = 77;
+	/** {@code credit} */
+	public static final int CREDIT = 78;
+	/** {@code credit-image} */
+	public static final int CREDIT_IMAGE = 79;
+	/** {@code credit-symbol} */
+	public static final int CREDIT_SYMBOL = 80;
+	/** {@code credit-type} */
+	public static final int CREDIT_TYPE = 81;
+	/** {@code credit-words} */
+	public static final int CREDIT_WORDS = 82;
+	/** {@code cue} */
+	public static final int CUE = 83;
+	/** {@code dacapo} */
+	public static final int DACAPO = 84;
+	/** {@code dalsegno} */
+	public static final int DALSEGNO = 85;
+	/** {@code damp} */
+	public static final int DAMP = 86;
+	/** {@code damp-all} */
+	public static final int DAMP_ALL = 87;
+	/** {@code damper-pedal} */
+	public static final int DAMPER_PEDAL = 88;
+	/** {@code dash-length} */
+	public static final int DASH_LENGTH = 89;
+	/** {@code dashed-circle} */
+	public static final int DASHED_CIRCLE = 90;
+	/** {@code dashes} */
+	public static final int DASHES = 91;
+	/** {@code default-x} */
+	public static final int DEFAULT_X = 92;
+	/** {@code default-y} */
+	public static final int DEFAULT_Y = 93;
+	/** {@code defaults} */
+	public static final int DEFAULTS = 94;
+	/** {@code degree} */
+	public static final int DEGREE = 95;
+	/** {@code degree-alter} */
+	public static final int DEGREE_ALTER = 96;
+	/** {@code degree-type} */
+	public static final int DEGREE_TYPE = 97;
+	/** {@code degree-value} */
+	public static final int DEGREE_VALUE = 98;
+	/** {@code delayed-inverted-turn} */
+	public static final int DELAYED_INVERTED_TURN = 99;
+	/** {@code delayed-turn} */
+	public static final int DELAYED_TURN = 100;
+	/** {@code departure} */
+	public static final int DEPARTURE = 101;
+	/** {@code detached-legato} */
+	public static final int DETACHED_LEGATO = 102;
+	/** {@code diatonic} */
+	public static final int DIATONIC = 103;
+	/** {@code dir} */
+	public static final int DIR = 104;
+	/** {@code direction} */
+	public static final int DIRECTION = 105;
+	/** {@code direction-type} */
+	public static final int DIRECTION_TYPE = 106;
+	/** {@code directive} */
+	public static final int DIRECTIVE = 107;
+	/** {@code display-octave} */
+	public static final int DISPLAY_OCTAVE = 108;
+	/** {@code display-step} */
+	public static final int DISPLAY_STEP = 109;
+	/** {@code display-text} */
+	public static final int DISPLAY_TEXT = 110;
+	/** {@code distance} */
+	public static final int DISTANCE = 111;
+	/** {@code divisions} */
+	public static final int DIVISIONS = 112;
+	/** {@code doit} */
+	public static final int DOIT = 113;
+	/** {@code dot} */
+	public static final int DOT = 114;
+	/** {@code double} */
+	public static final int DOUBLE = 115;
+	/** {@code double-tongue} */
+	public static final int DOUBLE_TONGUE = 116;
+	/** {@code down-bow} */
+	public static final int DOWN_BOW = 117;
+	/** {@code duration} */
+	public static final int DURATION = 118;
+	/** {@code dynamics} */
+	public static final int DYNAMICS = 119;
+	/** {@code editorial} */
+	public static final int EDITORIAL = 120;
+	/** {@code effect} */
+	public static final int EFFECT = 121;
+	/** {@code element} */
+	public static final int ELEMENT = 122;
+	/** {@code elevation} */
+	public static final int ELEVATION = 123;
+	/** {@code elision} */
+	public static final int ELISION = 124;
+	/** {@code enclosure} */
+	public static final int ENCLOSURE = 125;
+	/** {@code encoder} */
+	public static final int ENCODER = 126;
+	/** {@code encoding} */
+	public static final int ENCODING = 127;
+	/** {@code encoding-date} */
+	public static final int ENCODING_DATE = 128;
+	/** {@code encoding-description} */
+	public static final int ENCODING_DESCRIPTION = 129;
+	/** {@code end-dynamics} */
+	public static final int END_DYNAMICS = 130;
+	/** {@code end-length} */
+	public static final int END_LENGTH = 131;
+	/** {@code end-line} */
+	public static final int END_LINE = 132;
+	/** {@code end-paragraph} */
+	public static final int END_PARAGRAPH = 133;
+	/** {@code ending} */
+	public static final int ENDING = 134;
+	/** {@code ensemble} */
+	public static final int ENSEMBLE = 135;
+	/** {@code except-voice} */
+	public static final int EXCEPT_VOICE = 136;
+	/** {@code extend} */
+	public static final int EXTEND = 137;
+	/** {@code eyeglasses} */
+	public static final int EYEGLASSES = 138;
+	/** {@code f} */
+	public static final int F = 139;
+	/** {@code falloff} */
+	public static final int FALLOFF = 140;
+	/** {@code fan} */
+	public static final int FAN = 141;
+	/** {@code feature} */
+	public static final int FEATURE = 142;
+	/** {@code fermata} */
+	public static final int FERMATA = 143;
+	/** {@code ff} */
+	public static final int FF = 144;
+	/** {@code fff} */
+	public static final int FFF = 145;
+	/** {@code ffff} */
+	public static final int FFFF = 146;
+	/** {@code fffff} */
+	public static final int FFFFF = 147;
+	/** {@code ffffff} */
+	public static final int FFFFFF = 148;
+	/** {@code fifths} */
+	public static final int FIFTHS = 149;
+	/** {@code figure} */
+	public static final int FIGURE = 150;
+	/** {@code figure-number} */
+	public static final int FIGURE_NUMBER = 151;
+	/** {@code figured-bass} */
+	public static final int FIGURED_BASS = 152;
+	/** {@code filled} */
+	public static final int FILLED = 153;
+	/** {@code fine} */
+	public static final int FINE = 154;
+	/** {@code fingering} */
+	public static final int FINGERING = 155;
+	/** {@code fingernails} */
+	public static final int FINGERNAILS = 156;
+	/** {@code first} */
+	public static final int FIRST = 157;
+	/** {@code first-beat} */
+	public static final int FIRST_BEAT = 158;
+	/** {@code first-fret} */
+	public static final int FIRST_FRET = 159;
+	/** {@code flip} */
+	public static final int FLIP = 160;
+	/** {@code font-family} */
+	public static final int FONT_FAMILY = 161;
+	/** {@code font-size} */
+	public static final int FONT_SIZE = 162;
+	/** {@code font-style} */
+	public static final int FONT_STYLE = 163;
+	/** {@code font-weight} */
+	public static final int FONT_WEIGHT = 164;
+	/** {@code footnote} */
+	public static final int FOOTNOTE = 165;
+	/** {@code for-part} */
+	public static final int FOR_PART = 166;
+	/** {@code forward} */
+	public static final int FORWARD = 167;
+	/** {@code forward-repeat} */
+	public static final int FORWARD_REPEAT = 168;
+	/** {@code fp} */
+	public static final int FP = 169;
+	/** {@code frame} */
+	public static final int FRAME = 170;
+	/** {@code frame-frets} */
+	public static final int FRAME_FRETS = 171;
+	/** {@code frame-note} */
+	public static final int FRAME_NOTE = 172;
+	/** {@code frame-strings} */
+	public static final int FRAME_STRINGS = 173;
+	/** {@code fret} */
+	public static final int FRET = 174;
+	/** {@code function} */
+	public static final int FUNCTION = 175;
+	/** {@code fz} */
+	public static final int FZ = 176;
+	/** {@code glass} */
+	public static final int GLASS = 177;
+	/** {@code glissando} */
+	public static final int GLISSANDO = 178;
+	/** {@code glyph} */
+	public static final int GLYPH = 179;
+	/** {@code golpe} */
+	public static final int GOLPE = 180;
+	/** {@code grace} */
+	public static final int GRACE = 181;
+	/** {@code group} */
+	public static final int GROUP = 182;
+	/** {@code group-abbreviation} */
+	public static final int GROUP_ABBREVIATION = 183;
+	/** {@code group-abbreviation-display} */
+	public static final int GROUP_ABBREVIATION_DISPLAY = 184;
+	/** {@code group-barline} */
+	public static final int GROUP_BARLINE = 185;
+	/** {@code group-link} */
+	public static final int GROUP_LINK = 186;
+	/** {@code group-name} */
+	public static final int GROUP_NAME = 187;
+	/** {@code group-name-display} */
+	public static final int GROUP_NAME_DISPLAY = 188;
+	/** {@code group-symbol} */
+	public static final int GROUP_SYMBOL = 189;
+	/** {@code group-time} */
+	public static final int GROUP_TIME = 190;
+	/** {@code grouping} */
+	public static final int GROUPING = 191;
+	/** {@code half-muted} */
+	public static final int HALF_MUTED = 192;
+	/** {@code halign} */
+	public static final int HALIGN = 193;
+	/** {@code hammer-on} */
+	public static final int HAMMER_ON = 194;
+	/** {@code hand} */
+	public static final int HAND = 195;
+	/** {@code handbell} */
+	public static final int HANDBELL = 196;
+	/** {@code harmon-closed} */
+	public static final int HARMON_CLOSED = 197;
+	/** {@code harmon-mute} */
+	public static final int HARMON_MUTE = 198;
+	/** {@code harmonic} */
+	public static final int HARMONIC = 199;
+	/** {@code harmony} */
+	public static final int HARMONY = 200;
+	/** {@code harp-pedals} */
+	public static final int HARP_PEDALS = 201;
+	/** {@code haydn} */
+	public static final int HAYDN = 202;
+	/** {@code heel} */
+	public static final int HEEL = 203;
+	/** {@code height} */
+	public static final int HEIGHT = 204;
+	/** {@code hole} */
+	public static final int HOLE = 205;
+	/** {@code hole-closed} */
+	public static final int HOLE_CLOSED = 206;
+	/** {@code hole-shape} */
+	public static final int HOLE_SHAPE = 207;
+	/** {@code hole-type} */
+	public static final int HOLE_TYPE = 208;
+	/** {@code humming} */
+	public static final int HUMMING = 209;
+	/** {@code id} */
+	public static final int ID = 210;
+	/** {@code identification} */
+	public static final int IDENTIFICATION = 211;
+	/** {@code image} */
+	public static final int IMAGE = 212;
+	/** {@code implicit} */
+	public static final int IMPLICIT = 213;
+	/** {@code instrument} */
+	public static final int INSTRUMENT = 214;
+	/** {@code instrument-abbreviation} */
+	public static final int INSTRUMENT_ABBREVIATION = 215;
+	/** {@code instrument-change} */
+	public static final int INSTRUMENT_CHANGE = 216;
+	/** {@code instrument-link} */
+	public static final int INSTRUMENT_LINK = 217;
+	/** {@code instrument-name} */
+	public static final int INSTRUMENT_NAME = 218;
+	/** {@code instrument-sound} */
+	public static final int INSTRUMENT_SOUND = 219;
+	/** {@code instruments} */
+	public static final int INSTRUMENTS = 220;
+	/** {@code interchangeable} */
+	public static final int INTERCHANGEABLE = 221;
+	/** {@code inversion} */
+	public static final int INVERSION = 222;
+	/** {@code inverted-mordent} */
+	public static final int INVERTED_MORDENT = 223;
+	/** {@code inverted-turn} */
+	public static final int INVERTED_TURN = 224;
+	/** {@code inverted-vertical-turn} */
+	public static final int INVERTED_VERTICAL_TURN = 225;
+	/** {@code ipa} */
+	public static final int IPA = 226;
+	/** {@code justify} */
+	public static final int JUSTIFY = 227;
+	/** {@code key} */
+	public static final int KEY = 228;
+	/** {@code key-accidental} */
+	public static final int KEY_ACCIDENTAL = 229;
+	/** {@code key-alter} */
+	public static final int KEY_ALTER = 230;
+	/** {@code key-octave} */
+	public static final int KEY_OCTAVE = 231;
+	/** {@code key-step} */
+	public static final int KEY_STEP = 232;
+	/** {@code kind} */
+	public static final int KIND = 233;
+	/** {@code last-beat} */
+	public static final int LAST_BEAT = 234;
+	/** {@code latency} */
+	public static final int LATENCY = 235;
+	/** {@code laughing} */
+	public static final int LAUGHING = 236;
+	/** {@code left-divider} */
+	public static final int LEFT_DIVIDER = 237;
+	/** {@code left-margin} */
+	public static final int LEFT_MARGIN = 238;
+	/** {@code letter-spacing} */
+	public static final int LETTER_SPACING = 239;
+	/** {@code level} */
+	public static final int LEVEL = 240;
+	/** {@code line} */
+	public static final int LINE = 241;
+	/** {@code line-detail} */
+	public static final int LINE_DETAIL = 242;
+	/** {@code line-end} */
+	public static final int LINE_END = 243;
+	/** {@code line-height} */
+	public static final int LINE_HEIGHT = 244;
+	/** {@code line-length} */
+	public static final int LINE_LENGTH = 245;
+	/** {@code line-shape} */
+	public static final int LINE_SHAPE = 246;
+	/** {@code line-through} */
+	public static final int LINE_THROUGH = 247;
+	/** {@code line-type} */
+	public static final int LINE_TYPE = 248;
+	/** {@code line-width} */
+	public static final int LINE_WIDTH = 249;
+	/** {@code link} */
+	public static final int LINK = 250;
+	/** {@code listen} */
+	public static final int LISTEN = 251;
+	/** {@code listening} */
+	public static final int LISTENING = 252;
+	/** {@code location} */
+	public static final int LOCATION = 253;
+	/** {@code long} */
+	public static final int LONG = 254;
+	/** {@code lyric} */
+	public static final int LYRIC = 255;
+	/** {@code lyric-font} */
+	public static final int LYRIC_FONT = 256;
+	/** {@code lyric-language} */
+	public static final int LYRIC_LANGUAGE = 257;
+	/** {@code make-time} */
+	public static final int MAKE_TIME = 258;
+	/** {@code measure} */
+	public static final int MEASURE = 259;
+	/** {@code measure-distance} */
+	public static final int MEASURE_DISTANCE = 260;
+	/** {@code measure-layout} */
+	public static final int MEASURE_LAYOUT = 261;
+	/** {@code measure-numbering} */
+	public static final int MEASURE_NUMBERING = 262;
+	/** {@code measure-repeat} */
+	public static final int MEASURE_REPEAT = 263;
+	/** {@code measure-style} */
+	public static final int MEASURE_STYLE = 264;
+	/** {@code member-of} */
+	public static final int MEMBER_OF = 265;
+	/** {@code membrane} */
+	public static final int MEMBRANE = 266;
+	/** {@code metal} */
+	public static final int METAL = 267;
+	/** {@code metronome} */
+	public static final int METRONOME = 268;
+	/** {@code metronome-arrows} */
+	public static final int METRONOME_ARROWS = 269;
+	/** {@code metronome-beam} */
+	public static final int METRONOME_BEAM = 270;
+	/** {@code metronome-dot} */
+	public static final int METRONOME_DOT = 271;
+	/** {@code metronome-note} */
+	public static final int METRONOME_NOTE = 272;
+	/** {@code metronome-relation} */
+	public static final int METRONOME_RELATION = 273;
+	/** {@code metronome-tied} */
+	public static final int METRONOME_TIED = 274;
+	/** {@code metronome-tuplet} */
+	public static final int METRONOME_TUPLET = 275;
+	/** {@code metronome-type} */
+	public static final int METRONOME_TYPE = 276;
+	/** {@code mf} */
+	public static final int MF = 277;
+	/** {@code midi-bank} */
+	public static final int MIDI_BANK = 278;
+	/** {@code midi-channel} */
+	public static final int MIDI_CHANNEL = 279;
+	/** {@code midi-device} */
+	public static final int MIDI_DEVICE = 280;
+	/** {@code midi-instrument} */
+	public static final int MIDI_INSTRUMENT = 281;
+	/** {@code midi-name} */
+	public static final int MIDI_NAME = 282;
+	/** {@code midi-program} */
+	public static final int MIDI_PROGRAM = 283;
+	/** {@code midi-unpitched} */
+	public static final int MIDI_UNPITCHED = 284;
+	/** {@code millimeters} */
+	public static final int MILLIMETERS = 285;
+	/** {@code miscellaneous} */
+	public static final int MISCELLANEOUS = 286;
+	/** {@code miscellaneous-field} */
+	public static final int MISCELLANEOUS_FIELD = 287;
+	/** {@code mode} */
+	public static final int MODE = 288;
+	/** {@code mordent} */
+	public static final int MORDENT = 289;
+	/** {@code movement-number} */
+	public static final int MOVEMENT_NUMBER = 290;
+	/** {@code movement-title} */
+	public static final int MOVEMENT_TITLE = 291;
+	/** {@code mp} */
+	public static final int MP = 292;
+	/** {@code multiple-rest} */
+	public static final int MULTIPLE_REST = 293;
+	/** {@code multiple-rest-always} */
+	public static final int MULTIPLE_REST_ALWAYS = 294;
+	/** {@code multiple-rest-range} */
+	public static final int MULTIPLE_REST_RANGE = 295;
+	/** {@code music-font} */
+	public static final int MUSIC_FONT = 296;
+	/** {@code mute} */
+	public static final int MUTE = 297;
+	/** {@code n} */
+	public static final int N = 298;
+	/** {@code name} */
+	public static final int NAME = 299;
+	/** {@code natural} */
+	public static final int NATURAL = 300;
+	/** {@code new-page} */
+	public static final int NEW_PAGE = 301;
+	/** {@code new-system} */
+	public static final int NEW_SYSTEM = 302;
+	/** {@code niente} */
+	public static final int NIENTE = 303;
+	/** {@code non-arpeggiate} */
+	public static final int NON_ARPEGGIATE = 304;
+	/** {@code non-controlling} */
+	public static final int NON_CONTROLLING = 305;
+	/** {@code normal-dot} */
+	public static final int NORMAL_DOT = 306;
+	/** {@code normal-notes} */
+	public static final int NORMAL_NOTES = 307;
+	/** {@code normal-type} */
+	public static final int NORMAL_TYPE = 308;
+	/** {@code notations} */
+	public static final int NOTATIONS = 309;
+	/** {@code note} */
+	public static final int NOTE = 310;
+	/** {@code note-size} */
+	public static final int NOTE_SIZE = 311;
+	/** {@code notehead} */
+	public static final int NOTEHEAD = 312;
+	/** {@code notehead-text} */
+	public static final int NOTEHEAD_TEXT = 313;
+	/** {@code number} */
+	public static final int NUMBER = 314;
+	/** {@code numeral} */
+	public static final int NUMERAL = 315;
+	/** {@code numeral-alter} */
+	public static final int NUMERAL_ALTER = 316;
+	/** {@code numeral-fifths} */
+	public static final int NUMERAL_FIFTHS = 317;
+	/** {@code numeral-key} */
+	public static final int NUMERAL_KEY = 318;
+	/** {@code numeral-mode} */
+	public static final int NUMERAL_MODE = 319;
+	/** {@code numeral-root} */
+	public static final int NUMERAL_ROOT = 320;
+	/** {@code octave} */
+	public static final int OCTAVE = 321;
+	/** {@code octave-change} */
+	public static final int OCTAVE_CHANGE = 322;
+	/** {@code octave-shift} */
+	public static final int OCTAVE_SHIFT = 323;
+	/** {@code offset} */
+	public static final int OFFSET = 324;
+	/** {@code open} */
+	public static final int OPEN = 325;
+	/** {@code open-string} */
+	public static final int OPEN_STRING = 326;
+	/** {@code opus} */
+	public static final int OPUS = 327;
+	/** {@code orientation} */
+	public static final int ORIENTATION = 328;
+	/** {@code ornaments} */
+	public static final int ORNAMENTS = 329;
+	/** {@code other-appearance} */
+	public static final int OTHER_APPEARANCE = 330;
+	/** {@code other-articulation} */
+	public static final int OTHER_ARTICULATION = 331;
+	/** {@code other-direction} */
+	public static final int OTHER_DIRECTION = 332;
+	/** {@code other-dynamics} */
+	public static final int OTHER_DYNAMICS = 333;
+	/** {@code other-listen} */
+	public static final int OTHER_LISTEN = 334;
+	/** {@code other-listening} */
+	public static final int OTHER_LISTENING = 335;
+	/** {@code other-notation} */
+	public static final int OTHER_NOTATION = 336;
+	/** {@code other-ornament} */
+	public static final int OTHER_ORNAMENT = 337;
+	/** {@code other-percussion} */
+	public static final int OTHER_PERCUSSION = 338;
+	/** {@code other-play} */
+	public static final int OTHER_PLAY = 339;
+	/** {@code other-technical} */
+	public static final int OTHER_TECHNICAL = 340;
+	/** {@code overline} */
+	public static final int OVERLINE = 341;
+	/** {@code p} */
+	public static final int P = 342;
+	/** {@code page} */
+	public static final int PAGE = 343;
+	/** {@code page-height} */
+	public static final int PAGE_HEIGHT = 344;
+	/** {@code page-layout} */
+	public static final int PAGE_LAYOUT = 345;
+	/** {@code page-margins} */
+	public static final int PAGE_MARGINS = 346;
+	/** {@code page-number} */
+	public static final int PAGE_NUMBER = 347;
+	/** {@code page-width} */
+	public static final int PAGE_WIDTH = 348;
+	/** {@code pan} */
+	public static final int PAN = 349;
+	/** {@code parentheses} */
+	public static final int PARENTHESES = 350;
+	/** {@code parentheses-degrees} */
+	public static final int PARENTHESES_DEGREES = 351;
+	/** {@code part} */
+	public static final int PART = 352;
+	/** {@code part-abbreviation} */
+	public static final int PART_ABBREVIATION = 353;
+	/** {@code part-abbreviation-display} */
+	public static final int PART_ABBREVIATION_DISPLAY = 354;
+	/** {@code part-clef} */
+	public static final int PART_CLEF = 355;
+	/** {@code part-group} */
+	public static final int PART_GROUP = 356;
+	/** {@code part-link} */
+	public static final int PART_LINK = 357;
+	/** {@code part-list} */
+	public static final int PART_LIST = 358;
+	/** {@code part-name} */
+	public static final int PART_NAME = 359;
+	/** {@code part-name-display} */
+	public static final int PART_NAME_DISPLAY = 360;
+	/** {@code part-symbol} */
+	public static final int PART_SYMBOL = 361;
+	/** {@code part-transpose} */
+	public static final int PART_TRANSPOSE = 362;
+	/** {@code pedal} */
+	public static final int PEDAL = 363;
+	/** {@code pedal-alter} */
+	public static final int PEDAL_ALTER = 364;
+	/** {@code pedal-step} */
+	public static final int PEDAL_STEP = 365;
+	/** {@code pedal-tuning} */
+	public static final int PEDAL_TUNING = 366;
+	/** {@code per-minute} */
+	public static final int PER_MINUTE = 367;
+	/** {@code percussion} */
+	public static final int PERCUSSION = 368;
+	/** {@code pf} */
+	public static final int PF = 369;
+	/** {@code pitch} */
+	public static final int PITCH = 370;
+	/** {@code pitched} */
+	public static final int PITCHED = 371;
+	/** {@code pizzicato} */
+	public static final int PIZZICATO = 372;
+	/** {@code placement} */
+	public static final int PLACEMENT = 373;
+	/** {@code play} */
+	public static final int PLAY = 374;
+	/** {@code player} */
+	public static final int PLAYER = 375;
+	/** {@code player-name} */
+	public static final int PLAYER_NAME = 376;
+	/** {@code plop} */
+	public static final int PLOP = 377;
+	/** {@code pluck} */
+	public static final int PLUCK = 378;
+	/** {@code plus-minus} */
+	public static final int PLUS_MINUS = 379;
+	/** {@code port} */
+	public static final int PORT = 380;
+	/** {@code position} */
+	public static final int POSITION = 381;
+	/** {@code pp} */
+	public static final int PP = 382;
+	/** {@code ppp} */
+	public static final int PPP = 383;
+	/** {@code pppp} */
+	public static final int PPPP = 384;
+	/** {@code ppppp} */
+	public static final int PPPPP = 385;
+	/** {@code pppppp} */
+	public static final int PPPPPP = 386;
+	/** {@code pre-bend} */
+	public static final int PRE_BEND = 387;
+	/** {@code prefix} */
+	public static final int PREFIX = 388;
+	/** {@code principal-voice} */
+	public static final int PRINCIPAL_VOICE = 389;
+	/** {@code print} */
+	public static final int PRINT = 390;
+	/** {@code print-dot} */
+	public static final int PRINT_DOT = 391;
+	/** {@code print-frame} */
+	public static final int PRINT_FRAME = 392;
+	/** {@code print-leger} */
+	public static final int PRINT_LEGER = 393;
+	/** {@code print-lyric} */
+	public static final int PRINT_LYRIC = 394;
+	/** {@code print-object} */
+	public static final int PRINT_OBJECT = 395;
+	/** {@code print-spacing} */
+	public static final int PRINT_SPACING = 396;
+	/** {@code pull-off} */
+	public static final int PULL_OFF = 397;
+	/** {@code reference} */
+	public static final int REFERENCE = 398;
+	/** {@code rehearsal} */
+	public static final int REHEARSAL = 399;
+	/** {@code relation} */
+	public static final int RELATION = 400;
+	/** {@code relative-x} */
+	public static final int RELATIVE_X = 401;
+	/** {@code relative-y} */
+	public static final int RELATIVE_Y = 402;
+	/** {@code release} */
+	public static final int RELEASE = 403;
+	/** {@code repeat} */
+	public static final int REPEAT = 404;
+	/** {@code repeater} */
+	public static final int REPEATER = 405;
+	/** {@code rest} */
+	public static final int REST = 406;
+	/** {@code rf} */
+	public static final int RF = 407;
+	/** {@code rfz} */
+	public static final int RFZ = 408;
+	/** {@code right-divider} */
+	public static final int RIGHT_DIVIDER = 409;
+	/** {@code right-margin} */
+	public static final int RIGHT_MARGIN = 410;
+	/** {@code rights} */
+	public static final int RIGHTS = 411;
+	/** {@code root} */
+	public static final int ROOT = 412;
+	/** {@code root-alter} */
+	public static final int ROOT_ALTER = 413;
+	/** {@code root-step} */
+	public static final int ROOT_STEP = 414;
+	/** {@code rotation} */
+	public static final int ROTATION = 415;
+	/** {@code scaling} */
+	public static final int SCALING = 416;
+	/** {@code schleifer} */
+	public static final int SCHLEIFER = 417;
+	/** {@code scoop} */
+	public static final int SCOOP = 418;
+	/** {@code scordatura} */
+	public static final int SCORDATURA = 419;
+	/** {@code score-instrument} */
+	public static final int SCORE_INSTRUMENT = 420;
+	/** {@code score-part} */
+	public static final int SCORE_PART = 421;
+	/** {@code score-partwise} */
+	public static final int SCORE_PARTWISE = 422;
+	/** {@code score-timewise} */
+	public static final int SCORE_TIMEWISE = 423;
+	/** {@code second} */
+	public static final int SECOND = 424;
+	/** {@code second-beat} */
+	public static final int SECOND_BEAT = 425;
+	/** {@code segno} */
+	public static final int SEGNO = 426;
+	/** {@code semi-pitched} */
+	public static final int SEMI_PITCHED = 427;
+	/** {@code senza-misura} */
+	public static final int SENZA_MISURA = 428;
+	/** {@code separator} */
+	public static final int SEPARATOR = 429;
+	/** {@code sf} */
+	public static final int SF = 430;
+	/** {@code sffz} */
+	public static final int SFFZ = 431;
+	/** {@code sfp} */
+	public static final int SFP = 432;
+	/** {@code sfpp} */
+	public static final int SFPP = 433;
+	/** {@code sfz} */
+	public static final int SFZ = 434;
+	/** {@code sfzp} */
+	public static final int SFZP = 435;
+	/** {@code shake} */
+	public static final int SHAKE = 436;
+	/** {@code shape} */
+	public static final int SHAPE = 437;
+	/** {@code show-frets} */
+	public static final int SHOW_FRETS = 438;
+	/** {@code show-number} */
+	public static final int SHOW_NUMBER = 439;
+	/** {@code show-type} */
+	public static final int SHOW_TYPE = 440;
+	/** {@code sign} */
+	public static final int SIGN = 441;
+	/** {@code size} */
+	public static final int SIZE = 442;
+	/** {@code slash} */
+	public static final int SLASH = 443;
+	/** {@code slash-dot} */
+	public static final int SLASH_DOT = 444;
+	/** {@code slash-type} */
+	public static final int SLASH_TYPE = 445;
+	/** {@code slashes} */
+	public static final int SLASHES = 446;
+	/** {@code slide} */
+	public static final int SLIDE = 447;
+	/** {@code slur} */
+	public static final int SLUR = 448;
+	/** {@code smear} */
+	public static final int SMEAR = 449;
+	/** {@code smufl} */
+	public static final int SMUFL = 450;
+	/** {@code snap-pizzicato} */
+	public static final int SNAP_PIZZICATO = 451;
+	/** {@code soft-accent} */
+	public static final int SOFT_ACCENT = 452;
+	/** {@code soft-pedal} */
+	public static final int SOFT_PEDAL = 453;
+	/** {@code software} */
+	public static final int SOFTWARE = 454;
+	/** {@code solo} */
+	public static final int SOLO = 455;
+	/** {@code sostenuto-pedal} */
+	public static final int SOSTENUTO_PEDAL = 456;
+	/** {@code sound} */
+	public static final int SOUND = 457;
+	/** {@code sounding-pitch} */
+	public static final int SOUNDING_PITCH = 458;
+	/** {@code source} */
+	public static final int SOURCE = 459;
+	/** {@code space-length} */
+	public static final int SPACE_LENGTH = 460;
+	/** {@code spiccato} */
+	public static final int SPICCATO = 461;
+	/** {@code spread} */
+	public static final int SPREAD = 462;
+	/** {@code staccatissimo} */
+	public static final int STACCATISSIMO = 463;
+	/** {@code staccato} */
+	public static final int STACCATO = 464;
+	/** {@code stack-degrees} */
+	public static final int STACK_DEGREES = 465;
+	/** {@code staff} */
+	public static final int STAFF = 466;
+	/** {@code staff-details} */
+	public static final int STAFF_DETAILS = 467;
+	/** {@code staff-distance} */
+	public static final int STAFF_DISTANCE = 468;
+	/** {@code staff-divide} */
+	public static final int STAFF_DIVIDE = 469;
+	/** {@code staff-layout} */
+	public static final int STAFF_LAYOUT = 470;
+	/** {@code staff-lines} */
+	public static final int STAFF_LINES = 471;
+	/** {@code staff-size} */
+	public static final int STAFF_SIZE = 472;
+	/** {@code staff-spacing} */
+	public static final int STAFF_SPACING = 473;
+	/** {@code staff-tuning} */
+	public static final int STAFF_TUNING = 474;
+	/** {@code staff-type} */
+	public static final int STAFF_TYPE = 475;
+	/** {@code start-note} */
+	public static final int START_NOTE = 476;
+	/** {@code staves} */
+	public static final int STAVES = 477;
+	/** {@code steal-time-following} */
+	public static final int STEAL_TIME_FOLLOWING = 478;
+	/** {@code steal-time-previous} */
+	public static final int STEAL_TIME_PREVIOUS = 479;
+	/** {@code stem} */
+	public static final int STEM = 480;
+	/** {@code step} */
+	public static final int STEP = 481;
+	/** {@code stick} */
+	public static final int STICK = 482;
+	/** {@code stick-location} */
+	public static final int STICK_LOCATION = 483;
+	/** {@code stick-material} */
+	public static final int STICK_MATERIAL = 484;
+	/** {@code stick-type} */
+	public static final int STICK_TYPE = 485;
+	/** {@code stopped} */
+	public static final int STOPPED = 486;
+	/** {@code straight} */
+	public static final int STRAIGHT = 487;
+	/** {@code stress} */
+	public static final int STRESS = 488;
+	/** {@code string} */
+	public static final int STRING = 489;
+	/** {@code string-mute} */
+	public static final int STRING_MUTE = 490;
+	/** {@code strong-accent} */
+	public static final int STRONG_ACCENT = 491;
+	/** {@code substitution} */
+	public static final int SUBSTITUTION = 492;
+	/** {@code suffix} */
+	public static final int SUFFIX = 493;
+	/** {@code supports} */
+	public static final int SUPPORTS = 494;
+	/** {@code swing} */
+	public static final int SWING = 495;
+	/** {@code swing-style} */
+	public static final int SWING_STYLE = 496;
+	/** {@code swing-type} */
+	public static final int SWING_TYPE = 497;
+	/** {@code syllabic} */
+	public static final int SYLLABIC = 498;
+	/** {@code symbol} */
+	public static final int SYMBOL = 499;
+	/** {@code sync} */
+	public static final int SYNC = 500;
+	/** {@code system} */
+	public static final int SYSTEM = 501;
+	/** {@code system-distance} */
+	public static final int SYSTEM_DISTANCE = 502;
+	/** {@code system-dividers} */
+	public static final int SYSTEM_DIVIDERS = 503;
+	/** {@code system-layout} */
+	public static final int SYSTEM_LAYOUT = 504;
+	/** {@code system-margins} */
+	public static final int SYSTEM_MARGINS = 505;
+	/** {@code tap} */
+	public static final int TAP = 506;
+	/** {@code technical} */
+	public static final int TECHNICAL = 507;
+	/** {@code tempo} */
+	public static final int TEMPO = 508;
+	/** {@code tenths} */
+	public static final int TENTHS = 509;
+	/** {@code tenuto} */
+	public static final int TENUTO = 510;
+	/** {@code text} */
+	public static final int TEXT = 511;
+	/** {@code text-x} */
+	public static final int TEXT_X = 512;
+	/** {@code text-y} */
+	public static final int TEXT_Y = 513;
+	/** {@code thumb-position} */
+	public static final int THUMB_POSITION = 514;
+	/** {@code tie} */
+	public static final int TIE = 515;
+	/** {@code tied} */
+	public static final int TIED = 516;
+	/** {@code time} */
+	public static final int TIME = 517;
+	/** {@code time-modification} */
+	public static final int TIME_MODIFICATION = 518;
+	/** {@code time-only} */
+	public static final int TIME_ONLY = 519;
+	/** {@code time-relation} */
+	public static final int TIME_RELATION = 520;
+	/** {@code times} */
+	public static final int TIMES = 521;
+	/** {@code timpani} */
+	public static final int TIMPANI = 522;
+	/** {@code tip} */
+	public static final int TIP = 523;
+	/** {@code tocoda} */
+	public static final int TOCODA = 524;
+	/** {@code toe} */
+	public static final int TOE = 525;
+	/** {@code top-margin} */
+	public static final int TOP_MARGIN = 526;
+	/** {@code top-staff} */
+	public static final int TOP_STAFF = 527;
+	/** {@code top-system-distance} */
+	public static final int TOP_SYSTEM_DISTANCE = 528;
+	/** {@code touching-pitch} */
+	public static final int TOUCHING_PITCH = 529;
+	/** {@code transpose} */
+	public static final int TRANSPOSE = 530;
+	/** {@code tremolo} */
+	public static final int TREMOLO = 531;
+	/** {@code trill-mark} */
+	public static final int TRILL_MARK = 532;
+	/** {@code trill-step} */
+	public static final int TRILL_STEP = 533;
+	/** {@code triple-tongue} */
+	public static final int TRIPLE_TONGUE = 534;
+	/** {@code tuning-alter} */
+	public static final int TUNING_ALTER = 535;
+	/** {@code tuning-octave} */
+	public static final int TUNING_OCTAVE = 536;
+	/** {@code tuning-step} */
+	public static final int TUNING_STEP = 537;
+	/** {@code tuplet} */
+	public static final int TUPLET = 538;
+	/** {@code tuplet-actual} */
+	public static final int TUPLET_ACTUAL = 539;
+	/** {@code tuplet-dot} */
+	public static final int TUPLET_DOT = 540;
+	/** {@code tuplet-normal} */
+	public static final int TUPLET_NORMAL = 541;
+	/** {@code tuplet-number} */
+	public static final int TUPLET_NUMBER = 542;
+	/** {@code tuplet-type} */
+	public static final int TUPLET_TYPE = 543;
+	/** {@code turn} */
+	public static final int TURN = 544;
+	/** {@code two-note-turn} */
+	public static final int TWO_NOTE_TURN = 545;
+	/** {@code type} */
+	public static final int TYPE = 546;
+	/** {@code unbroken} */
+	public static final int UNBROKEN = 547;
+	/** {@code underline} */
+	public static final int UNDERLINE = 548;
+	/** {@code unpitched} */
+	public static final int UNPITCHED = 549;
+	/** {@code unplayed} */
+	public static final int UNPLAYED = 550;
+	/** {@code unstress} */
+	public static final int UNSTRESS = 551;
+	/** {@code up-bow} */
+	public static final int UP_BOW = 552;
+	/** {@code use-dots} */
+	public static final int USE_DOTS = 553;
+	/** {@code use-stems} */
+	public static final int USE_STEMS = 554;
+	/** {@code use-symbols} */
+	public static final int USE_SYMBOLS = 555;
+	/** {@code valign} */
+	public static final int VALIGN = 556;
+	/** {@code value} */
+	public static final int VALUE = 557;
+	/** {@code version} */
+	public static final int VERSION = 558;
+	/** {@code vertical-turn} */
+	public static final int VERTICAL_TURN = 559;
+	/** {@code virtual-instrument} */
+	public static final int VIRTUAL_INSTRUMENT = 560;
+	/** {@code virtual-library} */
+	public static final int VIRTUAL_LIBRARY = 561;
+	/** {@code virtual-name} */
+	public static final int VIRTUAL_NAME = 562;
+	/** {@code voice} */
+	public static final int VOICE = 563;
+	/** {@code volume} */
+	public static final int VOLUME = 564;
+	/** {@code wait} */
+	public static final int WAIT = 565;
+	/** {@code wavy-line} */
+	public static final int WAVY_LINE = 566;
+	/** {@code wedge} */
+	public static final int WEDGE = 567;
+	/** {@code width} */
+	public static final int WIDTH = 568;
+	/** {@code winged} */
+	public static final int WINGED = 569;
+	/** {@code with-bar} */
+	public static final int WITH_BAR = 570;
+	/** {@code wood} */
+	public static final int WOOD = 571;
+	/** {@code word-font} */
+	public static final int WORD_FONT = 572;
+	/** {@code words} */
+	public static final int WORDS = 573;
+	/** {@code work} */
+	public static final int WORK = 574;
+	/** {@code work-number} */
+	public static final int WORK_NUMBER = 575;
+	/** {@code work-title} */
+	public static final int WORK_TITLE = 576;
+	/** {@code xlink:actuate} */
+	public static final int XLINK_ACTUATE = 577;
+	/** {@code xlink:href} */
+	public static final int XLINK_HREF = 578;
+	/** {@code xlink:role} */
+	public static final int XLINK_ROLE = 579;
+	/** {@code xlink:show} */
+	public static final int XLINK_SHOW = 580;
+	/** {@code xlink:title} */
+	public static final int XLINK_TITLE = 581;
+	/** {@code xlink:type} */
+	public static final int XLINK_TYPE = 582;
+	/** {@code xml:lang} */
+	public static final int XML_LANG = 583;
+	/** {@code xml:space} */
+	public static final int XML_SPACE = 584;
+	
+	/**
+	 * The number of names in the table.
+	 */
+	public static final int COUNT = 585;
+	
+	/**
+	 * The name with each ID.
+	 */
+	private static final String[] NAMES = {
+		"abbreviated",
+		"above",
+		"accelerate",
+		"accent",
+		"accidental",
+		"accidental-mark",
+		"accidental-text",
+		"accord",
+		"accordion-high",
+		"accordion-low",
+		"accordion-middle",
+		"accordion-registration",
+		"actual-notes",
+		"additional",
+		"after-barline",
+		"after-jump",
+		"alter",
+		"alternate",
+		"appearance",
+		"approach",
+		"arpeggiate",
+		"arrangement",
+		"arrow",
+		"arrow-direction",
+		"arrow-style",
+		"arrowhead",
+		"articulations",
+		"artificial",
+		"assess",
+		"attack",
+		"attribute",
+		"attributes",
+		"backup",
+		"bar-style",
+		"barline",
+		"barre",
+		"base-pitch",
+		"bass",
+		"bass-alter",
+		"bass-separator",
+		"bass-step",
+		"beam",
+		"beat-repeat",
+		"beat-type",
+		"beat-unit",
+		"beat-unit-dot",
+		"beat-unit-tied",
+		"beater",
+		"beats",
+		"bend",
+		"bend-alter",
+		"bezier-offset",
+		"bezier-offset2",
+		"bezier-x",
+		"bezier-x2",
+		"bezier-y",
+		"bezier-y2",
+		"blank-page",
+		"bookmark",
+		"bottom-margin",
+		"bottom-staff",
+		"bracket",
+		"bracket-degrees",
+		"brass-bend",
+		"breath-mark",
+		"caesura",
+		"cancel",
+		"capo",
+		"cautionary",
+		"chord",
+		"chromatic",
+		"circular-arrow",
+		"clef",
+		"clef-octave-change",
+		"coda",
+		"color",
+		"concert-score",
+		"creator",
+		"credit",
+		"credit-image",
+		"credit-symbol",
+		"credit-type",
+		"credit-words",
+		"cue",
+		"dacapo",
+		"dalsegno",
+		"damp",
+		"damp-all",
+		"damper-pedal",
+		"dash-length",
+		"dashed-circle",
+		"dashes",
+		"default-x",
+		"default-y",
+		"defaults",
+		"degree",
+		"degree-alter",
+		"degree-type",
+		"degree-value",
+		"delayed-inverted-turn",
+		"delayed-turn",
+		"departure",
+		"detached-legato",
+		"diatonic",
+		"dir",
+		"direction",
+		"direction-type",
+		"directive",
+		"display-octave",
+		"display-step",
+		"display-text",
+		"distance",
+		"divisions",
+		"doit",
+		"dot",
+		"double",
+		"double-tongue",
+		"down-bow",
+		"duration",
+		"dynamics",
+		"editorial",
+		"effect",
+		"element",
+		"elevation",
+		"elision",
+		"enclosure",
+		"encoder",
+		"encoding",
+		"encoding-date",
+		"encoding-description",
+		"end-dynamics",
+		"end-length",
+		"end-line",
+		"end-paragraph",
+		"ending",
+		"ensemble",
+		"except-voice",
+		"extend",
+		"eyeglasses",
+		"f",
+		"falloff",
+		"fan",
+		"feature",
+		"fermata",
+		"ff",
+		"fff",
+		"ffff",
+		"fffff",
+		"ffffff",
+		"fifths",
+		"figure",
+		"figure-number",
+		"figured-bass",
+		"filled",
+		"fine",
+		"fingering",
+		"fingernails",
+		"first",
+		"first-beat",
+		"first-fret",
+		"flip",
+		"font-family",
+		"font-size",
+		"font-style",
+		"font-weight",
+		"footnote",
+		"for-part",
+		"forward",
+		"forward-repeat",
+		"fp",
+		"frame",
+		"frame-frets",
+		"frame-note",
+		"frame-strings",
+		"fret",
+		"function",
+		"fz",
+		"glass",
+		"glissando",
+		"glyph",
+		"golpe",
+		"grace",
+		"group",
+		"group-abbreviation",
+		"group-abbreviation-display",
+		"group-barline",
+		"group-link",
+		"group-name",
+		"group-name-display",
+		"group-symbol",
+		"group-time",
+		"grouping",
+		"half-muted",
+		"halign",
+		"hammer-on",
+		"hand",
+		"handbell",
+		"harmon-closed",
+		"harmon-mute",
+		"harmonic",
+		"harmony",
+		"harp-pedals",
+		"haydn",
+		"heel",
+		"height",
+		"hole",
+		"hole-closed",
+		"hole-shape",
+		"hole-type",
+		"humming",
+		"id",
+		"identification",
+		"image",
+		"implicit",
+		"instrument",
+		"instrument-abbreviation",
+		"instrument-change",
+		"instrument-link",
+		"instrument-name",
+		"instrument-sound",
+		"instruments",
+		"interchangeable",
+		"inversion",
+		"inverted-mordent",
+		"inverted-turn",
+		"inverted-vertical-turn",
+		"ipa",
+		"justify",
+		"key",
+		"key-accidental",
+		"key-alter",
+		"key-octave",
+		"key-step",
+		"kind",
+		"last-beat",
+		"latency",
+		"laughing",
+		"left-divider",
+		"left-margin",
+		"letter-spacing",
+		"level",
+		"line",
+		"line-detail",
+		"line-end",
+		"line-height",
+		"line-length",
+		"line-shape",
+		"line-through",
+		"line-type",
+		"line-width",
+		"link",
+		"listen",
+		"listening",
+		"location",
+		"long",
+		"lyric",
+		"lyric-font",
+		"lyric-language",
+		"make-time",
+		"measure",
+		"measure-distance",
+		"measure-layout",
+		"measure-numbering",
+		"measure-repeat",
+		"measure-style",
+		"member-of",
+		"membrane",
+		"metal",
+		"metronome",
+		"metronome-arrows",
+		"metronome-beam",
+		"metronome-dot",
+		"metronome-note",
+		"metronome-relation",
+		"metronome-tied",
+		"metronome-tuplet",
+		"metronome-type",
+		"mf",
+		"midi-bank",
+		"midi-channel",
+		"midi-device",
+		"midi-instrument",
+		"midi-name",
+		"midi-program",
+		"midi-unpitched",
+		"millimeters",
+		"miscellaneous",
+		"miscellaneous-field",
+		"mode",
+		"mordent",
+		"movement-number",
+		"movement-title",
+		"mp",
+		"multiple-rest",
+		"multiple-rest-always",
+		"multiple-rest-range",
+		"music-font",
+		"mute",
+		"n",
+		"name",
+		"natural",
+		"new-page",
+		"new-system",
+		"niente",
+		"non-arpeggiate",
+		"non-controlling",
+		"normal-dot",
+		"normal-notes",
+		"normal-type",
+		"notations",
+		"note",
+		"note-size",
+		"notehead",
+		"notehead-text",
+		"number",
+		"numeral",
+		"numeral-alter",
+		"numeral-fifths",
+		"numeral-key",
+		"numeral-mode",
+		"numeral-root",
+		"octave",
+		"octave-change",
+		"octave-shift",
+		"offset",
+		"open",
+		"open-string",
+		"opus",
+		"orientation",
+		"ornaments",
+		"other-appearance",
+		"other-articulation",
+		"other-direction",
+		"other-dynamics",
+		"other-listen",
+		"other-listening",
+		"other-notation",
+		"other-ornament",
+		"other-percussion",
+		"other-play",
+		"other-technical",
+		"overline",
+		"p",
+		"page",
+		"page-height",
+		"page-layout",
+		"page-margins",
+		"page-number",
+		"page-width",
+		"pan",
+		"parentheses",
+		"parentheses-degrees",
+		"part",
+		"part-abbreviation",
+		"part-abbreviation-display",
+		"part-clef",
+		"part-group",
+		"part-link",
+		"part-list",
+		"part-name",
+		"part-name-display",
+		"part-symbol",
+		"part-transpose",
+		"pedal",
+		"pedal-alter",
+		"pedal-step",
+		"pedal-tuning",
+		"per-minute",
+		"percussion",
+		"pf",
+		"pitch",
+		"pitched",
+		"pizzicato",
+		"placement",
+		"play",
+		"player",
+		"player-name",
+		"plop",
+		"pluck",
+		"plus-minus",
+		"port",
+		"position",
+		"pp",
+		"ppp",
+		"pppp",
+		"ppppp",
+		"pppppp",
+		"pre-bend",
+		"prefix",
+		"principal-voice",
+		"print",
+		"print-dot",
+		"print-frame",
+		"print-leger",
+		"print-lyric",
+		"print-object",
+		"print-spacing",
+		"pull-off",
+		"reference",
+		"rehearsal",
+		"relation",
+		"relative-x",
+		"relative-y",
+		"release",
+		"repeat",
+		"repeater",
+		"rest",
+		"rf",
+		"rfz",
+		"right-divider",
+		"right-margin",
+		"rights",
+		"root",
+		"root-alter",
+		"root-step",
+		"rotation",
+		"scaling",
+		"schleifer",
+		"scoop",
+		"scordatura",
+		"score-instrument",
+		"score-part",
+		"score-partwise",
+		"score-timewise",
+		"second",
+		"second-beat",
+		"segno",
+		"semi-pitched",
+		"senza-misura",
+		"separator",
+		"sf",
+		"sffz",
+		"sfp",
+		"sfpp",
+		"sfz",
+		"sfzp",
+		"shake",
+		"shape",
+		"show-frets",
+		"show-number",
+		"show-type",
+		"sign",
+		"size",
+		"slash",
+		"slash-dot",
+		"slash-type",
+		"slashes",
+		"slide",
+		"slur",
+		"smear",
+		"smufl",
+		"snap-pizzicato",
+		"soft-accent",
+		"soft-pedal",
+		"software",
+		"solo",
+		"sostenuto-pedal",
+		"sound",
+		"sounding-pitch",
+		"source",
+		"space-length",
+		"spiccato",
+		"spread",
+		"staccatissimo",
+		"staccato",
+		"stack-degrees",
+		"staff",
+		"staff-details",
+		"staff-distance",
+		"staff-divide",
+		"staff-layout",
+		"staff-lines",
+		"staff-size",
+		"staff-spacing",
+		"staff-tuning",
+		"staff-type",
+		"start-note",
+		"staves",
+		"steal-time-following",
+		"steal-time-previous",
+		"stem",
+		"step",
+		"stick",
+		"stick-location",
+		"stick-material",
+		"stick-type",
+		"stopped",
+		"straight",
+		"stress",
+		"string",
+		"string-mute",
+		"strong-accent",
+		"substitution",
+		"suffix",
+		"supports",
+		"swing",
+		"swing-style",
+		"swing-type",
+		"syllabic",
+		"symbol",
+		"sync",
+		"system",
+		"system-distance",
+		"system-dividers",
+		"system-layout",
+		"system-margins",
+		"tap",
+		"technical",
+		"tempo",
+		"tenths",
+		"tenuto",
+		"text",
+		"text-x",
+		"text-y",
+		"thumb-position",
+		"tie",
+		"tied",
+		"time",
+		"time-modification",
+		"time-only",
+		"time-relation",
+		"times",
+		"timpani",
+		"tip",
+		"tocoda",
+		"toe",
+		"top-margin",
+		"top-staff",
+		"top-system-distance",
+		"touching-pitch",
+		"transpose",
+		"tremolo",
+		"trill-mark",
+		"trill-step",
+		"triple-tongue",
+		"tuning-alter",
+		"tuning-octave",
+		"tuning-step",
+		"tuplet",
+		"tuplet-actual",
+		"tuplet-dot",
+		"tuplet-normal",
+		"tuplet-number",
+		"tuplet-type",
+		"turn",
+		"two-note-turn",
+		"type",
+		"unbroken",
+		"underline",
+		"unpitched",
+		"unplayed",
+		"unstress",
+		"up-bow",
+		"use-dots",
+		"use-stems",
+		"use-symbols",
+		"valign",
+		"value",
+		"version",
+		"vertical-turn",
+		"virtual-instrument",
+		"virtual-library",
+		"virtual-name",
+		"voice",
+		"volume",
+		"wait",
+		"wavy-line",
+		"wedge",
+		"width",
+		"winged",
+		"with-bar",
+		"wood",
+		"word-font",
+		"words",
+		"work",
+		"work-number",
+		"work-title",
+		"xlink:actuate",
+		"xlink:href",
+		"xlink:role",
+		"xlink:show",
+		"xlink:title",
+		"xlink:type",
+		"xml:lang",
+		"xml:space",
+	};
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private MusicXMLSymbols() {}
+	
+	/**
+	 * @param id an ID less than {@link #COUNT}
+	 * @return the name with that ID
+	 */
+	public static String name(int id) {
+		return NAMES[id];
+	}
+}
@@ -0,0 +1,569 @@
+package net.cacabish.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+/**
+ * A streaming UTF-8 serializer for MusicXML documents.
+ * <br><br>
+ * The output is laid out the same way the cleaner has always written files: an XML declaration, the MusicXML DOCTYPE (for the score's version),
+ * and then every element on its own line with 2 space indentation. Elements that contain only text are kept on a single line.
+ * <br><br>
+ * Unlike the {@code Transformer}, this serializer understands {@link LazySlices}: any slice is written back exactly as it appeared in the source.
+ * Elements may also be written on their own, at any depth, which is what allows parts of a document to be written separately.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public class MusicXMLWriter {
+	
+	/**
+	 * The system ID of the DOCTYPE written to every file.
+	 */
+	public static final String DOCTYPE_SYSTEM = "http://www.musicxml.org/dtds/partwise.dtd";
+	
+	/**
+	 * @param version a version of MusicXML, such as {@code 3.1}
+	 * @return the public ID of the DOCTYPE for a partwise score of that version
+	 */
+	public static String getDoctypePublicId(String version) {
+		return "-//Recordare//DTD MusicXML " + version + " Partwise//EN";
+	}
+	
+	/**
+	 * The number of spaces per level of indentation.
+	 */
+	protected static final int INDENT_AMOUNT = 2;
+	
+	/**
+	 * The line separator, which matches what the {@code Transformer} uses.
+	 */
+	private static final byte[] NEWLINE = System.lineSeparator().getBytes();
+	
+	/**
+	 * The stream everything is eventually written to.
+	 */
+	protected final OutputStream out;
+	
+	/**
+	 * The line separator written by {@link #writeNewline()}.
+	 */
+	private byte[] newline = NEWLINE;
+	
+	/**
+	 * The buffer that characters are encoded into before being written.
+	 */
+	private final byte[] buffer = new byte[1 << 16];
+	
+	/**
+	 * The number of bytes in the buffer.
+	 */
+	private int count = 0;
+	
+	/**
+	 * The total number of bytes written so far, including any still in the buffer.
+	 */
+	private long bytesWritten = 0;
+	
+	/**
+	 * The tag name of the elements whose offsets are being recorded, or {@code null} if nothing is being recorded.
+	 */
+	private String recordedName = null;
+	
+	/**
+	 * The start and end offsets of every recorded element, packed as pairs.
+	 */
+	private long[] recordedOffsets = new long[0];
+	
+	/**
+	 * The number of offsets in {@link #recordedOffsets}.
+	 */
+	private int recordedCount = 0;
+	
+	/**
+	 * Whether the sources of slices were given up front, in which case they aren't looked up on the document.
+	 */
+	private boolean hasSliceSources = false;
+	
+	/**
+	 * The bytes slices and reused slices refer to, if they were given up front.
+	 */
+	private ByteBuffer sliceSource = null, reusedSliceSource = null;
+	
+	/**
+	 * Constructs a writer. The stream is not closed by this writer.
+	 * @param out the stream to write to
+	 */
+	public MusicXMLWriter(OutputStream out) {
+		this.out = out;
+	}
+	
+	/**
+	 * Writes an entire document to a stream, then flushes it.
+	 * @param document the document to write
+	 * @param out the stream to write to
+	 * @return the number of bytes written
+	 * @throws IOException if there is an issue writing
+	 */
+	public static long write(Document document, OutputStream out) throws IOException {
+		MusicXMLWriter writer = new MusicXMLWriter(out);
+		writer.writeDocument(document);
+		writer.flush();
+		return writer.getBytesWritten();
+	}
+	
+	/**
+	 * Writes the XML declaration, the DOCTYPE, and the root element.
+	 * @param document the document to write
+	 * @throws IOException if there is an issue writing
+	 */
+	public void writeDocument(Document document) throws IOException {
+		writeHeader(MusicXMLConverter.getVersion(document));
+		for (Node child = document.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.DOCUMENT_TYPE_NODE) {
+				continue; // We always write our own
+			}
+			writeNode(child, 0);
+			writeNewline();
+		}
+	}
+	
+	/**
+	 * Writes the XML declaration and the DOCTYPE, each on their own line.
+	 * @param version the version of MusicXML the DOCTYPE names, such as {@code 4.0}
+	 * @throws IOException if there is an issue writing
+	 */
+	public void writeHeader(String version) throws IOException {
+		writeASCII("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		writeNewline();
+		writeASCII("<!DOCTYPE score-partwise PUBLIC \"" + getDoctypePublicId(version) + "\" \"" + DOCTYPE_SYSTEM + "\">");
+		writeNewline();
+	}
+	
+	/**
+	 * Writes a node and everything inside it. The caller is responsible for any indentation before the node.
+	 * @param node the node to write
+	 * @param depth the depth of the node, where the root element is at depth 0
+	 * @throws IOException if there is an issue writing
+	 */
+	public void writeNode(Node node, int depth) throws IOException {
+		long start = bytesWritten;
+		writeNodeContent(node, depth);
+		if (recordedName != null && recordedName.equals(getName(node))) {
+			if (recordedCount == recordedOffsets.length) {
+				recordedOffsets = Arrays.copyOf(recordedOffsets, Math.max(64, recordedCount * 2));
+			}
+			recordedOffsets[recordedCount++] = start;
+			recordedOffsets[recordedCount++] = bytesWritten;
+		}
+	}
+	
+	/**
+	 * Writes a node and everything inside it, without recording anything.
+	 * @param node the node to write
+	 * @param depth the depth of the node, where the root element is at depth 0
+	 * @throws IOException if there is an issue writing
+	 */
+	private void writeNodeContent(Node node, int depth) throws IOException {
+		switch (node.getNodeType()) {
+		case Node.ELEMENT_NODE:
+			writeElement((Element) node, depth);
+			break;
+		case Node.TEXT_NODE:
+			writeEscaped(node.getNodeValue(), false);
+			break;
+		case Node.CDATA_SECTION_NODE:
+			writeASCII("<![CDATA[");
+			writeString(node.getNodeValue());
+			writeASCII("]]>");
+			break;
+		case Node.COMMENT_NODE:
+			writeASCII("<!--");
+			writeString(node.getNodeValue());
+			writeASCII("-->");
+			break;
+		case Node.PROCESSING_INSTRUCTION_NODE:
+			if (LazySlices.isSlice(node) || LazySlices.isReusedSlice(node)) {
+				writeRaw((ProcessingInstruction) node);
+			}
+			else {
+				ProcessingInstruction instruction = (ProcessingInstruction) node;
+				writeASCII("<?");
+				writeString(instruction.getTarget());
+				if (!instruction.getData().isEmpty()) {
+					writeASCII(" ");
+					writeString(instruction.getData());
+				}
+				writeASCII("?>");
+			}
+			break;
+		default:
+			break; // Nothing else belongs in a MusicXML document
+		}
+	}
+	
+	/**
+	 * Writes an element and everything inside it.
+	 * @param element the element to write
+	 * @param depth the depth of the element, where the root element is at depth 0
+	 * @throws IOException if there is an issue writing
+	 */
+	protected void writeElement(Element element, int depth) throws IOException {
+		writeStartTag(element, !element.hasChildNodes());
+		if (!element.hasChildNodes()) {
+			return;
+		}
+		
+		if (hasTextContent(element)) {
+			// Keep it all on one line
+			for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+				writeNode(child, depth + 1);
+			}
+		}
+		else {
+			// One child per line
+			for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+				if (child.getNodeType() == Node.TEXT_NODE) {
+					continue; // Whitespace only, as checked above
+				}
+				writeNewline();
+				writeIndent(depth + 1);
+				writeNode(child, depth + 1);
+			}
+			writeNewline();
+			writeIndent(depth);
+		}
+		
+		writeEndTag(element);
+	}
+	
+	/**
+	 * Writes the start tag of an element, with all of its attributes.
+	 * @param element the element
+	 * @param empty if true, this is written as an empty element tag (i.e. {@code <element/>})
+	 * @throws IOException if there is an issue writing
+	 */
+	protected void writeStartTag(Element element, boolean empty) throws IOException {
+		writeASCII("<");
+		writeString(element.getTagName());
+		NamedNodeMap attributes = element.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Attr attribute = (Attr) attributes.item(i);
+			writeASCII(" ");
+			writeString(attribute.getName());
+			writeASCII("=\"");
+			writeEscaped(attribute.getValue(), true);
+			writeASCII("\"");
+		}
+		writeASCII(empty ? "/>" : ">");
+	}
+	
+	/**
+	 * Writes the end tag of an element.
+	 * @param element the element
+	 * @throws IOException if there is an issue writing
+	 */
+	protected void writeEndTag(Element element) throws IOException {
+		writeASCII("</");
+		writeString(element.getTagName());
+		writeASCII(">");
+	}
+	
+	/**
+	 * Starts recording where every element (or slice) with the given tag name begins and ends in the output.
+	 * Offsets are counted from when this writer was constructed.
+	 * @param tagName the tag name, such as {@code "measure"}
+	 */
+	public void recordOffsets(String tagName) {
+		recordedName = tagName;
+	}
+	
+	/**
+	 * @return the start and end offsets of every recorded element, in the order they were written, packed as pairs
+	 */
+	public long[] getRecordedOffsets() {
+		return Arrays.copyOf(recordedOffsets, recordedCount);
+	}
+	
+	/**
+	 * Gives this writer the bytes that slices refer to, so that it doesn't look them up on the document. Looking them up isn't safe while other
+	 * threads are reading the same document, so a writer that writes part of a document on its own thread must be given them.
+	 * @param source the document's source (see {@link LazySlices#getSource(Document)}), or {@code null} if it isn't lazy
+	 * @param reusedSource the document's previous output (see {@link LazySlices#getReusedSource(Document)}), or {@code null} if there isn't one
+	 */
+	void setSliceSources(ByteBuffer source, ByteBuffer reusedSource) {
+		hasSliceSources = true;
+		sliceSource = source;
+		reusedSliceSource = reusedSource;
+	}
+	
+	/**
+	 * Writes a line separator.
+	 * @throws IOException if there is an issue writing
+	 */
+	public void writeNewline() throws IOException {
+		writeBytes(newline, 0, newline.length);
+	}
+	
+	/**
+	 * Changes the line separator, such as to match an existing file.
+	 * @param newline the line separator, as bytes
+	 */
+	protected void setNewline(byte[] newline) {
+		this.newline = newline;
+	}
+	
+	/**
+	 * Writes the indentation for the given depth.
+	 * @param depth the depth
+	 * @throws IOException if there is an issue writing
+	 */
+	public void writeIndent(int depth) throws IOException {
+		int spaces = depth * INDENT_AMOUNT;
+		for (int i = 0; i < spaces; i++) {
+			writeByte(' ');
+		}
+	}
+	
+	/**
+	 * Writes a slice's bytes verbatim.
+	 * @param slice the slice
+	 * @throws IOException if there is an issue writing
+	 */
+	protected void writeRaw(ProcessingInstruction slice) throws IOException {
+		flushBuffer();
+		int[] range = LazySlices.getSliceRange(slice);
+		if (hasSliceSources) {
+			LazySlices.writeSlice(slice, LazySlices.isReusedSlice(slice) ? reusedSliceSource : sliceSource, out);
+		}
+		else {
+			LazySlices.writeSlice(slice, out);
+		}
+		bytesWritten += range[1];
+	}
+	
+	/**
+	 * Writes bytes verbatim.
+	 * @param bytes the bytes
+	 * @param offset the index of the first byte to write
+	 * @param length the number of bytes to write
+	 * @throws IOException if there is an issue writing
+	 */
+	public void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+		if (length > buffer.length - count) {
+			flushBuffer();
+			if (length > buffer.length) {
+				out.write(bytes, offset, length);
+				bytesWritten += length;
+				return;
+			}
+		}
+		System.arraycopy(bytes, offset, buffer, count, length);
+		count += length;
+		bytesWritten += length;
+	}
+	
+	/**
+	 * Writes any buffered bytes and flushes the underlying stream.
+	 * @throws IOException if there is an issue writing
+	 */
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+	
+	/**
+	 * @return the total number of bytes written so far, including any that are still buffered
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+	
+	/**
+	 * Writes any buffered bytes to the underlying stream, without flushing it.
+	 * @throws IOException if there is an issue writing
+	 */
+	protected void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+	
+	/**
+	 * @return the tag name of an element or the element a slice stands in for, or {@code null} for anything else
+	 */
+	private static String getName(Node node) {
+		if (node.getNodeType() == Node.ELEMENT_NODE) {
+			return ((Element) node).getTagName();
+		}
+		if (LazySlices.isSlice(node) || LazySlices.isReusedSlice(node)) {
+			return LazySlices.getSliceName((ProcessingInstruction) node);
+		}
+		return null;
+	}
+	
+	/**
+	 * Checks if any child of the element is text that isn't just whitespace.
+	 * @param element the element
+	 * @return true if the element's content should be kept on one line
+	 */
+	protected static boolean hasTextContent(Element element) {
+		boolean hasElementChildren = false;
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			short type = child.getNodeType();
+			if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+				if (!isWhitespace(child.getNodeValue())) {
+					return true;
+				}
+			}
+			else {
+				hasElementChildren = true;
+			}
+		}
+		return !hasElementChildren; // Whitespace and nothing else is still text
+	}
+	
+	/**
+	 * @return true if the string is entirely XML whitespace
+	 */
+	private static boolean isWhitespace(String string) {
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes a string, escaping anything that would otherwise be read as markup.
+	 * @param string the string
+	 * @param attribute true if the string is an attribute value, which also needs quotes and whitespace escaped
+	 * @throws IOException if there is an issue writing
+	 */
+	protected void writeEscaped(String string, boolean attribute) throws IOException {
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			switch (c) {
+			case '&':
+				writeASCII("&amp;");
+				break;
+			case '<':
+				writeASCII("&lt;");
+				break;
+			case '>':
+				writeASCII("&gt;");
+				break;
+			case '"':
+				if (attribute) {
+					writeASCII("&quot;");
+				}
+				else {
+					writeByte('"');
+				}
+				break;
+			case '\r':
+				writeASCII("&#13;");
+				break;
+			case '\n':
+				if (attribute) {
+					writeASCII("&#10;");
+				}
+				else {
+					writeNewline();
+				}
+				break;
+			case '\t':
+				if (attribute) {
+					writeASCII("&#9;");
+				}
+				else {
+					writeByte('\t');
+				}
+				break;
+			default:
+				i = writeChar(string, i);
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Writes a string with no escaping.
+	 * @param string the string
+	 * @throws IOException if there is an issue writing
+	 */
+	protected void writeString(String string) throws IOException {
+		for (int i = 0; i < string.length(); i++) {
+			i = writeChar(string, i);
+		}
+	}
+	
+	/**
+	 * Writes a string that is known to be ASCII.
+	 * @param ascii the string
+	 * @throws IOException if there is an issue writing
+	 */
+	protected void writeASCII(String ascii) throws IOException {
+		for (int i = 0; i < ascii.length(); i++) {
+			writeByte(ascii.charAt(i));
+		}
+	}
+	
+	/**
+	 * Encodes the character at the index as UTF-8, combining it with the next character if they form a surrogate pair.
+	 * @param string the string
+	 * @param index the index of the character
+	 * @return the index of the last character consumed
+	 * @throws IOException if there is an issue writing
+	 */
+	private int writeChar(String string, int index) throws IOException {
+		char c = string.charAt(index);
+		if (c < 0x80) {
+			writeByte(c);
+		}
+		else if (c < 0x800) {
+			writeByte(0xC0 | (c >> 6));
+			writeByte(0x80 | (c & 0x3F));
+		}
+		else if (Character.isHighSurrogate(c) && index + 1 < string.length() && Character.isLowSurrogate(string.charAt(index + 1))) {
+			int codePoint = Character.toCodePoint(c, string.charAt(index + 1));
+			writeByte(0xF0 | (codePoint >> 18));
+			writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+			writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+			writeByte(0x80 | (codePoint & 0x3F));
+			return index + 1;
+		}
+		else {
+			writeByte(0xE0 | (c >> 12));
+			writeByte(0x80 | ((c >> 6) & 0x3F));
+			writeByte(0x80 | (c & 0x3F));
+		}
+		return index;
+	}
+	
+	/**
+	 * Writes a single byte.
+	 * @param b the byte, in the lowest 8 bits
+	 * @throws IOException if there is an issue writing
+	 */
+	private void writeByte(int b) throws IOException {
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = (byte) b;
+		bytesWritten++;
+	}
+}
@@ -0,0 +1,192 @@
+package net.cacabish.xml;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Gives the nodes of a DOM the IDs of their names from {@link MusicXMLSymbols}, so that the cleaning operations can find elements and attributes
+ * by comparing (or switching on) {@code int}s instead of strings.
+ * <br><br>
+ * The parser interns every name it reads, and every name the cleaner creates is a literal, so nearly every name in a score is the very same
+ * {@code String} object as the one in {@link MusicXMLSymbols}. Those are looked up by identity, which never looks at their characters.
+ * Any other name (one built at run time, such as by a stylesheet) falls back to an ordinary lookup.
+ * <br><br>
+ * {@link #elements(Node, int)} takes the place of {@code getElementsByTagName}. It walks the subtree once, without recursion, into a plain list,
+ * so there's no live list to go stale (and be rebuilt) whenever the document changes while it's being iterated.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class NodeSymbols {
+	
+	/**
+	 * The ID of every MusicXML name, keyed by the name's literal.
+	 */
+	private static final Map<String, Integer> INTERNED = new IdentityHashMap<>(MusicXMLSymbols.COUNT);
+	
+	/**
+	 * The ID of every MusicXML name, for names that aren't the literal.
+	 */
+	private static final Map<String, Integer> BY_NAME = new HashMap<>(MusicXMLSymbols.COUNT * 2);
+	
+	static {
+		for (int id = 0; id < MusicXMLSymbols.COUNT; id++) {
+			String name = MusicXMLSymbols.name(id);
+			INTERNED.put(name, id);
+			BY_NAME.put(name, id);
+		}
+	}
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private NodeSymbols() {}
+	
+	/**
+	 * @param name the name of an element or attribute
+	 * @return its ID, or -1 if it isn't a MusicXML name
+	 */
+	public static int of(String name) {
+		Integer id = INTERNED.get(name);
+		if (id == null) {
+			id = BY_NAME.get(name);
+		}
+		return id == null ? -1 : id;
+	}
+	
+	/**
+	 * @param node a node
+	 * @return the ID of its name if it's an element or attribute, or else -1
+	 */
+	public static int of(Node node) {
+		short type = node.getNodeType();
+		return type == Node.ELEMENT_NODE || type == Node.ATTRIBUTE_NODE ? of(node.getNodeName()) : -1;
+	}
+	
+	/**
+	 * @param node a node, which may be {@code null}
+	 * @param symbol the ID of a tag name, such as {@link MusicXMLSymbols#DIRECTION}
+	 * @return true if the node is an element with that name
+	 */
+	public static boolean is(Node node, int symbol) {
+		return node != null && node.getNodeType() == Node.ELEMENT_NODE && of(node.getNodeName()) == symbol;
+	}
+	
+	/**
+	 * Finds every element with a given name inside a node, in document order. Like {@code getElementsByTagName}, except that the list doesn't change
+	 * if the document does.
+	 * @param scope the node to search inside, which isn't included
+	 * @param symbol the ID of the tag name
+	 * @return the elements, which may be empty
+	 */
+	public static List<Element> elements(Node scope, int symbol) {
+		List<Element> elements = new ArrayList<>();
+		Node node = scope.getFirstChild();
+		while (node != null) {
+			if (is(node, symbol)) {
+				elements.add((Element) node);
+			}
+			node = next(scope, node);
+		}
+		return elements;
+	}
+	
+	/**
+	 * Finds the first element with a given name inside a node, in document order. Like {@code getElementsByTagName(name).item(0)}.
+	 * @param scope the node to search inside, which isn't included
+	 * @param symbol the ID of the tag name
+	 * @return the element, or {@code null} if there is none
+	 */
+	public static Element first(Node scope, int symbol) {
+		Node node = scope.getFirstChild();
+		while (node != null) {
+			if (is(node, symbol)) {
+				return (Element) node;
+			}
+			node = next(scope, node);
+		}
+		return null;
+	}
+	
+	/**
+	 * Finds the first child of a node with a given name.
+	 * @param node a node
+	 * @param symbol the ID of the tag name
+	 * @return the child, or {@code null} if there is none
+	 */
+	public static Element child(Node node, int symbol) {
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (is(child, symbol)) {
+				return (Element) child;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the value of an attribute. Like {@code getAttribute}, this is the empty string if the element doesn't have it.
+	 * @param element an element
+	 * @param symbol the ID of the attribute's name, such as {@link MusicXMLSymbols#PAGE}
+	 * @return the value, or the empty string if there is none
+	 */
+	public static String attribute(Element element, int symbol) {
+		Node attribute = findAttribute(element, symbol);
+		return attribute == null ? "" : attribute.getNodeValue();
+	}
+	
+	/**
+	 * @param element an element
+	 * @param symbol the ID of an attribute's name
+	 * @return true if the element has the attribute, even if it's empty
+	 */
+	public static boolean hasAttribute(Element element, int symbol) {
+		return findAttribute(element, symbol) != null;
+	}
+	
+	/**
+	 * @param element an element
+	 * @param symbol the ID of an attribute's name
+	 * @return the attribute, or {@code null} if the element doesn't have it
+	 */
+	private static Node findAttribute(Element element, int symbol) {
+		if (!element.hasAttributes()) {
+			return null; // Don't make the element build an empty map
+		}
+		NamedNodeMap attributes = element.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Node attribute = attributes.item(i);
+			if (of(attribute.getNodeName()) == symbol) {
+				return attribute;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Steps to the next node in document order, without leaving a subtree.
+	 * @param scope the root of the subtree
+	 * @param node a node inside it
+	 * @return the next node inside it, or {@code null} if there are no more
+	 */
+	private static Node next(Node scope, Node node) {
+		if (node.getFirstChild() != null) {
+			return node.getFirstChild();
+		}
+		while (node != scope) {
+			Node sibling = node.getNextSibling();
+			if (sibling != null) {
+				return sibling;
+			}
+			node = node.getParentNode();
+		}
+		return null;
+	}
+}
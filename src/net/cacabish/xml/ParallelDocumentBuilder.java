@@ -0,0 +1,802 @@
+package net.cacabish.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.ext.DeclHandler;
+
+import net.cacabish.CancellationToken;
+import net.cacabish.LimitExceededException;
+import net.cacabish.MusicXMLEntityResolver;
+import net.cacabish.ParsingLimits;
+import net.cacabish.XMLValidationErrorHandler;
+
+/**
+ * Builds a validated MusicXML document from one huge partwise score by parsing pieces of it on several threads at once.
+ * <br><br>
+ * A quick scan of the bytes (see {@link XMLByteScanner}) finds where every {@code <part>} and {@code <measure>} starts and ends. The header, meaning everything up to
+ * the end of the first measure (so the {@code <defaults>}, the {@code <credit>}s, and the {@code <part-list>}), is parsed first, into the document that's returned.
+ * The rest of the measures are split into chunks of roughly equal size, never splitting a measure, and each chunk is parsed on its own thread as a small
+ * document whose root is its {@code <part>}. The chunks are then moved into the header's document in order, so the result is exactly what parsing
+ * the whole file on one thread would have built.
+ * <br><br>
+ * Every chunk is validated against the same DTD as the header, so the whole score is still validated. The only rules a chunk can't check on its own are
+ * the ones that span the whole document: that every {@code ID} is unique and that every {@code IDREF} points at one. The chunks declare those
+ * attributes as plain text instead, and they're checked across the stitched document at the end.
+ * <br><br>
+ * The file must be memory-mapped or in memory, encoded in UTF-8 (or plain ASCII), and partwise, and it mustn't have its own internal DTD subset.
+ * Anything else is turned down with an {@link IOException} before any real parsing starts, so it can be parsed normally instead.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class ParallelDocumentBuilder {
+	
+	/**
+	 * The smallest chunk worth handing to another thread, in bytes.
+	 */
+	private static final int MIN_CHUNK_SIZE = 256 << 10;
+	
+	/**
+	 * Roughly how many chunks each thread gets, so that one slow chunk doesn't leave the other threads waiting.
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+	
+	/**
+	 * The number of threads chunks are parsed on.
+	 */
+	private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * The threads chunks are parsed on, one for each processor. Idle threads go away after a minute.
+	 */
+	private static final ThreadPoolExecutor THREADS;
+	
+	/**
+	 * The names of the elements the scan looks for, as bytes.
+	 */
+	private static final byte[] SCORE_PARTWISE_BYTES = "score-partwise".getBytes(StandardCharsets.US_ASCII),
+			PART_BYTES = "part".getBytes(StandardCharsets.US_ASCII),
+			MEASURE_BYTES = "measure".getBytes(StandardCharsets.US_ASCII);
+	
+	/**
+	 * The end tag that closes every chunk (and the header).
+	 */
+	private static final byte[] PART_END_TAG = "</part>".getBytes(StandardCharsets.US_ASCII);
+	
+	/**
+	 * Matches an XML name, which is what every {@code ID} and {@code IDREF} must be.
+	 */
+	private static final Pattern NAME;
+	
+	/**
+	 * The document builder factories, one for each set of limits (since the parser's limits are set on the factory).
+	 */
+	private static final ConcurrentHashMap<ParsingLimits, DocumentBuilderFactory> FACTORIES = new ConcurrentHashMap<>();
+	
+	/**
+	 * The document builders each thread has made, one for each set of limits. Creating a builder is slow, so they are reused.
+	 */
+	private static final ThreadLocal<Map<ParsingLimits, DocumentBuilder>> BUILDERS = ThreadLocal.withInitial(HashMap::new);
+	
+	/**
+	 * The identifier attributes of each schema directory's DTD.
+	 */
+	private static final ConcurrentHashMap<String, Identifiers> IDENTIFIERS = new ConcurrentHashMap<>();
+	
+	static {
+		THREADS = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "musicxml-parser");
+			thread.setDaemon(true);
+			return thread;
+		});
+		THREADS.allowCoreThreadTimeOut(true);
+		
+		String startChar = ":A-Z_a-z\\u00C0-\\u00D6\\u00D8-\\u00F6\\u00F8-\\u02FF\\u0370-\\u037D\\u037F-\\u1FFF\\u200C-\\u200D\\u2070-\\u218F"
+				+ "\\u2C00-\\u2FEF\\u3001-\\uD7FF\\uF900-\\uFDCF\\uFDF0-\\uFFFD\\x{10000}-\\x{EFFFF}";
+		NAME = Pattern.compile("[" + startChar + "][" + startChar + "\\-.0-9\\u00B7\\u0300-\\u036F\\u203F-\\u2040]*");
+	}
+	
+	/**
+	 * Every attribute the DTD declares as an {@code ID}, {@code IDREF}, or {@code IDREFS}.
+	 */
+	private static final class Identifiers implements DeclHandler {
+		/**
+		 * The type of each identifier attribute, keyed by element name and then attribute name.
+		 */
+		final Map<String, Map<String, String>> types = new HashMap<>();
+		/**
+		 * The internal DTD subset that redeclares every identifier attribute as {@code CDATA}, for the chunks.
+		 * The first declaration of an attribute is the one that counts, and the internal subset is read before the DTD itself.
+		 */
+		final StringBuilder subset = new StringBuilder();
+		
+		@Override
+		public void attributeDecl(String element, String name, String type, String mode, String value) {
+			if (!type.equals("ID") && !type.equals("IDREF") && !type.equals("IDREFS")) {
+				return;
+			}
+			types.computeIfAbsent(element, e -> new HashMap<>()).put(name, type);
+			subset.append("<!ATTLIST ").append(element).append(' ').append(name).append(" CDATA ");
+			if (mode != null) {
+				subset.append(mode).append(' ');
+			}
+			subset.append(value == null ? "" : "\"" + value + "\"").append('>');
+		}
+		
+		@Override
+		public void elementDecl(String name, String model) {
+			// Only attributes matter here
+		}
+		
+		@Override
+		public void internalEntityDecl(String name, String value) {
+			// Same here
+		}
+		
+		@Override
+		public void externalEntityDecl(String name, String publicId, String systemId) {
+			// And here
+		}
+	}
+	
+	/**
+	 * Where the parts and measures are in a score.
+	 */
+	private static final class Layout {
+		/**
+		 * For each part: the start of its start tag, the end of its start tag, the start of its end tag, and the end of its end tag.
+		 */
+		int[][] parts = new int[16][];
+		/**
+		 * For each part, the index of its first measure in {@link #measures}.
+		 */
+		int[] firstMeasures = new int[16];
+		/**
+		 * The number of parts.
+		 */
+		int partCount;
+		/**
+		 * The start of every measure, in document order.
+		 */
+		int[] measures = new int[1024];
+		/**
+		 * The number of measures.
+		 */
+		int measureCount;
+	}
+	
+	/**
+	 * A run of whole measures from one part, parsed on its own.
+	 */
+	private static final class Chunk {
+		/**
+		 * The index of the part the measures are in.
+		 */
+		final int part;
+		/**
+		 * The start (inclusive) and end (exclusive) of the chunk's bytes.
+		 */
+		final int start, end;
+		/**
+		 * Whether the chunk begins its part, in which case its bytes include the part's start tag (and anything between it and the part before).
+		 */
+		final boolean startsPart;
+		
+		/**
+		 * Constructs a chunk.
+		 * @param part the index of the part
+		 * @param start the start of the chunk's bytes
+		 * @param end the end of the chunk's bytes
+		 * @param startsPart whether the chunk begins its part
+		 */
+		Chunk(int part, int start, int end, boolean startsPart) {
+			this.part = part;
+			this.start = start;
+			this.end = end;
+			this.startsPart = startsPart;
+		}
+	}
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private ParallelDocumentBuilder() {}
+	
+	/**
+	 * Memory-maps the file and builds a validated document from it in parallel, rejecting it if it goes over any of the limits.
+	 * @param file the file to parse
+	 * @param resolver the entity resolver for the DTD, which must not have been used yet
+	 * @param limits the limits the file must stay within
+	 * @return the document
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 * @throws SAXException throws if there is an error when parsing or validating the file, or a {@link LimitExceededException} if it goes over a limit
+	 * @throws IOException throws if there is an I/O error reading the file, or the file can't be parsed in parallel
+	 */
+	public static Document parse(File file, MusicXMLEntityResolver resolver, ParsingLimits limits) throws ParserConfigurationException, SAXException, IOException {
+		if (file == null)
+			throw new IllegalArgumentException("file provided was null");
+		
+		ByteBuffer source = DocumentSource.map(file);
+		
+		Document document = parse(source, file.toURI().toString(), resolver, limits);
+		DocumentSource.set(document, source, file);
+		return document;
+	}
+	
+	/**
+	 * Builds a validated document from a buffer in parallel, rejecting it if it goes over any of the limits.
+	 * @param source the bytes of the document, from its position to its limit. They must not change while they're being parsed.
+	 * @param resolver the entity resolver for the DTD, which must not have been used yet
+	 * @param limits the limits the bytes must stay within
+	 * @return the document
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 * @throws SAXException throws if there is an error when parsing or validating the bytes, or a {@link LimitExceededException} if they go over a limit
+	 * @throws IOException throws if there is an I/O error reading the bytes, or they can't be parsed in parallel
+	 */
+	public static Document parse(ByteBuffer source, MusicXMLEntityResolver resolver, ParsingLimits limits) throws ParserConfigurationException, SAXException, IOException {
+		return parse(source, null, resolver, limits);
+	}
+	
+	/**
+	 * Builds a validated document from a buffer in parallel, rejecting it if it goes over any of the limits.
+	 * @param source the bytes of the document, from its position to its limit. They must not change while they're being parsed.
+	 * @param systemId the system ID of the document, for error messages, or {@code null} if it didn't come from a file
+	 * @param resolver the entity resolver for the DTD, which must not have been used yet
+	 * @param limits the limits the bytes must stay within
+	 * @return the document
+	 */
+	private static Document parse(ByteBuffer source, String systemId, MusicXMLEntityResolver resolver, ParsingLimits limits)
+			throws ParserConfigurationException, SAXException, IOException {
+		if (source == null)
+			throw new IllegalArgumentException("buffer provided was null");
+		if (limits == null)
+			throw new IllegalArgumentException("limits provided was null");
+		if (!LazyDocumentBuilder.isSupported(source)) {
+			throw new IOException("parallel parsing requires a UTF-8 encoded file");
+		}
+		
+		// First, find every part and measure. This is a quick scan that doesn't decode anything.
+		Layout layout = scan(source);
+		List<Chunk> chunks = split(layout, source.position(), source.remaining());
+		if (source.remaining() < 2 * MIN_CHUNK_SIZE || chunks.size() < 2) {
+			throw new IOException("the score is too small to be worth splitting");
+		}
+		
+		// Next, parse the header, which tells us which grammar the chunks are validated against
+		Document document = parseHeader(source, systemId, layout, chunks.get(0), resolver, limits);
+		String schemaDirectory = MusicXMLEntityResolver.getSchemaDirectory(resolver.getDeclaredVersion());
+		Identifiers identifiers = getIdentifiers(schemaDirectory);
+		byte[] prefix = ("<!DOCTYPE part SYSTEM \"partwise.dtd\" [" + identifiers.subset + "]>").getBytes(StandardCharsets.UTF_8);
+		
+		// The chunks are one level shallower than they are in the score
+		ParsingLimits chunkLimits = limits.getMaxDepth() > 1 ? limits.with("maxDepth", limits.getMaxDepth() - 1) : limits;
+		
+		// Now parse every chunk at once, stopping them all if the caller is cancelled or a chunk fails
+		CancellationToken caller = CancellationToken.current();
+		CancellationToken abandoned = new CancellationToken();
+		List<Future<Document>> pieces = new ArrayList<>(chunks.size());
+		try {
+			for (int i = 1; i < chunks.size(); i++) {
+				Chunk chunk = chunks.get(i);
+				pieces.add(THREADS.submit(() -> parseChunk(source, systemId, layout, chunk, prefix, schemaDirectory, chunkLimits, caller, abandoned)));
+			}
+			
+			// Move each chunk into the document as soon as it's ready, in order
+			Element root = document.getDocumentElement();
+			Element part = getFirstPart(root);
+			Node after = part.getNextSibling();
+			for (int i = 1; i < chunks.size(); i++) {
+				Document piece = await(pieces.get(i - 1));
+				if (chunks.get(i).startsPart) {
+					// The new part, along with any comments before it
+					for (Node node = piece.getFirstChild(); node != null; ) {
+						Node next = node.getNextSibling();
+						if (node.getNodeType() != Node.DOCUMENT_TYPE_NODE) {
+							Node moved = move(document, node);
+							root.insertBefore(moved, after);
+							if (moved.getNodeType() == Node.ELEMENT_NODE) {
+								part = (Element) moved;
+							}
+						}
+						node = next;
+					}
+				}
+				else {
+					// More measures for the same part
+					for (Node node = piece.getDocumentElement().getFirstChild(); node != null; ) {
+						Node next = node.getNextSibling();
+						part.appendChild(move(document, node));
+						node = next;
+					}
+				}
+			}
+		} finally {
+			abandoned.cancel("parallel parse finished"); // Stops any chunks still going if something went wrong
+		}
+		
+		// Finally, check what the chunks couldn't check on their own
+		checkIdentifiers(document, identifiers);
+		limits.check(document);
+		return document;
+	}
+	
+	/**
+	 * Scans for the start and end of every part and every measure.
+	 * @param source the bytes of the document
+	 * @return where everything is
+	 * @throws IOException if the bytes can't be split up, which includes them being malformed (parsing normally will explain what's wrong)
+	 */
+	private static Layout scan(ByteBuffer source) throws IOException {
+		Layout layout = new Layout();
+		XMLByteScanner scanner = new XMLByteScanner(source);
+		try {
+			int event;
+			int events = 0;
+			while ((event = scanner.next()) != XMLByteScanner.END_DOCUMENT) {
+				if ((++events & 0xFFF) == 0) {
+					CancellationToken.checkCurrent(); // Every so often
+				}
+				if (event == XMLByteScanner.START_ELEMENT) {
+					switch (scanner.getDepth()) {
+					case 1:
+						if (!scanner.nameEquals(SCORE_PARTWISE_BYTES)) {
+							throw new IOException("only partwise scores can be parsed in parallel");
+						}
+						for (int i = source.position(); i < scanner.getTagStart(); i++) {
+							if (source.get(i) == '[') {
+								throw new IOException("the score has its own DTD subset");
+							}
+						}
+						break;
+					case 2:
+						if (!scanner.nameEquals(PART_BYTES)) {
+							scanner.skipElement(); // Part of the header
+						}
+						else if (scanner.isEmptyElement()) {
+							throw new IOException("the score has a part with no measures");
+						}
+						else {
+							if (layout.partCount == layout.parts.length) {
+								layout.parts = Arrays.copyOf(layout.parts, layout.partCount * 2);
+								layout.firstMeasures = Arrays.copyOf(layout.firstMeasures, layout.partCount * 2);
+							}
+							layout.parts[layout.partCount] = new int[] {scanner.getTagStart(), scanner.getTagEnd(), -1, -1};
+							layout.firstMeasures[layout.partCount] = layout.measureCount;
+							layout.partCount++;
+						}
+						break;
+					default:
+						if (scanner.nameEquals(MEASURE_BYTES)) {
+							if (layout.measureCount == layout.measures.length) {
+								layout.measures = Arrays.copyOf(layout.measures, layout.measureCount * 2);
+							}
+							layout.measures[layout.measureCount++] = scanner.getTagStart();
+						}
+						scanner.skipElement(); // Whatever it is, the chunk's parser will look inside it
+						break;
+					}
+				}
+				else if (event == XMLByteScanner.END_ELEMENT && scanner.getDepth() == 1) {
+					// The end of a part
+					if (!scanner.nameEquals(PART_BYTES)) {
+						throw new IOException("the score's tags don't match up");
+					}
+					int[] part = layout.parts[layout.partCount - 1];
+					part[2] = scanner.getTagStart();
+					part[3] = scanner.getTagEnd();
+				}
+			}
+		} catch (SAXException e) {
+			throw new IOException("the score couldn't be scanned (" + e.getMessage() + ")");
+		}
+		if (scanner.getDepth() != 0) {
+			throw new IOException("the score's tags don't match up");
+		}
+		
+		if (layout.partCount == 0) {
+			throw new IOException("the score has no parts");
+		}
+		for (int i = 0; i < layout.partCount; i++) {
+			int last = i + 1 < layout.partCount ? layout.firstMeasures[i + 1] : layout.measureCount;
+			if (layout.parts[i][3] == -1 || layout.firstMeasures[i] == last) {
+				throw new IOException("the score has a part with no measures");
+			}
+		}
+		return layout;
+	}
+	
+	/**
+	 * Splits the measures into chunks of roughly equal size.
+	 * @param layout where everything is
+	 * @param start the start of the whole document
+	 * @param size the size of the whole document
+	 * @return the chunks, in document order. The first one is the header (which ends after the first measure), and the rest never split a measure.
+	 */
+	private static List<Chunk> split(Layout layout, int start, int size) {
+		long target = Math.max(MIN_CHUNK_SIZE, size / (THREAD_COUNT * CHUNKS_PER_THREAD));
+		List<Chunk> chunks = new ArrayList<>();
+		
+		// The header ends with the first measure. If the first part has no more measures, it takes the rest of the part too.
+		int firstPartMeasures = (layout.partCount > 1 ? layout.firstMeasures[1] : layout.measureCount) - layout.firstMeasures[0];
+		int headerEnd = firstPartMeasures > 1 ? layout.measures[layout.firstMeasures[0] + 1] : layout.parts[0][2];
+		chunks.add(new Chunk(0, start, headerEnd, true));
+		
+		for (int p = 0; p < layout.partCount; p++) {
+			int first = p == 0 ? layout.firstMeasures[0] + 1 : layout.firstMeasures[p];
+			int last = p + 1 < layout.partCount ? layout.firstMeasures[p + 1] : layout.measureCount;
+			if (first >= last) {
+				continue; // The header took all of it
+			}
+			
+			// A chunk that begins a part starts right after the part before, so that nothing between them is lost
+			boolean startsPart = p != 0;
+			int chunkStart = startsPart ? layout.parts[p - 1][3] : layout.measures[first];
+			for (int m = first + 1; m < last; m++) {
+				if (layout.measures[m] - chunkStart >= target) {
+					chunks.add(new Chunk(p, chunkStart, layout.measures[m], startsPart));
+					chunkStart = layout.measures[m];
+					startsPart = false;
+				}
+			}
+			chunks.add(new Chunk(p, chunkStart, layout.parts[p][2], startsPart));
+		}
+		return chunks;
+	}
+	
+	/**
+	 * Parses and validates the header: everything up to the end of the header chunk, followed by the end of the score.
+	 * @param source the bytes of the document
+	 * @param systemId the system ID of the document, or {@code null}
+	 * @param layout where everything is
+	 * @param header the header chunk
+	 * @param resolver the entity resolver for the DTD
+	 * @param limits the limits the header must stay within
+	 * @return the document, holding only the first part so far
+	 */
+	private static Document parseHeader(ByteBuffer source, String systemId, Layout layout, Chunk header, MusicXMLEntityResolver resolver, ParsingLimits limits)
+			throws ParserConfigurationException, SAXException, IOException {
+		DocumentBuilder builder = getDocumentBuilder(limits);
+		XMLValidationErrorHandler errorHandler = new XMLValidationErrorHandler();
+		builder.setErrorHandler(errorHandler);
+		builder.setEntityResolver(resolver);
+		
+		InputStream in = concatenate(slice(source, header.start, header.end), new ByteArrayInputStream(PART_END_TAG),
+				slice(source, layout.parts[layout.partCount - 1][3], source.limit()));
+		InputSource input = new InputSource(CancellationToken.checking(in));
+		input.setSystemId(systemId);
+		Document document;
+		try {
+			document = builder.parse(input);
+		} catch (SAXException e) {
+			throw ParsingLimits.translate(e);
+		}
+		if (!errorHandler.isValid()) {
+			throw ParsingLimits.translate(errorHandler.getException());
+		}
+		return document;
+	}
+	
+	/**
+	 * Parses and validates one chunk, as a document of its own whose root is the chunk's part.
+	 * @param source the bytes of the document
+	 * @param systemId the system ID of the document, or {@code null}
+	 * @param layout where everything is
+	 * @param chunk the chunk
+	 * @param prefix the DOCTYPE that goes before the chunk
+	 * @param schemaDirectory the resource directory of the DTD
+	 * @param limits the limits the chunk must stay within
+	 * @param caller the token of the thread that started the parse, or {@code null}
+	 * @param abandoned the token that stops every chunk once the parse has failed
+	 * @return the chunk's document
+	 */
+	private static Document parseChunk(ByteBuffer source, String systemId, Layout layout, Chunk chunk, byte[] prefix, String schemaDirectory, ParsingLimits limits,
+			CancellationToken caller, CancellationToken abandoned) throws ParserConfigurationException, SAXException, IOException {
+		DocumentBuilder builder = getDocumentBuilder(limits);
+		XMLValidationErrorHandler errorHandler = new XMLValidationErrorHandler();
+		builder.setErrorHandler(errorHandler);
+		builder.setEntityResolver(new MusicXMLEntityResolver(schemaDirectory));
+		
+		// A chunk from the middle of a part borrows the part's start tag
+		int[] part = layout.parts[chunk.part];
+		InputStream partStart = chunk.startsPart ? new ByteArrayInputStream(new byte[0]) : slice(source, part[0], part[1]);
+		InputStream in = concatenate(new ByteArrayInputStream(prefix), partStart, slice(source, chunk.start, chunk.end), new ByteArrayInputStream(PART_END_TAG));
+		
+		// Check both tokens on every read
+		in = new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				check();
+				return super.read();
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				check();
+				return super.read(b, off, len);
+			}
+			
+			private void check() {
+				abandoned.check();
+				if (caller != null) {
+					caller.check();
+				}
+			}
+		};
+		
+		Document piece;
+		try {
+			piece = builder.parse(new InputSource(in));
+		} catch (SAXException e) {
+			throw ParsingLimits.translate(relocate(e, source, systemId, layout, chunk));
+		}
+		if (!errorHandler.isValid()) {
+			throw ParsingLimits.translate(relocate(errorHandler.getException(), source, systemId, layout, chunk));
+		}
+		return piece;
+	}
+	
+	/**
+	 * Moves a parse error's line number from the chunk to where it is in the whole document.
+	 * @param e the error
+	 * @param source the bytes of the document
+	 * @param systemId the system ID of the document, or {@code null}
+	 * @param layout where everything is
+	 * @param chunk the chunk the error is in
+	 * @return the moved error, or the same error if it has no line number
+	 */
+	private static SAXException relocate(SAXException e, ByteBuffer source, String systemId, Layout layout, Chunk chunk) {
+		if (!(e instanceof SAXParseException) || ((SAXParseException) e).getLineNumber() < 1) {
+			return e;
+		}
+		SAXParseException parseException = (SAXParseException) e;
+		
+		// Count the lines into the chunk's own bytes, skipping those of a borrowed start tag (the DOCTYPE is all on one line)
+		int linesIn = parseException.getLineNumber() - 1;
+		if (!chunk.startsPart) {
+			int[] part = layout.parts[chunk.part];
+			linesIn -= countLines(source, part[0], part[1]);
+		}
+		int line = 1 + countLines(source, source.position(), chunk.start) + Math.max(linesIn, 0);
+		int column = linesIn > 0 ? parseException.getColumnNumber() : -1; // The first line's column is thrown off by what came before it
+		return new SAXParseException(e.getMessage(), parseException.getPublicId(), systemId, line, column, e);
+	}
+	
+	/**
+	 * @param source some bytes
+	 * @param start the first byte to look at
+	 * @param end one past the last byte to look at
+	 * @return the number of line feeds in the bytes
+	 */
+	private static int countLines(ByteBuffer source, int start, int end) {
+		int lines = 0;
+		for (int i = start; i < end; i++) {
+			if (source.get(i) == '\n') {
+				lines++;
+			}
+		}
+		return lines;
+	}
+	
+	/**
+	 * Checks that every {@code ID} in the document is a name that's only used once, and that every {@code IDREF} is the name of an {@code ID}.
+	 * Since the chunks treated these attributes as plain text, their values are also trimmed the way the parser would have.
+	 * @param document the stitched document
+	 * @param identifiers the identifier attributes
+	 * @throws SAXException if any of them aren't
+	 */
+	private static void checkIdentifiers(Document document, Identifiers identifiers) throws SAXException {
+		Set<String> ids = new HashSet<>();
+		List<String> references = new ArrayList<>();
+		
+		// Walk the tree once without recursion
+		Node node = document.getDocumentElement();
+		while (node != null) {
+			Map<String, String> types = node.getNodeType() == Node.ELEMENT_NODE ? identifiers.types.get(node.getNodeName()) : null;
+			if (types != null) {
+				for (Map.Entry<String, String> type : types.entrySet()) {
+					Attr attribute = ((Element) node).getAttributeNode(type.getKey());
+					if (attribute == null) {
+						continue;
+					}
+					String value = attribute.getValue().trim().replaceAll(" +", " ");
+					if (!value.equals(attribute.getValue())) {
+						attribute.setValue(value);
+					}
+					for (String name : type.getValue().equals("IDREFS") ? value.split(" ") : new String[] {value}) {
+						if (!NAME.matcher(name).matches()) {
+							throw new SAXException("Attribute value \"" + name + "\" of type " + type.getValue() + " must be a name.");
+						}
+						if (!type.getValue().equals("ID")) {
+							references.add(name);
+						}
+						else if (!ids.add(name)) {
+							throw new SAXException("Attribute value \"" + name + "\" of type ID must be unique within the document.");
+						}
+					}
+				}
+			}
+			
+			if (node.getFirstChild() != null) {
+				node = node.getFirstChild();
+				continue;
+			}
+			while (node != null && node.getNextSibling() == null) {
+				node = node.getParentNode();
+				if (node == document) {
+					node = null;
+				}
+			}
+			if (node != null) {
+				node = node.getNextSibling();
+			}
+		}
+		
+		for (String reference : references) {
+			if (!ids.contains(reference)) {
+				throw new SAXException("An element with the identifier \"" + reference + "\" must appear in the document.");
+			}
+		}
+	}
+	
+	/**
+	 * Moves a node from a chunk's document into the score's.
+	 * @param document the score's document
+	 * @param node the node
+	 * @return the node, now belonging to the score's document (but not yet inserted anywhere)
+	 */
+	private static Node move(Document document, Node node) {
+		Node moved = document.adoptNode(node);
+		if (moved == null) {
+			// This DOM can't move nodes between documents, so copy it instead
+			moved = document.importNode(node, true);
+		}
+		return moved;
+	}
+	
+	/**
+	 * @param root the score's root element
+	 * @return its first {@code <part>}
+	 */
+	private static Element getFirstPart(Element root) {
+		for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (node.getNodeType() == Node.ELEMENT_NODE && node.getNodeName().equals("part")) {
+				return (Element) node;
+			}
+		}
+		throw new IllegalStateException("the header has no part"); // The scan found one, so this can't happen
+	}
+	
+	/**
+	 * Waits for a chunk to be parsed.
+	 * @param piece the chunk's parse
+	 * @return the chunk's document
+	 */
+	private static Document await(Future<Document> piece) throws ParserConfigurationException, SAXException, IOException {
+		try {
+			return piece.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a chunk to be parsed");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SAXException) {
+				throw (SAXException) cause;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof ParserConfigurationException) {
+				throw (ParserConfigurationException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause); // Errors are all that's left
+		}
+	}
+	
+	/**
+	 * @param source some bytes
+	 * @param start the first byte
+	 * @param end one past the last byte
+	 * @return a stream of those bytes
+	 */
+	private static InputStream slice(ByteBuffer source, int start, int end) {
+		ByteBuffer view = source.duplicate();
+		view.limit(end);
+		view.position(start);
+		return new ByteBufferInputStream(view);
+	}
+	
+	/**
+	 * @param streams some streams
+	 * @return one stream that reads each of them in turn
+	 */
+	private static InputStream concatenate(InputStream... streams) {
+		return new SequenceInputStream(Collections.enumeration(Arrays.asList(streams)));
+	}
+	
+	/**
+	 * Returns this thread's validating document builder for a set of limits, making it if this is the first time.
+	 * @param limits the limits the builder must enforce
+	 * @return the builder
+	 * @throws ParserConfigurationException throws if there is a problem getting a new {@code DocumentBuilder}
+	 */
+	private static DocumentBuilder getDocumentBuilder(ParsingLimits limits) throws ParserConfigurationException {
+		Map<ParsingLimits, DocumentBuilder> builders = BUILDERS.get();
+		DocumentBuilder builder = builders.get(limits);
+		if (builder != null) {
+			builder.reset();
+			return builder;
+		}
+		
+		DocumentBuilderFactory factory = FACTORIES.computeIfAbsent(limits, l -> {
+			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+			dbf.setValidating(true);
+			dbf.setIgnoringElementContentWhitespace(true);
+			limits.configure(dbf);
+			return dbf;
+		});
+		synchronized (factory) {
+			// The factory isn't guaranteed to be thread-safe
+			builder = factory.newDocumentBuilder();
+		}
+		builders.put(limits, builder);
+		return builder;
+	}
+	
+	/**
+	 * Returns the identifier attributes of a DTD, reading them if this is the first time they have been asked for.
+	 * @param schemaDirectory the resource directory of the DTD
+	 * @return the identifier attributes
+	 * @throws SAXException if the DTD can't be read
+	 */
+	private static Identifiers getIdentifiers(String schemaDirectory) throws SAXException {
+		Identifiers identifiers = IDENTIFIERS.get(schemaDirectory);
+		if (identifiers != null) {
+			return identifiers;
+		}
+		
+		identifiers = new Identifiers();
+		ChangeValidator.readDeclarations(schemaDirectory, identifiers);
+		
+		// Two threads may read the same DTD at the same time, but only one of them is kept
+		Identifiers existing = IDENTIFIERS.putIfAbsent(schemaDirectory, identifiers);
+		return existing == null ? identifiers : existing;
+	}
+}
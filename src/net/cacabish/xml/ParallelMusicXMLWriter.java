@@ -0,0 +1,349 @@
+package net.cacabish.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Writes a MusicXML document with every {@code <part>} rendered on its own thread, producing exactly the same bytes as {@link MusicXMLWriter}.
+ * <br><br>
+ * The header (the XML declaration, the DOCTYPE, and everything in the root element before the first part) is rendered on the calling thread.
+ * Each part is rendered into a buffer of its own by a separate {@link MusicXMLWriter}, and the buffers are written out in order with gathering writes
+ * as soon as each one (and every one before it) is ready, so the output never has to be held in memory all at once.
+ * <br><br>
+ * Reading a DOM isn't guaranteed to be thread-safe. The JDK's DOM builds its nodes the first time they're read, so before a part is handed to another thread,
+ * the calling thread reads every node in it once, and nothing that's looked up on the document itself (such as the bytes slices refer to) is read by
+ * the other threads. The calling thread reads the next part while the others render the ones before it.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class ParallelMusicXMLWriter {
+	
+	/**
+	 * The threads parts are rendered on, one for each processor. Idle threads go away after a minute.
+	 */
+	private static final ThreadPoolExecutor THREADS;
+	
+	static {
+		int threads = Runtime.getRuntime().availableProcessors();
+		THREADS = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "musicxml-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		THREADS.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * A rendered piece of the output.
+	 */
+	private static final class Segment {
+		/**
+		 * The bytes of the piece.
+		 */
+		final ByteBuffer bytes;
+		/**
+		 * The recorded offsets in the piece, counted from its start, packed as pairs.
+		 */
+		final long[] offsets;
+		
+		/**
+		 * Constructs a segment.
+		 * @param bytes the bytes of the piece
+		 * @param offsets the recorded offsets in the piece
+		 */
+		Segment(ByteBuffer bytes, long[] offsets) {
+			this.bytes = bytes;
+			this.offsets = offsets;
+		}
+	}
+	
+	/**
+	 * A stream into a growable array that can be read without copying it.
+	 */
+	private static final class Buffer extends ByteArrayOutputStream {
+		/**
+		 * Constructs an empty buffer.
+		 */
+		Buffer() {
+			super(1 << 16);
+		}
+		
+		/**
+		 * @return a buffer over everything written so far
+		 */
+		ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private ParallelMusicXMLWriter() {}
+	
+	/**
+	 * Writes an entire document to a channel, rendering each part on its own thread.
+	 * @param document the document to write
+	 * @param channel the channel to write to, such as a {@code FileChannel}
+	 * @param recordedName the tag name of the elements whose offsets should be recorded (see {@link MusicXMLWriter#recordOffsets(String)}), or {@code null}
+	 * @return the start and end of every recorded element, packed as pairs, or {@code null} if nothing was recorded
+	 * @throws IOException if there is an issue writing
+	 */
+	public static long[] write(Document document, GatheringByteChannel channel, String recordedName) throws IOException {
+		if (document == null)
+			throw new IllegalArgumentException("document provided was null");
+		if (channel == null)
+			throw new IllegalArgumentException("channel provided was null");
+		
+		Element root = document.getDocumentElement();
+		if (root == null || !root.hasChildNodes() || MusicXMLWriter.hasTextContent(root)) {
+			// Nothing to split up, so write it all here
+			Buffer buffer = new Buffer();
+			MusicXMLWriter writer = newWriter(buffer, recordedName);
+			writer.writeDocument(document);
+			writer.flush();
+			writeFully(channel, new ByteBuffer[] {buffer.toByteBuffer()});
+			return recordedName == null ? null : writer.getRecordedOffsets();
+		}
+		
+		// Look these up now, since the other threads can't
+		ByteBuffer sliceSource = LazySlices.getSource(document);
+		ByteBuffer reusedSliceSource = LazySlices.getReusedSource(document);
+		
+		// The header: the XML declaration and DOCTYPE, anything before the root, and everything in the root before the first part
+		Buffer header = new Buffer();
+		MusicXMLWriter writer = newWriter(header, recordedName);
+		writer.writeHeader(MusicXMLConverter.getVersion(document));
+		for (Node child = document.getFirstChild(); child != root; child = child.getNextSibling()) {
+			if (child.getNodeType() != Node.DOCUMENT_TYPE_NODE) {
+				writer.writeNode(child, 0);
+				writer.writeNewline();
+			}
+		}
+		writer.writeStartTag(root, false);
+		Node child = root.getFirstChild();
+		for (; child != null && !child.getNodeName().equals("part"); child = child.getNextSibling()) {
+			if (child.getNodeType() != Node.TEXT_NODE) { // Whitespace only, as checked above
+				writer.writeNewline();
+				writer.writeIndent(1);
+				writer.writeNode(child, 1);
+			}
+		}
+		writer.flush();
+		
+		// Everything from the first part on gets its own thread, while this one gets the next part ready and writes out whatever's done
+		ArrayDeque<Future<Segment>> pending = new ArrayDeque<>();
+		List<long[]> offsets = new ArrayList<>();
+		long[] written = {0};
+		pending.add(completed(new Segment(header.toByteBuffer(), writer.getRecordedOffsets())));
+		try {
+			for (; child != null; child = child.getNextSibling()) {
+				if (child.getNodeType() == Node.TEXT_NODE) {
+					continue;
+				}
+				Node node = child;
+				prepare(node);
+				pending.add(THREADS.submit(() -> render(node, sliceSource, reusedSliceSource, recordedName)));
+				drain(pending, channel, offsets, written, false);
+			}
+		} finally {
+			drain(pending, channel, offsets, written, true);
+		}
+		
+		// The end of the root, and anything after it
+		Buffer footer = new Buffer();
+		writer = newWriter(footer, recordedName);
+		writer.writeNewline();
+		writer.writeIndent(0);
+		writer.writeEndTag(root);
+		writer.writeNewline();
+		for (child = root.getNextSibling(); child != null; child = child.getNextSibling()) {
+			writer.writeNode(child, 0);
+			writer.writeNewline();
+		}
+		writer.flush();
+		pending.add(completed(new Segment(footer.toByteBuffer(), writer.getRecordedOffsets())));
+		drain(pending, channel, offsets, written, true);
+		
+		if (recordedName == null) {
+			return null;
+		}
+		int count = 0;
+		for (long[] part : offsets) {
+			count += part.length;
+		}
+		long[] all = new long[count];
+		count = 0;
+		for (long[] part : offsets) {
+			System.arraycopy(part, 0, all, count, part.length);
+			count += part.length;
+		}
+		return all;
+	}
+	
+	/**
+	 * Renders one child of the root, on its own line.
+	 * @param node the child
+	 * @param sliceSource the document's source
+	 * @param reusedSliceSource the document's previous output
+	 * @param recordedName the tag name of the elements whose offsets should be recorded, or {@code null}
+	 * @return the rendered child
+	 * @throws IOException if there is an issue writing, which can only come from writing a slice
+	 */
+	private static Segment render(Node node, ByteBuffer sliceSource, ByteBuffer reusedSliceSource, String recordedName) throws IOException {
+		Buffer buffer = new Buffer();
+		MusicXMLWriter writer = newWriter(buffer, recordedName);
+		writer.setSliceSources(sliceSource, reusedSliceSource);
+		writer.writeNewline();
+		writer.writeIndent(1);
+		writer.writeNode(node, 1);
+		writer.flush();
+		return new Segment(buffer.toByteBuffer(), writer.getRecordedOffsets());
+	}
+	
+	/**
+	 * Writes out every segment at the front of the queue that's ready, in order, with a single gathering write.
+	 * @param pending the segments still to be written, in order
+	 * @param channel the channel to write to
+	 * @param offsets the recorded offsets of every segment written so far, moved to where they ended up
+	 * @param written the number of bytes written so far, which is updated
+	 * @param wait whether to wait for every segment, rather than only writing the ones that are already done
+	 * @throws IOException if there is an issue writing, or rendering a segment failed
+	 */
+	private static void drain(ArrayDeque<Future<Segment>> pending, GatheringByteChannel channel, List<long[]> offsets, long[] written, boolean wait) throws IOException {
+		List<ByteBuffer> ready = new ArrayList<>();
+		while (!pending.isEmpty() && (wait || pending.peek().isDone())) {
+			Segment segment = await(pending.poll());
+			long[] moved = segment.offsets.clone();
+			for (int i = 0; i < moved.length; i++) {
+				moved[i] += written[0];
+			}
+			offsets.add(moved);
+			written[0] += segment.bytes.remaining();
+			ready.add(segment.bytes);
+		}
+		writeFully(channel, ready.toArray(new ByteBuffer[0]));
+	}
+	
+	/**
+	 * Writes every byte of every buffer, since a gathering write may stop short.
+	 * @param channel the channel to write to
+	 * @param buffers the buffers
+	 * @throws IOException if there is an issue writing
+	 */
+	private static void writeFully(GatheringByteChannel channel, ByteBuffer[] buffers) throws IOException {
+		int first = 0;
+		while (first < buffers.length) {
+			channel.write(buffers, first, buffers.length - first);
+			while (first < buffers.length && !buffers[first].hasRemaining()) {
+				first++;
+			}
+		}
+	}
+	
+	/**
+	 * Reads every node in a subtree that a writer will read, so that all of them have been built before another thread reads them.
+	 * @param node the root of the subtree
+	 */
+	private static void prepare(Node node) {
+		Node current = node;
+		while (current != null) {
+			switch (current.getNodeType()) {
+			case Node.ELEMENT_NODE:
+				NamedNodeMap attributes = current.getAttributes();
+				for (int i = 0; i < attributes.getLength(); i++) {
+					attributes.item(i).getNodeValue();
+				}
+				current.getNodeName();
+				break;
+			case Node.PROCESSING_INSTRUCTION_NODE:
+				current.getNodeName();
+				current.getNodeValue();
+				break;
+			case Node.TEXT_NODE:
+			case Node.CDATA_SECTION_NODE:
+			case Node.COMMENT_NODE:
+				current.getNodeValue();
+				break;
+			default:
+				break;
+			}
+			
+			// Walk the tree without recursion, without leaving the subtree
+			if (current.getFirstChild() != null) {
+				current = current.getFirstChild();
+				continue;
+			}
+			while (current != node && current.getNextSibling() == null) {
+				current = current.getParentNode();
+			}
+			current = current == node ? null : current.getNextSibling();
+		}
+	}
+	
+	/**
+	 * @param out the stream to write to
+	 * @param recordedName the tag name of the elements whose offsets should be recorded, or {@code null}
+	 * @return a new writer
+	 */
+	private static MusicXMLWriter newWriter(ByteArrayOutputStream out, String recordedName) {
+		MusicXMLWriter writer = new MusicXMLWriter(out);
+		if (recordedName != null) {
+			writer.recordOffsets(recordedName);
+		}
+		return writer;
+	}
+	
+	/**
+	 * @param segment a segment that's already rendered
+	 * @return a future that's already done
+	 */
+	private static Future<Segment> completed(Segment segment) {
+		FutureTask<Segment> task = new FutureTask<>(() -> segment);
+		task.run();
+		return task;
+	}
+	
+	/**
+	 * Waits for a segment to be rendered.
+	 * @param segment the segment's rendering
+	 * @return the segment
+	 * @throws IOException if the rendering failed, or the thread was interrupted while waiting
+	 */
+	private static Segment await(Future<Segment> segment) throws IOException {
+		try {
+			return segment.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a part to be written");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause); // Errors are all that's left
+		}
+	}
+}
@@ -0,0 +1,479 @@
+package net.cacabish.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * A writer that preserves the formatting of the file a document was parsed from.
+ * <br><br>
+ * Every element that hasn't been modified is copied byte for byte from the source, along with the whitespace and comments around it.
+ * Only the elements that have actually changed are written out again, and even then, as little as possible is rewritten:
+ * <ul>
+ * <li>If only an element's attributes changed, only its start tag is rewritten. Attributes keep their original order, spacing and quoting, and untouched ones are copied as-is.</li>
+ * <li>If an element's children changed, the children that came from the source keep the whitespace that was in front of them. New children are indented to match their siblings.</li>
+ * </ul>
+ * The XML declaration and DOCTYPE are also copied from the source, so a diff of the output against the input shows only what was cleaned.
+ * <br><br>
+ * The document must be tracked with a {@link SourceTracker} from right after it was parsed.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public class PatchWriter extends MusicXMLWriter {
+	
+	/**
+	 * The tracker that knows where everything came from and what has changed.
+	 */
+	private final SourceTracker tracker;
+	
+	/**
+	 * The bytes the document was parsed from.
+	 */
+	private final ByteBuffer source;
+	
+	/**
+	 * A scratch buffer used to copy from sources that aren't backed by an array.
+	 */
+	private final byte[] chunk = new byte[8192];
+	
+	/**
+	 * Constructs a writer for a document. The stream is not closed by this writer.
+	 * @param out the stream to write to
+	 * @param document the document that will be written, which must be tracked
+	 */
+	public PatchWriter(OutputStream out, Document document) {
+		super(out);
+		tracker = SourceTracker.get(document);
+		if (tracker == null) {
+			throw new IllegalArgumentException("document is not being tracked");
+		}
+		source = DocumentSource.getBuffer(document);
+		setNewline(detectNewline(source));
+	}
+	
+	/**
+	 * Writes an entire tracked document to a stream, then flushes it.
+	 * @param document the document to write
+	 * @param out the stream to write to
+	 * @return the number of bytes written
+	 * @throws IOException if there is an issue writing
+	 */
+	public static long write(Document document, OutputStream out) throws IOException {
+		PatchWriter writer = new PatchWriter(out, document);
+		writer.writeDocument(document);
+		writer.flush();
+		return writer.getBytesWritten();
+	}
+	
+	/**
+	 * Writes the document, copying everything outside the root element straight from the source.
+	 * @param document the document to write
+	 * @throws IOException if there is an issue writing
+	 */
+	@Override
+	public void writeDocument(Document document) throws IOException {
+		Element root = document.getDocumentElement();
+		int[] range = tracker.getRange(root);
+		if (range == null) {
+			throw new IllegalStateException("the root element did not come from the source");
+		}
+		
+		copy(0, range[0]);
+		writeElement(root, 0);
+		copy(range[3], source.limit());
+	}
+	
+	@Override
+	protected void writeElement(Element element, int depth) throws IOException {
+		int[] range = tracker.getRange(element);
+		if (range == null) {
+			// Brand new, so there's no formatting to preserve
+			super.writeElement(element, depth);
+			return;
+		}
+		
+		int changes = tracker.getChanges(element);
+		if (changes == 0) {
+			copy(range[0], range[3]);
+			return;
+		}
+		
+		boolean wasEmpty = range[2] == range[3];
+		boolean empty = wasEmpty && !element.hasChildNodes();
+		if ((changes & SourceTracker.ATTRIBUTES_CHANGED) != 0 || wasEmpty != empty) {
+			writeStartTag(element, range, empty);
+		}
+		else {
+			copy(range[0], range[1]);
+		}
+		if (empty) {
+			return;
+		}
+		
+		if ((changes & SourceTracker.CHILDREN_CHANGED) == 0) {
+			// The same children as before, so copy everything in between them
+			int position = range[1];
+			for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+				int[] childRange = tracker.getRange(child);
+				if (childRange != null) {
+					copy(position, childRange[0]);
+					writeNode(child, depth + 1);
+					position = childRange[3];
+				}
+			}
+			copy(position, range[3]);
+			return;
+		}
+		
+		writeChangedChildren(element, range, depth);
+	}
+	
+	/**
+	 * Writes the children and end tag of an element whose children have changed.
+	 * @param element the element
+	 * @param range the element's source range
+	 * @param depth the depth of the element
+	 * @throws IOException if there is an issue writing
+	 */
+	private void writeChangedChildren(Element element, int[] range, int depth) throws IOException {
+		boolean wasEmpty = range[2] == range[3];
+		
+		if (hasTextContent(element)) {
+			// Keep it all on one line
+			for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+				writeNode(child, depth + 1);
+			}
+		}
+		else {
+			byte[] parentIndent = getLineIndent(range[0], 0);
+			if (parentIndent == null) {
+				parentIndent = new byte[0];
+			}
+			byte[] childIndent = getChildIndent(element, range, parentIndent);
+			int childDepth = childIndent.length / INDENT_AMOUNT;
+			
+			for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+				if (child.getNodeType() == Node.TEXT_NODE) {
+					continue; // Whitespace only, as checked above
+				}
+				
+				int[] childRange = tracker.getRange(child);
+				if (childRange != null && childRange[0] >= range[1] && childRange[3] <= range[2]) {
+					// Keep whatever was in front of it before
+					copy(getWhitespaceStart(childRange[0], range[1]), childRange[0]);
+				}
+				else {
+					writeNewline();
+					writeBytes(childIndent, 0, childIndent.length);
+				}
+				writeNode(child, childDepth);
+			}
+			
+			if (wasEmpty) {
+				writeNewline();
+				writeBytes(parentIndent, 0, parentIndent.length);
+			}
+			else {
+				copy(getWhitespaceStart(range[2], range[1]), range[2]);
+			}
+		}
+		
+		if (wasEmpty) {
+			writeEndTag(element);
+		}
+		else {
+			copy(range[2], range[3]);
+		}
+	}
+	
+	/**
+	 * Rewrites the start tag of an element, keeping as much of the original tag as possible.
+	 * @param element the element
+	 * @param range the element's source range
+	 * @param empty if true, this is written as an empty element tag
+	 * @throws IOException if there is an issue writing
+	 */
+	private void writeStartTag(Element element, int[] range, boolean empty) throws IOException {
+		int position = range[0] + 1;
+		while (!isWhitespace(source.get(position)) && source.get(position) != '/' && source.get(position) != '>') {
+			position++;
+		}
+		copy(range[0], position);
+		
+		// Go through the original attributes in their original order
+		Set<String> written = new HashSet<>();
+		while (true) {
+			int nameStart = position;
+			while (isWhitespace(source.get(nameStart))) {
+				nameStart++;
+			}
+			byte b = source.get(nameStart);
+			if (b == '/' || b == '>') {
+				break;
+			}
+			
+			int equals = indexOf((byte) '=', nameStart);
+			int nameEnd = equals;
+			while (isWhitespace(source.get(nameEnd - 1))) {
+				nameEnd--;
+			}
+			int quote = equals + 1;
+			while (isWhitespace(source.get(quote))) {
+				quote++;
+			}
+			int valueEnd = indexOf(source.get(quote), quote + 1);
+			
+			String name = decode(nameStart, nameEnd);
+			Attr attribute = element.getAttributeNode(name);
+			if (attribute != null) {
+				byte quoteMark = source.get(quote);
+				if (attribute.getValue().equals(unescape(decode(quote + 1, valueEnd)))) {
+					copy(position, valueEnd + 1);
+				}
+				else if (quoteMark == '\'' && attribute.getValue().indexOf('\'') >= 0) {
+					writeAttribute(attribute); // The new value can't go between single quotes unescaped, so use double quotes instead
+				}
+				else {
+					// Keep the whitespace, name and quotes, and only rewrite the value
+					copy(position, quote + 1);
+					writeEscaped(attribute.getValue(), true);
+					writeASCII(quoteMark == '"' ? "\"" : "'");
+				}
+				written.add(name);
+			}
+			position = valueEnd + 1;
+		}
+		
+		// Then add any new ones
+		NamedNodeMap attributes = element.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Attr attribute = (Attr) attributes.item(i);
+			if (attribute.getSpecified() && !written.contains(attribute.getName())) {
+				writeAttribute(attribute);
+			}
+		}
+		
+		boolean wasEmpty = range[2] == range[3];
+		if (empty == wasEmpty) {
+			copy(position, range[1]);
+		}
+		else {
+			writeASCII(empty ? "/>" : ">");
+		}
+	}
+	
+	/**
+	 * Writes a single attribute, preceded by a space.
+	 * @param attribute the attribute
+	 * @throws IOException if there is an issue writing
+	 */
+	private void writeAttribute(Attr attribute) throws IOException {
+		writeASCII(" ");
+		writeString(attribute.getName());
+		writeASCII("=\"");
+		writeEscaped(attribute.getValue(), true);
+		writeASCII("\"");
+	}
+	
+	/**
+	 * Figures out how the children of an element are indented in the source.
+	 * @param element the element
+	 * @param range the element's source range
+	 * @param parentIndent the indentation of the element itself
+	 * @return the indentation of the first child that came from the source, or one more level than the parent if there isn't one
+	 */
+	private byte[] getChildIndent(Element element, int[] range, byte[] parentIndent) {
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			int[] childRange = tracker.getRange(child);
+			if (childRange != null && childRange[0] >= range[1] && childRange[3] <= range[2]) {
+				byte[] indent = getLineIndent(childRange[0], range[1]);
+				if (indent != null) {
+					return indent;
+				}
+			}
+		}
+		
+		byte[] indent = new byte[parentIndent.length + INDENT_AMOUNT];
+		System.arraycopy(parentIndent, 0, indent, 0, parentIndent.length);
+		for (int i = parentIndent.length; i < indent.length; i++) {
+			indent[i] = ' ';
+		}
+		return indent;
+	}
+	
+	/**
+	 * Returns the spaces and tabs between the start of the line and the index.
+	 * @param index the index
+	 * @param floor how far back to look
+	 * @return the indentation, or {@code null} if there is something other than spaces and tabs between the start of the line and the index
+	 */
+	private byte[] getLineIndent(int index, int floor) {
+		int start = index;
+		while (start > floor && (source.get(start - 1) == ' ' || source.get(start - 1) == '\t')) {
+			start--;
+		}
+		if (start > 0 && (start <= floor || source.get(start - 1) != '\n')) {
+			return null;
+		}
+		
+		byte[] indent = new byte[index - start];
+		for (int i = 0; i < indent.length; i++) {
+			indent[i] = source.get(start + i);
+		}
+		return indent;
+	}
+	
+	/**
+	 * Finds the start of the whitespace right before an index.
+	 * @param index the index
+	 * @param floor how far back to look
+	 * @return the index of the first whitespace byte, or the index itself if there is no whitespace before it
+	 */
+	private int getWhitespaceStart(int index, int floor) {
+		int start = index;
+		while (start > floor && isWhitespace(source.get(start - 1))) {
+			start--;
+		}
+		return start;
+	}
+	
+	/**
+	 * Copies a range of the source to the output.
+	 * @param start the index of the first byte
+	 * @param end the index one past the last byte
+	 * @throws IOException if there is an issue writing
+	 */
+	private void copy(int start, int end) throws IOException {
+		if (end <= start) {
+			return;
+		}
+		if (source.hasArray()) {
+			writeBytes(source.array(), source.arrayOffset() + start, end - start);
+			return;
+		}
+		
+		ByteBuffer view = source.duplicate();
+		view.limit(end);
+		view.position(start);
+		while (view.hasRemaining()) {
+			int count = Math.min(chunk.length, view.remaining());
+			view.get(chunk, 0, count);
+			writeBytes(chunk, 0, count);
+		}
+	}
+	
+	/**
+	 * @return the index of the next occurrence of the byte, starting from the given index
+	 */
+	private int indexOf(byte b, int from) {
+		for (int i = from; i < source.limit(); i++) {
+			if (source.get(i) == b) {
+				return i;
+			}
+		}
+		throw new IllegalStateException("source ended unexpectedly while looking for '" + (char) b + "'");
+	}
+	
+	/**
+	 * Decodes a range of the source.
+	 * @param start the index of the first byte
+	 * @param end the index one past the last byte
+	 * @return the decoded string
+	 */
+	private String decode(int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = source.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Turns a raw attribute value into the value the parser would have read.
+	 * @param raw the attribute value as it appears in the source
+	 * @return the value, or {@code null} if it contains an entity that isn't built into XML
+	 */
+	private static String unescape(String raw) {
+		StringBuilder builder = new StringBuilder(raw.length());
+		for (int i = 0; i < raw.length(); i++) {
+			char c = raw.charAt(i);
+			if (c == '\t' || c == '\n' || c == '\r') {
+				builder.append(' '); // Attribute values are normalized
+			}
+			else if (c != '&') {
+				builder.append(c);
+			}
+			else {
+				int semicolon = raw.indexOf(';', i);
+				if (semicolon == -1) {
+					return null;
+				}
+				String entity = raw.substring(i + 1, semicolon);
+				switch (entity) {
+				case "amp":
+					builder.append('&');
+					break;
+				case "lt":
+					builder.append('<');
+					break;
+				case "gt":
+					builder.append('>');
+					break;
+				case "quot":
+					builder.append('"');
+					break;
+				case "apos":
+					builder.append('\'');
+					break;
+				default:
+					try {
+						if (entity.startsWith("#x")) {
+							builder.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+						}
+						else if (entity.startsWith("#")) {
+							builder.appendCodePoint(Integer.parseInt(entity.substring(1)));
+						}
+						else {
+							return null;
+						}
+					} catch (IllegalArgumentException e) {
+						return null;
+					}
+					break;
+				}
+				i = semicolon;
+			}
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * @return the line separator the source uses, or a plain line feed if it can't be determined
+	 */
+	private static byte[] detectNewline(ByteBuffer source) {
+		for (int i = 0; i < source.limit(); i++) {
+			if (source.get(i) == '\n') {
+				return i > 0 && source.get(i - 1) == '\r' ? new byte[] {'\r', '\n'} : new byte[] {'\n'};
+			}
+		}
+		return new byte[] {'\n'};
+	}
+	
+	/**
+	 * @return true if the byte is XML whitespace
+	 */
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+}
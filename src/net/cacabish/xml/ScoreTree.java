@@ -0,0 +1,1379 @@
+package net.cacabish.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import net.cacabish.CancellationToken;
+
+/**
+ * A compact, read-only tree of a score, for looking things up without walking the DOM.
+ * <br><br>
+ * Every node is an index into a handful of {@code int} arrays, in document order: its kind and name, its parent and next sibling,
+ * where its subtree ends, and where its text (or its attributes) can be found in the bytes it was built from. Since a node's descendants are exactly
+ * the nodes after it and before the end of its subtree, finding every element with a given name under a node is a scan over one array rather than
+ * a walk over objects. Names are interned when the tree is built, with every MusicXML name getting its fixed ID from {@link MusicXMLSymbols},
+ * so comparing names is comparing {@code int}s (or a {@code switch}), and nothing is decoded into a {@code String} until it's asked for.
+ * <br><br>
+ * A tree is either parsed from the UTF-8 bytes of a score ({@link #parse(ByteBuffer)}), in which case it refers to those bytes instead of copying them,
+ * or adapted from a DOM that has no such bytes ({@link #of(Document)}). A tree parsed from bytes doesn't read the DTD, so it has no default attributes,
+ * and whitespace between elements is dropped just as a validating parser would drop it. Comments, processing instructions, and lazy slices aren't in the tree.
+ * <br><br>
+ * The cleaner doesn't build one. Its operations find and change elements in the DOM it already has (by ID, with {@link NodeSymbols}), since that's
+ * the model everything after them shares (lazy slices, change tracking, manifests, the writers, and the version stylesheets), and building a tree
+ * as well would only parse the score a second time. A tree is for reading a score without building a DOM at all.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class ScoreTree {
+	
+	/**
+	 * The kind of a node that is an element.
+	 */
+	public static final int ELEMENT = 1;
+	/**
+	 * The kind of a node that is text (including a CDATA section).
+	 */
+	public static final int TEXT = 3;
+	
+	/**
+	 * The number of low bits of {@link #kinds} that hold a node's kind. The rest hold the ID of its name.
+	 */
+	private static final int KIND_BITS = 2;
+	
+	/**
+	 * The kind of a text node whose bytes are a CDATA section, and so are never unescaped. Only ever stored, never returned.
+	 */
+	private static final int CDATA = 2;
+	
+	/**
+	 * The bytes the tree refers to. For a tree adapted from a DOM, these are only known once the whole DOM has been copied.
+	 */
+	private ByteBuffer source;
+	
+	/**
+	 * Whether the bytes are escaped XML, which has to be unescaped when it's decoded, or plain text copied out of a DOM.
+	 */
+	private final boolean escaped;
+	
+	/**
+	 * The names of elements and attributes. Every MusicXML name has its ID from {@link MusicXMLSymbols}, and any other name is given one the first time it's seen.
+	 */
+	private final SymbolTable symbols;
+	
+	/**
+	 * The number of nodes.
+	 */
+	private int count = 0;
+	
+	/**
+	 * The kind of each node, with the ID of its name (if it's an element) above the kind.
+	 */
+	private int[] kinds;
+	
+	/**
+	 * The parent of each node, or -1 for the root.
+	 */
+	private int[] parents;
+	
+	/**
+	 * The next sibling of each node, or -1 if it's the last child. A node's first child, if it has any, is always the next node.
+	 */
+	private int[] nextSiblings;
+	
+	/**
+	 * The index one past the last node in each node's subtree.
+	 */
+	private int[] subtreeEnds;
+	
+	/**
+	 * For a text node, the start (inclusive) and end (exclusive) of its bytes.
+	 * For an element, the index of its first attribute in the attribute arrays, and one past its last.
+	 */
+	private int[] starts, ends;
+	
+	/**
+	 * The number of attributes.
+	 */
+	private int attributeCount = 0;
+	
+	/**
+	 * The ID of each attribute's name.
+	 */
+	private int[] attributeNames;
+	
+	/**
+	 * The start (inclusive) and end (exclusive) of each attribute's value in the bytes.
+	 */
+	private int[] valueStarts, valueEnds;
+	
+	/**
+	 * Constructs an empty tree.
+	 * @param source the bytes the tree refers to
+	 * @param escaped whether the bytes are escaped XML
+	 * @param capacity the number of nodes to make room for
+	 */
+	private ScoreTree(ByteBuffer source, boolean escaped, int capacity) {
+		this.source = source;
+		this.escaped = escaped;
+		this.symbols = new SymbolTable(source);
+		capacity = Math.max(16, capacity);
+		kinds = new int[capacity];
+		parents = new int[capacity];
+		nextSiblings = new int[capacity];
+		subtreeEnds = new int[capacity];
+		starts = new int[capacity];
+		ends = new int[capacity];
+		attributeNames = new int[capacity];
+		valueStarts = new int[capacity];
+		valueEnds = new int[capacity];
+	}
+	
+	/**
+	 * Parses a tree from the bytes of a score, which must be encoded in UTF-8 (or plain ASCII). The tree refers to the bytes, so they must not change
+	 * for as long as it's in use. The bytes aren't validated; they should already have been parsed by a real parser.
+	 * @param source the bytes of the score, from its position to its limit. The buffer's position and limit are not modified.
+	 * @return the tree
+	 * @throws SAXException if the bytes aren't UTF-8, aren't well-formed, or refer to an entity that isn't built into XML
+	 * @throws java.util.concurrent.CancellationException if the {@link CancellationToken} bound to this thread is cancelled while parsing
+	 */
+	public static ScoreTree parse(ByteBuffer source) throws SAXException {
+		if (source == null)
+			throw new IllegalArgumentException("buffer provided was null");
+		
+		ScoreTree tree = new ScoreTree(source, true, source.remaining() / 48);
+		new Parser(tree, source).parse();
+		return tree;
+	}
+	
+	/**
+	 * Builds a tree from a DOM, copying the text and attribute values out of it. Lazy slices are left out.
+	 * @param document the document
+	 * @return the tree
+	 */
+	public static ScoreTree of(Document document) {
+		if (document == null)
+			throw new IllegalArgumentException("document provided was null");
+		
+		ScoreTree tree = new ScoreTree(null, false, 1024);
+		Encoder encoder = new Encoder(tree);
+		if (document.getDocumentElement() != null) {
+			encoder.add(document.getDocumentElement(), -1, -1);
+		}
+		tree.source = ByteBuffer.wrap(encoder.toByteArray());
+		return tree;
+	}
+	
+	/**
+	 * @return the root element, or -1 if the tree is empty
+	 */
+	public int root() {
+		return count == 0 ? -1 : 0;
+	}
+	
+	/**
+	 * @return the number of nodes in the tree
+	 */
+	public int size() {
+		return count;
+	}
+	
+	/**
+	 * @return the number of elements in the tree
+	 */
+	public int elementCount() {
+		int elements = 0;
+		for (int i = 0; i < count; i++) {
+			if (kind(i) == ELEMENT) {
+				elements++;
+			}
+		}
+		return elements;
+	}
+	
+	/**
+	 * @param node a node
+	 * @return {@link #ELEMENT} or {@link #TEXT}
+	 */
+	public int kind(int node) {
+		int kind = kinds[node] & ((1 << KIND_BITS) - 1);
+		return kind == CDATA ? TEXT : kind;
+	}
+	
+	/**
+	 * @param node a node
+	 * @return the tag name of the element, or {@code null} if the node is text
+	 */
+	public String name(int node) {
+		return kind(node) == ELEMENT ? symbols.name(kinds[node] >>> KIND_BITS) : null;
+	}
+	
+	/**
+	 * @param node a node
+	 * @return the ID of the element's tag name (one of the {@link MusicXMLSymbols}, if it's a MusicXML element), or -1 if the node is text
+	 */
+	public int symbol(int node) {
+		return kind(node) == ELEMENT ? kinds[node] >>> KIND_BITS : -1;
+	}
+	
+	/**
+	 * @param name a name
+	 * @return the ID of the name, or -1 if nothing in the tree has that name
+	 */
+	public int symbolOf(String name) {
+		return symbols.find(name);
+	}
+	
+	/**
+	 * @param node a node
+	 * @param symbol the ID of a tag name, such as {@link MusicXMLSymbols#MEASURE}
+	 * @return true if the node is an element with that name
+	 */
+	public boolean is(int node, int symbol) {
+		return kinds[node] == element(symbol);
+	}
+	
+	/**
+	 * @param node a node
+	 * @param name a tag name
+	 * @return true if the node is an element with that name
+	 */
+	public boolean is(int node, String name) {
+		return is(node, symbols.find(name));
+	}
+	
+	/**
+	 * @param node a node
+	 * @return its parent, or -1 if it's the root
+	 */
+	public int parent(int node) {
+		return parents[node];
+	}
+	
+	/**
+	 * @param node a node
+	 * @return its first child, or -1 if it has none
+	 */
+	public int firstChild(int node) {
+		return node + 1 < subtreeEnds[node] ? node + 1 : -1;
+	}
+	
+	/**
+	 * @param node a node
+	 * @return its next sibling, or -1 if it's the last child
+	 */
+	public int nextSibling(int node) {
+		return nextSiblings[node];
+	}
+	
+	/**
+	 * Finds the first element with a given name inside a node, in document order. Like {@code getElementsByTagName(name).item(0)}.
+	 * @param scope the node to search inside, which isn't included
+	 * @param symbol the ID of the tag name
+	 * @return the element, or -1 if there is none
+	 */
+	public int find(int scope, int symbol) {
+		return findNext(scope, scope, symbol);
+	}
+	
+	/**
+	 * Finds the next element with a given name inside a node, in document order, after one that was already found.
+	 * Together with {@link #find(int, int)}, this visits the same elements, in the same order, as {@code getElementsByTagName(name)}.
+	 * @param scope the node to search inside, which isn't included
+	 * @param after the node to search after, which may be inside the one before
+	 * @param symbol the ID of the tag name
+	 * @return the element, or -1 if there are no more
+	 */
+	public int findNext(int scope, int after, int symbol) {
+		if (symbol < 0 || scope < 0) {
+			return -1; // No element anywhere has that name
+		}
+		int target = element(symbol);
+		int end = subtreeEnds[scope];
+		for (int i = after + 1; i < end; i++) {
+			if (kinds[i] == target) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Finds the first element with a given name inside a node. See {@link #find(int, int)}.
+	 * @param scope the node to search inside, which isn't included
+	 * @param name the tag name
+	 * @return the element, or -1 if there is none
+	 */
+	public int find(int scope, String name) {
+		return find(scope, symbols.find(name));
+	}
+	
+	/**
+	 * Finds the first child of a node with a given name.
+	 * @param node a node
+	 * @param symbol the ID of the tag name
+	 * @return the child, or -1 if there is none
+	 */
+	public int child(int node, int symbol) {
+		if (symbol < 0) {
+			return -1;
+		}
+		int target = element(symbol);
+		for (int child = firstChild(node); child != -1; child = nextSiblings[child]) {
+			if (kinds[child] == target) {
+				return child;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns the value of an attribute, with any references expanded and any tabs and line breaks turned into spaces.
+	 * @param node an element
+	 * @param symbol the ID of the attribute's name, such as {@link MusicXMLSymbols#NEW_PAGE}
+	 * @return the value, or {@code null} if the element doesn't have it
+	 */
+	public String attribute(int node, int symbol) {
+		int attribute = findAttribute(node, symbol);
+		return attribute == -1 ? null : decode(valueStarts[attribute], valueEnds[attribute], true);
+	}
+	
+	/**
+	 * Returns the value of an attribute. See {@link #attribute(int, int)}.
+	 * @param node an element
+	 * @param name the name of the attribute
+	 * @return the value, or {@code null} if the element doesn't have it
+	 */
+	public String attribute(int node, String name) {
+		return attribute(node, symbols.find(name));
+	}
+	
+	/**
+	 * Checks the value of an attribute without decoding it, unless it has something in it that needs decoding.
+	 * @param node an element
+	 * @param symbol the ID of the attribute's name
+	 * @param value the value to compare against
+	 * @return true if the element has the attribute and its value is exactly the given one
+	 */
+	public boolean hasAttributeValue(int node, int symbol, String value) {
+		int attribute = findAttribute(node, symbol);
+		if (attribute == -1) {
+			return false;
+		}
+		int start = valueStarts[attribute], end = valueEnds[attribute];
+		boolean ascii = true;
+		for (int i = 0; i < value.length() && ascii; i++) {
+			ascii = value.charAt(i) < 0x80;
+		}
+		if (!ascii || needsDecoding(start, end, true)) {
+			return decode(start, end, true).equals(value);
+		}
+		
+		// Otherwise, the value is the bytes themselves
+		if (end - start != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (source.get(start + i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @param node an element
+	 * @param symbol the ID of an attribute's name
+	 * @return the index of the attribute in the attribute arrays, or -1 if the element doesn't have it
+	 */
+	private int findAttribute(int node, int symbol) {
+		if (symbol < 0 || kind(node) != ELEMENT) {
+			return -1;
+		}
+		for (int i = starts[node]; i < ends[node]; i++) {
+			if (attributeNames[i] == symbol) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns all the text inside a node, like {@code getTextContent()}.
+	 * @param node a node
+	 * @return the text, which is empty if there is none
+	 */
+	public String text(int node) {
+		if (kind(node) == TEXT) {
+			return decodeText(node);
+		}
+		
+		// Most elements have at most one piece of text, so only build a string out of several when there are several
+		String first = null;
+		StringBuilder text = null;
+		for (int i = node + 1; i < subtreeEnds[node]; i++) {
+			if (kind(i) != TEXT) {
+				continue;
+			}
+			String piece = decodeText(i);
+			if (first == null) {
+				first = piece;
+			}
+			else {
+				if (text == null) {
+					text = new StringBuilder(first);
+				}
+				text.append(piece);
+			}
+		}
+		return text != null ? text.toString() : first != null ? first : "";
+	}
+	
+	/**
+	 * Reads the text inside a node as a decimal, like {@code Double.parseDouble(text(node))}.
+	 * When the text is a single run of characters with nothing to decode, it's read straight from the bytes without building a string.
+	 * @param node a node
+	 * @return the value of its text
+	 * @throws NumberFormatException if the text isn't a number
+	 * @see DecimalCodec#parse(ByteBuffer, int, int)
+	 */
+	public double number(int node) {
+		int text = node;
+		if (kind(node) != TEXT) {
+			text = -1;
+			for (int i = node + 1; i < subtreeEnds[node]; i++) {
+				if (kind(i) != TEXT) {
+					continue;
+				}
+				if (text != -1) {
+					return DecimalCodec.parse(text(node)); // The text is in pieces
+				}
+				text = i;
+			}
+			if (text == -1) {
+				return DecimalCodec.parse(""); // Throws, as Double.parseDouble does
+			}
+		}
+		
+		if ((kinds[text] & ((1 << KIND_BITS) - 1)) == CDATA || !needsDecoding(starts[text], ends[text], false)) {
+			return DecimalCodec.parse(source, starts[text], ends[text]);
+		}
+		return DecimalCodec.parse(decodeText(text));
+	}
+	
+	/**
+	 * @param node a text node
+	 * @return its text
+	 */
+	private String decodeText(int node) {
+		if ((kinds[node] & ((1 << KIND_BITS) - 1)) == CDATA) {
+			return decodeUTF8(starts[node], ends[node]);
+		}
+		return decode(starts[node], ends[node], false);
+	}
+	
+	/**
+	 * @param id the ID of a name
+	 * @return what {@link #kinds} holds for an element with that name
+	 */
+	private static int element(int id) {
+		return id == -1 ? -1 : (id << KIND_BITS) | ELEMENT;
+	}
+	
+	/**
+	 * Decodes a range of the bytes, expanding references and normalizing line breaks (and, in an attribute value, other whitespace) as a parser would.
+	 * @param start the index of the first byte
+	 * @param end the index one past the last byte
+	 * @param attribute whether the bytes are an attribute value
+	 * @return the decoded text
+	 */
+	private String decode(int start, int end, boolean attribute) {
+		if (!escaped) {
+			return decodeUTF8(start, end);
+		}
+		
+		// Nothing to unescape is by far the most common case
+		if (!needsDecoding(start, end, attribute)) {
+			return decodeUTF8(start, end);
+		}
+		
+		StringBuilder text = new StringBuilder(end - start);
+		int run = start;
+		for (int i = start; i < end; i++) {
+			byte b = source.get(i);
+			if (b == '&') {
+				text.append(decodeUTF8(run, i));
+				int semicolon = i + 1;
+				while (semicolon < end && source.get(semicolon) != ';') {
+					semicolon++;
+				}
+				text.append(expand(decodeUTF8(i + 1, semicolon)));
+				i = semicolon;
+				run = i + 1;
+			}
+			else if (b == '\r' || (attribute && (b == '\n' || b == '\t'))) {
+				text.append(decodeUTF8(run, i));
+				text.append(attribute ? ' ' : '\n');
+				if (b == '\r' && i + 1 < end && source.get(i + 1) == '\n') {
+					i++; // A CRLF is a single line break
+				}
+				run = i + 1;
+			}
+		}
+		text.append(decodeUTF8(run, end));
+		return text.toString();
+	}
+	
+	/**
+	 * @param start the index of the first byte
+	 * @param end the index one past the last byte
+	 * @param attribute whether the bytes are an attribute value
+	 * @return true if the bytes have anything in them that {@link #decode(int, int, boolean)} would change, other than their encoding
+	 */
+	private boolean needsDecoding(int start, int end, boolean attribute) {
+		if (!escaped) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			byte b = source.get(i);
+			if (b == '&' || b == '\r' || (attribute && (b == '\n' || b == '\t'))) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Expands a reference. The parser has already made sure every reference is one that can be expanded.
+	 * @param reference the reference, without the {@code &} and {@code ;}
+	 * @return the text it stands for
+	 */
+	private static String expand(String reference) {
+		switch (reference) {
+		case "lt":
+			return "<";
+		case "gt":
+			return ">";
+		case "amp":
+			return "&";
+		case "apos":
+			return "'";
+		case "quot":
+			return "\"";
+		default:
+			int codePoint = reference.startsWith("#x") ? Integer.parseInt(reference.substring(2), 16) : Integer.parseInt(reference.substring(1));
+			return new String(Character.toChars(codePoint));
+		}
+	}
+	
+	/**
+	 * @param start the index of the first byte
+	 * @param end the index one past the last byte
+	 * @return the bytes, decoded as UTF-8
+	 */
+	private String decodeUTF8(int start, int end) {
+		if (source.hasArray()) {
+			return new String(source.array(), source.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+		}
+		byte[] bytes = new byte[end - start];
+		ByteBuffer view = source.duplicate();
+		view.limit(end);
+		view.position(start);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Adds a node to the end of the tree. Its subtree is empty until {@link #close(int)} is called.
+	 * @param kind the kind of the node, with the ID of its name (if it's an element) above the kind
+	 * @param parent the parent of the node, or -1
+	 * @param previousSibling the previous sibling of the node, or -1
+	 * @param start see {@link #starts}
+	 * @param end see {@link #ends}
+	 * @return the new node
+	 */
+	private int add(int kind, int parent, int previousSibling, int start, int end) {
+		if (count == kinds.length) {
+			int capacity = count * 2;
+			kinds = Arrays.copyOf(kinds, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+			subtreeEnds = Arrays.copyOf(subtreeEnds, capacity);
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+		}
+		int node = count++;
+		kinds[node] = kind;
+		parents[node] = parent;
+		nextSiblings[node] = -1;
+		subtreeEnds[node] = node + 1;
+		starts[node] = start;
+		ends[node] = end;
+		if (previousSibling != -1) {
+			nextSiblings[previousSibling] = node;
+		}
+		return node;
+	}
+	
+	/**
+	 * Ends a node's subtree after the last node added so far.
+	 * @param node the node
+	 */
+	private void close(int node) {
+		subtreeEnds[node] = count;
+	}
+	
+	/**
+	 * Adds an attribute to the end of the attribute arrays.
+	 * @param name the ID of its name
+	 * @param start the start of its value
+	 * @param end the end of its value
+	 */
+	private void addAttribute(int name, int start, int end) {
+		if (attributeCount == attributeNames.length) {
+			int capacity = attributeCount * 2;
+			attributeNames = Arrays.copyOf(attributeNames, capacity);
+			valueStarts = Arrays.copyOf(valueStarts, capacity);
+			valueEnds = Arrays.copyOf(valueEnds, capacity);
+		}
+		attributeNames[attributeCount] = name;
+		valueStarts[attributeCount] = start;
+		valueEnds[attributeCount] = end;
+		attributeCount++;
+	}
+	
+	/**
+	 * Gives every distinct name an ID, looking names up straight from their bytes so that nothing is decoded while parsing.
+	 */
+	private static final class SymbolTable {
+		/**
+		 * A table of just the MusicXML names, which every new table starts as a copy of.
+		 */
+		private static final SymbolTable MUSICXML = new SymbolTable();
+		
+		/**
+		 * The bytes names are looked up in, or {@code null} if names are only ever looked up by their strings.
+		 */
+		private final ByteBuffer source;
+		/**
+		 * The name with each ID.
+		 */
+		private String[] names;
+		/**
+		 * The UTF-8 bytes of the name with each ID.
+		 */
+		private byte[][] bytes;
+		/**
+		 * The number of names.
+		 */
+		private int size;
+		/**
+		 * An open-addressed hash table of IDs, plus one (so that zero is an empty slot). Its length is always a power of two.
+		 */
+		private int[] slots;
+		
+		/**
+		 * Constructs the table of MusicXML names.
+		 */
+		private SymbolTable() {
+			source = null;
+			names = new String[MusicXMLSymbols.COUNT + 64];
+			bytes = new byte[names.length][];
+			size = 0;
+			slots = new int[256];
+			for (int id = 0; id < MusicXMLSymbols.COUNT; id++) {
+				byte[] name = MusicXMLSymbols.name(id).getBytes(StandardCharsets.UTF_8);
+				add(name, emptySlot(hash(name)));
+			}
+		}
+		
+		/**
+		 * Constructs a table of just the MusicXML names.
+		 * @param source the bytes names are looked up in
+		 */
+		SymbolTable(ByteBuffer source) {
+			this.source = source;
+			names = MUSICXML.names.clone();
+			bytes = MUSICXML.bytes.clone();
+			size = MUSICXML.size;
+			slots = MUSICXML.slots.clone();
+		}
+		
+		/**
+		 * Returns the ID of the name in a range of the bytes, giving it one if it doesn't have one yet.
+		 * @param start the index of the first byte of the name
+		 * @param end the index one past the last byte of the name
+		 * @return the ID
+		 */
+		int intern(int start, int end) {
+			int hash = 0;
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + source.get(i);
+			}
+			int mask = slots.length - 1;
+			for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+				int id = slots[slot] - 1;
+				if (id == -1) {
+					byte[] name = new byte[end - start];
+					for (int i = 0; i < name.length; i++) {
+						name[i] = source.get(start + i);
+					}
+					return add(name, slot);
+				}
+				if (matches(bytes[id], start, end)) {
+					return id;
+				}
+			}
+		}
+		
+		/**
+		 * Returns the ID of a name, giving it one if it doesn't have one yet.
+		 * @param name the name
+		 * @return the ID
+		 */
+		int intern(String name) {
+			int id = find(name);
+			if (id != -1) {
+				return id;
+			}
+			byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+			return add(encoded, emptySlot(hash(encoded)));
+		}
+		
+		/**
+		 * @param name a name
+		 * @return its ID, or -1 if it doesn't have one
+		 */
+		int find(String name) {
+			// For an ASCII name, which every MusicXML name is, the hash of its bytes is the hash of the string
+			boolean ascii = true;
+			for (int i = 0; i < name.length() && ascii; i++) {
+				ascii = name.charAt(i) < 0x80;
+			}
+			int hash = ascii ? name.hashCode() : hash(name.getBytes(StandardCharsets.UTF_8));
+			int mask = slots.length - 1;
+			for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+				int id = slots[slot] - 1;
+				if (id == -1) {
+					return -1;
+				}
+				if (names[id].equals(name)) {
+					return id;
+				}
+			}
+		}
+		
+		/**
+		 * @param id an ID
+		 * @return the name with that ID
+		 */
+		String name(int id) {
+			return names[id];
+		}
+		
+		/**
+		 * Gives a new name the next ID.
+		 * @param name the UTF-8 bytes of the name
+		 * @param slot the empty slot to put it in
+		 * @return its ID
+		 */
+		private int add(byte[] name, int slot) {
+			if (size == names.length) {
+				names = Arrays.copyOf(names, size * 2);
+				bytes = Arrays.copyOf(bytes, size * 2);
+			}
+			int id = size++;
+			names[id] = new String(name, StandardCharsets.UTF_8);
+			bytes[id] = name;
+			slots[slot] = id + 1;
+			if (size * 2 > slots.length) {
+				// Keep the table at most half full
+				int[] old = slots;
+				slots = new int[old.length * 2];
+				for (int entry : old) {
+					if (entry != 0) {
+						slots[emptySlot(hash(bytes[entry - 1]))] = entry;
+					}
+				}
+			}
+			return id;
+		}
+		
+		/**
+		 * @param hash the hash of a name that isn't in the table
+		 * @return the slot it goes in
+		 */
+		private int emptySlot(int hash) {
+			int mask = slots.length - 1;
+			int slot = mix(hash) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+		
+		/**
+		 * @return true if the name has exactly the bytes in the range
+		 */
+		private boolean matches(byte[] name, int start, int end) {
+			if (name.length != end - start) {
+				return false;
+			}
+			for (int i = 0; i < name.length; i++) {
+				if (source.get(start + i) != name[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		/**
+		 * @return the same hash as {@link #intern(int, int)} computes over the bytes of a name
+		 */
+		private static int hash(byte[] name) {
+			int hash = 0;
+			for (byte b : name) {
+				hash = 31 * hash + b;
+			}
+			return hash;
+		}
+		
+		/**
+		 * @return the hash with its high bits mixed into its low bits, since only the low bits pick a slot
+		 */
+		private static int mix(int hash) {
+			return hash ^ (hash >>> 16);
+		}
+	}
+	
+	/**
+	 * Parses the bytes of a score into a tree. See {@link ScoreTree#parse(ByteBuffer)}.
+	 */
+	private static final class Parser {
+		/**
+		 * The tree being built.
+		 */
+		private final ScoreTree tree;
+		/**
+		 * The bytes being parsed.
+		 */
+		private final ByteBuffer source;
+		/**
+		 * The index one past the last byte to parse.
+		 */
+		private final int limit;
+		/**
+		 * The elements that have been started but not ended, innermost last.
+		 */
+		private int[] open = new int[32];
+		/**
+		 * The last child added to each of the open elements so far, or -1.
+		 */
+		private int[] lastChild = new int[32];
+		/**
+		 * Whether each of the open elements has an element child.
+		 */
+		private boolean[] hasElements = new boolean[32];
+		/**
+		 * The number of open elements.
+		 */
+		private int depth = 0;
+		/**
+		 * The text since the last tag that is nothing but whitespace, if there is any, which is only kept if it's the only thing in its element.
+		 */
+		private int whitespaceStart = -1, whitespaceEnd = -1;
+		
+		/**
+		 * Constructs a parser.
+		 * @param tree the tree to build
+		 * @param source the bytes to parse
+		 */
+		Parser(ScoreTree tree, ByteBuffer source) {
+			this.tree = tree;
+			this.source = source;
+			this.limit = source.limit();
+		}
+		
+		/**
+		 * Parses the whole document.
+		 * @throws SAXException if the bytes can't be parsed
+		 */
+		void parse() throws SAXException {
+			int i = source.position();
+			if (limit - i >= 3 && (source.get(i) & 0xFF) == 0xEF && (source.get(i + 1) & 0xFF) == 0xBB && (source.get(i + 2) & 0xFF) == 0xBF) {
+				i += 3; // The UTF-8 byte order mark
+			}
+			if (i + 1 < limit && (source.get(i) == 0 || source.get(i + 1) == 0 || (source.get(i) & 0xFE) == 0xFE)) {
+				throw new SAXException("The score is not UTF-8 encoded"); // UTF-16, with or without a byte order mark
+			}
+			checkEncoding(i);
+			
+			int markups = 0;
+			while (i < limit) {
+				if ((++markups & 0xFFF) == 0) {
+					CancellationToken.checkCurrent(); // Every so often
+				}
+				int open = indexOf((byte) '<', i);
+				if (open == -1) {
+					open = limit;
+				}
+				if (open > i && depth > 0) {
+					addText(i, open);
+				}
+				if (open == limit) {
+					break;
+				}
+				i = markup(open);
+			}
+			if (depth != 0 || tree.count == 0) {
+				throw new SAXException("Unexpected end of document");
+			}
+		}
+		
+		/**
+		 * Parses the markup at an index.
+		 * @param at the index of the {@code <}
+		 * @return the index one past the end of the markup
+		 * @throws SAXException if the markup can't be parsed
+		 */
+		private int markup(int at) throws SAXException {
+			if (at + 1 >= limit) {
+				throw new SAXException("Unexpected end of document at byte " + at);
+			}
+			byte b = source.get(at + 1);
+			if (b == '?') {
+				return skipPast("?>", at + 2);
+			}
+			if (b == '!') {
+				if (startsWith("<!--", at)) {
+					return skipPast("-->", at + 4);
+				}
+				if (startsWith("<![CDATA[", at)) {
+					int end = skipPast("]]>", at + 9);
+					if (depth > 0) {
+						flushWhitespace(false);
+						append(tree.add(CDATA, open[depth - 1], lastChild[depth - 1], at + 9, end - 3));
+					}
+					return end;
+				}
+				return skipDeclaration(at);
+			}
+			if (b == '/') {
+				return endTag(at);
+			}
+			return startTag(at);
+		}
+		
+		/**
+		 * Parses a start tag (or an empty element tag), adding the element and its attributes.
+		 * @param at the index of the {@code <}
+		 * @return the index one past the {@code >}
+		 * @throws SAXException if the tag can't be parsed
+		 */
+		private int startTag(int at) throws SAXException {
+			if (depth == 0 && tree.count > 0) {
+				throw new SAXException("More than one root element at byte " + at);
+			}
+			flushWhitespace(true);
+			
+			int nameEnd = scanName(at + 1);
+			int name = tree.symbols.intern(at + 1, nameEnd);
+			int parent = depth == 0 ? -1 : open[depth - 1];
+			int element = tree.add((name << KIND_BITS) | ELEMENT, parent, depth == 0 ? -1 : lastChild[depth - 1], tree.attributeCount, tree.attributeCount);
+			if (depth > 0) {
+				append(element);
+				hasElements[depth - 1] = true;
+			}
+			
+			// Attributes
+			int i = nameEnd;
+			while (true) {
+				i = skipWhitespace(i);
+				if (i >= limit) {
+					throw new SAXException("Unterminated start tag at byte " + at);
+				}
+				byte b = source.get(i);
+				if (b == '>' || b == '/') {
+					break;
+				}
+				int attributeEnd = scanName(i);
+				int attributeName = tree.symbols.intern(i, attributeEnd);
+				i = skipWhitespace(attributeEnd);
+				if (i >= limit || source.get(i) != '=') {
+					throw new SAXException("Malformed attribute at byte " + i);
+				}
+				i = skipWhitespace(i + 1);
+				byte quote = i < limit ? source.get(i) : 0;
+				if (quote != '"' && quote != '\'') {
+					throw new SAXException("Unquoted attribute value at byte " + i);
+				}
+				int valueEnd = indexOf(quote, i + 1);
+				if (valueEnd == -1) {
+					throw new SAXException("Unterminated attribute value at byte " + i);
+				}
+				checkReferences(i + 1, valueEnd);
+				tree.addAttribute(attributeName, i + 1, valueEnd);
+				i = valueEnd + 1;
+			}
+			tree.ends[element] = tree.attributeCount;
+			
+			if (source.get(i) == '/') {
+				// An empty element tag
+				if (i + 1 >= limit || source.get(i + 1) != '>') {
+					throw new SAXException("Malformed empty element tag at byte " + at);
+				}
+				tree.close(element);
+				return i + 2;
+			}
+			push(element);
+			return i + 1;
+		}
+		
+		/**
+		 * Parses an end tag, ending the innermost open element.
+		 * @param at the index of the {@code <}
+		 * @return the index one past the {@code >}
+		 * @throws SAXException if the tag doesn't match the element it ends
+		 */
+		private int endTag(int at) throws SAXException {
+			int nameEnd = scanName(at + 2);
+			if (depth == 0) {
+				throw new SAXException("Unexpected end tag at byte " + at);
+			}
+			int element = open[depth - 1];
+			if (tree.kinds[element] >>> KIND_BITS != tree.symbols.intern(at + 2, nameEnd)) {
+				throw new SAXException("Mismatched end tag at byte " + at);
+			}
+			int end = indexOf((byte) '>', nameEnd);
+			if (end == -1) {
+				throw new SAXException("Unterminated end tag at byte " + at);
+			}
+			flushWhitespace(hasElements[depth - 1]);
+			depth--;
+			tree.close(element);
+			return end + 1;
+		}
+		
+		/**
+		 * Adds a run of text to the innermost open element. Whitespace is held back until it's known whether it's the only thing in the element.
+		 * @param start the index of the first byte
+		 * @param end the index one past the last byte
+		 * @throws SAXException if the text refers to an entity that can't be expanded
+		 */
+		private void addText(int start, int end) throws SAXException {
+			boolean whitespace = true;
+			for (int i = start; i < end && whitespace; i++) {
+				byte b = source.get(i);
+				whitespace = b == ' ' || b == '\t' || b == '\n' || b == '\r';
+			}
+			if (whitespace) {
+				whitespaceStart = start;
+				whitespaceEnd = end;
+				return;
+			}
+			flushWhitespace(false);
+			checkReferences(start, end);
+			append(tree.add(TEXT, open[depth - 1], lastChild[depth - 1], start, end));
+		}
+		
+		/**
+		 * Deals with any whitespace that was held back.
+		 * @param drop if true, the whitespace is dropped; otherwise, it's added as text
+		 */
+		private void flushWhitespace(boolean drop) {
+			if (whitespaceStart != -1 && !drop && depth > 0) {
+				append(tree.add(TEXT, open[depth - 1], lastChild[depth - 1], whitespaceStart, whitespaceEnd));
+			}
+			whitespaceStart = whitespaceEnd = -1;
+		}
+		
+		/**
+		 * Records a node as the last child of the innermost open element so far.
+		 * @param node the node
+		 */
+		private void append(int node) {
+			lastChild[depth - 1] = node;
+		}
+		
+		/**
+		 * Opens an element.
+		 * @param element the element
+		 */
+		private void push(int element) {
+			if (depth == open.length) {
+				open = Arrays.copyOf(open, depth * 2);
+				lastChild = Arrays.copyOf(lastChild, depth * 2);
+				hasElements = Arrays.copyOf(hasElements, depth * 2);
+			}
+			open[depth] = element;
+			lastChild[depth] = -1;
+			hasElements[depth] = false;
+			depth++;
+		}
+		
+		/**
+		 * Makes sure the XML declaration, if there is one, doesn't name an encoding other than UTF-8.
+		 * @param start the index of the first byte of the document
+		 * @throws SAXException if it names another encoding
+		 */
+		private void checkEncoding(int start) throws SAXException {
+			if (!startsWith("<?xml", start)) {
+				return;
+			}
+			int end = indexOf((byte) '>', start);
+			int encoding = indexOf("encoding", start);
+			if (end == -1 || encoding == -1 || encoding > end) {
+				return;
+			}
+			int quote = encoding + "encoding".length();
+			while (quote < end && source.get(quote) != '"' && source.get(quote) != '\'') {
+				quote++;
+			}
+			int close = indexOf(source.get(quote), quote + 1);
+			if (close == -1 || close > end) {
+				return;
+			}
+			byte[] name = new byte[close - quote - 1];
+			for (int i = 0; i < name.length; i++) {
+				name[i] = source.get(quote + 1 + i);
+			}
+			String declared = new String(name, StandardCharsets.US_ASCII);
+			if (!declared.equalsIgnoreCase("UTF-8") && !declared.equalsIgnoreCase("UTF8") && !declared.equalsIgnoreCase("US-ASCII")) {
+				throw new SAXException("The score is not UTF-8 encoded");
+			}
+		}
+		
+		/**
+		 * Makes sure every reference in a range can be expanded without the DTD, i.e. it's a character reference or one of the five built into XML.
+		 * @param start the index of the first byte
+		 * @param end the index one past the last byte
+		 * @throws SAXException if a reference can't be expanded
+		 */
+		private void checkReferences(int start, int end) throws SAXException {
+			for (int i = indexOf((byte) '&', start, end); i != -1; i = indexOf((byte) '&', i + 1, end)) {
+				int semicolon = indexOf((byte) ';', i, end);
+				if (semicolon == -1) {
+					throw new SAXException("Unterminated reference at byte " + i);
+				}
+				byte[] name = new byte[semicolon - i - 1];
+				for (int j = 0; j < name.length; j++) {
+					name[j] = source.get(i + 1 + j);
+				}
+				String reference = new String(name, StandardCharsets.US_ASCII);
+				switch (reference) {
+				case "lt":
+				case "gt":
+				case "amp":
+				case "apos":
+				case "quot":
+					break;
+				default:
+					try {
+						int codePoint = reference.startsWith("#x") ? Integer.parseInt(reference.substring(2), 16) : Integer.parseInt(reference.substring(1));
+						if (!reference.startsWith("#") || !Character.isValidCodePoint(codePoint)) {
+							throw new NumberFormatException();
+						}
+					} catch (NumberFormatException | IndexOutOfBoundsException e) {
+						throw new SAXException("Unable to expand the reference &" + reference + "; at byte " + i);
+					}
+				}
+			}
+		}
+		
+		/**
+		 * @return the index one past the end of the name starting at the index
+		 */
+		private int scanName(int from) {
+			int i = from;
+			while (i < limit) {
+				byte b = source.get(i);
+				if (b == '>' || b == '/' || b == '=' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+					break;
+				}
+				i++;
+			}
+			return i;
+		}
+		
+		/**
+		 * @return the index of the first byte at or after the index that isn't whitespace
+		 */
+		private int skipWhitespace(int from) {
+			int i = from;
+			while (i < limit) {
+				byte b = source.get(i);
+				if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+					break;
+				}
+				i++;
+			}
+			return i;
+		}
+		
+		/**
+		 * Skips a {@code <!...>} declaration, such as the DOCTYPE, including any internal subset.
+		 * @param open the index of the {@code <}
+		 * @return the index one past the end of the declaration
+		 * @throws SAXException if the declaration is never terminated
+		 */
+		private int skipDeclaration(int open) throws SAXException {
+			int brackets = 0;
+			byte quote = 0;
+			for (int i = open + 2; i < limit; i++) {
+				byte b = source.get(i);
+				if (quote != 0) {
+					if (b == quote) {
+						quote = 0;
+					}
+				}
+				else if (b == '"' || b == '\'') {
+					quote = b;
+				}
+				else if (b == '[') {
+					brackets++;
+				}
+				else if (b == ']') {
+					brackets--;
+				}
+				else if (b == '>' && brackets <= 0) {
+					return i + 1;
+				}
+			}
+			throw new SAXException("Unterminated declaration at byte " + open);
+		}
+		
+		/**
+		 * @return the index one past the end of the first occurrence of the terminator at or after the index
+		 * @throws SAXException if there is none
+		 */
+		private int skipPast(String terminator, int from) throws SAXException {
+			int index = indexOf(terminator, from);
+			if (index == -1) {
+				throw new SAXException("Unterminated markup at byte " + from);
+			}
+			return index + terminator.length();
+		}
+		
+		/**
+		 * @return true if the ASCII string appears at the index
+		 */
+		private boolean startsWith(String ascii, int index) {
+			if (index + ascii.length() > limit) {
+				return false;
+			}
+			for (int i = 0; i < ascii.length(); i++) {
+				if (source.get(index + i) != ascii.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		/**
+		 * @return the index of the first occurrence of the byte at or after the index, or -1 if there is none
+		 */
+		private int indexOf(byte target, int from) {
+			return indexOf(target, from, limit);
+		}
+		
+		/**
+		 * @return the index of the first occurrence of the byte at or after the index and before the end, or -1 if there is none
+		 */
+		private int indexOf(byte target, int from, int end) {
+			for (int i = from; i < end; i++) {
+				if (source.get(i) == target) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		/**
+		 * @return the index of the first occurrence of the ASCII string at or after the index, or -1 if there is none
+		 */
+		private int indexOf(String ascii, int from) {
+			byte first = (byte) ascii.charAt(0);
+			for (int i = indexOf(first, from); i != -1; i = indexOf(first, i + 1)) {
+				if (startsWith(ascii, i)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+	
+	/**
+	 * Copies a DOM into a tree, writing its text and attribute values out as UTF-8. See {@link ScoreTree#of(Document)}.
+	 */
+	private static final class Encoder extends ByteArrayOutputStream {
+		/**
+		 * The tree being built.
+		 */
+		private final ScoreTree tree;
+		
+		/**
+		 * Constructs an encoder.
+		 * @param tree the tree to build
+		 */
+		Encoder(ScoreTree tree) {
+			this.tree = tree;
+		}
+		
+		/**
+		 * Adds an element and everything inside it.
+		 * @param element the element
+		 * @param parent the parent of the element in the tree, or -1
+		 * @param previousSibling the previous sibling of the element in the tree, or -1
+		 * @return the element in the tree
+		 */
+		int add(Element element, int parent, int previousSibling) {
+			int name = tree.symbols.intern(element.getTagName());
+			int node = tree.add((name << KIND_BITS) | ELEMENT, parent, previousSibling, tree.attributeCount, tree.attributeCount);
+			NamedNodeMap attributes = element.getAttributes();
+			for (int i = 0; i < attributes.getLength(); i++) {
+				Attr attribute = (Attr) attributes.item(i);
+				int start = count;
+				writeUTF8(attribute.getValue());
+				tree.addAttribute(tree.symbols.intern(attribute.getName()), start, count);
+			}
+			tree.ends[node] = tree.attributeCount;
+			
+			int last = -1;
+			for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+				switch (child.getNodeType()) {
+				case Node.ELEMENT_NODE:
+					last = add((Element) child, node, last);
+					break;
+				case Node.TEXT_NODE:
+				case Node.CDATA_SECTION_NODE:
+					int start = count;
+					writeUTF8(child.getNodeValue());
+					last = tree.add(TEXT, node, last, start, count);
+					break;
+				default:
+					break; // Comments, processing instructions, and slices
+				}
+			}
+			tree.close(node);
+			return node;
+		}
+		
+		/**
+		 * @param text text to write as UTF-8
+		 */
+		private void writeUTF8(String text) {
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			write(bytes, 0, bytes.length);
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package net.cacabish.xml;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+import org.w3c.dom.events.MutationEvent;
+import org.xml.sax.SAXException;
+
+/**
+ * Remembers where every element of a document came from in its source bytes, and which elements have been modified since.
+ * This is what allows the {@link PatchWriter} to copy everything that wasn't touched straight from the source.
+ * <br><br>
+ * Source locations are found by walking the source with an {@link XMLByteScanner} alongside the DOM, so the document must have been
+ * parsed from UTF-8 (or ASCII) bytes that are attached with {@link DocumentSource}. Modifications are caught with DOM mutation events.
+ * <br><br>
+ * For each element, a range of four indices is kept: the start of its start tag, the end of its start tag, the start of its end tag,
+ * and the end of its end tag. For an empty element tag (e.g. {@code <print/>}), the last three are all the end of the tag.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class SourceTracker implements EventListener {
+	
+	/**
+	 * Set when an element's attributes have been added, removed, or changed.
+	 */
+	public static final int ATTRIBUTES_CHANGED = 1;
+	/**
+	 * Set when an element's children have been added, removed, or changed, or any of its text has changed.
+	 */
+	public static final int CHILDREN_CHANGED = 2;
+	/**
+	 * Set when something anywhere inside an element has changed.
+	 */
+	public static final int DESCENDANTS_CHANGED = 4;
+	
+	/**
+	 * The user data key under which the tracker is stored on the document.
+	 */
+	private static final String TRACKER_KEY = "net.cacabish.xml.SourceTracker";
+	
+	/**
+	 * The mutation events that are listened for.
+	 */
+	private static final String[] EVENT_TYPES = {"DOMAttrModified", "DOMNodeInserted", "DOMNodeRemoved", "DOMCharacterDataModified"};
+	
+	/**
+	 * The source range of every element that came from the source.
+	 */
+	private final Map<Node, int[]> ranges = new IdentityHashMap<>();
+	
+	/**
+	 * The changes made to each element, as a combination of the flags above. Elements that haven't changed aren't in here.
+	 */
+	private final Map<Node, Integer> changes = new IdentityHashMap<>();
+	
+	/**
+	 * The document being tracked.
+	 */
+	private final Document document;
+	
+	/**
+	 * While true, modifications are not recorded.
+	 */
+	private boolean suspended = false;
+	
+	/**
+	 * Constructs a tracker. Use {@link #track(Document)}.
+	 * @param document the document to track
+	 */
+	private SourceTracker(Document document) {
+		this.document = document;
+	}
+	
+	/**
+	 * Starts tracking a document. This should be done right after the document is parsed, before anything modifies it.
+	 * @param document the document, which must have its source attached with {@link DocumentSource}
+	 * @return the tracker
+	 * @throws IOException if the source isn't UTF-8 encoded or the DOM implementation doesn't support mutation events
+	 * @throws SAXException if the document doesn't match its source
+	 */
+	public static SourceTracker track(Document document) throws IOException, SAXException {
+		ByteBuffer source = DocumentSource.getBuffer(document);
+		if (source == null) {
+			throw new IllegalArgumentException("document has no source attached");
+		}
+		if (!LazyDocumentBuilder.isSupported(source)) {
+			throw new IOException("preserving formatting requires a UTF-8 encoded file");
+		}
+		if (!(document instanceof EventTarget)) {
+			throw new IOException("the DOM implementation does not support mutation events");
+		}
+		
+		SourceTracker tracker = new SourceTracker(document);
+		XMLByteScanner scanner = new XMLByteScanner(source);
+		if (scanner.next() != XMLByteScanner.START_ELEMENT) {
+			throw new SAXException("source has no root element");
+		}
+		tracker.attach(document.getDocumentElement(), scanner);
+		
+		EventTarget target = (EventTarget) document;
+		for (String type : EVENT_TYPES) {
+			target.addEventListener(type, tracker, true);
+		}
+		document.setUserData(TRACKER_KEY, tracker, null);
+		return tracker;
+	}
+	
+	/**
+	 * Returns the tracker for a document.
+	 * @param document the document
+	 * @return the tracker, or {@code null} if the document isn't being tracked
+	 */
+	public static SourceTracker get(Document document) {
+		return document == null ? null : (SourceTracker) document.getUserData(TRACKER_KEY);
+	}
+	
+	/**
+	 * Checks if a document is being tracked.
+	 * @param document the document
+	 * @return true if the document is being tracked
+	 */
+	public static boolean isTracking(Document document) {
+		return get(document) != null;
+	}
+	
+	/**
+	 * Stops tracking a document and forgets everything about it.
+	 * @param document the document
+	 */
+	public static void untrack(Document document) {
+		SourceTracker tracker = get(document);
+		if (tracker == null) {
+			return;
+		}
+		
+		EventTarget target = (EventTarget) document;
+		for (String type : EVENT_TYPES) {
+			target.removeEventListener(type, tracker, true);
+		}
+		document.setUserData(TRACKER_KEY, null, null);
+	}
+	
+	/**
+	 * Returns where a node came from in the source.
+	 * @param node an element or a slice
+	 * @return the four indices described above, or {@code null} if the node didn't come from the source
+	 */
+	public int[] getRange(Node node) {
+		if (LazySlices.isSlice(node)) {
+			int[] slice = LazySlices.getSliceRange((ProcessingInstruction) node);
+			int end = slice[0] + slice[1];
+			return new int[] {slice[0], end, end, end};
+		}
+		return ranges.get(node);
+	}
+	
+	/**
+	 * Returns the changes made to an element since it was parsed.
+	 * @param node the element
+	 * @return a combination of {@link #ATTRIBUTES_CHANGED}, {@link #CHILDREN_CHANGED}, and {@link #DESCENDANTS_CHANGED}, or 0 if nothing has changed
+	 */
+	public int getChanges(Node node) {
+		Integer flags = changes.get(node);
+		return flags == null ? 0 : flags;
+	}
+	
+	/**
+	 * @return the number of elements that have been changed
+	 */
+	public int getChangedCount() {
+		int count = 0;
+		for (int flags : changes.values()) {
+			if ((flags & (ATTRIBUTES_CHANGED | CHILDREN_CHANGED)) != 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Replaces a slice with the element it stands in for, without counting it as a modification.
+	 * The element and its descendants get the slice's source ranges, so they can still be copied verbatim.
+	 * @param slice the slice
+	 * @param element the expanded element
+	 * @throws SAXException if the element doesn't match the slice's bytes
+	 */
+	void replaceSlice(ProcessingInstruction slice, Element element) throws SAXException {
+		int[] range = LazySlices.getSliceRange(slice);
+		
+		suspended = true;
+		try {
+			slice.getParentNode().replaceChild(element, slice);
+		} finally {
+			suspended = false;
+		}
+		
+		XMLByteScanner scanner = new XMLByteScanner(DocumentSource.getBuffer(document), range[0], range[0] + range[1]);
+		if (scanner.next() != XMLByteScanner.START_ELEMENT) {
+			throw new SAXException("slice at byte " + range[0] + " has no element");
+		}
+		attach(element, scanner);
+	}
+	
+	@Override
+	public void handleEvent(Event event) {
+		if (suspended) {
+			return;
+		}
+		
+		Node target = (Node) event.getTarget();
+		switch (event.getType()) {
+		case "DOMAttrModified":
+			markChanged(target, ATTRIBUTES_CHANGED);
+			break;
+		case "DOMNodeInserted":
+		case "DOMNodeRemoved":
+			markChanged(((MutationEvent) event).getRelatedNode(), CHILDREN_CHANGED);
+			break;
+		case "DOMCharacterDataModified":
+			markChanged(target.getParentNode(), CHILDREN_CHANGED);
+			break;
+		default:
+			break;
+		}
+	}
+	
+	/**
+	 * Records a change to a node, and marks all of its ancestors as having changed descendants.
+	 * @param node the node that changed
+	 * @param flag the kind of change
+	 */
+	private void markChanged(Node node, int flag) {
+		if (node == null) {
+			return;
+		}
+		if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+			// Changing the text inside an attribute is changing the attribute
+			node = ((Attr) node).getOwnerElement();
+			flag = ATTRIBUTES_CHANGED;
+			if (node == null) {
+				return;
+			}
+		}
+		changes.merge(node, flag, (a, b) -> a | b);
+		
+		for (Node parent = node.getParentNode(); parent != null && parent.getNodeType() == Node.ELEMENT_NODE; parent = parent.getParentNode()) {
+			int flags = getChanges(parent);
+			if ((flags & DESCENDANTS_CHANGED) != 0) {
+				break; // Everything above here has already been marked
+			}
+			changes.put(parent, flags | DESCENDANTS_CHANGED);
+		}
+	}
+	
+	/**
+	 * Records the source range of an element and all of its descendants.
+	 * @param element the element
+	 * @param scanner a scanner that has just scanned the element's start tag
+	 * @throws SAXException if the element doesn't match the source
+	 */
+	private void attach(Element element, XMLByteScanner scanner) throws SAXException {
+		if (!scanner.getName().equals(element.getTagName())) {
+			throw new SAXException("expected <" + element.getTagName() + "> but found <" + scanner.getName() + "> at byte " + scanner.getTagStart());
+		}
+		int start = scanner.getTagStart();
+		int startTagEnd = scanner.getTagEnd();
+		boolean empty = scanner.isEmptyElement();
+		
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			boolean isElement = child.getNodeType() == Node.ELEMENT_NODE;
+			if (!isElement && !LazySlices.isSlice(child)) {
+				continue; // Text and comments have nothing to line up with
+			}
+			if (scanner.next() != XMLByteScanner.START_ELEMENT) {
+				throw new SAXException("expected a child of <" + element.getTagName() + "> at byte " + scanner.getTagStart());
+			}
+			if (isElement) {
+				attach((Element) child, scanner);
+			}
+			else {
+				scanner.skipElement();
+			}
+		}
+		
+		if (scanner.next() != XMLByteScanner.END_ELEMENT) {
+			throw new SAXException("expected the end of <" + element.getTagName() + "> at byte " + scanner.getTagStart());
+		}
+		int end = scanner.getTagEnd();
+		ranges.put(element, empty ? new int[] {start, end, end, end} : new int[] {start, startTagEnd, scanner.getTagStart(), end});
+	}
+}
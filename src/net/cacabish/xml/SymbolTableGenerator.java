@@ -0,0 +1,158 @@
+package net.cacabish.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.TreeSet;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Generates {@link MusicXMLSymbols} from the bundled MusicXML schema. Run it again (and commit the result) whenever the schema is updated:
+ * <pre>
+ * java -cp MusicXML-Cleaner.jar net.cacabish.xml.SymbolTableGenerator src/net/cacabish/xml/MusicXMLSymbols.java
+ * </pre>
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class SymbolTableGenerator {
+	
+	/**
+	 * The schema the names are read from. Every name in the older schemas is also in this one.
+	 */
+	private static final String SCHEMA = "/musicxml-4.0/schema/musicxml.xsd";
+	
+	/**
+	 * The namespace of the schema's own elements.
+	 */
+	private static final String XSD_NAMESPACE = "http://www.w3.org/2001/XMLSchema";
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private SymbolTableGenerator() {}
+	
+	/**
+	 * Writes the symbol table to the file named by the first argument.
+	 * @param args the command line arguments
+	 * @throws Exception if the schema can't be read or the file can't be written
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length != 1) {
+			System.err.println("Usage: SymbolTableGenerator OUTPUT.java");
+			System.exit(2);
+		}
+		
+		TreeSet<String> names = readNames();
+		try (PrintWriter out = new PrintWriter(new File(args[0]), StandardCharsets.UTF_8.name())) {
+			write(names, out);
+		}
+		System.out.println("Wrote " + names.size() + " names to " + args[0]);
+	}
+	
+	/**
+	 * Reads the name of every element and attribute the schema declares or refers to.
+	 * @return the names, in order
+	 * @throws Exception if the schema can't be read
+	 */
+	private static TreeSet<String> readNames() throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		Document schema;
+		try (InputStream in = SymbolTableGenerator.class.getResourceAsStream(SCHEMA)) {
+			if (in == null) {
+				throw new IOException("Missing schema: " + SCHEMA);
+			}
+			schema = factory.newDocumentBuilder().parse(in);
+		}
+		
+		TreeSet<String> names = new TreeSet<>();
+		for (String declaration : new String[] {"element", "attribute"}) {
+			NodeList declarations = schema.getElementsByTagNameNS(XSD_NAMESPACE, declaration);
+			for (int i = 0; i < declarations.getLength(); i++) {
+				Element element = (Element) declarations.item(i);
+				// Attributes from other schemas (such as xml:lang and xlink:href) are referred to rather than declared
+				String name = element.hasAttribute("name") ? element.getAttribute("name") : element.getAttribute("ref");
+				if (!name.isEmpty()) {
+					names.add(name);
+				}
+			}
+		}
+		return names;
+	}
+	
+	/**
+	 * Writes the source of {@link MusicXMLSymbols}.
+	 * @param names the names, in order
+	 * @param out where to write it
+	 */
+	private static void write(TreeSet<String> names, PrintWriter out) {
+		String newline = "\r\n";
+		out.print("package net.cacabish.xml;" + newline);
+		out.print(newline);
+		out.print("/**" + newline);
+		out.print(" * The name of every element and attribute in the MusicXML schema, each with a fixed ID, so that names can be compared and switched on as {@code int}s." + newline);
+		out.print(" * A {@link ScoreTree} gives every name in this table its ID here; any other name is given an ID of at least {@link #COUNT}." + newline);
+		out.print(" * {@link NodeSymbols} looks up the same IDs for the nodes of a DOM." + newline);
+		out.print(" * <br><br>" + newline);
+		out.print(" * This file is generated from {@code musicxml.xsd} by {@link SymbolTableGenerator}. Don't edit it by hand." + newline);
+		out.print(" *" + newline);
+		out.print(" * @author cacabish" + newline);
+		out.print(" * @version v1.5.0" + newline);
+		out.print(" *" + newline);
+		out.print(" */" + newline);
+		out.print("public final class MusicXMLSymbols {" + newline);
+		out.print("\t" + newline);
+		
+		int id = 0;
+		for (String name : names) {
+			out.print("\t/** {@code " + name + "} */" + newline);
+			out.print("\tpublic static final int " + toConstant(name) + " = " + id++ + ";" + newline);
+		}
+		out.print("\t" + newline);
+		out.print("\t/**" + newline);
+		out.print("\t * The number of names in the table." + newline);
+		out.print("\t */" + newline);
+		out.print("\tpublic static final int COUNT = " + names.size() + ";" + newline);
+		out.print("\t" + newline);
+		out.print("\t/**" + newline);
+		out.print("\t * The name with each ID." + newline);
+		out.print("\t */" + newline);
+		out.print("\tprivate static final String[] NAMES = {" + newline);
+		for (String name : names) {
+			out.print("\t\t\"" + name + "\"," + newline);
+		}
+		out.print("\t};" + newline);
+		out.print("\t" + newline);
+		out.print("\t/**" + newline);
+		out.print("\t * There should be no reason to instantiate this class." + newline);
+		out.print("\t */" + newline);
+		out.print("\tprivate MusicXMLSymbols() {}" + newline);
+		out.print("\t" + newline);
+		out.print("\t/**" + newline);
+		out.print("\t * @param id an ID less than {@link #COUNT}" + newline);
+		out.print("\t * @return the name with that ID" + newline);
+		out.print("\t */" + newline);
+		out.print("\tpublic static String name(int id) {" + newline);
+		out.print("\t\treturn NAMES[id];" + newline);
+		out.print("\t}" + newline);
+		out.print("}" + newline);
+	}
+	
+	/**
+	 * @param name a name, such as {@code page-height} or {@code xlink:href}
+	 * @return the name of its constant, such as {@code PAGE_HEIGHT} or {@code XLINK_HREF}
+	 */
+	private static String toConstant(String name) {
+		return name.replace('-', '_').replace(':', '_').replace('.', '_').toUpperCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,395 @@
+package net.cacabish.xml;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.xml.sax.SAXException;
+
+/**
+ * A bare-bones scanner that walks over the tags of a UTF-8 (or ASCII) encoded XML document without decoding it.
+ * <br><br>
+ * This is <i>not</i> a parser. It does not validate, decode text, or expand entities. It only reports where each element's tags begin and end,
+ * which is all that's needed to slice a document into byte ranges.
+ * Anything that isn't a tag (text, comments, processing instructions, CDATA sections, and the DOCTYPE) is skipped over.
+ * An empty element tag (e.g. {@code <print/>}) is reported as a start tag immediately followed by an end tag covering the same bytes.
+ * <br><br>
+ * All offsets are absolute indices into the buffer.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class XMLByteScanner {
+	
+	/**
+	 * Returned by {@link #next()} when a start tag (or an empty element tag) has been scanned.
+	 */
+	public static final int START_ELEMENT = 1;
+	/**
+	 * Returned by {@link #next()} when an end tag (or the end of an empty element tag) has been scanned.
+	 */
+	public static final int END_ELEMENT = 2;
+	/**
+	 * Returned by {@link #next()} when there is nothing left to scan.
+	 */
+	public static final int END_DOCUMENT = -1;
+	
+	/**
+	 * The buffer being scanned.
+	 */
+	private final ByteBuffer buffer;
+	
+	/**
+	 * The index one past the last byte to scan.
+	 */
+	private final int limit;
+	
+	/**
+	 * The index of the next byte to scan.
+	 */
+	private int position;
+	
+	/**
+	 * The start (inclusive) and end (exclusive) of the most recently scanned tag.
+	 */
+	private int tagStart, tagEnd;
+	
+	/**
+	 * The start (inclusive) and end (exclusive) of the most recently scanned tag's name.
+	 */
+	private int nameStart, nameEnd;
+	
+	/**
+	 * The depth of the most recently scanned element. The root element is at depth 1.
+	 */
+	private int depth;
+	
+	/**
+	 * Whether the most recently scanned start tag was an empty element tag, in which case the next event is its matching end.
+	 */
+	private boolean pendingEmptyEnd;
+	
+	/**
+	 * Whether the most recently scanned start tag was an empty element tag.
+	 */
+	private boolean emptyElement;
+	
+	/**
+	 * Constructs a scanner over the buffer's remaining bytes. The buffer's position and limit are not modified.
+	 * @param buffer the buffer to scan
+	 */
+	public XMLByteScanner(ByteBuffer buffer) {
+		this(buffer, buffer.position(), buffer.limit());
+	}
+	
+	/**
+	 * Constructs a scanner over a region of the buffer. The buffer's position and limit are not modified.
+	 * @param buffer the buffer to scan
+	 * @param start the index of the first byte to scan
+	 * @param end the index one past the last byte to scan
+	 */
+	public XMLByteScanner(ByteBuffer buffer, int start, int end) {
+		this.buffer = buffer;
+		this.position = start;
+		this.limit = end;
+		this.depth = 0;
+	}
+	
+	/**
+	 * Scans to the next start or end tag.
+	 * @return {@link #START_ELEMENT}, {@link #END_ELEMENT}, or {@link #END_DOCUMENT}
+	 * @throws SAXException if the document is malformed to the point where the tags cannot be found
+	 */
+	public int next() throws SAXException {
+		if (pendingEmptyEnd) {
+			// The second half of an empty element tag. The offsets stay the same.
+			pendingEmptyEnd = false;
+			depth--;
+			return END_ELEMENT;
+		}
+		if (emptyElement) {
+			// We've finished with the empty element, so step back out of it
+			emptyElement = false;
+		}
+		
+		while (true) {
+			// Skip to the next tag
+			int open = indexOf((byte) '<', position);
+			if (open == -1) {
+				position = limit;
+				return END_DOCUMENT;
+			}
+			if (open + 1 >= limit) {
+				throw new SAXException("Unexpected end of document at byte " + open);
+			}
+			
+			byte b = buffer.get(open + 1);
+			if (b == '?') {
+				// Processing instruction (or the XML declaration)
+				position = skipPast("?>", open + 2);
+			}
+			else if (b == '!') {
+				if (startsWith("<!--", open)) {
+					position = skipPast("-->", open + 4);
+				}
+				else if (startsWith("<![CDATA[", open)) {
+					position = skipPast("]]>", open + 9);
+				}
+				else {
+					position = skipDeclaration(open);
+				}
+			}
+			else if (b == '/') {
+				// End tag
+				tagStart = open;
+				nameStart = open + 2;
+				nameEnd = scanName(nameStart);
+				tagEnd = indexOf((byte) '>', nameEnd) + 1;
+				if (tagEnd == 0) {
+					throw new SAXException("Unterminated end tag at byte " + open);
+				}
+				position = tagEnd;
+				depth--;
+				return END_ELEMENT;
+			}
+			else {
+				// Start tag
+				tagStart = open;
+				nameStart = open + 1;
+				nameEnd = scanName(nameStart);
+				tagEnd = scanToEndOfStartTag(nameEnd);
+				position = tagEnd;
+				depth++;
+				if (buffer.get(tagEnd - 2) == '/') {
+					pendingEmptyEnd = true;
+					emptyElement = true;
+				}
+				return START_ELEMENT;
+			}
+		}
+	}
+	
+	/**
+	 * Skips the current element, including all of its descendants. Must be called right after a {@link #START_ELEMENT}.
+	 * Afterwards, the scanner is positioned just after the element's end tag and {@link #getTagEnd()} returns the end of the element.
+	 * @return the index one past the end of the skipped element
+	 * @throws SAXException if the document is malformed
+	 */
+	public int skipElement() throws SAXException {
+		int targetDepth = depth - 1;
+		int event;
+		do {
+			event = next();
+			if (event == END_DOCUMENT) {
+				throw new SAXException("Unexpected end of document while skipping an element");
+			}
+		} while (!(event == END_ELEMENT && depth == targetDepth));
+		return tagEnd;
+	}
+	
+	/**
+	 * @return the index of the {@code <} that begins the most recently scanned tag
+	 */
+	public int getTagStart() {
+		return tagStart;
+	}
+	
+	/**
+	 * @return the index one past the {@code >} that ends the most recently scanned tag
+	 */
+	public int getTagEnd() {
+		return tagEnd;
+	}
+	
+	/**
+	 * @return the index of the first byte of the most recently scanned tag's name
+	 */
+	public int getNameStart() {
+		return nameStart;
+	}
+	
+	/**
+	 * @return the index one past the last byte of the most recently scanned tag's name
+	 */
+	public int getNameEnd() {
+		return nameEnd;
+	}
+	
+	/**
+	 * Returns the depth of the most recently scanned element.
+	 * After a start tag, this is the depth of the element that was started. After an end tag, this is the depth of its parent.
+	 * @return the depth, where the root element is at depth 1
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * @return true if the most recently scanned start tag was an empty element tag
+	 */
+	public boolean isEmptyElement() {
+		return emptyElement;
+	}
+	
+	/**
+	 * Decodes the most recently scanned tag's name.
+	 * @return the tag name
+	 */
+	public String getName() {
+		byte[] bytes = new byte[nameEnd - nameStart];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(nameStart + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Checks the most recently scanned tag's name without decoding it.
+	 * @param name the name to compare against, as ASCII bytes
+	 * @return true if the name matches
+	 */
+	public boolean nameEquals(byte[] name) {
+		if (nameEnd - nameStart != name.length) {
+			return false;
+		}
+		for (int i = 0; i < name.length; i++) {
+			if (buffer.get(nameStart + i) != name[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Finds the end of a tag name.
+	 * @param from the index of the first byte of the name
+	 * @return the index one past the last byte of the name
+	 */
+	private int scanName(int from) {
+		int i = from;
+		while (i < limit) {
+			byte b = buffer.get(i);
+			if (b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+				break;
+			}
+			i++;
+		}
+		return i;
+	}
+	
+	/**
+	 * Finds the end of a start tag, stepping over quoted attribute values since they may contain a {@code >}.
+	 * @param from an index inside the start tag
+	 * @return the index one past the {@code >} that ends the tag
+	 * @throws SAXException if the tag is never terminated
+	 */
+	private int scanToEndOfStartTag(int from) throws SAXException {
+		int i = from;
+		byte quote = 0;
+		while (i < limit) {
+			byte b = buffer.get(i);
+			if (quote != 0) {
+				if (b == quote) {
+					quote = 0;
+				}
+			}
+			else if (b == '"' || b == '\'') {
+				quote = b;
+			}
+			else if (b == '>') {
+				return i + 1;
+			}
+			i++;
+		}
+		throw new SAXException("Unterminated start tag at byte " + tagStart);
+	}
+	
+	/**
+	 * Finds the end of a comment, processing instruction, or CDATA section.
+	 * @param terminator the ASCII string that ends the markup
+	 * @param from the index to start searching from
+	 * @return the index one past the end of the terminator
+	 * @throws SAXException if the markup is never terminated
+	 */
+	private int skipPast(String terminator, int from) throws SAXException {
+		int index = indexOf(terminator, from);
+		if (index == -1) {
+			throw new SAXException("Unterminated markup at byte " + from);
+		}
+		return index + terminator.length();
+	}
+	
+	/**
+	 * Skips a {@code <!...>} declaration, such as the DOCTYPE, including any internal subset.
+	 * @param open the index of the {@code <}
+	 * @return the index one past the end of the declaration
+	 * @throws SAXException if the declaration is never terminated
+	 */
+	private int skipDeclaration(int open) throws SAXException {
+		int i = open + 2;
+		int brackets = 0;
+		byte quote = 0;
+		while (i < limit) {
+			byte b = buffer.get(i);
+			if (quote != 0) {
+				if (b == quote) {
+					quote = 0;
+				}
+			}
+			else if (b == '"' || b == '\'') {
+				quote = b;
+			}
+			else if (b == '[') {
+				brackets++;
+			}
+			else if (b == ']') {
+				brackets--;
+			}
+			else if (b == '>' && brackets <= 0) {
+				return i + 1;
+			}
+			i++;
+		}
+		throw new SAXException("Unterminated declaration at byte " + open);
+	}
+	
+	/**
+	 * @return true if the ASCII string appears at the index
+	 */
+	private boolean startsWith(String ascii, int index) {
+		if (index + ascii.length() > limit) {
+			return false;
+		}
+		for (int i = 0; i < ascii.length(); i++) {
+			if (buffer.get(index + i) != ascii.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the index of the first occurrence of the byte at or after the index, or -1 if there is none
+	 */
+	private int indexOf(byte target, int from) {
+		for (int i = from; i < limit; i++) {
+			if (buffer.get(i) == target) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return the index of the first occurrence of the ASCII string at or after the index, or -1 if there is none
+	 */
+	private int indexOf(String ascii, int from) {
+		byte first = (byte) ascii.charAt(0);
+		for (int i = indexOf(first, from); i != -1; i = indexOf(first, i + 1)) {
+			if (startsWith(ascii, i)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,103 @@
+package net.cacabish;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import net.cacabish.xml.ScoreTree;
+
+/**
+ * Checks what {@link AllocationStats} records for a score: the bytes each step allocated, in the order the steps ran, and the elements of the score.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class AllocationStatsTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private AllocationStatsTest() {}
+	
+	/**
+	 * Recording a step counts what this thread allocated since the mark, and recording it again adds to it. A mark from a Java that can't count
+	 * allocated bytes records nothing.
+	 */
+	public static void testRecord() {
+		if (AllocationStats.threadAllocatedBytes() < 0) {
+			return; // Nothing can be counted on this Java
+		}
+		
+		AllocationStats stats = new AllocationStats();
+		long mark = AllocationStats.threadAllocatedBytes();
+		byte[] allocated = new byte[1 << 20];
+		stats.record("step", mark);
+		long once = stats.getBytes().get("step");
+		Tests.assertTrue("counted " + once + " bytes", once >= allocated.length);
+		
+		mark = AllocationStats.threadAllocatedBytes();
+		allocated = new byte[1 << 20];
+		stats.record("step", mark);
+		Tests.assertTrue("added together", stats.getBytes().get("step") >= once + allocated.length);
+		
+		stats.record("unknown", -1);
+		Tests.assertEquals("steps", Arrays.asList("step"), new ArrayList<>(stats.getBytes().keySet()));
+		Tests.assertEquals("elements before they're counted", 0L, stats.getElementCount());
+	}
+	
+	/**
+	 * Cleaning and saving a file records parsing it, every operation in the order it ran, checking the changes and writing it, along with
+	 * the elements of the score as it was parsed.
+	 * @throws Exception if the file can't be cleaned
+	 */
+	public static void testClean() throws Exception {
+		byte[] bytes = TestScores.score(20);
+		File directory = TestScores.newDirectory();
+		File input = TestScores.write(directory, "song.musicxml", bytes);
+		CleanedScore score = MusicXMLCleaner.clean(input, null, new CleaningOptions());
+		File output = new File(directory, "song.cleaned.musicxml");
+		output.deleteOnExit();
+		MusicXMLCleaner.writeToFile(score, output);
+		Tests.assertTrue("saved", Files.size(output.toPath()) > 0);
+		
+		Map<String, Long> steps = score.getAllocations().getBytes();
+		if (AllocationStats.threadAllocatedBytes() < 0) {
+			Tests.assertTrue("nothing counted", steps.isEmpty());
+			return;
+		}
+		List<String> expected = Arrays.asList("parse", "addPageNumbersAndMiniTitles", "addSystemMeasureNumbers", "removeDuplicateCopyrightInfo",
+				"centerCreditsHorizontally", "offsetSystemMargins", "correctTempoMarking", "makeRepeatTextsBold", "addPeriodsToVoltaTexts",
+				"addSwing8thsWhereSwingDirection", "replaceFonts", "formatOssias", "validateChanges", "write");
+		Tests.assertEquals("steps", expected, new ArrayList<>(steps.keySet()));
+		for (Map.Entry<String, Long> step : steps.entrySet()) {
+			Tests.assertTrue(step.getKey() + " allocated " + step.getValue() + " bytes", step.getValue() >= 0);
+		}
+		Tests.assertTrue("parsing allocated", steps.get("parse") > bytes.length);
+		Tests.assertTrue("writing allocated", steps.get("write") > 0);
+		Tests.assertEquals("elements", (long) ScoreTree.parse(ByteBuffer.wrap(bytes)).elementCount(), score.getAllocations().getElementCount());
+	}
+	
+	/**
+	 * With several profiles, each copy of the score records its copy as a step of its own, and every profile counts the same elements.
+	 * @throws Exception if the score can't be cleaned
+	 */
+	public static void testProfiles() throws Exception {
+		if (AllocationStats.threadAllocatedBytes() < 0) {
+			return;
+		}
+		
+		byte[] bytes = TestScores.score(20);
+		List<CleanedScore> scores = MusicXMLCleaner.clean(ByteBuffer.wrap(bytes), null, Arrays.asList(new CleaningOptions(), TestScores.noOperations()));
+		AllocationStats copied = scores.get(0).getAllocations();
+		AllocationStats parsed = scores.get(1).getAllocations();
+		Tests.assertTrue("the copy: " + copied.getBytes(), copied.getBytes().get("copy") > 0);
+		Tests.assertTrue("the parse: " + parsed.getBytes(), parsed.getBytes().get("parse") > 0 && !parsed.getBytes().containsKey("copy"));
+		Tests.assertTrue("no operations: " + parsed.getBytes(), !parsed.getBytes().containsKey("formatOssias"));
+		Tests.assertEquals("elements", copied.getElementCount(), parsed.getElementCount());
+	}
+}
@@ -0,0 +1,144 @@
+package net.cacabish;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Checks that a {@link BackgroundValidator} reaches the same verdict as validating up front, and that it stops when it's told to.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class BackgroundValidatorTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private BackgroundValidatorTest() {}
+	
+	/**
+	 * A score that's well-formed but not valid, since one of its elements is misspelled.
+	 * @return the score
+	 */
+	private static byte[] misspelled() {
+		String score = new String(TestScores.score(4), StandardCharsets.UTF_8);
+		return score.replace("<work-title>Test Song</work-title>", "<work-titel>Test Song</work-titel>").getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Validates a score in the background, expecting it to be rejected.
+	 * @param message what's wrong with the score
+	 * @param score the score
+	 * @param limits the limits it must stay within
+	 * @return why it was rejected
+	 * @throws Exception if it can't be validated for some other reason
+	 */
+	private static SAXException assertRejected(String message, byte[] score, ParsingLimits limits) throws Exception {
+		try {
+			BackgroundValidator.start(ByteBuffer.wrap(score), null, limits).await();
+		} catch (SAXException e) {
+			return e;
+		}
+		Tests.fail(message + " was accepted");
+		return null;
+	}
+	
+	/**
+	 * A valid score passes, and waiting again (or abandoning a validation that's finished) doesn't change that. The bytes are left where they were.
+	 * @throws Exception if the score can't be validated
+	 */
+	public static void testValid() throws Exception {
+		ByteBuffer source = ByteBuffer.wrap(TestScores.score(20));
+		BackgroundValidator validator = BackgroundValidator.start(source, null, ParsingLimits.DEFAULT);
+		validator.await();
+		validator.abandon();
+		validator.await();
+		Tests.assertEquals("position", 0, source.position());
+		Tests.assertEquals("limit", source.capacity(), source.limit());
+	}
+	
+	/**
+	 * A score that isn't valid, isn't well-formed, or goes over a limit is rejected, with a limit named as such.
+	 * @throws Exception if a score can't be validated for some other reason
+	 */
+	public static void testRejected() throws Exception {
+		SAXException e = assertRejected("a misspelled element", misspelled(), ParsingLimits.DEFAULT);
+		Tests.assertTrue("not valid isn't a limit", !(e instanceof LimitExceededException));
+		Tests.assertTrue("names the element it's in: " + e.getMessage(), e.getMessage().contains("\"work\""));
+		
+		byte[] score = TestScores.score(4);
+		byte[] truncated = new byte[score.length / 2];
+		System.arraycopy(score, 0, truncated, 0, truncated.length);
+		assertRejected("half a score", truncated, ParsingLimits.DEFAULT);
+		
+		e = assertRejected("too many entity expansions", ParsingLimitsTest.laughs(), ParsingLimits.DEFAULT.with("maxEntityExpansions", 1_000));
+		Tests.assertTrue("a limit: " + e, e instanceof LimitExceededException);
+		Tests.assertEquals("limit", "maxEntityExpansions", ((LimitExceededException) e).getLimit());
+	}
+	
+	/**
+	 * A validation stops when the token of the thread that started it is cancelled, and when it's abandoned, with the reason for either.
+	 * @throws Exception if the score can't be validated
+	 */
+	public static void testStopped() throws Exception {
+		byte[] score = TestScores.score(2000);
+		CancellationToken token = new CancellationToken();
+		token.cancel("out of time");
+		BackgroundValidator validator;
+		CancellationToken.Binding binding = token.bind();
+		try {
+			validator = BackgroundValidator.start(ByteBuffer.wrap(score), null, ParsingLimits.DEFAULT);
+		} finally {
+			binding.close();
+		}
+		try {
+			validator.await();
+			Tests.fail("validated after the caller was cancelled");
+		} catch (CancellationException e) {
+			Tests.assertEquals("reason", "out of time", e.getMessage());
+		}
+		
+		// Abandoned straight away, well before the thousands of measures are read
+		validator = BackgroundValidator.start(ByteBuffer.wrap(score), null, ParsingLimits.DEFAULT);
+		validator.abandon();
+		try {
+			validator.await();
+			Tests.fail("validated after being abandoned");
+		} catch (CancellationException e) {
+			Tests.assertEquals("reason", "validation abandoned", e.getMessage());
+		}
+	}
+	
+	/**
+	 * Cleaning while validating in the background saves the same score as validating up front, and still refuses a score that isn't valid,
+	 * whether it comes from a file or from memory.
+	 * @throws Exception if the score can't be cleaned
+	 */
+	public static void testWhileCleaning() throws Exception {
+		File directory = TestScores.newDirectory();
+		File input = TestScores.write(directory, "song.musicxml", TestScores.score(20));
+		byte[] upFront = TestScores.clean(input, null, new CleaningOptions(), new File(directory, "up-front.musicxml"));
+		CleaningOptions options = new CleaningOptions();
+		options.backgroundValidation = true;
+		Tests.assertSameBytes("in the background", upFront, TestScores.clean(input, null, options, new File(directory, "background.musicxml")));
+		
+		File invalid = TestScores.write(directory, "invalid.musicxml", misspelled());
+		try {
+			MusicXMLCleaner.clean(invalid, null, options);
+			Tests.fail("an invalid file was cleaned");
+		} catch (SAXException e) {
+			Tests.assertTrue("names the element it's in: " + e.getMessage(), e.getMessage().contains("\"work\""));
+		}
+		try {
+			MusicXMLCleaner.clean(ByteBuffer.wrap(misspelled()), options);
+			Tests.fail("an invalid score was cleaned");
+		} catch (SAXException e) {
+			Tests.assertTrue("names the element it's in: " + e.getMessage(), e.getMessage().contains("\"work\""));
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package net.cacabish;
+
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Checks the Flight Recorder events in {@link CleanerEvents}: what a clean records with the template in the jar, and what an operation counts.
+ * Flight Recorder's API can't be compiled against for Java 8, so the recordings are made and read back by name, just as the events are.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class CleanerEventsTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private CleanerEventsTest() {}
+	
+	/**
+	 * Something to do while recording.
+	 */
+	private interface Recorded {
+		
+		/**
+		 * Does it.
+		 * @throws Exception if it can't be done
+		 */
+		void run() throws Exception;
+	}
+	
+	/**
+	 * Records something with the template in the jar, and reads back the events this cleaner made.
+	 * @param recorded what to record
+	 * @return each event, as its type's name under {@code "type"} and each of its fields under its name, in the order they were recorded,
+	 * or {@code null} if there is no Flight Recorder on this Java
+	 * @throws Exception if it can't be recorded
+	 */
+	private static List<Map<String, Object>> record(Recorded recorded) throws Exception {
+		Class<?> configurationClass;
+		try {
+			configurationClass = Class.forName("jdk.jfr.Configuration");
+		} catch (ClassNotFoundException e) {
+			recorded.run();
+			return null;
+		}
+		Object configuration;
+		try (Reader template = new InputStreamReader(CleanerEvents.class.getResourceAsStream("/musicxml-cleaner.jfc"), StandardCharsets.UTF_8)) {
+			configuration = configurationClass.getMethod("create", Reader.class).invoke(null, template);
+		}
+		
+		Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+		Object recording = recordingClass.getConstructor(configurationClass).newInstance(configuration);
+		Path file = Files.createTempFile("musicxml-cleaner-test", ".jfr");
+		file.toFile().deleteOnExit();
+		try {
+			recordingClass.getMethod("start").invoke(recording);
+			try {
+				recorded.run();
+			} finally {
+				recordingClass.getMethod("stop").invoke(recording);
+			}
+			recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+		} finally {
+			recordingClass.getMethod("close").invoke(recording);
+		}
+		
+		Method getEventType = Class.forName("jdk.jfr.consumer.RecordedEvent").getMethod("getEventType");
+		Method getValue = Class.forName("jdk.jfr.consumer.RecordedObject").getMethod("getValue", String.class);
+		Method getName = Class.forName("jdk.jfr.EventType").getMethod("getName");
+		Method getFields = Class.forName("jdk.jfr.EventType").getMethod("getFields");
+		Method getFieldName = Class.forName("jdk.jfr.ValueDescriptor").getMethod("getName");
+		Method getStartTime = Class.forName("jdk.jfr.consumer.RecordedEvent").getMethod("getStartTime");
+		List<?> all = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile").getMethod("readAllEvents", Path.class).invoke(null, file);
+		
+		// The events may not come back in the order they were recorded
+		List<Object> ours = new ArrayList<>();
+		for (Object event : all) {
+			if (((String) getName.invoke(getEventType.invoke(event))).startsWith("net.cacabish.")) {
+				ours.add(event);
+			}
+		}
+		ours.sort((a, b) -> {
+			try {
+				return ((Instant) getStartTime.invoke(a)).compareTo((Instant) getStartTime.invoke(b));
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		
+		List<Map<String, Object>> events = new ArrayList<>();
+		for (Object event : ours) {
+			Object type = getEventType.invoke(event);
+			Map<String, Object> values = new HashMap<>();
+			values.put("type", getName.invoke(type));
+			for (Object field : (List<?>) getFields.invoke(type)) {
+				String name = (String) getFieldName.invoke(field);
+				values.put(name, getValue.invoke(event, name));
+			}
+			events.add(values);
+		}
+		return events;
+	}
+	
+	/**
+	 * Picks out the events of one type.
+	 * @param events the events
+	 * @param type the name of the type
+	 * @return the events of that type
+	 */
+	private static List<Map<String, Object>> ofType(List<Map<String, Object>> events, String type) {
+		List<Map<String, Object>> found = new ArrayList<>();
+		for (Map<String, Object> event : events) {
+			if (type.equals(event.get("type"))) {
+				found.add(event);
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Cleaning a file records one parse, one event for each operation in the order they're performed, and one write, each with the right values.
+	 * @throws Exception if the file can't be cleaned
+	 */
+	public static void testClean() throws Exception {
+		File directory = TestScores.newDirectory();
+		File input = TestScores.write(directory, "song.musicxml", TestScores.score(20));
+		File output = new File(directory, "song.cleaned.musicxml");
+		List<Map<String, Object>> events = record(() -> TestScores.clean(input, null, new CleaningOptions(), output));
+		if (events == null) {
+			return; // Nothing to record to, and the clean still worked
+		}
+		
+		List<Map<String, Object>> parses = ofType(events, "net.cacabish.Parse");
+		Tests.assertEquals("parses", 1, parses.size());
+		Tests.assertEquals("source", "song.musicxml", parses.get(0).get("source"));
+		Tests.assertEquals("size", input.length(), parses.get(0).get("size"));
+		Tests.assertEquals("mode", "normal", parses.get(0).get("mode"));
+		Tests.assertEquals("validating", true, parses.get(0).get("validating"));
+		
+		List<String> names = new ArrayList<>();
+		Map<String, Map<String, Object>> operations = new HashMap<>();
+		for (Map<String, Object> operation : ofType(events, "net.cacabish.Operation")) {
+			names.add((String) operation.get("name"));
+			operations.put((String) operation.get("name"), operation);
+		}
+		Tests.assertEquals("operations", "[addPageNumbersAndMiniTitles, addSystemMeasureNumbers, removeDuplicateCopyrightInfo, centerCreditsHorizontally, "
+				+ "offsetSystemMargins, correctTempoMarking, makeRepeatTextsBold, addPeriodsToVoltaTexts, addSwing8thsWhereSwingDirection, replaceFonts, "
+				+ "formatOssias]", names.toString());
+		Map<String, Object> fonts = operations.get("replaceFonts");
+		Tests.assertTrue("fonts looked at: " + fonts, (Integer) fonts.get("nodesVisited") > 0);
+		Tests.assertTrue("fonts replaced: " + fonts, (Integer) fonts.get("nodesModified") > 0);
+		Map<String, Object> titles = operations.get("addPageNumbersAndMiniTitles");
+		Tests.assertTrue("credits added: " + titles, (Integer) titles.get("nodesModified") > 0);
+		
+		List<Map<String, Object>> writes = ofType(events, "net.cacabish.Write");
+		Tests.assertEquals("writes", 1, writes.size());
+		Tests.assertEquals("destination", output.getPath(), writes.get(0).get("destination"));
+		Tests.assertEquals("bytes", output.length(), writes.get(0).get("bytes"));
+		Tests.assertEquals("parallel", false, writes.get(0).get("parallel"));
+		Tests.assertEquals("first", "net.cacabish.Parse", events.get(0).get("type"));
+		Tests.assertEquals("last", "net.cacabish.Write", events.get(events.size() - 1).get("type"));
+	}
+	
+	/**
+	 * An operation counts the nodes it reports looking at, and each node it changes once, however many times it changes it.
+	 * Nodes reported outside of an operation aren't counted towards the next one.
+	 * @throws Exception if the operation can't be recorded
+	 */
+	public static void testOperation() throws Exception {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element root = document.createElement("score-partwise");
+		document.appendChild(root);
+		int[] runs = {0};
+		List<Map<String, Object>> events = record(() -> {
+			CleanerEvents.visited(100);
+			CleanerEvents.operation("test", document, () -> {
+				runs[0]++;
+				CleanerEvents.visited(2);
+				Element credit = document.createElement("credit");
+				root.appendChild(credit);
+				credit.setAttribute("page", "1");
+				credit.setAttribute("page", "2");
+				CleanerEvents.visited(1);
+			});
+		});
+		Tests.assertEquals("runs", 1, runs[0]);
+		Tests.assertEquals("page", "2", ((Element) root.getFirstChild()).getAttribute("page"));
+		if (events == null) {
+			return;
+		}
+		
+		List<Map<String, Object>> operations = ofType(events, "net.cacabish.Operation");
+		Tests.assertEquals("operations", 1, operations.size());
+		Tests.assertEquals("name", "test", operations.get(0).get("name"));
+		Tests.assertEquals("visited", 3, operations.get(0).get("nodesVisited"));
+		Tests.assertEquals("modified", 1, operations.get(0).get("nodesModified"));
+	}
+}
@@ -0,0 +1,97 @@
+package net.cacabish;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks how the {@link FontMapper} rewrites {@code font-family} values: replaced fonts keep their quotes and spacing, and everything else is left alone.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class FontMapperTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private FontMapperTest() {}
+	
+	/**
+	 * Maps a value with the default mapper.
+	 * @param value the value
+	 * @return the mapped value
+	 */
+	private static String map(String value) {
+		return FontMapper.createDefault().mapFontFamily(value, new HashMap<>());
+	}
+	
+	/**
+	 * Fonts are replaced wherever they are in the list, and a replacement that repeats a font is dropped.
+	 */
+	public static void testReplace() {
+		Tests.assertEquals("one font", "Times New Roman", map("Edwin"));
+		Tests.assertEquals("ignoring case", "Times New Roman", map("edwin"));
+		Tests.assertEquals("two mapped fonts", "Times New Roman", map("Edwin,FreeSerif"));
+		Tests.assertEquals("before a generic family", "Times New Roman, serif", map("FreeSerif, serif"));
+		Tests.assertEquals("after another font", "Arial, Times New Roman", map("Arial, Edwin"));
+		Tests.assertEquals("already there", "Times New Roman", map("Times New Roman, Edwin"));
+		Tests.assertEquals("already there after", " Times New Roman", map(" Edwin , Times New Roman"));
+	}
+	
+	/**
+	 * A font-family is a list of fallbacks in order of preference, so replacing a font never moves it behind a font that came after it.
+	 * When a replacement repeats a font, the first of the two is the one kept.
+	 */
+	public static void testFallbackOrder() {
+		Tests.assertEquals("replacement first", "Times New Roman, Arial", map("Edwin, Arial, Times New Roman"));
+		Tests.assertEquals("replacement last", "Arial, Times New Roman, Helvetica", map("Arial, Times New Roman, Helvetica, Edwin"));
+		Tests.assertEquals("two replacements apart", "Times New Roman, Arial", map("FreeSerif, Arial, Edwin"));
+		Tests.assertEquals("keeps its place", "Arial, Times New Roman, serif", map("Arial, Edwin, serif"));
+		Tests.assertEquals("repeats that were already there", "Arial, Arial, Times New Roman", map("Arial, Arial, Edwin"));
+		Tests.assertEquals("spacing around the ends", " Times New Roman, Arial ", map(" Edwin, Arial, Times New Roman "));
+		
+		FontMapper mapper = new FontMapper();
+		mapper.addMapping("Edwin", "Arial");
+		mapper.addMapping("Arial", "Helvetica");
+		Tests.assertEquals("one replacement each, not a chain", "Arial, Helvetica", mapper.mapFontFamily("Edwin, Arial", new HashMap<>()));
+	}
+	
+	/**
+	 * Entries that aren't mapped are left exactly as they were, spacing, quotes, empty entries and all.
+	 */
+	public static void testLeaveUnmappedAlone() {
+		String value = "Arial,  'Helvetica Neue' ,sans-serif";
+		Tests.assertTrue("nothing to replace", map(value) == value);
+		Tests.assertEquals("around a replacement", "Arial,  'Helvetica Neue' , Times New Roman ,sans-serif",
+				map("Arial,  'Helvetica Neue' , Edwin ,sans-serif"));
+		Tests.assertEquals("empty entries", "Unknown,,Times New Roman", map("Unknown,,Edwin"));
+	}
+	
+	/**
+	 * A replacement keeps the quotes of the font it replaced, and is quoted if it needs to be.
+	 */
+	public static void testQuotes() {
+		Tests.assertEquals("single quotes", "'Times New Roman', serif", map("'Edwin', serif"));
+		Tests.assertEquals("double quotes", "\"Times New Roman\"", map("\"FreeSerif\""));
+		
+		FontMapper mapper = new FontMapper();
+		mapper.addMapping("Edwin", "\"Foo, Bar\"");
+		Tests.assertEquals("target with a comma", "\"Foo, Bar\", serif", mapper.mapFontFamily("Edwin, serif", new HashMap<>()));
+		Tests.assertEquals("target with a comma, single quoted", "'Foo, Bar'", mapper.mapFontFamily("'Edwin'", new HashMap<>()));
+	}
+	
+	/**
+	 * Every replacement is counted under the font it replaced.
+	 */
+	public static void testCounts() {
+		FontMapper mapper = FontMapper.createDefault();
+		Map<String, Integer> counts = new HashMap<>();
+		mapper.mapFontFamily("Edwin, FreeSerif", counts);
+		mapper.mapFontFamily("edwin", counts);
+		mapper.mapFontFamily("Arial", counts);
+		Tests.assertEquals("Edwin", 2, counts.get("Edwin"));
+		Tests.assertEquals("FreeSerif", 1, counts.get("FreeSerif"));
+		Tests.assertEquals("fonts counted", 2, counts.size());
+	}
+}
@@ -0,0 +1,166 @@
+package net.cacabish;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Checks that cleaning a re-exported score incrementally gives the same file as cleaning it from scratch, and that measures are only reused when
+ * nothing they depend on has changed.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class IncrementalCleaningTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private IncrementalCleaningTest() {}
+	
+	/**
+	 * Cleans a file incrementally in place of its last output, keeping what the cleaner printed.
+	 * @param file the file to clean
+	 * @param output the last output, which is overwritten
+	 * @param options the options, with incremental cleaning on
+	 * @return what the cleaner printed
+	 * @throws Exception if it can't be cleaned
+	 */
+	private static String cleanLogged(File file, File output, CleaningOptions options) throws Exception {
+		PrintStream console = System.out;
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(log, true));
+		try {
+			TestScores.clean(file, output, options, output);
+		} finally {
+			System.setOut(console);
+		}
+		console.print(log.toString());
+		return log.toString();
+	}
+	
+	/**
+	 * Cleans a score incrementally, re-exports it with a change, and cleans it incrementally again over the last output.
+	 * The result has to be the same as cleaning the re-exported score from scratch.
+	 * @param original the score as it was first exported
+	 * @param reexported the score as it was re-exported
+	 * @param expectedLog what the cleaner should say about the second cleaning
+	 * @throws Exception if it can't be cleaned
+	 */
+	private static void assertReclean(byte[] original, byte[] reexported, String expectedLog) throws Exception {
+		File directory = TestScores.newDirectory();
+		File file = TestScores.write(directory, "score.musicxml", original);
+		File output = new File(directory, "cleaned.musicxml");
+		CleaningOptions options = new CleaningOptions();
+		options.incrementalCleaning = true;
+		TestScores.clean(file, null, options, output);
+		
+		TestScores.write(directory, "score.musicxml", reexported);
+		String log = cleanLogged(file, output, options);
+		Tests.assertTrue("expected \"" + expectedLog + "\"", log.contains(expectedLog));
+		
+		byte[] full = TestScores.clean(file, null, new CleaningOptions(), new File(directory, "full.musicxml"));
+		Tests.assertSameBytes("cleaned incrementally", full, Files.readAllBytes(output.toPath()));
+	}
+	
+	/**
+	 * Cleans a score incrementally, changes one measure, and cleans it incrementally again over the last output.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testSameAsFullClean() throws Exception {
+		File directory = TestScores.newDirectory();
+		File file = TestScores.write(directory, "score.musicxml", TestScores.score(40));
+		File output = new File(directory, "cleaned.musicxml");
+		
+		CleaningOptions options = new CleaningOptions();
+		options.incrementalCleaning = true;
+		TestScores.clean(file, null, options, output);
+		Tests.assertTrue("no manifest was saved", MeasureManifest.getManifestFile(output).isFile());
+		
+		// Re-export it with one measure changed
+		TestScores.write(directory, "score.musicxml", TestScores.score(40, 7));
+		String log = cleanLogged(file, output, options);
+		Tests.assertTrue("the unchanged measures weren't reused", log.contains("Reusing 79 of 80 measure(s)"));
+		
+		byte[] full = TestScores.clean(file, null, new CleaningOptions(), new File(directory, "full.musicxml"));
+		Tests.assertSameBytes("cleaned incrementally", full, Files.readAllBytes(output.toPath()));
+	}
+	
+	/**
+	 * A score that wasn't changed at all reuses every measure.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testUnchanged() throws Exception {
+		byte[] score = TestScores.score(12);
+		assertReclean(score, score, "Reusing 24 of 24 measure(s) from the last cleaning. 0 credit(s) changed.");
+	}
+	
+	/**
+	 * A changed credit is cleaned again and reported, and every measure is still reused.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testCreditChanged() throws Exception {
+		byte[] score = TestScores.score(12);
+		String reexported = new String(score, StandardCharsets.UTF_8).replace(">Test Song</credit-words>", ">Another Song</credit-words>");
+		assertReclean(score, reexported.getBytes(StandardCharsets.UTF_8), "Reusing 24 of 24 measure(s) from the last cleaning. 1 credit(s) changed.");
+	}
+	
+	/**
+	 * A change to the header or to the layout means nothing can be reused, since the document-wide operations look at them.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testHeaderOrLayoutChanged() throws Exception {
+		byte[] score = TestScores.score(12);
+		String changed = "The options, layout, or header have changed since the last cleaning. Cleaning every measure.";
+		
+		String header = new String(score, StandardCharsets.UTF_8).replace("<rights>Copyright Me</rights>", "<rights>Copyright You</rights>");
+		assertReclean(score, header.getBytes(StandardCharsets.UTF_8), changed);
+		
+		String layout = new String(score, StandardCharsets.UTF_8).replaceFirst("<print new-system=\"yes\">", "<print new-page=\"yes\">");
+		assertReclean(score, layout.getBytes(StandardCharsets.UTF_8), changed);
+	}
+	
+	/**
+	 * A manifest that's missing or can't be read just means cleaning every measure.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testNoUsableManifest() throws Exception {
+		File directory = TestScores.newDirectory();
+		File file = TestScores.write(directory, "score.musicxml", TestScores.score(8));
+		File output = new File(directory, "cleaned.musicxml");
+		CleaningOptions options = new CleaningOptions();
+		options.incrementalCleaning = true;
+		
+		Tests.assertTrue("missing", cleanLogged(file, output, options).contains("No manifest from a previous cleaning. Cleaning every measure."));
+		Files.write(MeasureManifest.getManifestFile(output).toPath(), "not a manifest".getBytes(StandardCharsets.UTF_8));
+		Tests.assertTrue("unreadable", cleanLogged(file, output, options).contains("Unable to read cleaned.musicxml.manifest"));
+		
+		byte[] full = TestScores.clean(file, null, new CleaningOptions(), new File(directory, "full.musicxml"));
+		Tests.assertSameBytes("cleaned without a manifest", full, Files.readAllBytes(output.toPath()));
+		Tests.assertTrue("a new manifest was saved", cleanLogged(file, output, options).contains("Reusing 16 of 16 measure(s)"));
+	}
+	
+	/**
+	 * Cleans a score incrementally after changing the options, which should clean every measure again.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testOptionsChanged() throws Exception {
+		File directory = TestScores.newDirectory();
+		File file = TestScores.write(directory, "score.musicxml", TestScores.score(12));
+		File output = new File(directory, "cleaned.musicxml");
+		
+		CleaningOptions options = new CleaningOptions();
+		options.incrementalCleaning = true;
+		options.makeRepeatTextsBold = false;
+		TestScores.clean(file, null, options, output);
+		
+		options.makeRepeatTextsBold = true;
+		byte[] incremental = TestScores.clean(file, output, options, output);
+		
+		byte[] full = TestScores.clean(file, null, new CleaningOptions(), new File(directory, "full.musicxml"));
+		Tests.assertSameBytes("cleaned incrementally with new options", full, incremental);
+	}
+}
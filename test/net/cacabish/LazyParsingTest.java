@@ -0,0 +1,51 @@
+package net.cacabish;
+
+import java.io.File;
+
+/**
+ * Checks that a lazily parsed score cleans to the same MusicXML as a fully parsed one.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class LazyParsingTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private LazyParsingTest() {}
+	
+	/**
+	 * Cleans a score lazily and fully, with every operation on.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testSameAsFullClean() throws Exception {
+		File directory = TestScores.newDirectory();
+		File file = TestScores.write(directory, "score.musicxml", TestScores.score(40));
+		
+		byte[] full = TestScores.clean(file, null, new CleaningOptions(), new File(directory, "full.musicxml"));
+		
+		CleaningOptions options = new CleaningOptions();
+		options.lazyParsing = true;
+		byte[] lazy = TestScores.clean(file, null, options, new File(directory, "lazy.musicxml"));
+		
+		TestScores.assertSameScore("lazily parsed", full, lazy);
+	}
+	
+	/**
+	 * Cleans a score lazily with every operation off, which should leave it alone.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testNothingToDo() throws Exception {
+		File directory = TestScores.newDirectory();
+		byte[] score = TestScores.score(8);
+		File file = TestScores.write(directory, "score.musicxml", score);
+		
+		CleaningOptions options = TestScores.noOperations();
+		options.lazyParsing = true;
+		byte[] lazy = TestScores.clean(file, null, options, new File(directory, "lazy.musicxml"));
+		
+		TestScores.assertSameScore("lazily parsed with nothing to do", score, lazy);
+	}
+}
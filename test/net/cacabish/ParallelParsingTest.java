@@ -0,0 +1,272 @@
+package net.cacabish;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import net.cacabish.xml.ParallelDocumentBuilder;
+
+/**
+ * Checks that a score parsed in parallel cleans to exactly the same file as one parsed normally, and is validated just as strictly.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class ParallelParsingTest {
+	
+	/**
+	 * Enough measures that each part is split into chunks of its own, rather than the score being loaded normally.
+	 */
+	private static final int MEASURES = 600;
+	
+	/**
+	 * The smallest score {@link ParallelDocumentBuilder} will split, which is two of its smallest chunks.
+	 */
+	private static final int SMALLEST = 512 << 10;
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private ParallelParsingTest() {}
+	
+	/**
+	 * Cleans a large score parsed in parallel and normally, with every operation on.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testSameAsFullClean() throws Exception {
+		File directory = TestScores.newDirectory();
+		File file = TestScores.write(directory, "score.musicxml", TestScores.score(MEASURES));
+		
+		byte[] full = TestScores.clean(file, null, new CleaningOptions(), new File(directory, "full.musicxml"));
+		
+		CleaningOptions options = new CleaningOptions();
+		options.parallelParsing = true;
+		PrintStream console = System.out;
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		byte[] parallel;
+		System.setOut(new PrintStream(log, true));
+		try {
+			parallel = TestScores.clean(file, null, options, new File(directory, "parallel.musicxml"));
+		} finally {
+			System.setOut(console);
+		}
+		console.print(log.toString());
+		Tests.assertTrue("the score was loaded normally", !log.toString().contains("Loading normally instead"));
+		
+		Tests.assertSameBytes("parsed in parallel", full, parallel);
+	}
+	
+	/**
+	 * Cleans a small score with parallel parsing on, which loads it normally.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testSmallScore() throws Exception {
+		File directory = TestScores.newDirectory();
+		File file = TestScores.write(directory, "score.musicxml", TestScores.score(8));
+		
+		byte[] full = TestScores.clean(file, null, new CleaningOptions(), new File(directory, "full.musicxml"));
+		
+		CleaningOptions options = new CleaningOptions();
+		options.parallelParsing = true;
+		byte[] parallel = TestScores.clean(file, null, options, new File(directory, "parallel.musicxml"));
+		
+		Tests.assertSameBytes("small score parsed in parallel", full, parallel);
+	}
+	
+	/**
+	 * Parses a large score with an invalid element near the end, which is in a chunk of its own, and checks that it's rejected.
+	 * @throws Exception if it can't be written
+	 */
+	public static void testInvalidChunk() throws Exception {
+		File directory = TestScores.newDirectory();
+		String score = new String(TestScores.score(MEASURES), StandardCharsets.UTF_8);
+		int last = score.lastIndexOf("<voice>1</voice>");
+		score = score.substring(0, last) + "<voice>1</voice><bogus/>" + score.substring(last + "<voice>1</voice>".length());
+		File file = TestScores.write(directory, "score.musicxml", score.getBytes(StandardCharsets.UTF_8));
+		
+		CleaningOptions options = new CleaningOptions();
+		options.parallelParsing = true;
+		try {
+			MusicXMLCleaner.clean(file, null, options);
+			Tests.fail("the invalid score was cleaned");
+		} catch (SAXException e) {
+			// Just like a normal parse
+		}
+	}
+	
+	/**
+	 * Pads a score out to a given size with a comment after its root element, so that a small score is big enough to be split.
+	 * @param score the score
+	 * @param size how big it should be
+	 * @return the padded score
+	 */
+	private static byte[] padded(byte[] score, int size) {
+		byte[] padded = Arrays.copyOf(score, size);
+		Arrays.fill(padded, score.length, size, (byte) 'x');
+		System.arraycopy("<!--".getBytes(StandardCharsets.US_ASCII), 0, padded, score.length, 4);
+		System.arraycopy("-->\n".getBytes(StandardCharsets.US_ASCII), 0, padded, size - 4, 4);
+		return padded;
+	}
+	
+	/**
+	 * Parses a score in parallel.
+	 * @param score the score
+	 * @return its document
+	 * @throws Exception if it can't be parsed, or can't be parsed in parallel
+	 */
+	private static Document parseInParallel(String score) throws Exception {
+		return ParallelDocumentBuilder.parse(ByteBuffer.wrap(padded(score.getBytes(StandardCharsets.UTF_8), Math.max(SMALLEST, score.length() + 8))),
+				new MusicXMLEntityResolver(), ParsingLimits.DEFAULT);
+	}
+	
+	/**
+	 * Parses a score normally, the way the cleaner does, and with the same padding as {@link #parseInParallel(String)}.
+	 * @param score the score
+	 * @return its document
+	 * @throws Exception if it can't be parsed
+	 */
+	private static Document parseNormally(String score) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setIgnoringElementContentWhitespace(true);
+		factory.setValidating(true);
+		DocumentBuilder builder = factory.newDocumentBuilder();
+		builder.setEntityResolver(new MusicXMLEntityResolver());
+		XMLValidationErrorHandler errorHandler = new XMLValidationErrorHandler();
+		builder.setErrorHandler(errorHandler);
+		Document document = builder.parse(new ByteArrayInputStream(padded(score.getBytes(StandardCharsets.UTF_8), Math.max(SMALLEST, score.length() + 8))));
+		if (!errorHandler.isValid()) {
+			throw errorHandler.getException();
+		}
+		return document;
+	}
+	
+	/**
+	 * A score is split once it's as big as two of the smallest chunks, and not a byte before.
+	 * @throws Exception if it can't be parsed
+	 */
+	public static void testSmallestSplit() throws Exception {
+		byte[] score = TestScores.score(8);
+		ParallelDocumentBuilder.parse(ByteBuffer.wrap(padded(score, SMALLEST)), new MusicXMLEntityResolver(), ParsingLimits.DEFAULT);
+		try {
+			ParallelDocumentBuilder.parse(ByteBuffer.wrap(padded(score, SMALLEST - 1)), new MusicXMLEntityResolver(), ParsingLimits.DEFAULT);
+			Tests.fail("a score one byte too small was split");
+		} catch (IOException e) {
+			Tests.assertTrue(e.getMessage(), e.getMessage().contains("too small"));
+		}
+	}
+	
+	/**
+	 * The stitched document is the very same tree a normal parse builds, including where the first part is all header, where there's
+	 * a comment between two parts, and where a reference has spaces around it that the parser would have trimmed.
+	 * @throws Exception if a score can't be parsed
+	 */
+	public static void testSameDocument() throws Exception {
+		String score = new String(TestScores.score(8), StandardCharsets.UTF_8);
+		String[] scores = {score, new String(TestScores.score(1), StandardCharsets.UTF_8),
+				score.replace("    </part>\n  <part", "    </part>\n  <!-- between the parts -->\n  <part"),
+				score.replace("<part id=\"P2\">", "<part id=\" P2 \">")};
+		for (int i = 0; i < scores.length; i++) {
+			Tests.assertTrue("score " + i, parseNormally(scores[i]).isEqualNode(parseInParallel(scores[i])));
+		}
+	}
+	
+	/**
+	 * Scores that can't be split are turned down before any real parsing, so that they can be parsed normally instead.
+	 * @throws Exception if a score is parsed, or fails for some other reason
+	 */
+	public static void testTurnedDown() throws Exception {
+		String score = new String(TestScores.score(8), StandardCharsets.UTF_8);
+		String[][] scores = {
+				{"timewise", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<score-timewise><part-list/><measure number=\"1\"/></score-timewise>\n", "partwise"},
+				{"ISO-8859-1", score.replace("encoding=\"UTF-8\"", "encoding=\"ISO-8859-1\""), "UTF-8"},
+				{"internal subset", score.replace("partwise.dtd\">", "partwise.dtd\" [<!ENTITY me \"Me\">]>"), "DTD subset"},
+				{"empty part", score.replaceFirst("(?s)<part id=\"P2\">.*</part>", "<part id=\"P2\"/>"), "no measures"},
+				{"unbalanced", score.replace("</score-partwise>", ""), "don't match"},
+		};
+		for (String[] turnedDown : scores) {
+			try {
+				parseInParallel(turnedDown[1]);
+				Tests.fail(turnedDown[0] + " was parsed in parallel");
+			} catch (IOException e) {
+				Tests.assertTrue(turnedDown[0] + ": " + e.getMessage(), e.getMessage().contains(turnedDown[2]));
+			}
+		}
+	}
+	
+	/**
+	 * IDs that are repeated in two chunks, and references to IDs that aren't anywhere, are rejected just as a normal parse rejects them.
+	 * @throws Exception if a score fails for some other reason
+	 */
+	public static void testIdentifiers() throws Exception {
+		String score = new String(TestScores.score(8), StandardCharsets.UTF_8);
+		int secondPart = score.indexOf("<part id=\"P2\">");
+		String[][] scores = {
+				{"repeated", score.substring(0, secondPart).replaceFirst("<note ", "<note id=\"n1\" ")
+						+ score.substring(secondPart).replaceFirst("<note ", "<note id=\"n1\" "), "n1"},
+				{"dangling", score.replace("<part id=\"P2\">", "<part id=\"P9\">"), "P9"},
+		};
+		for (String[] invalid : scores) {
+			try {
+				parseNormally(invalid[1]);
+				Tests.fail(invalid[0] + " was parsed normally");
+			} catch (SAXException e) {
+				// Good
+			}
+			try {
+				parseInParallel(invalid[1]);
+				Tests.fail(invalid[0] + " was parsed in parallel");
+			} catch (SAXException e) {
+				Tests.assertTrue(invalid[0] + ": " + e.getMessage(), e.getMessage().contains(invalid[2]));
+			}
+		}
+	}
+	
+	/**
+	 * An error in a chunk is reported on the same line of the file as a normal parse reports it, both in a chunk that starts a part and in one
+	 * that borrows its part's start tag.
+	 * @throws Exception if a score fails for some other reason
+	 */
+	public static void testErrorLine() throws Exception {
+		String small = new String(TestScores.score(8), StandardCharsets.UTF_8);
+		String large = new String(TestScores.score(MEASURES), StandardCharsets.UTF_8);
+		String[] scores = {insertBogus(small, small.length()), insertBogus(large, large.indexOf("</part>"))};
+		for (String score : scores) {
+			int expected = 0;
+			try {
+				parseNormally(score);
+				Tests.fail("the invalid score was parsed normally");
+			} catch (SAXParseException e) {
+				expected = e.getLineNumber();
+			}
+			try {
+				parseInParallel(score);
+				Tests.fail("the invalid score was parsed in parallel");
+			} catch (SAXParseException e) {
+				Tests.assertEquals("line", expected, e.getLineNumber());
+			}
+		}
+	}
+	
+	/**
+	 * @param score a score
+	 * @param before where to look back from
+	 * @return the score with an element that isn't MusicXML on a line of its own after the last voice before that point
+	 */
+	private static String insertBogus(String score, int before) {
+		int voice = score.lastIndexOf("<voice>1</voice>\n", before) + "<voice>1</voice>\n".length();
+		return score.substring(0, voice) + "<bogus/>\n" + score.substring(voice);
+	}
+}
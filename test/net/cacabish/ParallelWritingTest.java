@@ -0,0 +1,209 @@
+package net.cacabish;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import net.cacabish.xml.MusicXMLSymbols;
+import net.cacabish.xml.MusicXMLWriter;
+import net.cacabish.xml.NodeSymbols;
+import net.cacabish.xml.ParallelMusicXMLWriter;
+
+/**
+ * Checks that a score written in parallel is exactly the same file as one written normally.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class ParallelWritingTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private ParallelWritingTest() {}
+	
+	/**
+	 * A channel that takes at most a few bytes from each write, the way a gathering write is allowed to stop short.
+	 */
+	private static final class TricklingChannel implements GatheringByteChannel {
+		/**
+		 * Everything written so far.
+		 */
+		final ByteArrayOutputStream written = new ByteArrayOutputStream();
+		/**
+		 * The most bytes a single write takes.
+		 */
+		private final int most;
+		
+		/**
+		 * Constructs a channel.
+		 * @param most the most bytes a single write takes
+		 */
+		TricklingChannel(int most) {
+			this.most = most;
+		}
+		
+		@Override
+		public long write(ByteBuffer[] sources, int offset, int length) {
+			long taken = 0;
+			for (int i = offset; i < offset + length && taken < most; i++) {
+				while (sources[i].hasRemaining() && taken < most) {
+					written.write(sources[i].get());
+					taken++;
+				}
+			}
+			return taken;
+		}
+		
+		@Override
+		public long write(ByteBuffer[] sources) {
+			return write(sources, 0, sources.length);
+		}
+		
+		@Override
+		public int write(ByteBuffer source) {
+			return (int) write(new ByteBuffer[] {source});
+		}
+		
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+		
+		@Override
+		public void close() {}
+	}
+	
+	/**
+	 * Cleans a score and writes it in parallel and normally, with every operation on.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testSameAsFullClean() throws Exception {
+		File directory = TestScores.newDirectory();
+		File file = TestScores.write(directory, "score.musicxml", TestScores.score(200));
+		
+		byte[] full = TestScores.clean(file, null, new CleaningOptions(), new File(directory, "full.musicxml"));
+		
+		CleaningOptions options = new CleaningOptions();
+		options.parallelWriting = true;
+		byte[] parallel = TestScores.clean(file, null, options, new File(directory, "parallel.musicxml"));
+		
+		Tests.assertSameBytes("written in parallel", full, parallel);
+	}
+	
+	/**
+	 * Cleans a score to an older version of MusicXML and writes it in parallel and normally, which changes the doctype.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testOlderVersion() throws Exception {
+		File directory = TestScores.newDirectory();
+		File file = TestScores.write(directory, "score.musicxml", TestScores.score(40));
+		
+		CleaningOptions options = new CleaningOptions();
+		options.outputVersion = "3.1";
+		byte[] full = TestScores.clean(file, null, options, new File(directory, "full.musicxml"));
+		
+		options.parallelWriting = true;
+		byte[] parallel = TestScores.clean(file, null, options, new File(directory, "parallel.musicxml"));
+		
+		Tests.assertSameBytes("written in parallel as 3.1", full, parallel);
+	}
+	
+	/**
+	 * Cleans a score incrementally, writing it in parallel each time, so that the next clean relies on where the parallel writer said each measure went.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testIncremental() throws Exception {
+		File directory = TestScores.newDirectory();
+		File file = TestScores.write(directory, "score.musicxml", TestScores.score(40));
+		File output = new File(directory, "cleaned.musicxml");
+		
+		CleaningOptions options = new CleaningOptions();
+		options.incrementalCleaning = true;
+		options.parallelWriting = true;
+		TestScores.clean(file, null, options, output);
+		
+		TestScores.write(directory, "score.musicxml", TestScores.score(40, 21));
+		byte[] incremental = TestScores.clean(file, output, options, output);
+		
+		byte[] full = TestScores.clean(file, null, new CleaningOptions(), new File(directory, "full.musicxml"));
+		Tests.assertSameBytes("written in parallel and cleaned incrementally", full, incremental);
+	}
+	
+	/**
+	 * Parses a test score the way the cleaner does, with its DTD.
+	 * @param measures how many measures each part has
+	 * @return the score
+	 * @throws Exception if it can't be parsed
+	 */
+	private static Document parse(int measures) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setIgnoringElementContentWhitespace(true);
+		factory.setValidating(true);
+		DocumentBuilder builder = factory.newDocumentBuilder();
+		builder.setEntityResolver(new MusicXMLEntityResolver());
+		return builder.parse(new ByteArrayInputStream(TestScores.score(measures)));
+	}
+	
+	/**
+	 * Writes a document in parallel and normally, and checks that the bytes and the recorded offsets of the measures are the same.
+	 * @param message which document it is
+	 * @param document the document
+	 * @throws Exception if it can't be written
+	 */
+	private static void assertSameAsWriter(String message, Document document) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MusicXMLWriter writer = new MusicXMLWriter(out);
+		writer.recordOffsets("measure");
+		writer.writeDocument(document);
+		writer.flush();
+		
+		for (int most : new int[] {Integer.MAX_VALUE, 7}) {
+			TricklingChannel channel = new TricklingChannel(most);
+			long[] offsets = ParallelMusicXMLWriter.write(document, channel, "measure");
+			Tests.assertSameBytes(message + ", at most " + most + " bytes a write", out.toByteArray(), channel.written.toByteArray());
+			Tests.assertEquals(message + ": offsets", Arrays.toString(writer.getRecordedOffsets()), Arrays.toString(offsets));
+		}
+		Tests.assertEquals(message + ": nothing recorded", null, ParallelMusicXMLWriter.write(document, new TricklingChannel(Integer.MAX_VALUE), null));
+	}
+	
+	/**
+	 * Writes documents whose root is split up differently, and checks each against {@link MusicXMLWriter}: comments and processing instructions
+	 * around the root and between the parts, a single part, a root with stray text (which isn't split up at all), and an empty root.
+	 * @throws Exception if a document can't be written
+	 */
+	public static void testSameAsWriter() throws Exception {
+		assertSameAsWriter("a score", parse(20));
+		
+		Document document = parse(8);
+		Element root = document.getDocumentElement();
+		List<Element> parts = NodeSymbols.elements(root, MusicXMLSymbols.PART);
+		document.insertBefore(document.createComment(" before the root "), root);
+		document.appendChild(document.createProcessingInstruction("after", "the root"));
+		root.insertBefore(document.createComment(" before the first part "), parts.get(0));
+		root.insertBefore(document.createComment(" between the parts "), parts.get(1));
+		assertSameAsWriter("comments", document);
+		
+		root.removeChild(parts.get(1));
+		assertSameAsWriter("one part", document);
+		
+		root.appendChild(document.createTextNode("stray"));
+		assertSameAsWriter("text in the root", document);
+		
+		while (root.getFirstChild() != null) {
+			root.removeChild(root.getFirstChild());
+		}
+		assertSameAsWriter("an empty root", document);
+	}
+}
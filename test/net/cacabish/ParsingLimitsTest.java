@@ -0,0 +1,120 @@
+package net.cacabish;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks that a score over any one of the {@link ParsingLimits} is rejected, however it's parsed, and that the rejection names the limit.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class ParsingLimitsTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private ParsingLimitsTest() {}
+	
+	/**
+	 * Cleans a score, expecting it to be rejected.
+	 * @param message what the score goes over
+	 * @param score the score
+	 * @param options the options, including the limits
+	 * @param limit the name of the limit that should be named
+	 * @throws Exception if the score can't be cleaned for some other reason
+	 */
+	private static void assertRejected(String message, byte[] score, CleaningOptions options, String limit) throws Exception {
+		try {
+			MusicXMLCleaner.clean(ByteBuffer.wrap(score), options);
+			Tests.fail(message + " was accepted");
+		} catch (LimitExceededException e) {
+			Tests.assertEquals(message, limit, e.getLimit());
+			Tests.assertTrue(message + " names the limit: " + e.getMessage(), e.getMessage().contains(limit));
+		}
+	}
+	
+	/**
+	 * Makes options with one limit lowered.
+	 * @param limit the name of the limit
+	 * @param value its new value
+	 * @param lazy whether to parse lazily
+	 * @return the options
+	 */
+	private static CleaningOptions limited(String limit, long value, boolean lazy) {
+		CleaningOptions options = new CleaningOptions();
+		options.limits = ParsingLimits.DEFAULT.with(limit, value);
+		options.lazyParsing = lazy;
+		return options;
+	}
+	
+	/**
+	 * A score with a title that expands to far more text than it takes up, "billion laughs" style: four levels of ten entities each, so 11,110 expansions.
+	 * @return the score
+	 */
+	public static byte[] laughs() {
+		String score = new String(TestScores.score(4), StandardCharsets.UTF_8);
+		StringBuilder entities = new StringBuilder(" [\n<!ENTITY lol \"lol\">\n");
+		String previous = "lol";
+		for (int i = 1; i <= 4; i++) {
+			entities.append("<!ENTITY lol").append(i).append(" \"");
+			for (int j = 0; j < 10; j++) {
+				entities.append('&').append(previous).append(';');
+			}
+			entities.append("\">\n");
+			previous = "lol" + i;
+		}
+		entities.append("]>");
+		score = score.replace("partwise.dtd\">", "partwise.dtd\"" + entities);
+		score = score.replace("<work-title>Test Song</work-title>", "<work-title>&" + previous + ";</work-title>");
+		return score.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * A score over each limit is rejected with that limit's name, both when it's parsed normally and when it's parsed lazily.
+	 * @throws Exception if a score can't be cleaned for some other reason
+	 */
+	public static void testEachLimit() throws Exception {
+		byte[] score = TestScores.score(4);
+		for (boolean lazy : new boolean[] {false, true}) {
+			String how = lazy ? " (lazily)" : "";
+			assertRejected("a large file" + how, score, limited("maxFileSize", score.length - 1, lazy), "maxFileSize");
+			assertRejected("deep nesting" + how, score, limited("maxDepth", 6, lazy), "maxDepth"); // score-partwise, part, measure, print, page-layout, page-margins, left-margin
+			assertRejected("long text" + how, score, limited("maxTextLength", 5, lazy), "maxTextLength"); // "Test Song"
+			assertRejected("many credits" + how, score, limited("maxCredits", 2, lazy), "maxCredits"); // A title and two copyrights
+			assertRejected("many attributes" + how, score, limited("maxAttributes", 2, lazy), "maxAttributes");
+			assertRejected("entity expansion" + how, laughs(), limited("maxEntityExpansions", 2_000, lazy), "maxEntityExpansions");
+		}
+	}
+	
+	/**
+	 * A score right at each limit is accepted.
+	 * @throws Exception if the score can't be cleaned
+	 */
+	public static void testAtTheLimit() throws Exception {
+		byte[] score = TestScores.score(4);
+		CleaningOptions options = new CleaningOptions();
+		options.limits = ParsingLimits.DEFAULT.with("maxFileSize", score.length).with("maxDepth", 7).with("maxCredits", 3);
+		MusicXMLCleaner.clean(ByteBuffer.wrap(score), options);
+		
+		options.limits = ParsingLimits.DEFAULT;
+		MusicXMLCleaner.clean(ByteBuffer.wrap(laughs()), options); // 11,110 expansions are within the default limits
+	}
+	
+	/**
+	 * A file over the size limit is rejected before it's read.
+	 * @throws Exception if the file can't be written
+	 */
+	public static void testFile() throws Exception {
+		File file = TestScores.write(TestScores.newDirectory(), "score.musicxml", TestScores.score(4));
+		CleaningOptions options = limited("maxFileSize", 100, false);
+		try {
+			MusicXMLCleaner.clean(file, null, options);
+			Tests.fail("a large file was accepted");
+		} catch (LimitExceededException e) {
+			Tests.assertEquals("a large file", "maxFileSize", e.getLimit());
+		}
+	}
+}
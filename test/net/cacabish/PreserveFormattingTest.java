@@ -0,0 +1,59 @@
+package net.cacabish;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks that a score cleaned while preserving its formatting holds the same MusicXML as a full clean, and that what wasn't changed is copied as it was.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class PreserveFormattingTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private PreserveFormattingTest() {}
+	
+	/**
+	 * Cleans a score with and without preserving its formatting, with every operation on.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testSameAsFullClean() throws Exception {
+		File directory = TestScores.newDirectory();
+		byte[] score = TestScores.score(40);
+		File file = TestScores.write(directory, "score.musicxml", score);
+		
+		byte[] full = TestScores.clean(file, null, new CleaningOptions(), new File(directory, "full.musicxml"));
+		
+		CleaningOptions options = new CleaningOptions();
+		options.preserveFormatting = true;
+		byte[] preserved = TestScores.clean(file, null, options, new File(directory, "preserved.musicxml"));
+		
+		TestScores.assertSameScore("preserving formatting", full, preserved);
+		
+		// A measure that no operation touches comes out byte for byte, odd indentation and all
+		String input = new String(score, StandardCharsets.UTF_8);
+		int start = input.indexOf("    <measure number=\"3\"", input.indexOf("<part id=\"P2\">"));
+		String measure = input.substring(start, input.indexOf("</measure>", start) + "</measure>".length());
+		Tests.assertTrue("the untouched measure was reformatted", new String(preserved, StandardCharsets.UTF_8).contains(measure));
+	}
+	
+	/**
+	 * Cleans a score while preserving its formatting with every operation off, which should give back exactly the same bytes.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testNothingToDo() throws Exception {
+		File directory = TestScores.newDirectory();
+		byte[] score = TestScores.score(8);
+		File file = TestScores.write(directory, "score.musicxml", score);
+		
+		CleaningOptions options = TestScores.noOperations();
+		options.preserveFormatting = true;
+		byte[] preserved = TestScores.clean(file, null, options, new File(directory, "preserved.musicxml"));
+		
+		Tests.assertSameBytes("preserving formatting with nothing to do", score, preserved);
+	}
+}
@@ -0,0 +1,178 @@
+package net.cacabish;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that cleaning a score with several profiles at once gives each profile the same file as cleaning with it on its own.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class ProfilesTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private ProfilesTest() {}
+	
+	/**
+	 * Makes the profiles, fresh each time so that no run can affect another's.
+	 * @return the profiles
+	 * @throws Exception never, since every option they set exists
+	 */
+	private static List<CleaningOptions> profiles() throws Exception {
+		List<CleaningOptions> profiles = new ArrayList<>();
+		profiles.add(new CleaningOptions());
+		
+		CleaningOptions noTitles = new CleaningOptions();
+		noTitles.addMiniTitlesAndPageNumbers = false;
+		profiles.add(noTitles);
+		
+		profiles.add(TestScores.noOperations());
+		
+		CleaningOptions older = new CleaningOptions();
+		older.outputVersion = "3.1";
+		profiles.add(older);
+		
+		CleaningOptions preserved = new CleaningOptions();
+		preserved.preserveFormatting = true;
+		profiles.add(preserved);
+		return profiles;
+	}
+	
+	/**
+	 * Writes a cleaned score out.
+	 * @param score the score
+	 * @return its bytes
+	 * @throws Exception if it can't be written
+	 */
+	private static byte[] write(CleanedScore score) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MusicXMLCleaner.writeToStream(score, out);
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Cleans a score with every profile at once, then with each on its own.
+	 * @throws Exception if it can't be cleaned
+	 */
+	public static void testSameAsOneAtATime() throws Exception {
+		byte[] score = TestScores.score(40);
+		List<CleanedScore> together = MusicXMLCleaner.clean(ByteBuffer.wrap(score), null, profiles());
+		
+		List<CleaningOptions> profiles = profiles();
+		Tests.assertEquals("number of scores", profiles.size(), together.size());
+		for (int i = 0; i < profiles.size(); i++) {
+			byte[] alone = write(MusicXMLCleaner.clean(ByteBuffer.wrap(score), profiles.get(i)));
+			Tests.assertSameBytes("profile " + (i + 1), alone, write(together.get(i)));
+		}
+	}
+	
+	/**
+	 * A score is parsed within the strictest limits of all the profiles, whichever profile they come from.
+	 * @throws Exception if the score can't be cleaned
+	 */
+	public static void testStrictestLimits() throws Exception {
+		byte[] score = TestScores.score(40);
+		for (int strict = 0; strict < 2; strict++) {
+			List<CleaningOptions> profiles = new ArrayList<>();
+			profiles.add(new CleaningOptions());
+			profiles.add(new CleaningOptions());
+			profiles.get(strict).limits = ParsingLimits.DEFAULT.with("maxCredits", 2);
+			try {
+				MusicXMLCleaner.clean(ByteBuffer.wrap(score), null, profiles);
+				Tests.fail("profile " + (strict + 1) + "'s limit was ignored");
+			} catch (LimitExceededException e) {
+				Tests.assertEquals("profile " + (strict + 1) + "'s limit", "maxCredits", e.getLimit());
+			}
+		}
+		
+		List<CleaningOptions> profiles = new ArrayList<>();
+		profiles.add(new CleaningOptions());
+		profiles.add(new CleaningOptions());
+		profiles.get(1).limits = ParsingLimits.DEFAULT.with("maxCredits", 3);
+		Tests.assertEquals("within both", 2, MusicXMLCleaner.clean(ByteBuffer.wrap(score), null, profiles).size());
+	}
+	
+	/**
+	 * Combining limits takes the lower of each.
+	 */
+	public static void testCombinedLimits() {
+		ParsingLimits depth = ParsingLimits.DEFAULT.with("maxDepth", 10);
+		ParsingLimits combined = depth.strictest(ParsingLimits.UNTRUSTED);
+		Tests.assertEquals("maxDepth", 10, combined.getMaxDepth());
+		Tests.assertEquals("maxFileSize", ParsingLimits.UNTRUSTED.getMaxFileSize(), combined.getMaxFileSize());
+		Tests.assertEquals("maxCredits", ParsingLimits.UNTRUSTED.getMaxCredits(), combined.getMaxCredits());
+		Tests.assertEquals("either way round", combined, ParsingLimits.UNTRUSTED.strictest(depth));
+		Tests.assertTrue("the same limits", ParsingLimits.DEFAULT.strictest(ParsingLimits.DEFAULT) == ParsingLimits.DEFAULT);
+	}
+	
+	/**
+	 * Only the first profile that cleans incrementally reuses the last output's measures, and the other is cleaned in full and saved normally.
+	 * Either way, every profile's score is the same as cleaning the new score from scratch.
+	 * @throws Exception if the score can't be cleaned
+	 */
+	public static void testIncremental() throws Exception {
+		File directory = TestScores.newDirectory();
+		List<CleaningOptions> profiles = new ArrayList<>();
+		profiles.add(new CleaningOptions());
+		for (int i = 0; i < 2; i++) {
+			CleaningOptions incremental = new CleaningOptions();
+			incremental.incrementalCleaning = true;
+			profiles.add(incremental);
+		}
+		List<File> outputs = new ArrayList<>();
+		List<CleanedScore> scores = MusicXMLCleaner.clean(ByteBuffer.wrap(TestScores.score(40)), null, profiles);
+		for (int i = 0; i < scores.size(); i++) {
+			outputs.add(new File(directory, "cleaned" + i + ".musicxml"));
+			MusicXMLCleaner.writeToFile(scores.get(i), outputs.get(i));
+		}
+		
+		// Re-export it with one measure changed
+		byte[] changed = TestScores.score(40, 21);
+		PrintStream console = System.out;
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(log, true));
+		try {
+			scores = MusicXMLCleaner.clean(ByteBuffer.wrap(changed), outputs, profiles);
+		} finally {
+			System.setOut(console);
+		}
+		console.print(log.toString());
+		Tests.assertTrue("the third profile reused the bytes too", log.toString().contains("so profile 3 will be saved normally"));
+		Tests.assertTrue("the second profile didn't reuse the measures", log.toString().contains("Reusing 79 of 80 measure(s)"));
+		
+		byte[] full = write(MusicXMLCleaner.clean(ByteBuffer.wrap(changed), new CleaningOptions()));
+		for (int i = 0; i < scores.size(); i++) {
+			MusicXMLCleaner.writeToFile(scores.get(i), outputs.get(i));
+			Tests.assertSameBytes("profile " + (i + 1), full, Files.readAllBytes(outputs.get(i).toPath()));
+		}
+	}
+	
+	/**
+	 * No profiles, a missing profile, or a different number of previous outputs than profiles are refused.
+	 * @throws Exception if the score fails for some other reason
+	 */
+	public static void testArguments() throws Exception {
+		List<List<CleaningOptions>> profiles = Arrays.asList(Collections.emptyList(), Arrays.asList(new CleaningOptions(), null),
+				Arrays.asList(new CleaningOptions(), new CleaningOptions()));
+		List<List<File>> previousOutputs = Arrays.asList(null, null, Collections.singletonList(new File("cleaned.musicxml")));
+		for (int i = 0; i < profiles.size(); i++) {
+			try {
+				MusicXMLCleaner.clean(ByteBuffer.wrap(TestScores.score(4)), previousOutputs.get(i), profiles.get(i));
+				Tests.fail("call " + (i + 1) + " was allowed");
+			} catch (IllegalArgumentException e) {
+				// Good
+			}
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package net.cacabish;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Makes the scores the tests clean, and checks what comes out.
+ * The scores are written out here rather than kept as files so that a test can ask for one as large as it needs. Every score has something for each
+ * of the cleaning operations to do: a title and copyright in the credits, Edwin and FreeSerif fonts, a swing direction, a volta, a D.C., tempo marks,
+ * new systems, new pages, and an ossia part.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class TestScores {
+	
+	/**
+	 * The notes the measures cycle through.
+	 */
+	private static final String[] STEPS = {"C", "D", "E", "F", "G", "A", "B"};
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private TestScores() {}
+	
+	/**
+	 * Writes out a partwise MusicXML 4.0 score with two parts.
+	 * @param measures how many measures each part has, at least 3. Each measure of each part takes roughly 700 bytes.
+	 * @return the score
+	 */
+	public static byte[] score(int measures) {
+		return score(measures, -1);
+	}
+	
+	/**
+	 * Writes out a partwise MusicXML 4.0 score with two parts, with one measure of the first part different from {@link #score(int)}.
+	 * @param measures how many measures each part has, at least 3
+	 * @param changedMeasure the measure of the first part to give different notes, counting from 1, or -1 to change none
+	 * @return the score
+	 */
+	public static byte[] score(int measures, int changedMeasure) {
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		xml.append("<!DOCTYPE score-partwise PUBLIC \"-//Recordare//DTD MusicXML 4.0 Partwise//EN\" \"http://www.musicxml.org/dtds/partwise.dtd\">\n");
+		xml.append("<score-partwise version=\"4.0\">\n");
+		xml.append("  <work>\n    <work-title>Test Song</work-title>\n    </work>\n");
+		xml.append("  <identification>\n    <rights>Copyright Me</rights>\n    </identification>\n");
+		xml.append("  <defaults>\n");
+		xml.append("    <scaling>\n      <millimeters>6.99911</millimeters>\n      <tenths>40</tenths>\n      </scaling>\n");
+		xml.append("    <page-layout>\n      <page-height>1596.77</page-height>\n      <page-width>1233.87</page-width>\n");
+		for (String type : new String[] {"even", "odd"}) {
+			xml.append("      <page-margins type=\"").append(type).append("\">\n");
+			xml.append("        <left-margin>85.7143</left-margin>\n        <right-margin>85.7143</right-margin>\n");
+			xml.append("        <top-margin>85.7143</top-margin>\n        <bottom-margin>85.7143</bottom-margin>\n");
+			xml.append("        </page-margins>\n");
+		}
+		xml.append("      </page-layout>\n");
+		xml.append("    <word-font font-family=\"Edwin\" font-size=\"10\"/>\n");
+		xml.append("    <lyric-font font-family=\"FreeSerif, serif\" font-size=\"11\"/>\n");
+		xml.append("    </defaults>\n");
+		xml.append("  <credit page=\"1\">\n    <credit-type>title</credit-type>\n");
+		xml.append("    <credit-words default-x=\"616.935\" default-y=\"1511.05\" justify=\"center\" valign=\"top\" font-size=\"22\">Test Song</credit-words>\n");
+		xml.append("    </credit>\n");
+		for (int page = 1; page <= 2; page++) {
+			xml.append("  <credit page=\"").append(page).append("\">\n");
+			xml.append("    <credit-words default-x=\"616.935\" default-y=\"85.7143\" justify=\"center\" valign=\"bottom\" font-size=\"8\">Copyright Me</credit-words>\n");
+			xml.append("    </credit>\n");
+		}
+		xml.append("  <part-list>\n");
+		xml.append("    <score-part id=\"P1\">\n      <part-name>Piano</part-name>\n      </score-part>\n");
+		xml.append("    <score-part id=\"P2\">\n      <part-name>Ossia</part-name>\n      </score-part>\n");
+		xml.append("    </part-list>\n");
+		
+		for (int part = 1; part <= 2; part++) {
+			xml.append("  <part id=\"P").append(part).append("\">\n");
+			for (int measure = 1; measure <= measures; measure++) {
+				appendMeasure(xml, part, measure, measures, part == 1 && measure == changedMeasure);
+			}
+			xml.append("    </part>\n");
+		}
+		xml.append("  </score-partwise>\n");
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Writes out one measure.
+	 * @param xml where to write it
+	 * @param part the part it's in, counting from 1
+	 * @param measure its number, counting from 1
+	 * @param measures how many measures there are
+	 * @param changed whether to give it different notes
+	 */
+	private static void appendMeasure(StringBuilder xml, int part, int measure, int measures, boolean changed) {
+		xml.append("    <measure number=\"").append(measure).append("\" width=\"").append(200 + measure % 7).append("\">\n");
+		if (measure == 1) {
+			xml.append("      <print>\n        <system-layout>\n          <system-margins>\n");
+			xml.append("            <left-margin>50.00</left-margin>\n            <right-margin>0.00</right-margin>\n");
+			xml.append("            </system-margins>\n          <top-system-distance>170.00</top-system-distance>\n");
+			xml.append("          </system-layout>\n        </print>\n");
+			xml.append("      <attributes>\n        <divisions>2</divisions>\n");
+			xml.append("        <time><beats>4</beats><beat-type>4</beat-type></time>\n");
+			xml.append("        <clef><sign>G</sign><line>2</line></clef>\n        </attributes>\n");
+		}
+		else if (measure % 4 == 1) {
+			boolean newPage = measure % 16 == 1;
+			xml.append("      <print ").append(newPage ? "new-page" : "new-system").append("=\"yes\">\n");
+			xml.append("        <system-layout>\n          <system-margins>\n");
+			xml.append("            <left-margin>10.00</left-margin>\n            <right-margin>0.00</right-margin>\n");
+			xml.append("            </system-margins>\n");
+			xml.append(newPage ? "          <top-system-distance>150.00</top-system-distance>\n" : "          <system-distance>150.00</system-distance>\n");
+			xml.append("          </system-layout>\n        </print>\n");
+		}
+		
+		if (part == 1) {
+			if (measure == 1) {
+				xml.append("      <direction placement=\"above\">\n        <direction-type>\n");
+				xml.append("          <words default-x=\"-37.68\" relative-y=\"20.00\" font-weight=\"bold\" font-size=\"12\">Allegro</words>\n");
+				xml.append("          </direction-type>\n        <direction-type>\n");
+				xml.append("          <metronome parentheses=\"no\" default-x=\"-37.68\" relative-y=\"20.00\">\n");
+				xml.append("            <beat-unit>quarter</beat-unit>\n            <per-minute>120</per-minute>\n            </metronome>\n");
+				xml.append("          </direction-type>\n        <sound tempo=\"120\"/>\n        </direction>\n");
+				xml.append("      <direction placement=\"above\">\n        <direction-type>\n");
+				xml.append("          <words font-family=\"Edwin,FreeSerif\" relative-y=\"20.00\">Swing</words>\n");
+				xml.append("          </direction-type>\n        </direction>\n");
+			}
+			if (measure == 2) {
+				xml.append("      <barline location=\"left\">\n        <ending number=\"1, 2\" type=\"start\">1, 2</ending>\n        </barline>\n");
+			}
+		}
+		
+		for (int beat = 0; beat < 2; beat++) {
+			int step = (measure * 3 + beat + part + (changed ? 2 : 0)) % STEPS.length;
+			xml.append("      <note default-x=\"").append(String.format(Locale.US, "%.2f", 12.5 + beat * 71.25 + measure % 3)).append("\">\n");
+			xml.append("        <pitch><step>").append(STEPS[step]).append("</step><octave>").append(4 + beat).append("</octave></pitch>\n");
+			xml.append("        <duration>4</duration>\n        <voice>1</voice>\n        <type>half</type>\n        <stem>up</stem>\n        </note>\n");
+		}
+		
+		if (part == 1 && measure == measures) {
+			xml.append("      <direction placement=\"above\">\n        <direction-type>\n");
+			xml.append("          <words>D.C. al Fine</words>\n          </direction-type>\n        <sound dacapo=\"yes\"/>\n        </direction>\n");
+		}
+		xml.append("      </measure>\n");
+	}
+	
+	/**
+	 * Makes options with every cleaning operation turned off, which should leave a score as it was.
+	 * @return the options
+	 * @throws IOException never, since every option it sets exists
+	 */
+	public static CleaningOptions noOperations() throws IOException {
+		CleaningOptions options = new CleaningOptions();
+		for (String name : new String[] {"addMiniTitlesAndPageNumbers", "addSystemMeasureNumbers", "removeDuplicateCopyrightInfo", "correctTempoMarking",
+				"centerCreditsHorizontally", "offsetSystemMargins", "makeRepeatTextsBold", "addPeriodsToVoltaTexts", "addSwing8thsWhereSwingDirection",
+				"replaceEdwinAndFreeSerifWithTimesNewRoman", "formatOssias"}) {
+			options.set(name, "false");
+		}
+		return options;
+	}
+	
+	/**
+	 * Makes a new, empty directory for a test's files, which is removed when the tests finish.
+	 * @return the directory
+	 * @throws IOException if it can't be made
+	 */
+	public static File newDirectory() throws IOException {
+		File directory = Files.createTempDirectory("musicxml-cleaner-test").toFile();
+		directory.deleteOnExit();
+		return directory;
+	}
+	
+	/**
+	 * Writes bytes to a file that is removed when the tests finish.
+	 * @param directory the directory to write it in
+	 * @param name its name
+	 * @param bytes what to write
+	 * @return the file
+	 * @throws IOException if it can't be written
+	 */
+	public static File write(File directory, String name, byte[] bytes) throws IOException {
+		File file = new File(directory, name);
+		Files.write(file.toPath(), bytes);
+		file.deleteOnExit();
+		return file;
+	}
+	
+	/**
+	 * Cleans a file and saves it, the way the cleaner itself would.
+	 * @param file the file to clean
+	 * @param previousOutput the file it was last cleaned to, or {@code null}
+	 * @param options the options to clean with
+	 * @param output where to save it
+	 * @return what was saved
+	 * @throws Exception if it can't be cleaned or saved
+	 */
+	public static byte[] clean(File file, File previousOutput, CleaningOptions options, File output) throws Exception {
+		MusicXMLCleaner.writeToFile(MusicXMLCleaner.clean(file, previousOutput, options), output);
+		output.deleteOnExit();
+		MeasureManifest.getManifestFile(output).deleteOnExit();
+		return Files.readAllBytes(output.toPath());
+	}
+	
+	/**
+	 * Fails a test unless two cleaned scores hold the same MusicXML, even if they are formatted differently.
+	 * Both are parsed with the DTD, so an attribute that one leaves to its default and the other writes out is still the same, and the whitespace
+	 * between elements is ignored.
+	 * @param message what was being compared
+	 * @param expected the score it should be
+	 * @param actual the score it is
+	 * @throws Exception if either can't be parsed
+	 */
+	public static void assertSameScore(String message, byte[] expected, byte[] actual) throws Exception {
+		Document expectedDocument = parse(expected);
+		Document actualDocument = parse(actual);
+		if (!expectedDocument.getDocumentElement().isEqualNode(actualDocument.getDocumentElement())) {
+			Tests.fail(message + ": the scores are different");
+		}
+	}
+	
+	/**
+	 * Parses a score, leaving out the whitespace between elements.
+	 * @param bytes the score
+	 * @return its document
+	 * @throws Exception if it can't be parsed
+	 */
+	private static Document parse(byte[] bytes) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setIgnoringComments(true);
+		DocumentBuilder builder = factory.newDocumentBuilder();
+		builder.setEntityResolver(new MusicXMLEntityResolver());
+		Document document = builder.parse(new ByteArrayInputStream(bytes));
+		removeWhitespace(document.getDocumentElement());
+		document.normalizeDocument();
+		return document;
+	}
+	
+	/**
+	 * Removes every text node that is only whitespace.
+	 * @param node where to start
+	 */
+	private static void removeWhitespace(Node node) {
+		Node child = node.getFirstChild();
+		while (child != null) {
+			Node next = child.getNextSibling();
+			if (child.getNodeType() == Node.TEXT_NODE && child.getNodeValue().trim().isEmpty()) {
+				node.removeChild(child);
+			}
+			else {
+				removeWhitespace(child);
+			}
+			child = next;
+		}
+	}
+}
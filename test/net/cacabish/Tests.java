@@ -0,0 +1,151 @@
+package net.cacabish;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Runs the tests. There are no libraries to lean on, so this is all there is to it: every {@code public static void test...()} method of every class
+ * in {@link #TEST_CLASSES} is run, and a test fails if it throws. Whatever a test prints (and the cleaner prints plenty) is only shown if it fails.
+ * <br><br>
+ * Exits with 1 if any test failed, so scripts can tell.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class Tests {
+	
+	/**
+	 * The classes whose tests are run, in order.
+	 */
+	private static final String[] TEST_CLASSES = {
+			"net.cacabish.AllocationStatsTest",
+			"net.cacabish.BackgroundValidatorTest",
+			"net.cacabish.CleanerEventsTest",
+			"net.cacabish.FontMapperTest",
+			"net.cacabish.LazyParsingTest",
+			"net.cacabish.PreserveFormattingTest",
+			"net.cacabish.IncrementalCleaningTest",
+			"net.cacabish.ParallelParsingTest",
+			"net.cacabish.ParallelWritingTest",
+			"net.cacabish.ParsingLimitsTest",
+			"net.cacabish.ProfilesTest",
+			"net.cacabish.batch.AdmissionControllerTest",
+			"net.cacabish.batch.AllocationSummaryTest",
+			"net.cacabish.batch.BatchPipelineTest",
+			"net.cacabish.batch.FolderWatcherTest",
+			"net.cacabish.batch.JobSchedulerTest",
+			"net.cacabish.daemon.CleanerDaemonTest",
+			"net.cacabish.daemon.CleanerHttpServerTest",
+			"net.cacabish.xml.ChangeValidatorTest",
+			"net.cacabish.xml.DecimalCodecTest",
+			"net.cacabish.xml.LazySlicesTest",
+			"net.cacabish.xml.MusicXMLConverterTest",
+			"net.cacabish.xml.NodeSymbolsTest",
+			"net.cacabish.xml.PatchWriterTest",
+			"net.cacabish.xml.ScoreTreeTest",
+	};
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private Tests() {}
+	
+	/**
+	 * Fails a test if something isn't true.
+	 * @param message what went wrong, if it isn't
+	 * @param condition what should be true
+	 */
+	public static void assertTrue(String message, boolean condition) {
+		if (!condition) {
+			fail(message);
+		}
+	}
+	
+	/**
+	 * Fails a test if two things aren't equal.
+	 * @param message what was being compared
+	 * @param expected what it should be
+	 * @param actual what it is
+	 */
+	public static void assertEquals(String message, Object expected, Object actual) {
+		if (!Objects.equals(expected, actual)) {
+			fail(message + ": expected <" + expected + "> but was <" + actual + ">");
+		}
+	}
+	
+	/**
+	 * Fails a test if two arrays of bytes aren't the same.
+	 * @param message what was being compared
+	 * @param expected what they should be
+	 * @param actual what they are
+	 */
+	public static void assertSameBytes(String message, byte[] expected, byte[] actual) {
+		if (!Arrays.equals(expected, actual)) {
+			int i = 0;
+			while (i < expected.length && i < actual.length && expected[i] == actual[i]) {
+				i++;
+			}
+			fail(message + ": first differs at byte " + i + " of " + expected.length + " (got " + actual.length + ")");
+		}
+	}
+	
+	/**
+	 * Fails a test.
+	 * @param message what went wrong
+	 */
+	public static void fail(String message) {
+		throw new AssertionError(message);
+	}
+	
+	/**
+	 * Runs every test.
+	 * @param args the classes to run, instead of all of them
+	 * @throws ReflectiveOperationException if a test class can't be found
+	 */
+	public static void main(String[] args) throws ReflectiveOperationException {
+		PrintStream console = System.out;
+		int passed = 0;
+		int failed = 0;
+		for (String name : args.length > 0 ? args : TEST_CLASSES) {
+			for (Method method : Class.forName(name).getMethods()) {
+				if (!method.getName().startsWith("test") || !Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 0) {
+					continue;
+				}
+				
+				String test = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				System.setOut(new PrintStream(output, true));
+				Throwable failure = null;
+				try {
+					method.invoke(null);
+				} catch (InvocationTargetException e) {
+					failure = e.getCause();
+				} finally {
+					System.setOut(console);
+				}
+				
+				if (failure == null) {
+					passed++;
+					console.println("PASS " + test);
+				}
+				else {
+					failed++;
+					console.println("FAIL " + test);
+					console.print(output.toString());
+					failure.printStackTrace(console);
+				}
+			}
+		}
+		
+		console.println(passed + " passed, " + failed + " failed");
+		if (failed > 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package net.cacabish.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.cacabish.CleaningOptions;
+import net.cacabish.TestScores;
+import net.cacabish.Tests;
+
+/**
+ * Checks how the {@link AdmissionController} plans a file (what it costs, and whether it's switched to lazy parsing or run alone) and lets files in
+ * within its budget, strictly in the order they asked.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class AdmissionControllerTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private AdmissionControllerTest() {}
+	
+	/**
+	 * Waits for a thread to be blocked waiting for room.
+	 * @param thread the thread
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private static void awaitWaiting(Thread thread) throws InterruptedException {
+		long deadline = System.nanoTime() + 10_000_000_000L;
+		while (thread.getState() != Thread.State.WAITING) {
+			Tests.assertTrue(thread.getName() + " never waited", thread.isAlive() && System.nanoTime() < deadline);
+			Thread.sleep(5);
+		}
+	}
+	
+	/**
+	 * Starts a thread that asks to be let in, and notes when it is.
+	 * @param controller the controller
+	 * @param admission what the thread asks for
+	 * @param name the name of the thread, which is noted when it's let in
+	 * @param admitted where the names are noted
+	 * @return the thread
+	 */
+	private static Thread acquire(AdmissionController controller, AdmissionController.Admission admission, String name, List<String> admitted) {
+		Thread thread = new Thread(() -> {
+			try {
+				controller.acquire(admission);
+				admitted.add(name);
+			} catch (InterruptedException e) {
+				admitted.add(name + " gave up");
+			}
+		}, name);
+		thread.start();
+		return thread;
+	}
+	
+	/**
+	 * A file cleaned with several profiles costs a parsed score for each, and is never switched to lazy parsing, however tight the budget.
+	 * @throws Exception if the score can't be written
+	 */
+	public static void testProfiles() throws Exception {
+		File file = TestScores.write(TestScores.newDirectory(), "score.musicxml", TestScores.score(40));
+		long size = file.length();
+		CleaningOptions options = new CleaningOptions();
+		options.lazyParsing = true;
+		
+		AdmissionController roomy = new AdmissionController(1L << 40, 1);
+		AdmissionController.Admission one = roomy.plan(file, new CleaningOptions(), 0);
+		Tests.assertEquals("no profiles", size + size * AdmissionController.DOM_BYTES_PER_BYTE, one.getCost());
+		AdmissionController.Admission three = roomy.plan(file, options, 3);
+		Tests.assertEquals("three profiles", size + 3 * size * AdmissionController.DOM_BYTES_PER_BYTE, three.getCost());
+		Tests.assertTrue("three profiles, lazy", !three.isLazy());
+		
+		// Too big to share, so it would be switched to lazy parsing without profiles
+		AdmissionController tight = new AdmissionController(size * 20, 4);
+		Tests.assertTrue("switched to lazy without profiles", tight.plan(file, new CleaningOptions(), 0).isLazy());
+		AdmissionController.Admission profiles = tight.plan(file, new CleaningOptions(), 2);
+		Tests.assertTrue("not switched with profiles", !profiles.isLazy());
+		Tests.assertTrue("run alone with profiles", profiles.isAlone());
+		Tests.assertEquals("capped at the budget", size * 20, profiles.getCost());
+	}
+	
+	/**
+	 * A file is switched to lazy parsing once it costs more than its fair share of the budget, and run alone once it costs the whole budget,
+	 * and not a byte sooner. A file that asked to be lazy isn't counted as switched, and a UTF-16 file (which can't be parsed lazily) costs half as much per byte.
+	 * @throws Exception if the files can't be written
+	 */
+	public static void testPlan() throws Exception {
+		File directory = TestScores.newDirectory();
+		File file = TestScores.write(directory, "score.musicxml", TestScores.score(8));
+		long size = file.length();
+		long full = size + size * AdmissionController.DOM_BYTES_PER_BYTE;
+		long lazy = size + size * AdmissionController.LAZY_BYTES_PER_BYTE;
+		
+		AdmissionController.Admission fair = new AdmissionController(full * 4, 4).plan(file, new CleaningOptions(), 0);
+		Tests.assertTrue("exactly a fair share", !fair.isLazy() && !fair.isAlone());
+		Tests.assertEquals("exactly a fair share", full, fair.getCost());
+		AdmissionController.Admission unfair = new AdmissionController(full * 4 - 1, 4).plan(file, new CleaningOptions(), 0);
+		Tests.assertTrue("a byte over a fair share", unfair.isLazy() && !unfair.isAlone());
+		Tests.assertEquals("a byte over a fair share", lazy, unfair.getCost());
+		
+		CleaningOptions options = new CleaningOptions();
+		options.lazyParsing = true;
+		AdmissionController.Admission asked = new AdmissionController(lazy + 1, 1).plan(file, options, 0);
+		Tests.assertTrue("asked to be lazy", !asked.isLazy() && !asked.isAlone());
+		Tests.assertEquals("asked to be lazy", lazy, asked.getCost());
+		AdmissionController.Admission whole = new AdmissionController(lazy, 1).plan(file, options, 0);
+		Tests.assertTrue("the whole budget", whole.isAlone());
+		AdmissionController.Admission over = new AdmissionController(lazy - 1, 1).plan(file, options, 0);
+		Tests.assertTrue("over the budget", over.isAlone());
+		Tests.assertEquals("capped at the budget", lazy - 1, over.getCost());
+		
+		byte[] utf16 = "\uFEFF<?xml version=\"1.0\" encoding=\"UTF-16\"?><score-partwise/>".getBytes(StandardCharsets.UTF_16BE);
+		File utf16File = TestScores.write(directory, "utf16.musicxml", utf16);
+		AdmissionController.Admission wide = new AdmissionController(1, 4).plan(utf16File, new CleaningOptions(), 0);
+		Tests.assertTrue("UTF-16 can't be lazy", !wide.isLazy() && wide.isAlone());
+		Tests.assertEquals("UTF-16", (long) utf16.length + utf16.length / 2 * AdmissionController.DOM_BYTES_PER_BYTE,
+				new AdmissionController(1L << 40, 1).plan(utf16File, new CleaningOptions(), 0).getCost());
+	}
+	
+	/**
+	 * Files are let in strictly in the order they asked: a small file that would fit waits behind a big one that doesn't, and when a file
+	 * gives up waiting, the ones behind it can go.
+	 * @throws Exception if interrupted
+	 */
+	public static void testOrder() throws Exception {
+		AdmissionController controller = new AdmissionController(100, 2);
+		List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+		AdmissionController.Admission first = new AdmissionController.Admission(60, false, false);
+		controller.acquire(first);
+		
+		Thread big = acquire(controller, new AdmissionController.Admission(80, false, false), "big", admitted);
+		awaitWaiting(big);
+		Thread small = acquire(controller, new AdmissionController.Admission(10, false, false), "small", admitted);
+		awaitWaiting(small);
+		Tests.assertEquals("the small file fits but waits its turn", Collections.emptyList(), admitted);
+		
+		controller.release(first);
+		big.join(10000);
+		small.join(10000);
+		Collections.sort(admitted);
+		Tests.assertEquals("both let in", "[big, small]", admitted.toString());
+		
+		// The big one is still in, so the next big one waits, and the small one behind it goes once it gives up
+		admitted.clear();
+		Thread another = acquire(controller, new AdmissionController.Admission(80, false, false), "another", admitted);
+		awaitWaiting(another);
+		Thread behind = acquire(controller, new AdmissionController.Admission(10, false, false), "behind", admitted);
+		awaitWaiting(behind);
+		another.interrupt();
+		another.join(10000);
+		behind.join(10000);
+		Collections.sort(admitted);
+		Tests.assertEquals("after giving up", "[another gave up, behind]", admitted.toString());
+		Tests.assertTrue("summary: " + controller, controller.toString().contains("4 file(s) admitted"));
+	}
+	
+	/**
+	 * A budget or concurrency that isn't positive, and a negative number of profiles, are refused.
+	 * @throws Exception if the score can't be written
+	 */
+	public static void testArguments() throws Exception {
+		File file = TestScores.write(TestScores.newDirectory(), "score.musicxml", TestScores.score(4));
+		Runnable[] calls = {
+				() -> new AdmissionController(0, 1),
+				() -> new AdmissionController(1, 0),
+				() -> {
+					try {
+						new AdmissionController(1, 1).plan(file, new CleaningOptions(), -1);
+					} catch (IOException e) {
+						Tests.fail("the score couldn't be read");
+					}
+				},
+		};
+		for (int i = 0; i < calls.length; i++) {
+			try {
+				calls[i].run();
+				Tests.fail("call " + (i + 1) + " was allowed");
+			} catch (IllegalArgumentException e) {
+				// Good
+			}
+		}
+	}
+}
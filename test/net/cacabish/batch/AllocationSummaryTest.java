@@ -0,0 +1,143 @@
+package net.cacabish.batch;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.cacabish.AllocationStats;
+import net.cacabish.CleanedScore;
+import net.cacabish.CleaningOptions;
+import net.cacabish.MusicXMLCleaner;
+import net.cacabish.TestScores;
+import net.cacabish.Tests;
+
+/**
+ * Checks how an {@link AllocationSummary} adds up a batch: files cleaned with several profiles count once, every step is divided by the same
+ * elements, and a step over its budget is reported.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class AllocationSummaryTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private AllocationSummaryTest() {}
+	
+	/**
+	 * Cleans a score with some profiles.
+	 * @param measures how many measures the score has
+	 * @param profiles the options of each profile
+	 * @return the stats of each profile's score
+	 * @throws Exception if the score can't be cleaned
+	 */
+	private static List<AllocationStats> clean(int measures, CleaningOptions... profiles) throws Exception {
+		List<AllocationStats> stats = new ArrayList<>();
+		for (CleanedScore score : MusicXMLCleaner.clean(ByteBuffer.wrap(TestScores.score(measures)), null, Arrays.asList(profiles))) {
+			stats.add(score.getAllocations());
+		}
+		return stats;
+	}
+	
+	/**
+	 * A step that only ran on one file is divided by the elements of every file, the same as a step that ran on all of them,
+	 * and a file cleaned with two profiles adds both profiles' bytes but its elements only once.
+	 * @throws Exception if the scores can't be cleaned
+	 */
+	public static void testBytesPerElement() throws Exception {
+		if (AllocationStats.threadAllocatedBytes() < 0) {
+			return; // Nothing can be counted on this Java
+		}
+		
+		List<AllocationStats> plain = clean(20, TestScores.noOperations());
+		List<AllocationStats> profiles = clean(10, new CleaningOptions(), TestScores.noOperations());
+		AllocationSummary summary = new AllocationSummary();
+		summary.add(plain);
+		summary.add(profiles);
+		
+		long elements = plain.get(0).getElementCount() + profiles.get(0).getElementCount();
+		Tests.assertEquals("elements", elements, summary.getElementCount());
+		// Only the profile that cleans the parsed score records the parse, and the other records its copy
+		long parse = plain.get(0).getBytes().get("parse") + profiles.get(1).getBytes().get("parse");
+		Tests.assertEquals("parse", parse, summary.getBytes("parse"));
+		Tests.assertEquals("parse per element", (double) parse / elements, summary.getBytesPerElement("parse"));
+		
+		long fonts = profiles.get(0).getBytes().get("replaceFonts");
+		Tests.assertEquals("a step that ran on one file", fonts, summary.getBytes("replaceFonts"));
+		Tests.assertEquals("divided by every file", (double) fonts / elements, summary.getBytesPerElement("replaceFonts"));
+		Tests.assertEquals("the copy", profiles.get(0).getBytes().get("copy"), summary.getBytes("copy"));
+		
+		Tests.assertEquals("a step that never ran", 0L, summary.getBytes("bogus"));
+		Tests.assertTrue("nothing per element", Double.isNaN(summary.getBytesPerElement("bogus")));
+		Tests.assertTrue("two files: " + summary, summary.toString().startsWith("allocation: ") && summary.toString().contains(" across 2 file(s) of " + elements + " element(s)"));
+	}
+	
+	/**
+	 * Only the steps over their budgets are reported, each with what it allocated and its budget, and a step that never ran is within any budget.
+	 * @throws Exception if the score can't be cleaned
+	 */
+	public static void testBudgets() throws Exception {
+		AllocationSummary summary = new AllocationSummary();
+		Map<String, Double> budgets = new LinkedHashMap<>();
+		budgets.put("parse", 0.0);
+		budgets.put("write", 0.0);
+		Tests.assertEquals("nothing added", Collections.emptyList(), summary.checkBudgets(budgets));
+		Tests.assertEquals("nothing measured", "allocation: not measured", summary.toString());
+		if (AllocationStats.threadAllocatedBytes() < 0) {
+			return;
+		}
+		
+		summary.add(clean(20, new CleaningOptions()));
+		double parse = summary.getBytesPerElement("parse");
+		budgets.put("formatOssias", Double.MAX_VALUE);
+		budgets.put("bogus", 0.0);
+		List<String> over = summary.checkBudgets(budgets);
+		Tests.assertEquals("over budget: " + over, 1, over.size());
+		Tests.assertTrue("names the step: " + over, over.get(0).startsWith("parse allocated ") && over.get(0).endsWith("over its budget of 0.0 B/element"));
+		
+		Map<String, Double> generous = new HashMap<>();
+		generous.put("parse", parse);
+		Tests.assertEquals("exactly on budget", Collections.emptyList(), summary.checkBudgets(generous));
+		generous.put("parse", parse / 2);
+		Tests.assertEquals("half the budget", 1, summary.checkBudgets(generous).size());
+	}
+	
+	/**
+	 * A batch cleaned with several profiles counts each input file once in its summary, however many outputs it wrote.
+	 * @throws Exception if the batch can't be run
+	 */
+	public static void testBatch() throws Exception {
+		File directory = TestScores.newDirectory();
+		List<BatchJob> jobs = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			File input = TestScores.write(directory, "song" + i + ".musicxml", TestScores.score(8));
+			jobs.add(new BatchJob(input, new File(directory, "song" + i + ".cleaned.musicxml")));
+		}
+		Map<String, CleaningOptions> profiles = new LinkedHashMap<>();
+		profiles.put("print", new CleaningOptions());
+		profiles.put("archive", TestScores.noOperations());
+		profiles.put("plain", TestScores.noOperations());
+		BatchPipeline pipeline = new BatchPipeline(new CleaningOptions());
+		pipeline.setProfiles(profiles);
+		for (BatchJob job : pipeline.run(jobs)) {
+			Tests.assertEquals(job.getInput().getName(), BatchJob.Status.SUCCEEDED, job.getStatus());
+			for (String profile : profiles.keySet()) {
+				BatchPipeline.getProfileOutput(job.getOutput(), profile).deleteOnExit();
+			}
+		}
+		
+		String summary = pipeline.getAllocations().toString();
+		if (AllocationStats.threadAllocatedBytes() >= 0) {
+			Tests.assertTrue("two files: " + summary, summary.contains(" across 2 file(s) "));
+			Tests.assertTrue("writes counted: " + summary, pipeline.getAllocations().getBytes("write") > 0);
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package net.cacabish.batch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.cacabish.CleaningOptions;
+import net.cacabish.TestScores;
+import net.cacabish.Tests;
+
+/**
+ * Checks how the {@link BatchPipeline} treats a batch as a whole: a file that fails in any stage or runs out of time doesn't hold up the others,
+ * each stage counts what it did, an interrupted batch picks up where it left off, and profiles are admitted as full scores.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class BatchPipelineTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private BatchPipelineTest() {}
+	
+	/**
+	 * Cleans a few small scores and one very large one with a budget the large one can't meet.
+	 * The large one is reported as timed out and left unwritten, and the small ones all finish.
+	 * @throws Exception if the scores can't be written
+	 */
+	public static void testTimeout() throws Exception {
+		File directory = TestScores.newDirectory();
+		List<BatchJob> jobs = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			File input = TestScores.write(directory, "small" + i + ".musicxml", TestScores.score(4));
+			jobs.add(new BatchJob(input, new File(directory, "small" + i + ".cleaned.musicxml")));
+		}
+		// Last, so that the small ones don't wait behind it with only one thread cleaning
+		File large = TestScores.write(directory, "large.musicxml", TestScores.score(16000));
+		BatchJob largeJob = new BatchJob(large, new File(directory, "large.cleaned.musicxml"));
+		jobs.add(largeJob);
+		
+		BatchPipeline pipeline = new BatchPipeline(new CleaningOptions());
+		pipeline.setParallelism(1, 1, 1);
+		pipeline.setTimeout(1500, TimeUnit.MILLISECONDS);
+		pipeline.run(jobs);
+		
+		Tests.assertEquals("the large score", BatchJob.Status.TIMED_OUT, largeJob.getStatus());
+		Tests.assertTrue("the large score's error", largeJob.getError() != null);
+		Tests.assertTrue("the large score wasn't written", !largeJob.getOutput().exists());
+		for (BatchJob job : jobs.subList(0, 3)) {
+			Tests.assertEquals(job.getInput().getName(), BatchJob.Status.SUCCEEDED, job.getStatus());
+			Tests.assertTrue(job.getInput().getName() + " was written", job.getOutput().length() > 0);
+		}
+	}
+	
+	/**
+	 * Cleans a batch with a file that fails in each stage: one that can't be read, one that can't be cleaned, and one that can't be written.
+	 * Every other file is cleaned just as it would be on its own, and each stage's counters add up to what went through it.
+	 * @throws Exception if the scores can't be written
+	 */
+	public static void testStages() throws Exception {
+		File directory = TestScores.newDirectory();
+		List<File> inputs = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			inputs.add(TestScores.write(directory, "score" + i + ".musicxml", TestScores.score(4 + i)));
+		}
+		List<BatchJob> jobs = jobs(inputs);
+		BatchJob unreadable = new BatchJob(new File(directory, "missing.musicxml"), new File(directory, "cleaned-missing.musicxml"));
+		File broken = TestScores.write(directory, "broken.musicxml", "<score-partwise>".getBytes(StandardCharsets.UTF_8));
+		BatchJob uncleanable = new BatchJob(broken, new File(directory, "cleaned-broken.musicxml"));
+		File notADirectory = TestScores.write(directory, "file", new byte[0]);
+		BatchJob unwritable = new BatchJob(inputs.get(0), new File(notADirectory, "cleaned.musicxml"));
+		jobs.add(2, unreadable);
+		jobs.add(4, uncleanable);
+		jobs.add(unwritable);
+		
+		BatchPipeline pipeline = new BatchPipeline(new CleaningOptions());
+		pipeline.setParallelism(2, 2, 1);
+		pipeline.setQueueCapacity(1);
+		pipeline.run(jobs);
+		
+		for (BatchJob job : new BatchJob[] {unreadable, uncleanable, unwritable}) {
+			Tests.assertEquals(job.getOutput().getName(), BatchJob.Status.FAILED, job.getStatus());
+			Tests.assertTrue(job.getOutput().getName() + "'s error", job.getError() != null);
+		}
+		Tests.assertTrue("the unwritable file's error: " + unwritable.getError(), unwritable.getError().contains("unable to create"));
+		for (BatchJob job : jobs) {
+			if (job == unreadable || job == uncleanable || job == unwritable) {
+				continue;
+			}
+			Tests.assertEquals(job.getInput().getName(), BatchJob.Status.SUCCEEDED, job.getStatus());
+			byte[] alone = TestScores.clean(job.getInput(), null, new CleaningOptions(), new File(directory, "alone.musicxml"));
+			Tests.assertSameBytes(job.getInput().getName(), alone, Files.readAllBytes(job.getOutput().toPath()));
+		}
+		
+		List<StageMetrics> metrics = pipeline.getMetrics();
+		StageMetrics read = metrics.get(0), clean = metrics.get(1), write = metrics.get(2);
+		Tests.assertEquals("stages", "read clean write", read.getName() + " " + clean.getName() + " " + write.getName());
+		Tests.assertEquals("read", jobs.size(), (int) read.getProcessed());
+		Tests.assertEquals("failed to read", 1, (int) read.getFailed());
+		// Idle writers can steal jobs that are waiting to be cleaned, and then both clean and write them
+		Tests.assertEquals("cleaned, by either stage", jobs.size() - 1, (int) (clean.getProcessed() + write.getStolen()));
+		Tests.assertEquals("written", jobs.size() - 1 - (int) clean.getFailed(), (int) write.getProcessed());
+		Tests.assertEquals("failed to clean or write", 2, (int) (clean.getFailed() + write.getFailed()));
+		for (StageMetrics stage : metrics) {
+			Tests.assertTrue(stage.getName() + " was never busy", stage.getBusyNanos() > 0);
+			Tests.assertTrue(stage.getName() + "'s average depth", stage.getAverageDepth() <= stage.getMaxDepth());
+		}
+		Tests.assertTrue("clean's queue went over its capacity", clean.getMaxDepth() <= 1);
+		Tests.assertTrue("write's queue went over its capacity", write.getMaxDepth() <= 1);
+	}
+	
+	/**
+	 * Makes a job for each input, writing its output next to it.
+	 * @param inputs the inputs
+	 * @return the jobs
+	 */
+	private static List<BatchJob> jobs(List<File> inputs) {
+		List<BatchJob> jobs = new ArrayList<>();
+		for (File input : inputs) {
+			jobs.add(new BatchJob(input, new File(input.getParentFile(), "cleaned-" + input.getName())));
+		}
+		return jobs;
+	}
+	
+	/**
+	 * Runs a batch with a journal, as the batch cleaner does.
+	 * @param journalFile the journal
+	 * @param inputs the inputs
+	 * @param maxAttempts the most times a file is tried
+	 * @return the jobs, once they've run
+	 * @throws Exception if the journal can't be opened
+	 */
+	private static List<BatchJob> runWithJournal(File journalFile, List<File> inputs, int maxAttempts) throws Exception {
+		try (BatchJournal journal = new BatchJournal(journalFile)) {
+			BatchPipeline pipeline = new BatchPipeline(new CleaningOptions());
+			pipeline.setJournal(journal, maxAttempts);
+			return pipeline.run(jobs(inputs));
+		}
+	}
+	
+	/**
+	 * Runs a batch that's "interrupted" after two files, leaving a half-written line at the end of its journal, then runs the whole batch again.
+	 * The two finished files are skipped, unless one's output was changed since, and the rest are cleaned and recorded.
+	 * @throws Exception if the scores can't be written
+	 */
+	public static void testResume() throws Exception {
+		File directory = TestScores.newDirectory();
+		List<File> inputs = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			inputs.add(TestScores.write(directory, "score" + i + ".musicxml", TestScores.score(4 + i)));
+		}
+		File journalFile = new File(directory, "batch.journal");
+		
+		List<BatchJob> first = runWithJournal(journalFile, inputs.subList(0, 2), 3);
+		for (BatchJob job : first) {
+			Tests.assertEquals("first run, " + job.getInput().getName(), BatchJob.Status.SUCCEEDED, job.getStatus());
+		}
+		try (OutputStream out = new FileOutputStream(journalFile, true)) {
+			out.write("SUCCEEDED\t0\t".getBytes(StandardCharsets.UTF_8)); // Interrupted while writing the next line
+		}
+		byte[] kept = Files.readAllBytes(first.get(0).getOutput().toPath());
+		Files.write(first.get(1).getOutput().toPath(), new byte[] {'x'}); // Touched since
+		
+		List<BatchJob> second = runWithJournal(journalFile, inputs, 3);
+		Tests.assertEquals("finished and untouched", BatchJob.Status.SKIPPED, second.get(0).getStatus());
+		Tests.assertSameBytes("the skipped output", kept, Files.readAllBytes(second.get(0).getOutput().toPath()));
+		Tests.assertEquals("finished but touched since", BatchJob.Status.SUCCEEDED, second.get(1).getStatus());
+		Tests.assertTrue("cleaned again", second.get(1).getOutput().length() > 1);
+		for (BatchJob job : second.subList(2, 4)) {
+			Tests.assertEquals("never finished, " + job.getInput().getName(), BatchJob.Status.SUCCEEDED, job.getStatus());
+		}
+		
+		List<BatchJob> third = runWithJournal(journalFile, inputs, 3);
+		for (BatchJob job : third) {
+			Tests.assertEquals("all done, " + job.getInput().getName(), BatchJob.Status.SKIPPED, job.getStatus());
+		}
+	}
+	
+	/**
+	 * A file that keeps failing is tried again on each run until it has failed as many times as allowed, and then given up on without being read.
+	 * A file that changes is tried afresh.
+	 * @throws Exception if the file can't be written
+	 */
+	public static void testMaxAttempts() throws Exception {
+		File directory = TestScores.newDirectory();
+		File broken = TestScores.write(directory, "broken.musicxml", "<score-partwise>".getBytes(StandardCharsets.UTF_8));
+		List<File> inputs = Collections.singletonList(broken);
+		File journalFile = new File(directory, "batch.journal");
+		
+		for (int attempt = 1; attempt <= 2; attempt++) {
+			BatchJob job = runWithJournal(journalFile, inputs, 2).get(0);
+			Tests.assertEquals("attempt " + attempt, BatchJob.Status.FAILED, job.getStatus());
+			Tests.assertTrue("attempt " + attempt + " was tried", !job.getError().startsWith("gave up"));
+		}
+		BatchJob givenUp = runWithJournal(journalFile, inputs, 2).get(0);
+		Tests.assertEquals("given up", BatchJob.Status.FAILED, givenUp.getStatus());
+		Tests.assertTrue("given up: " + givenUp.getError(), givenUp.getError().contains("gave up after 2 failed attempt(s)"));
+		
+		TestScores.write(directory, "broken.musicxml", TestScores.score(4));
+		Tests.assertEquals("fixed", BatchJob.Status.SUCCEEDED, runWithJournal(journalFile, inputs, 2).get(0).getStatus());
+	}
+	
+	/**
+	 * Cleans a score with profiles under a budget so tight that it would be switched to lazy parsing without them.
+	 * It's run alone instead, and every profile's score is written.
+	 * @throws Exception if the score can't be written
+	 */
+	public static void testProfilesWithAdmission() throws Exception {
+		File directory = TestScores.newDirectory();
+		File input = TestScores.write(directory, "score.musicxml", TestScores.score(40));
+		File output = new File(directory, "cleaned.musicxml");
+		
+		CleaningOptions options = new CleaningOptions();
+		options.lazyParsing = true;
+		Map<String, CleaningOptions> profiles = new LinkedHashMap<>();
+		profiles.put("print", options);
+		profiles.put("archive", new CleaningOptions());
+		AdmissionController controller = new AdmissionController(input.length() * 20, 4);
+		
+		BatchPipeline pipeline = new BatchPipeline(options);
+		pipeline.setProfiles(profiles);
+		pipeline.setAdmissionController(controller);
+		BatchJob job = pipeline.run(Collections.singletonList(new BatchJob(input, output))).get(0);
+		
+		Tests.assertEquals("status", BatchJob.Status.SUCCEEDED, job.getStatus());
+		for (String profile : profiles.keySet()) {
+			Tests.assertTrue(profile + " was written", BatchPipeline.getProfileOutput(output, profile).length() > 0);
+		}
+		Tests.assertTrue("run alone, not lazily", controller.toString().contains("(0 switched to lazy parsing, 1 run alone)"));
+	}
+	
+	/**
+	 * A profile's score is written next to the job's output with the profile's name before the extension, and a batch with profiles can't
+	 * keep a journal, since each file has more than one output.
+	 * @throws Exception if the journal can't be opened
+	 */
+	public static void testProfileOutputs() throws Exception {
+		File directory = TestScores.newDirectory();
+		Tests.assertEquals("an extension", new File(directory, "song.print.musicxml"), BatchPipeline.getProfileOutput(new File(directory, "song.musicxml"), "print"));
+		Tests.assertEquals("two extensions", new File(directory, "song.cleaned.print.xml"),
+				BatchPipeline.getProfileOutput(new File(directory, "song.cleaned.xml"), "print"));
+		Tests.assertEquals("no extension", new File(directory, "song.print"), BatchPipeline.getProfileOutput(new File(directory, "song"), "print"));
+		Tests.assertEquals("a hidden file", new File(directory, ".song.print"), BatchPipeline.getProfileOutput(new File(directory, ".song"), "print"));
+		
+		BatchPipeline pipeline = new BatchPipeline(new CleaningOptions());
+		pipeline.setProfiles(Collections.singletonMap("print", new CleaningOptions()));
+		try (BatchJournal journal = new BatchJournal(new File(directory, "journal.txt"))) {
+			pipeline.setJournal(journal, 1);
+			pipeline.run(Collections.emptyList());
+			Tests.fail("a journal was kept with profiles");
+		} catch (IllegalStateException e) {
+			// Good
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package net.cacabish.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import net.cacabish.CleaningOptions;
+import net.cacabish.TestScores;
+import net.cacabish.Tests;
+
+/**
+ * Checks which files the {@link FolderWatcher} cleans and where it writes them: files already in the folder and files saved into it are cleaned
+ * once they're quiet, cleaned files and hidden files aren't, and files that were already cleaned (or already failed) aren't cleaned again.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class FolderWatcherTest {
+	
+	/**
+	 * How long a file must be quiet before it's cleaned, in milliseconds. Short, so the tests don't take long.
+	 */
+	private static final long QUIET_MILLIS = 300;
+	
+	/**
+	 * How long to wait for a file to be cleaned, in milliseconds.
+	 */
+	private static final long TIMEOUT = 30000;
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private FolderWatcherTest() {}
+	
+	/**
+	 * A watcher watching on its own thread, with one worker, and with what it prints kept aside.
+	 */
+	private static final class RunningWatcher implements AutoCloseable {
+		
+		/**
+		 * The watcher.
+		 */
+		private final FolderWatcher watcher;
+		
+		/**
+		 * The thread the watcher is watching on.
+		 */
+		private final Thread thread;
+		
+		/**
+		 * What the watcher and its worker have printed.
+		 */
+		private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+		
+		/**
+		 * Where everything else is printed, which is put back once the watcher stops.
+		 */
+		private final PrintStream console = System.out;
+		
+		/**
+		 * Starts a watcher, and waits until it's watching.
+		 * @param root the folder to watch
+		 * @param outputDirectory the folder to write cleaned files to, or {@code null} to write them next to their input
+		 * @throws Exception if it can't be started
+		 */
+		RunningWatcher(File root, File outputDirectory) throws Exception {
+			watcher = new FolderWatcher(root, outputDirectory, null, 1, QUIET_MILLIS, new CleaningOptions());
+			System.setOut(new PrintStream(log, true));
+			thread = new Thread(() -> {
+				try {
+					watcher.watch();
+				} catch (IOException | InterruptedException e) {
+					e.printStackTrace(); // The files it should have cleaned will say so
+				}
+			}, "watcher");
+			thread.start();
+			
+			// It only waits for events once every folder is registered
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+			while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+				Tests.assertTrue("the watcher never started watching", thread.isAlive() && System.currentTimeMillis() < deadline);
+				Thread.sleep(10);
+			}
+		}
+		
+		/**
+		 * @return what has been printed so far
+		 */
+		String log() {
+			return log.toString();
+		}
+		
+		@Override
+		public void close() {
+			watcher.close();
+			try {
+				thread.join(TIMEOUT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt(); // Leave it to stop on its own
+			}
+			System.setOut(console);
+			console.print(log());
+		}
+	}
+	
+	/**
+	 * Cleans a score on its own, away from any watched folder.
+	 * @param score the score
+	 * @return the cleaned score
+	 * @throws Exception if it can't be cleaned
+	 */
+	private static byte[] cleanAlone(byte[] score) throws Exception {
+		File directory = TestScores.newDirectory();
+		return TestScores.clean(TestScores.write(directory, "score.musicxml", score), null, new CleaningOptions(), new File(directory, "cleaned.musicxml"));
+	}
+	
+	/**
+	 * @param input a file in a watched folder
+	 * @return what the watcher prints once it has cleaned the file
+	 */
+	private static String cleaned(File input) {
+		return "Cleaned " + input.getAbsoluteFile().toPath().normalize() + " to ";
+	}
+	
+	/**
+	 * Waits for a watcher to have printed something a number of times.
+	 * @param running the watcher
+	 * @param text what it prints
+	 * @param times how many times it should have printed it
+	 * @throws InterruptedException if interrupted
+	 */
+	private static void awaitLogged(RunningWatcher running, String text, int times) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (count(running.log(), text) < times) {
+			Tests.assertTrue("never printed \"" + text + "\" " + times + " time(s)", System.currentTimeMillis() < deadline);
+			Thread.sleep(20);
+		}
+	}
+	
+	/**
+	 * @param log what a watcher printed
+	 * @param text something it may have printed
+	 * @return how many times it was printed
+	 */
+	private static int count(String log, String text) {
+		int count = 0;
+		for (int i = log.indexOf(text); i >= 0; i = log.indexOf(text, i + 1)) {
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Files already in the folder, including in a subfolder, are cleaned next to themselves, while cleaned files and hidden files are left alone.
+	 * A second watcher on the same folder doesn't clean them again, but does clean a file that's new.
+	 * @throws Exception if the files can't be written or cleaned
+	 */
+	public static void testExistingFiles() throws Exception {
+		File root = TestScores.newDirectory();
+		File subfolder = new File(root, "sub");
+		Tests.assertTrue("the subfolder", subfolder.mkdir());
+		byte[] score = TestScores.score(4);
+		byte[] cleaned = cleanAlone(score);
+		TestScores.write(root, "song.musicxml", score);
+		TestScores.write(subfolder, "other.musicxml", score);
+		TestScores.write(root, "done.cleaned.musicxml", score);
+		TestScores.write(root, ".hidden.musicxml", score);
+		TestScores.write(root, "~lock.musicxml", score);
+		
+		try (RunningWatcher running = new RunningWatcher(root, null)) {
+			awaitLogged(running, cleaned(new File(root, "song.musicxml")), 1);
+			awaitLogged(running, cleaned(new File(subfolder, "other.musicxml")), 1);
+		}
+		Tests.assertSameBytes("song", cleaned, Files.readAllBytes(new File(root, "song.cleaned.musicxml").toPath()));
+		Tests.assertSameBytes("other", cleaned, Files.readAllBytes(new File(subfolder, "other.cleaned.musicxml").toPath()));
+		Tests.assertTrue("a cleaned file was cleaned", !new File(root, "done.cleaned.cleaned.musicxml").exists());
+		Tests.assertTrue("a hidden file was cleaned", !new File(root, ".hidden.cleaned.musicxml").exists());
+		Tests.assertTrue("a lock file was cleaned", !new File(root, "~lock.cleaned.musicxml").exists());
+		
+		try (RunningWatcher running = new RunningWatcher(root, null)) {
+			// With one worker, the files that were already there are looked at before this one
+			TestScores.write(root, "new.musicxml", score);
+			awaitLogged(running, cleaned(new File(root, "new.musicxml")), 1);
+			Tests.assertEquals("files cleaned again: " + running.log(), 1, count(running.log(), "Cleaned "));
+		}
+		Tests.assertSameBytes("new", cleaned, Files.readAllBytes(new File(root, "new.cleaned.musicxml").toPath()));
+	}
+	
+	/**
+	 * A file saved in two pieces is only cleaned once it's quiet, so it's cleaned once and in full. Saving it again with changes cleans it again,
+	 * a file that fails isn't tried again until it's saved with different contents, and cleaned files go in the output folder if there is one.
+	 * @throws Exception if the files can't be written or cleaned
+	 */
+	public static void testSavedFiles() throws Exception {
+		File root = TestScores.newDirectory();
+		File outputDirectory = new File(root, "out");
+		byte[] score = TestScores.score(8);
+		byte[] changed = TestScores.score(8, 3);
+		byte[] broken = "<score-partwise>".getBytes(StandardCharsets.UTF_8);
+		byte[] cleanedScore = cleanAlone(score);
+		byte[] cleanedChange = cleanAlone(changed);
+		File input = new File(root, "song.musicxml");
+		File output = new File(outputDirectory, "song.musicxml");
+		
+		try (RunningWatcher running = new RunningWatcher(root, outputDirectory)) {
+			try (OutputStream out = new FileOutputStream(input)) {
+				out.write(score, 0, score.length / 2);
+				out.flush();
+				Thread.sleep(QUIET_MILLIS / 3);
+				out.write(score, score.length / 2, score.length - score.length / 2);
+			}
+			awaitLogged(running, cleaned(input), 1);
+			Tests.assertSameBytes("saved in two pieces", cleanedScore, Files.readAllBytes(output.toPath()));
+			Tests.assertTrue("a half-saved file was cleaned", !running.log().contains("Unable to clean"));
+			
+			TestScores.write(root, "song.musicxml", changed);
+			awaitLogged(running, cleaned(input), 2);
+			Tests.assertSameBytes("saved again", cleanedChange, Files.readAllBytes(output.toPath()));
+			
+			File brokenInput = TestScores.write(root, "broken.musicxml", broken);
+			awaitLogged(running, "Unable to clean", 1);
+			TestScores.write(root, "broken.musicxml", broken);
+			awaitLogged(running, "since it failed before", 1);
+			TestScores.write(root, "broken.musicxml", score);
+			awaitLogged(running, cleaned(brokenInput), 1);
+			Tests.assertSameBytes("fixed", cleanedScore, Files.readAllBytes(new File(outputDirectory, "broken.musicxml").toPath()));
+			Tests.assertEquals("tries of the broken file", 1, count(running.log(), "Unable to clean"));
+			Tests.assertEquals("files cleaned", 3, count(running.log(), "Cleaned "));
+		}
+		Tests.assertTrue("a cleaned file was written next to its input", !new File(root, "song.cleaned.musicxml").exists());
+	}
+}
@@ -0,0 +1,86 @@
+package net.cacabish.batch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.cacabish.TestScores;
+import net.cacabish.Tests;
+
+/**
+ * Checks the order the {@link JobScheduler} puts a batch in, and how long it predicts the cleaning will take.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class JobSchedulerTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private JobSchedulerTest() {}
+	
+	/**
+	 * Makes jobs that are predicted to take the given times, in the given order.
+	 * @param nanos the predicted times
+	 * @return the jobs
+	 */
+	private static List<BatchJob> predicted(long... nanos) {
+		List<BatchJob> jobs = new ArrayList<>();
+		for (int i = 0; i < nanos.length; i++) {
+			BatchJob job = new BatchJob(new File("job" + i + ".musicxml"), new File("cleaned" + i + ".musicxml"));
+			job.predictedNanos = nanos[i];
+			jobs.add(job);
+		}
+		return jobs;
+	}
+	
+	/**
+	 * Without any history, files are ordered largest first, with files of the same size kept in the order they were given.
+	 * With history, a file is ordered by how long it actually took, whatever its size.
+	 * @throws Exception if the files can't be written
+	 */
+	public static void testLongestFirst() throws Exception {
+		File directory = TestScores.newDirectory();
+		List<BatchJob> jobs = new ArrayList<>();
+		int[] measures = {4, 12, 8, 12, 3};
+		for (int i = 0; i < measures.length; i++) {
+			File input = TestScores.write(directory, "score" + i + ".musicxml", TestScores.score(measures[i]));
+			jobs.add(new BatchJob(input, new File(directory, "cleaned" + i + ".musicxml")));
+		}
+		
+		List<BatchJob> ordered = JobScheduler.orderLongestFirst(jobs, new CostModel());
+		Tests.assertEquals("by size", Arrays.asList(jobs.get(1), jobs.get(3), jobs.get(2), jobs.get(0), jobs.get(4)), ordered);
+		Tests.assertEquals("the given list is left alone", "score0.musicxml", jobs.get(0).getInput().getName());
+		for (int i = 1; i < ordered.size(); i++) {
+			Tests.assertTrue("predictions go down", ordered.get(i - 1).getPredictedNanos() >= ordered.get(i).getPredictedNanos());
+		}
+		
+		// The smallest file turned out to be the slowest
+		CostModel model = new CostModel();
+		for (BatchJob job : jobs) {
+			job.size = job.getInput().length();
+			job.cleanNanos = job == jobs.get(4) ? 10_000_000_000L : job.size * 1_000;
+			job.readNanos = job.writeNanos = 60_000_000_000L; // Not counted
+			job.succeed();
+		}
+		model.record(jobs);
+		Tests.assertTrue("fitted", model.isFitted());
+		ordered = JobScheduler.orderLongestFirst(jobs, model);
+		Tests.assertEquals("slowest first", jobs.get(4), ordered.get(0));
+		Tests.assertEquals("predicted from its history", 10_000_000_000L, ordered.get(0).getPredictedNanos());
+	}
+	
+	/**
+	 * Each job goes to whichever thread is free first, so longest first finishes sooner than shortest first.
+	 */
+	public static void testCleanMakespan() {
+		Tests.assertEquals("longest first", 8L, JobScheduler.predictCleanMakespan(predicted(4, 3, 3, 2, 2), 2));
+		Tests.assertEquals("shortest first", 9L, JobScheduler.predictCleanMakespan(predicted(2, 2, 3, 3, 4), 2));
+		Tests.assertEquals("one thread", 14L, JobScheduler.predictCleanMakespan(predicted(4, 3, 3, 2, 2), 1));
+		Tests.assertEquals("a thread each", 4L, JobScheduler.predictCleanMakespan(predicted(4, 3, 3, 2, 2), 8));
+		Tests.assertEquals("nothing to do", 0L, JobScheduler.predictCleanMakespan(predicted(), 2));
+	}
+}
@@ -0,0 +1,318 @@
+package net.cacabish.daemon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.cacabish.CleaningOptions;
+import net.cacabish.TestScores;
+import net.cacabish.Tests;
+
+/**
+ * Checks that the daemon cleans what it is asked to by its own user, and nothing else: connections without the token, connections that send garbage,
+ * options that read files, and paths outside the allowed directories are all turned away.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class CleanerDaemonTest {
+	
+	/**
+	 * How long to wait for the daemon to answer, in milliseconds.
+	 */
+	private static final int TIMEOUT = 30000;
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private CleanerDaemonTest() {}
+	
+	/**
+	 * A daemon running on its own thread, with a home directory and an allowed directory of its own.
+	 */
+	private static final class RunningDaemon implements AutoCloseable {
+		
+		/**
+		 * The daemon.
+		 */
+		final CleanerDaemon daemon;
+		
+		/**
+		 * The directory requests may clean files in.
+		 */
+		final File allowed;
+		
+		/**
+		 * A directory requests may not touch.
+		 */
+		final File outside;
+		
+		/**
+		 * The thread the daemon is serving on.
+		 */
+		private final Thread thread;
+		
+		/**
+		 * The user's real home directory, which is put back once the daemon stops.
+		 */
+		private final String home;
+		
+		/**
+		 * Starts a daemon. Its token is written to a home directory made for the test, so it doesn't touch the user's.
+		 * @throws IOException if it can't be started
+		 */
+		RunningDaemon() throws IOException {
+			File root = TestScores.newDirectory();
+			File fakeHome = new File(root, "home");
+			allowed = new File(root, "allowed");
+			outside = new File(root, "outside");
+			for (File directory : new File[] {fakeHome, allowed, outside}) {
+				directory.mkdir();
+				directory.deleteOnExit();
+			}
+			
+			home = System.getProperty("user.home");
+			System.setProperty("user.home", fakeHome.getPath());
+			daemon = new CleanerDaemon(0, 1, new CleaningOptions(), Collections.singletonList(allowed));
+			thread = new Thread(() -> {
+				try {
+					daemon.serve();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}, "cleaner-daemon-test");
+			thread.start();
+		}
+		
+		/**
+		 * Reads the daemon's token from its file.
+		 * @return the token
+		 * @throws IOException if it can't be read
+		 */
+		String token() throws IOException {
+			return new String(Files.readAllBytes(CleanerDaemon.getTokenFile(daemon.getPort()).toPath()), StandardCharsets.US_ASCII).trim();
+		}
+		
+		/**
+		 * Sends lines over a new connection, all at once, and reads every line that comes back until the daemon closes the connection.
+		 * @param lines the lines to send
+		 * @return the lines that came back
+		 * @throws IOException if the daemon can't be reached, or doesn't close the connection in time
+		 */
+		List<String> converse(String... lines) throws IOException {
+			List<String> responses = new ArrayList<>();
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort());
+					Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+					BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+				socket.setSoTimeout(TIMEOUT);
+				for (String line : lines) {
+					out.write(line);
+					out.write('\n');
+				}
+				out.flush();
+				socket.shutdownOutput(); // A good request is answered and then the daemon sees us hang up, so every conversation ends
+				
+				String response;
+				while ((response = in.readLine()) != null) {
+					responses.add(response);
+				}
+			}
+			return responses;
+		}
+		
+		/**
+		 * Stops the daemon and puts the user's home directory back.
+		 */
+		@Override
+		public void close() {
+			daemon.shutdown();
+			try {
+				thread.join(TIMEOUT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt(); // Leave it to stop on its own
+			}
+			System.setProperty("user.home", home);
+		}
+	}
+	
+	/**
+	 * Checks that a conversation was answered with a single error, meaning the daemon stopped listening after the bad line.
+	 * @param message what was sent
+	 * @param responses what came back
+	 */
+	private static void assertTurnedAway(String message, List<String> responses) {
+		Tests.assertEquals(message + " got the wrong number of answers " + responses, 1, responses.size());
+		Tests.assertTrue(message + " wasn't an error: " + responses.get(0), responses.get(0).startsWith("ERROR "));
+	}
+	
+	/**
+	 * A connection that doesn't start with the token is turned away, and the daemon doesn't answer anything after it.
+	 * @throws Exception if the daemon can't be reached
+	 */
+	public static void testNoToken() throws Exception {
+		try (RunningDaemon running = new RunningDaemon()) {
+			assertTurnedAway("no token", running.converse("PING", "PING"));
+			assertTurnedAway("an HTTP request", running.converse("POST / HTTP/1.1", "Host: localhost", "", "PING"));
+		}
+	}
+	
+	/**
+	 * A connection with the wrong token is turned away.
+	 * @throws Exception if the daemon can't be reached
+	 */
+	public static void testWrongToken() throws Exception {
+		try (RunningDaemon running = new RunningDaemon()) {
+			char[] wrong = running.token().toCharArray();
+			wrong[0] = wrong[0] == '0' ? '1' : '0';
+			assertTurnedAway("wrong token", running.converse("AUTH " + new String(wrong), "PING"));
+			assertTurnedAway("empty token", running.converse("AUTH ", "PING"));
+		}
+	}
+	
+	/**
+	 * A line the daemon doesn't understand closes the connection, even after the token, so nothing after it is run.
+	 * @throws Exception if the daemon can't be reached
+	 */
+	public static void testGarbageAfterToken() throws Exception {
+		try (RunningDaemon running = new RunningDaemon()) {
+			String auth = "AUTH " + running.token();
+			Tests.assertEquals("ping", Arrays.asList("OK", "OK"), running.converse(auth, "PING", "", "PING"));
+			assertTurnedAway("garbage", running.converse(auth, "GET / HTTP/1.1", "PING"));
+			
+			File file = TestScores.write(running.allowed, "score.musicxml", TestScores.score(4));
+			assertTurnedAway("garbage in a request", running.converse(auth, "CLEAN " + file.getAbsolutePath(), "RM -RF /", "END", "PING"));
+			assertTurnedAway("malformed option", running.converse(auth, "CLEAN " + file.getAbsolutePath(), "OPTION lazyParsing", "END"));
+			assertTurnedAway("bad option value", running.converse(auth, "CLEAN " + file.getAbsolutePath(), "OPTION lazyParsing=maybe", "END"));
+			Tests.assertSameBytes("the score was cleaned anyway", TestScores.score(4), Files.readAllBytes(file.toPath()));
+		}
+	}
+	
+	/**
+	 * Options that would read another file or loosen the limits can't be set by a request.
+	 * @throws Exception if the daemon can't be reached
+	 */
+	public static void testOptionNotAllowed() throws Exception {
+		try (RunningDaemon running = new RunningDaemon()) {
+			String auth = "AUTH " + running.token();
+			File file = TestScores.write(running.allowed, "score.musicxml", TestScores.score(4));
+			for (String option : new String[] {"fontMapper=/etc/passwd", "limits=default", "limits.maxFileSize=999999999999", "noSuchOption=true"}) {
+				assertTurnedAway(option, running.converse(auth, "CLEAN " + file.getAbsolutePath(), "OPTION " + option, "END"));
+			}
+			Tests.assertSameBytes("the score was cleaned anyway", TestScores.score(4), Files.readAllBytes(file.toPath()));
+		}
+	}
+	
+	/**
+	 * Paths outside the allowed directories, relative paths, paths that aren't MusicXML files, and symbolic links are all turned away.
+	 * @throws Exception if the daemon can't be reached
+	 */
+	public static void testPathNotAllowed() throws Exception {
+		try (RunningDaemon running = new RunningDaemon()) {
+			String auth = "AUTH " + running.token();
+			File inside = TestScores.write(running.allowed, "score.musicxml", TestScores.score(4));
+			File outside = TestScores.write(running.outside, "score.musicxml", TestScores.score(4));
+			
+			assertTurnedAway("outside", running.converse(auth, "CLEAN " + outside.getAbsolutePath(), "END"));
+			assertTurnedAway("escaping with ..", running.converse(auth,
+					"CLEAN " + running.allowed.getAbsolutePath() + File.separator + ".." + File.separator + "outside" + File.separator + "score.musicxml", "END"));
+			assertTurnedAway("relative", running.converse(auth, "CLEAN score.musicxml", "END"));
+			assertTurnedAway("output outside", running.converse(auth, "CLEAN " + inside.getAbsolutePath(), "OUTPUT " + outside.getAbsolutePath(), "END"));
+			assertTurnedAway("not MusicXML", running.converse(auth, "CLEAN " + inside.getAbsolutePath(),
+					"OUTPUT " + new File(running.allowed, "notes.txt").getAbsolutePath(), "END"));
+			
+			File link = new File(running.allowed, "link.musicxml");
+			try {
+				Files.createSymbolicLink(link.toPath(), outside.toPath());
+				link.deleteOnExit();
+				assertTurnedAway("symbolic link", running.converse(auth, "CLEAN " + link.getAbsolutePath(), "END"));
+			} catch (UnsupportedOperationException | IOException e) {
+				System.out.println("Skipping the symbolic link (" + e.getMessage() + ").");
+			}
+			
+			Tests.assertSameBytes("the outside score was cleaned anyway", TestScores.score(4), Files.readAllBytes(outside.toPath()));
+			Tests.assertSameBytes("the inside score was cleaned anyway", TestScores.score(4), Files.readAllBytes(inside.toPath()));
+		}
+	}
+	
+	/**
+	 * A good request from the client is cleaned.
+	 * @throws Exception if the daemon can't be reached or the score can't be cleaned
+	 */
+	public static void testClean() throws Exception {
+		try (RunningDaemon running = new RunningDaemon()) {
+			File file = TestScores.write(running.allowed, "score.musicxml", TestScores.score(4));
+			File output = new File(running.allowed, "cleaned.musicxml");
+			output.deleteOnExit();
+			
+			String response = CleanerClient.send(running.daemon.getPort(),
+					Arrays.asList("CLEAN " + file.getAbsolutePath(), "OUTPUT " + output.getAbsolutePath(), "OPTION formatOssias=false", "END"));
+			Tests.assertEquals("response", "OK " + output.getCanonicalPath(), response);
+			
+			CleaningOptions options = new CleaningOptions();
+			options.formatOssias = false;
+			byte[] expected = TestScores.clean(file, null, options, new File(running.outside, "expected.musicxml"));
+			Tests.assertSameBytes("cleaned by the daemon", expected, Files.readAllBytes(output.toPath()));
+		}
+	}
+	
+	/**
+	 * One connection can send several requests, each answered in turn: options only last for their own request, a score without an output is
+	 * cleaned in place, and a score that can't be cleaned is an error that doesn't end the conversation.
+	 * @throws Exception if the daemon can't be reached or a score can't be cleaned
+	 */
+	public static void testConversation() throws Exception {
+		try (RunningDaemon running = new RunningDaemon()) {
+			File first = TestScores.write(running.allowed, "first.musicxml", TestScores.score(4));
+			File firstOutput = new File(running.allowed, "first-cleaned.musicxml");
+			firstOutput.deleteOnExit();
+			File second = TestScores.write(running.allowed, "second.musicxml", TestScores.score(4));
+			File broken = TestScores.write(running.allowed, "broken.musicxml", "<score-partwise>".getBytes(StandardCharsets.UTF_8));
+			
+			List<String> responses = running.converse("AUTH " + running.token(), "PING",
+					"CLEAN " + first.getAbsolutePath(), "OUTPUT " + firstOutput.getAbsolutePath(), "OPTION formatOssias=false", "END",
+					"CLEAN " + second.getAbsolutePath(), "END",
+					"CLEAN " + broken.getAbsolutePath(), "END",
+					"PING");
+			Tests.assertEquals("answers " + responses, 5, responses.size());
+			Tests.assertEquals("ping", "OK", responses.get(0));
+			Tests.assertEquals("first", "OK " + firstOutput.getCanonicalPath(), responses.get(1));
+			Tests.assertEquals("second, in place", "OK " + second.getCanonicalPath(), responses.get(2));
+			Tests.assertTrue("broken: " + responses.get(3), responses.get(3).startsWith("ERROR "));
+			Tests.assertEquals("still listening", "OK", responses.get(4));
+			
+			byte[] expected = TestScores.clean(TestScores.write(running.outside, "score.musicxml", TestScores.score(4)), null, new CleaningOptions(),
+					new File(running.outside, "expected.musicxml"));
+			Tests.assertSameBytes("the second score, with the default options", expected, Files.readAllBytes(second.toPath()));
+		}
+	}
+	
+	/**
+	 * The token file can only be read by the user, and {@code SHUTDOWN} stops the daemon.
+	 * @throws Exception if the daemon can't be reached
+	 */
+	public static void testTokenAndShutdown() throws Exception {
+		try (RunningDaemon running = new RunningDaemon()) {
+			File tokenFile = CleanerDaemon.getTokenFile(running.daemon.getPort());
+			if (Files.getFileStore(tokenFile.toPath()).supportsFileAttributeView("posix")) {
+				Tests.assertEquals("token file permissions", "rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+			}
+			
+			Tests.assertEquals("shut down", Collections.singletonList("OK"), running.converse("AUTH " + running.token(), "SHUTDOWN"));
+			running.thread.join(TIMEOUT);
+			Tests.assertTrue("stopped serving", !running.thread.isAlive());
+		}
+	}
+}
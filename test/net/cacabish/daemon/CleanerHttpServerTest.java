@@ -0,0 +1,263 @@
+package net.cacabish.daemon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.cacabish.CleaningOptions;
+import net.cacabish.MusicXMLCleaner;
+import net.cacabish.ParsingLimits;
+import net.cacabish.ParsingLimitsTest;
+import net.cacabish.TestScores;
+import net.cacabish.Tests;
+
+/**
+ * Checks how the HTTP server answers: scores that are too large or over a limit, a server that's too busy, and gzipped requests and responses.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class CleanerHttpServerTest {
+	
+	/**
+	 * How long to wait for the server to answer, in milliseconds.
+	 */
+	private static final int TIMEOUT = 30000;
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private CleanerHttpServerTest() {}
+	
+	/**
+	 * What the server answered.
+	 */
+	static final class Response {
+		/**
+		 * The HTTP status.
+		 */
+		final int status;
+		/**
+		 * The body, unzipped if it was gzipped.
+		 */
+		final byte[] body;
+		/**
+		 * The headers that matter to the tests.
+		 */
+		final String contentEncoding, retryAfter;
+		
+		/**
+		 * Reads a response.
+		 * @param connection the connection
+		 * @throws IOException if it can't be read
+		 */
+		Response(HttpURLConnection connection) throws IOException {
+			status = connection.getResponseCode();
+			contentEncoding = connection.getHeaderField("Content-Encoding");
+			retryAfter = connection.getHeaderField("Retry-After");
+			InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			if ("gzip".equals(contentEncoding)) {
+				in = new GZIPInputStream(in);
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			in.close();
+			body = bytes.toByteArray();
+		}
+		
+		/**
+		 * @return the body as text
+		 */
+		String text() {
+			return new String(body, StandardCharsets.UTF_8);
+		}
+	}
+	
+	/**
+	 * Starts a server on a free port.
+	 * @param maxConcurrent the most scores to clean at the same time
+	 * @param maxBytes the largest score to accept
+	 * @return the server
+	 * @throws IOException if it can't be started
+	 */
+	static CleanerHttpServer start(int maxConcurrent, int maxBytes) throws IOException {
+		return start(maxConcurrent, maxBytes, new CleaningOptions());
+	}
+	
+	/**
+	 * Starts a server on a free port.
+	 * @param maxConcurrent the most scores to clean at the same time
+	 * @param maxBytes the largest score to accept
+	 * @param defaults the options for every request, including the limits
+	 * @return the server
+	 * @throws IOException if it can't be started
+	 */
+	static CleanerHttpServer start(int maxConcurrent, int maxBytes, CleaningOptions defaults) throws IOException {
+		CleanerHttpServer server = new CleanerHttpServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), maxConcurrent, maxBytes, defaults);
+		server.start();
+		return server;
+	}
+	
+	/**
+	 * Sends a score to a server.
+	 * @param server the server
+	 * @param query the query string, or {@code null}
+	 * @param body the body
+	 * @param gzip whether to gzip the body and ask for a gzipped response
+	 * @return the response
+	 * @throws IOException if the server can't be reached
+	 */
+	static Response post(CleanerHttpServer server, String query, byte[] body, boolean gzip) throws IOException {
+		URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), server.getPort(), "/clean" + (query == null ? "" : "?" + query));
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		if (gzip) {
+			ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+			try (OutputStream out = new GZIPOutputStream(zipped)) {
+				out.write(body);
+			}
+			body = zipped.toByteArray();
+			connection.setRequestProperty("Content-Encoding", "gzip");
+			connection.setRequestProperty("Accept-Encoding", "gzip");
+		}
+		connection.setFixedLengthStreamingMode(body.length);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body);
+		}
+		try {
+			return new Response(connection);
+		} finally {
+			connection.disconnect();
+		}
+	}
+	
+	/**
+	 * A score is cleaned the same whether or not it's sent and sent back gzipped.
+	 * @throws Exception if the score can't be cleaned
+	 */
+	public static void testGzip() throws Exception {
+		byte[] score = TestScores.score(40);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		MusicXMLCleaner.writeToStream(MusicXMLCleaner.clean(ByteBuffer.wrap(score), new CleaningOptions()), expected);
+		
+		CleanerHttpServer server = start(1, CleanerHttpServer.DEFAULT_MAX_BYTES);
+		try {
+			Response plain = post(server, null, score, false);
+			Tests.assertEquals("plain status", 200, plain.status);
+			Tests.assertEquals("plain encoding", null, plain.contentEncoding);
+			Tests.assertSameBytes("plain", expected.toByteArray(), plain.body);
+			
+			Response zipped = post(server, null, score, true);
+			Tests.assertEquals("gzipped status", 200, zipped.status);
+			Tests.assertEquals("gzipped encoding", "gzip", zipped.contentEncoding);
+			Tests.assertSameBytes("gzipped", expected.toByteArray(), zipped.body);
+		} finally {
+			server.stop();
+		}
+	}
+	
+	/**
+	 * A score over the size limit is turned away with a 413, whether its length says so up front or it's only too large once it's unzipped.
+	 * A body that says it's gzipped but isn't is a 400.
+	 * @throws Exception if the server can't be reached
+	 */
+	public static void testTooLarge() throws Exception {
+		byte[] score = TestScores.score(40);
+		CleanerHttpServer server = start(1, score.length / 2);
+		try {
+			Response plain = post(server, null, score, false);
+			Tests.assertEquals("plain status", 413, plain.status);
+			Tests.assertTrue("plain message", plain.text().contains("at most " + score.length / 2 + " bytes"));
+			
+			Response zipped = post(server, null, score, true);
+			Tests.assertEquals("gzipped status", 413, zipped.status);
+			
+			URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), server.getPort(), "/clean");
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setReadTimeout(TIMEOUT);
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Encoding", "gzip");
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(TestScores.score(1), 0, 100);
+			}
+			Tests.assertEquals("not gzip", 400, new Response(connection).status);
+		} finally {
+			server.stop();
+		}
+	}
+	
+	/**
+	 * A score over the server's size limit is a 413, and one over any other limit is a 422, each naming the limit it went over.
+	 * @throws Exception if the server can't be reached
+	 */
+	public static void testLimits() throws Exception {
+		byte[] large = TestScores.score(40);
+		CleaningOptions defaults = new CleaningOptions();
+		defaults.limits = ParsingLimits.DEFAULT.with("maxFileSize", large.length / 2).with("maxCredits", 2);
+		CleanerHttpServer server = start(1, CleanerHttpServer.DEFAULT_MAX_BYTES, defaults);
+		try {
+			Response tooLarge = post(server, null, large, false);
+			Tests.assertEquals("too large status", 413, tooLarge.status);
+			Tests.assertTrue("too large message: " + tooLarge.text(), tooLarge.text().contains("maxFileSize"));
+			
+			Response tooManyCredits = post(server, null, TestScores.score(4), true);
+			Tests.assertEquals("too many credits status", 422, tooManyCredits.status);
+			Tests.assertTrue("too many credits message: " + tooManyCredits.text(), tooManyCredits.text().contains("maxCredits"));
+		
+		} finally {
+			server.stop();
+		}
+		
+		defaults.limits = ParsingLimits.UNTRUSTED;
+		server = start(1, CleanerHttpServer.DEFAULT_MAX_BYTES, defaults);
+		try {
+			Response laughs = post(server, null, ParsingLimitsTest.laughs(), false);
+			Tests.assertEquals("untrusted entity expansion status", 422, laughs.status);
+			Tests.assertTrue("untrusted entity expansion message: " + laughs.text(), laughs.text().contains("maxEntityExpansions"));
+		} finally {
+			server.stop();
+		}
+	}
+	
+	/**
+	 * A score that can't get a cleaning slot is turned away with a 503 and told when to try again, and is cleaned once a slot is free.
+	 * @throws Exception if the server can't be reached
+	 */
+	public static void testBusy() throws Exception {
+		CleanerHttpServer server = start(1, CleanerHttpServer.DEFAULT_MAX_BYTES);
+		server.slotTimeout = 0;
+		try {
+			server.cleaningSlots.acquire(); // As if another score were being cleaned
+			Response busy;
+			try {
+				busy = post(server, null, TestScores.score(4), false);
+			} finally {
+				server.cleaningSlots.release();
+			}
+			Tests.assertEquals("busy status", 503, busy.status);
+			Tests.assertTrue("told when to try again", busy.retryAfter != null);
+			Tests.assertEquals("once free", 200, post(server, null, TestScores.score(4), false).status);
+			Tests.assertEquals("every slot given back", 1, server.cleaningSlots.availablePermits());
+		} finally {
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package net.cacabish.xml;
+
+import java.io.ByteArrayInputStream;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import net.cacabish.MusicXMLEntityResolver;
+import net.cacabish.TestScores;
+import net.cacabish.Tests;
+
+/**
+ * Checks that the {@link ChangeValidator} rejects what the cleaning made invalid, and only looks at what it was told was touched.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class ChangeValidatorTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private ChangeValidatorTest() {}
+	
+	/**
+	 * Parses a test score the way the cleaner does, with its DTD.
+	 * @return the score
+	 * @throws Exception if it can't be parsed
+	 */
+	private static Document parse() throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setIgnoringElementContentWhitespace(true);
+		factory.setValidating(true);
+		DocumentBuilder builder = factory.newDocumentBuilder();
+		builder.setEntityResolver(new MusicXMLEntityResolver());
+		return builder.parse(new ByteArrayInputStream(TestScores.score(20)));
+	}
+	
+	/**
+	 * Checks a validator, expecting it to reject the score.
+	 * @param message what was made invalid
+	 * @param validator the validator
+	 * @param problem part of the message it should give
+	 */
+	private static void assertRejected(String message, ChangeValidator validator, String problem) {
+		try {
+			validator.check();
+			Tests.fail(message + " was accepted");
+		} catch (SAXException e) {
+			Tests.assertTrue(message + ": " + e.getMessage(), e.getMessage().contains(problem));
+		}
+	}
+	
+	/**
+	 * An element inserted in the wrong place, or with something missing inside it, is rejected.
+	 * @throws Exception if the score can't be parsed
+	 */
+	public static void testInvalidInsert() throws Exception {
+		Document document = parse();
+		ChangeValidator validator = ChangeValidator.watch(document);
+		Element print = NodeSymbols.first(document, MusicXMLSymbols.PRINT);
+		Element measureNumbering = document.createElement("measure-numbering");
+		measureNumbering.setTextContent("system");
+		print.insertBefore(measureNumbering, print.getFirstChild()); // It belongs after the layouts
+		ChangeValidator.inserted(measureNumbering);
+		assertRejected("an element out of order", validator, "<print> in measure 1 has children that don't fit its content model");
+		
+		document = parse();
+		validator = ChangeValidator.watch(document);
+		Element partList = NodeSymbols.first(document, MusicXMLSymbols.PART_LIST);
+		Element credit = document.createElement("credit");
+		credit.setAttribute("page", "2");
+		partList.getParentNode().insertBefore(credit, partList); // Without any <credit-words>
+		ChangeValidator.inserted(credit);
+		assertRejected("an empty credit", validator, "<credit> has children that don't fit its content model");
+		
+		document = parse();
+		validator = ChangeValidator.watch(document);
+		Element staffDetails = document.createElement("staff-details");
+		staffDetails.setAttribute("print-object", "maybe");
+		NodeSymbols.first(document, MusicXMLSymbols.ATTRIBUTES).appendChild(staffDetails);
+		ChangeValidator.inserted(staffDetails);
+		assertRejected("a bad attribute value", validator, "has \"maybe\" for \"print-object\"");
+	}
+	
+	/**
+	 * An element changed in place is checked too, and a valid insert passes along with the element it went into.
+	 * @throws Exception if the score can't be parsed
+	 */
+	public static void testChanges() throws Exception {
+		Document document = parse();
+		ChangeValidator validator = ChangeValidator.watch(document);
+		Element words = NodeSymbols.first(document, MusicXMLSymbols.WORDS);
+		words.setAttribute("justify", "middle");
+		ChangeValidator.changed(words);
+		assertRejected("a bad attribute value", validator, "<words> in measure 1 has \"middle\" for \"justify\"");
+		
+		document = parse();
+		validator = ChangeValidator.watch(document);
+		Element print = NodeSymbols.first(document, MusicXMLSymbols.PRINT);
+		Element measureNumbering = document.createElement("measure-numbering");
+		measureNumbering.setTextContent("system");
+		print.appendChild(measureNumbering);
+		ChangeValidator.inserted(measureNumbering);
+		Tests.assertEquals("checked the insert and the <print>", 2, validator.check());
+	}
+	
+	/**
+	 * Nothing is recorded for changes nobody was told about, or for documents that aren't being watched, and recording stops once they're checked.
+	 * @throws Exception if the score can't be parsed
+	 */
+	public static void testOnlyWhatWasRecorded() throws Exception {
+		Document document = parse();
+		ChangeValidator validator = ChangeValidator.watch(document);
+		NodeSymbols.first(document, MusicXMLSymbols.WORDS).setAttribute("justify", "middle"); // Never recorded
+		Tests.assertEquals("nothing recorded", 0, validator.check());
+		
+		Element words = NodeSymbols.first(document, MusicXMLSymbols.WORDS);
+		ChangeValidator.changed(words); // After the check, so nobody is watching
+		Tests.assertEquals("nothing recorded after the check", 0, validator.check());
+		
+		ChangeValidator.changed(NodeSymbols.first(parse(), MusicXMLSymbols.WORDS)); // Never watched, so nothing happens
+	}
+}
@@ -0,0 +1,301 @@
+package net.cacabish.xml;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import net.cacabish.AllocationStats;
+import net.cacabish.Tests;
+
+/**
+ * Checks that the {@link DecimalCodec} reads exactly what {@code Double.parseDouble} does and writes exactly what {@code String.format} does,
+ * over plenty of random values as well as the awkward ones.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class DecimalCodecTest {
+	
+	/**
+	 * How many random values each test tries.
+	 */
+	private static final int ITERATIONS = 200000;
+	
+	/**
+	 * The seed for the random values, so that a failure can be repeated.
+	 */
+	private static final long SEED = 20201031L;
+	
+	/**
+	 * Decimals that are easy to get wrong, all of which {@code Double.parseDouble} reads.
+	 */
+	private static final String[] AWKWARD_DECIMALS = {
+			"0", "-0", "0.0", "-0.0", "+0.5", ".5", "5.", "-.5", "  12.5 ", "\t85.7143\n", "00012.500", "1", "-1",
+			"0.1", "0.2", "0.3", "2.675", "1.005", "616.935", "1596.77", "6.99911", "-37.68",
+			"9007199254740991", "9007199254740992", "9007199254740993", "900719925474099.3", "0.9007199254740993",
+			"123456789012345678901234567890", "0.1234567890123456789012", "0.12345678901234567890123", "1234567.1234567891",
+			"1e3", "1E-3", "-2.5e+2", "1.5d", "2f", "NaN", "-Infinity", "0x1.8p1",
+	};
+	
+	/**
+	 * Values that are easy to write wrong.
+	 */
+	private static final double[] AWKWARD_VALUES = {
+			0.0, -0.0, 0.5, 1.5, 2.5, -0.5, 0.125, 0.375, 2.675, 1.005, 1.115, 0.045, 8.345, -0.0001, -0.004, 0.0049999999999999,
+			85.7143, 616.935, 1596.77, 6.99911, 99.995, 999999.9995, 1e13, 1e14, 1e15, 1e20, 123456789.987654321,
+			Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+	};
+	
+	/**
+	 * How many values the allocation benchmark reads and writes, after warming up on as many again.
+	 */
+	private static final int BENCHMARK_ITERATIONS = 1000000;
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private DecimalCodecTest() {}
+	
+	/**
+	 * Checks that a decimal is read exactly as {@code Double.parseDouble} reads it, both as text and as bytes in the middle of a buffer.
+	 * @param text the decimal
+	 */
+	private static void assertParsesLikeParseDouble(String text) {
+		long expected = Double.doubleToRawLongBits(Double.parseDouble(text));
+		Tests.assertEquals("reading \"" + text + "\"", expected, Double.doubleToRawLongBits(DecimalCodec.parse(text)));
+		
+		byte[] bytes = ("<a>" + text + "</a>").getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		buffer.position(bytes.length); // Should be ignored
+		Tests.assertEquals("reading \"" + text + "\" from bytes", expected, Double.doubleToRawLongBits(DecimalCodec.parse(buffer, 3, bytes.length - 4)));
+	}
+	
+	/**
+	 * Checks that a value is written exactly as {@code String.format} writes it.
+	 * @param codec the codec to write with
+	 * @param value the value
+	 * @param decimals how many decimal places to write
+	 */
+	private static void assertFormatsLikeStringFormat(DecimalCodec codec, double value, int decimals) {
+		Tests.assertEquals("writing " + value + " to " + decimals + " place(s)", String.format(Locale.US, "%." + decimals + "f", value), codec.format(value, decimals));
+	}
+	
+	/**
+	 * Reads the awkward decimals.
+	 */
+	public static void testParseAwkward() {
+		for (String text : AWKWARD_DECIMALS) {
+			assertParsesLikeParseDouble(text);
+		}
+	}
+	
+	/**
+	 * Reads random decimals of every length a layout value could be, and then some.
+	 */
+	public static void testParseRandom() {
+		Random random = new Random(SEED);
+		for (int i = 0; i < ITERATIONS; i++) {
+			int decimals = random.nextInt(12);
+			long units = random.nextLong() >>> (random.nextInt(64) | 1);
+			StringBuilder text = new StringBuilder(Long.toString(units));
+			while (text.length() <= decimals) {
+				text.insert(0, '0');
+			}
+			if (decimals > 0) {
+				text.insert(text.length() - decimals, '.');
+			}
+			if (random.nextBoolean()) {
+				text.insert(0, '-');
+			}
+			assertParsesLikeParseDouble(text.toString());
+		}
+	}
+	
+	/**
+	 * Anything {@code Double.parseDouble} refuses is refused too.
+	 */
+	public static void testParseGarbage() {
+		for (String text : new String[] {"", " ", "-", "+", ".", "-.", "1.2.3", "1,5", "12px", "--1", "1-", "\u0661\u0662"}) {
+			try {
+				DecimalCodec.parse(text);
+				Tests.fail("\"" + text + "\" was read");
+			} catch (NumberFormatException e) {
+				// Just like Double.parseDouble
+			}
+		}
+	}
+	
+	/**
+	 * Writes the awkward values to every number of places.
+	 */
+	public static void testFormatAwkward() {
+		DecimalCodec codec = new DecimalCodec();
+		for (double value : AWKWARD_VALUES) {
+			for (int decimals = 0; decimals <= DecimalCodec.MAX_DECIMALS; decimals++) {
+				assertFormatsLikeStringFormat(codec, value, decimals);
+				assertFormatsLikeStringFormat(codec, -value, decimals);
+			}
+		}
+	}
+	
+	/**
+	 * Writes random values, both ones that were read from short decimals (like layout values are) and arbitrary ones.
+	 */
+	public static void testFormatRandom() {
+		DecimalCodec codec = new DecimalCodec();
+		Random random = new Random(SEED);
+		for (int i = 0; i < ITERATIONS; i++) {
+			int decimals = random.nextInt(DecimalCodec.MAX_DECIMALS + 1);
+			double read = (random.nextInt(2000000) - 1000000) / Math.pow(10, random.nextInt(7));
+			assertFormatsLikeStringFormat(codec, read, decimals);
+			
+			double arbitrary = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16));
+			assertFormatsLikeStringFormat(codec, arbitrary, decimals);
+		}
+	}
+	
+	/**
+	 * Reading a decimal and writing it back to as many places gives the same decimal.
+	 */
+	public static void testRoundTrip() {
+		DecimalCodec codec = new DecimalCodec();
+		Random random = new Random(SEED);
+		for (int i = 0; i < ITERATIONS; i++) {
+			int decimals = random.nextInt(DecimalCodec.MAX_DECIMALS + 1);
+			long scale = (long) Math.pow(10, decimals);
+			long units = (long) (random.nextDouble() * 1e13);
+			String text = (random.nextBoolean() ? "-" : "") + units / scale + (decimals > 0 ? "." + String.format(Locale.US, "%0" + decimals + "d", units % scale) : "");
+			Tests.assertEquals("round trip", text, codec.format(DecimalCodec.parse(text), decimals));
+		}
+	}
+	
+	/**
+	 * Asking for too many (or negative) decimal places is refused.
+	 */
+	public static void testDecimalsOutOfRange() {
+		DecimalCodec codec = new DecimalCodec();
+		for (int decimals : new int[] {-1, DecimalCodec.MAX_DECIMALS + 1}) {
+			try {
+				codec.format(1.5, decimals);
+				Tests.fail(decimals + " decimal places were allowed");
+			} catch (IllegalArgumentException e) {
+				// Good
+			}
+		}
+	}
+	
+	/**
+	 * Reads decimals on either side of where reading stops being exact and is handed to {@code Double.parseDouble}: the most digits a
+	 * significand can have, the most decimal places a power of ten can divide by exactly, and bytes that aren't ASCII.
+	 */
+	public static void testParseBoundaries() {
+		String[] boundaries = {
+				"900719925474099", "900719925474098.9", "900719925474100", "-90071992547409.91", "0.900719925474099", "90071992547409.93",
+				"0.0000000000000000000001", "0.0000000000000000000015", "0.00000000000000000000015", "1.000000000000000000000",
+				"12.34567890123456789012", "12.345678901234567890123", "0000000000000000000000000001.5", "1.50000000000000000000000000",
+		};
+		for (String text : boundaries) {
+			assertParsesLikeParseDouble(text);
+		}
+		
+		byte[] bytes = "<a>1\u00e92</a>".getBytes(StandardCharsets.UTF_8);
+		try {
+			DecimalCodec.parse(ByteBuffer.wrap(bytes), 3, bytes.length - 4);
+			Tests.fail("a decimal with a letter that isn't ASCII was read");
+		} catch (NumberFormatException e) {
+			// Just like Double.parseDouble
+		}
+	}
+	
+	/**
+	 * Writes values on either side of where writing stops being exact and is handed to {@code String.format}, values exactly halfway between two
+	 * outputs (and the {@code double}s on either side of them), values that carry into another whole digit, and negative values that round to zero.
+	 */
+	public static void testFormatBoundaries() {
+		DecimalCodec codec = new DecimalCodec();
+		for (int decimals = 0; decimals <= DecimalCodec.MAX_DECIMALS; decimals++) {
+			double limit = 1e14 / Math.pow(10, decimals);
+			double half = 0.5 / Math.pow(10, decimals);
+			double[] values = {limit, Math.nextDown(limit), Math.nextUp(limit), half, Math.nextDown(half), Math.nextUp(half),
+					1 + half, 2 + 5 * half, 9.5 - half, 10 - half, 99.99 + half, 1 - half, 999999 + (1 - half), -half, -half / 2};
+			for (double value : values) {
+				assertFormatsLikeStringFormat(codec, value, decimals);
+				assertFormatsLikeStringFormat(codec, -value, decimals);
+			}
+		}
+		Tests.assertEquals("a carry into a new digit", "10.000", codec.format(9.9995, 3));
+		Tests.assertEquals("rounding to zero keeps the sign", "-0.00", codec.format(-0.004, 2));
+		Tests.assertEquals("halfway rounds up", "0.13", codec.format(0.125, 2));
+	}
+	
+	/**
+	 * A dependency-free stand-in for a JMH allocation benchmark: reads and writes a million layout values and counts the bytes this thread
+	 * allocates with {@link AllocationStats#threadAllocatedBytes()}. Reading from bytes should allocate nothing, and writing should allocate
+	 * nothing but the string it returns, which is far less than {@code Double.parseDouble} and {@code String.format} allocate for the same values.
+	 * On a Java that can't count allocated bytes, there's nothing to check.
+	 */
+	public static void testAllocation() {
+		if (AllocationStats.threadAllocatedBytes() < 0) {
+			return;
+		}
+		
+		// A buffer of layout values, one after another, like the text of a score
+		Random random = new Random(SEED);
+		String[] texts = new String[1000];
+		double[] values = new double[texts.length];
+		int[] starts = new int[texts.length + 1];
+		StringBuilder all = new StringBuilder();
+		for (int i = 0; i < texts.length; i++) {
+			values[i] = (random.nextInt(2000000) - 1000000) / 100.0;
+			texts[i] = String.format(Locale.US, "%.2f", values[i]);
+			starts[i] = all.length();
+			all.append(texts[i]);
+		}
+		starts[texts.length] = all.length();
+		ByteBuffer bytes = ByteBuffer.wrap(all.toString().getBytes(StandardCharsets.US_ASCII));
+		DecimalCodec codec = new DecimalCodec();
+		
+		double[] perValue = new double[4];
+		double sink = 0;
+		for (int round = 0; round < 2; round++) { // The first round warms up, and only the second is counted
+			long mark = AllocationStats.threadAllocatedBytes();
+			for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+				int v = i % texts.length;
+				sink += DecimalCodec.parse(bytes, starts[v], starts[v + 1]);
+			}
+			perValue[0] = (AllocationStats.threadAllocatedBytes() - mark) / (double) BENCHMARK_ITERATIONS;
+			
+			mark = AllocationStats.threadAllocatedBytes();
+			for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+				int v = i % texts.length;
+				byte[] copy = new byte[starts[v + 1] - starts[v]];
+				ByteBuffer view = bytes.duplicate();
+				view.position(starts[v]);
+				view.get(copy);
+				sink += Double.parseDouble(new String(copy, StandardCharsets.US_ASCII));
+			}
+			perValue[1] = (AllocationStats.threadAllocatedBytes() - mark) / (double) BENCHMARK_ITERATIONS;
+			
+			mark = AllocationStats.threadAllocatedBytes();
+			for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+				sink += codec.format(values[i % values.length], 2).length();
+			}
+			perValue[2] = (AllocationStats.threadAllocatedBytes() - mark) / (double) BENCHMARK_ITERATIONS;
+			
+			mark = AllocationStats.threadAllocatedBytes();
+			for (int i = 0; i < BENCHMARK_ITERATIONS / 10; i++) { // It's slow
+				sink += String.format(Locale.US, "%.2f", values[i % values.length]).length();
+			}
+			perValue[3] = (AllocationStats.threadAllocatedBytes() - mark) / (BENCHMARK_ITERATIONS / 10.0);
+		}
+		System.out.println(String.format(Locale.US, "Reading: %.1f B per value (Double.parseDouble: %.1f B). Writing: %.1f B per value (String.format: %.1f B).",
+				perValue[0], perValue[1], perValue[2], perValue[3]));
+		Tests.assertTrue("the values were used", !Double.isNaN(sink)); // So that none of the loops can be skipped
+		
+		Tests.assertTrue("reading allocated " + perValue[0] + " B per value", perValue[0] < 1);
+		Tests.assertTrue("writing allocated " + perValue[2] + " B per value", perValue[2] < 100);
+		Tests.assertTrue("writing allocated " + perValue[2] + " B per value, and String.format " + perValue[3], perValue[2] * 4 < perValue[3]);
+	}
+}
@@ -0,0 +1,155 @@
+package net.cacabish.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+import net.cacabish.MusicXMLEntityResolver;
+import net.cacabish.TestScores;
+import net.cacabish.Tests;
+
+/**
+ * Checks what a lazily built document holds: notes are left as slices of the original bytes, are written back out byte for byte, and become the same
+ * nodes a full parse would have made once they're expanded.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class LazySlicesTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private LazySlicesTest() {}
+	
+	/**
+	 * A test score whose first note has a lyric in a mapped font, and spacing inside it that a writer would never produce.
+	 * @return the score
+	 */
+	private static byte[] score() {
+		String score = new String(TestScores.score(8), StandardCharsets.UTF_8);
+		score = score.replaceFirst("<stem>up</stem>", "<stem>up</stem><lyric><text   font-family='Edwin'>la</text></lyric>");
+		return score.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Parses a score lazily.
+	 * @param bytes the score
+	 * @return the lazy document
+	 * @throws Exception if it can't be parsed
+	 */
+	private static Document parseLazily(byte[] bytes) throws Exception {
+		return LazyDocumentBuilder.parse(ByteBuffer.wrap(bytes), new MusicXMLEntityResolver());
+	}
+	
+	/**
+	 * Parses a score fully, the way the cleaner does.
+	 * @param bytes the score
+	 * @return the document
+	 * @throws Exception if it can't be parsed
+	 */
+	private static Document parseFully(byte[] bytes) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setIgnoringElementContentWhitespace(true);
+		factory.setValidating(true);
+		DocumentBuilder builder = factory.newDocumentBuilder();
+		builder.setEntityResolver(new MusicXMLEntityResolver());
+		return builder.parse(new ByteArrayInputStream(bytes));
+	}
+	
+	/**
+	 * Every note is a slice, and everything else is built as usual.
+	 * @throws Exception if the score can't be parsed
+	 */
+	public static void testNotesAreSlices() throws Exception {
+		byte[] bytes = score();
+		Document lazy = parseLazily(bytes);
+		Document full = parseFully(bytes);
+		
+		Tests.assertTrue("lazy", LazySlices.isLazy(lazy));
+		Tests.assertEquals("slices", full.getElementsByTagName("note").getLength(), LazySlices.countSlices(lazy));
+		Tests.assertEquals("notes", 0, lazy.getElementsByTagName("note").getLength());
+		for (String name : new String[] {"measure", "print", "direction", "attributes", "barline"}) {
+			Tests.assertEquals("<" + name + ">", full.getElementsByTagName(name).getLength(), lazy.getElementsByTagName(name).getLength());
+		}
+		
+		Node slice = NodeSymbols.first(lazy, MusicXMLSymbols.MEASURE).getLastChild();
+		Tests.assertTrue("the last thing in a measure is a slice", LazySlices.isSlice(slice));
+		Tests.assertEquals("what it stands in for", "note", LazySlices.getSliceName((ProcessingInstruction) slice));
+		int[] range = LazySlices.getSliceRange((ProcessingInstruction) slice);
+		String text = new String(bytes, range[0], range[1], StandardCharsets.UTF_8);
+		Tests.assertTrue("its bytes: " + text, text.startsWith("<note") && text.endsWith("</note>"));
+	}
+	
+	/**
+	 * Expanding a measure makes the same notes a full parse would have, and leaves every other measure alone.
+	 * @throws Exception if the score can't be parsed
+	 */
+	public static void testExpand() throws Exception {
+		byte[] bytes = score();
+		Document lazy = parseLazily(bytes);
+		Document full = parseFully(bytes);
+		int before = LazySlices.countSlices(lazy);
+		
+		Element lazyMeasure = NodeSymbols.elements(lazy, MusicXMLSymbols.MEASURE).get(2);
+		Element fullMeasure = NodeSymbols.elements(full, MusicXMLSymbols.MEASURE).get(2);
+		Tests.assertEquals("expanded", 2, LazySlices.expand(lazyMeasure));
+		Tests.assertEquals("left", before - 2, LazySlices.countSlices(lazy));
+		Tests.assertTrue("the same measure as a full parse", fullMeasure.isEqualNode(lazyMeasure));
+		Tests.assertEquals("expanding again", 0, LazySlices.expand(lazyMeasure));
+	}
+	
+	/**
+	 * Only the slices that hold the text asked for are expanded.
+	 * @throws Exception if the score can't be parsed
+	 */
+	public static void testExpandContaining() throws Exception {
+		Document lazy = parseLazily(score());
+		int before = LazySlices.countSlices(lazy);
+		Tests.assertEquals("expanded", 1, LazySlices.expandSlicesContaining(lazy, "font-family"));
+		Tests.assertEquals("left", before - 1, LazySlices.countSlices(lazy));
+		
+		List<Element> texts = NodeSymbols.elements(lazy, MusicXMLSymbols.TEXT);
+		Tests.assertEquals("the lyric", 1, texts.size());
+		Tests.assertEquals("its font", "Edwin", NodeSymbols.attribute(texts.get(0), MusicXMLSymbols.FONT_FAMILY));
+		Tests.assertEquals("nothing else has it", 0, LazySlices.expandSlicesContaining(lazy, "font-family=\"Nothing\""));
+	}
+	
+	/**
+	 * A slice that was never expanded is written back exactly as it was in the file, spacing and quotes and all.
+	 * @throws Exception if the score can't be parsed or written
+	 */
+	public static void testWrittenVerbatim() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MusicXMLWriter.write(parseLazily(score()), out);
+		String written = out.toString("UTF-8");
+		Tests.assertTrue("the lyric as it was", written.contains("<stem>up</stem><lyric><text   font-family='Edwin'>la</text></lyric>"));
+		TestScores.assertSameScore("the score", score(), out.toByteArray());
+	}
+	
+	/**
+	 * A document that wasn't built lazily has no slices to expand, and bytes that aren't UTF-8 can't be built lazily.
+	 * @throws Exception if the score can't be parsed
+	 */
+	public static void testNotLazy() throws Exception {
+		Document full = parseFully(score());
+		Tests.assertTrue("not lazy", !LazySlices.isLazy(full));
+		Tests.assertEquals("no slices", 0, LazySlices.countSlices(full));
+		Tests.assertEquals("nothing to expand", 0, LazySlices.expand(NodeSymbols.first(full, MusicXMLSymbols.MEASURE)));
+		Tests.assertEquals("nothing containing anything", 0, LazySlices.expandSlicesContaining(full, "font-family"));
+		
+		Tests.assertTrue("UTF-8", LazyDocumentBuilder.isSupported(ByteBuffer.wrap(score())));
+		Tests.assertTrue("UTF-16", !LazyDocumentBuilder.isSupported(ByteBuffer.wrap("<?xml version=\"1.0\"?><a/>".getBytes(StandardCharsets.UTF_16))));
+	}
+}
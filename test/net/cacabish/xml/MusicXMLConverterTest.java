@@ -0,0 +1,182 @@
+package net.cacabish.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.w3c.dom.Document;
+
+import net.cacabish.CleanedScore;
+import net.cacabish.CleaningOptions;
+import net.cacabish.MusicXMLCleaner;
+import net.cacabish.MusicXMLEntityResolver;
+import net.cacabish.TestScores;
+import net.cacabish.Tests;
+
+/**
+ * Checks how scores of other formats and versions are cleaned: timewise scores are converted to partwise, each score is validated and saved as the
+ * version its DOCTYPE declares, and a score can be converted down to an older version when it's saved.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class MusicXMLConverterTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private MusicXMLConverterTest() {}
+	
+	/**
+	 * Makes a test score declare an older version of MusicXML, in both its DOCTYPE and its {@code version} attribute.
+	 * @param version the version, such as {@code 3.0}
+	 * @return the score
+	 */
+	private static byte[] score(String version) {
+		String score = new String(TestScores.score(4), StandardCharsets.UTF_8);
+		score = score.replace("MusicXML 4.0 Partwise", "MusicXML " + version + " Partwise").replace("version=\"4.0\">", "version=\"" + version + "\">");
+		return score.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Converts a test score to timewise, with the stylesheet that comes with MusicXML.
+	 * @param partwise the score
+	 * @return the timewise score
+	 * @throws Exception if it can't be converted
+	 */
+	private static byte[] timewise(byte[] partwise) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		DocumentBuilder builder = factory.newDocumentBuilder();
+		builder.setEntityResolver(new MusicXMLEntityResolver());
+		Document document = builder.parse(new ByteArrayInputStream(partwise));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream stylesheet = MusicXMLConverterTest.class.getResourceAsStream("/musicxml-4.0/schema/parttime.xsl")) {
+			TransformerFactory.newInstance().newTransformer(new StreamSource(stylesheet)).transform(new DOMSource(document), new StreamResult(out));
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Cleans a score with every operation.
+	 * @param score the score
+	 * @param outputVersion the version to save it as, or {@code null} to keep its own
+	 * @return the cleaned score
+	 * @throws Exception if it can't be cleaned
+	 */
+	private static CleanedScore clean(byte[] score, String outputVersion) throws Exception {
+		CleaningOptions options = new CleaningOptions();
+		options.outputVersion = outputVersion;
+		return MusicXMLCleaner.clean(ByteBuffer.wrap(score), options);
+	}
+	
+	/**
+	 * @param score a cleaned score
+	 * @return the score as it would be saved
+	 * @throws Exception if it can't be written
+	 */
+	private static byte[] save(CleanedScore score) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MusicXMLCleaner.writeToStream(score, out);
+		return out.toByteArray();
+	}
+	
+	/**
+	 * @param score a saved score
+	 * @return the public ID of its DOCTYPE
+	 * @throws Exception if it can't be parsed
+	 */
+	private static String publicId(byte[] score) throws Exception {
+		DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		builder.setEntityResolver(new MusicXMLEntityResolver());
+		return builder.parse(new ByteArrayInputStream(score)).getDoctype().getPublicId();
+	}
+	
+	/**
+	 * A timewise score is converted to partwise and cleaned just like the partwise score it came from.
+	 * @throws Exception if the scores can't be cleaned
+	 */
+	public static void testTimewise() throws Exception {
+		byte[] partwise = TestScores.score(4);
+		byte[] timewise = timewise(partwise);
+		Tests.assertTrue("the score is timewise", new String(timewise, StandardCharsets.UTF_8).contains("<score-timewise"));
+		
+		CleanedScore cleaned = clean(timewise, null);
+		Tests.assertTrue("converted to partwise", !MusicXMLConverter.isTimewise(cleaned.getDocument()));
+		TestScores.assertSameScore("cleaned from timewise", save(clean(partwise, null)), save(cleaned));
+	}
+	
+	/**
+	 * The version is taken from the DOCTYPE, or else from the {@code version} attribute if it's in the file, or else assumed to be the newest.
+	 * @throws Exception if the scores can't be parsed
+	 */
+	public static void testDeclaredVersion() throws Exception {
+		for (String version : new String[] {"3.0", "3.1", "4.0"}) {
+			Tests.assertEquals("declared " + version, version, MusicXMLConverter.getVersion(clean(score(version), null).getDocument()));
+		}
+		
+		DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		Document attribute = builder.parse(new ByteArrayInputStream("<score-partwise version=\"3.1\"/>".getBytes(StandardCharsets.UTF_8)));
+		Tests.assertEquals("from the attribute", "3.1", MusicXMLConverter.getVersion(attribute));
+		Document neither = builder.parse(new ByteArrayInputStream("<score-partwise/>".getBytes(StandardCharsets.UTF_8)));
+		Tests.assertEquals("not said", "4.0", MusicXMLConverter.getVersion(neither));
+		MusicXMLConverter.setDeclaredVersion(attribute, "3.0");
+		Tests.assertEquals("the DOCTYPE wins", "3.0", MusicXMLConverter.getVersion(attribute));
+		
+		MusicXMLEntityResolver resolver = new MusicXMLEntityResolver();
+		resolver.resolveEntity("-//Recordare//DTD MusicXML 2.0 Partwise//EN", "http://www.musicxml.org/dtds/partwise.dtd");
+		Tests.assertEquals("resolver", "2.0", resolver.getDeclaredVersion());
+		Tests.assertEquals("2.0 grammar", "/musicxml-3.1/schema/", MusicXMLEntityResolver.getSchemaDirectory("2.0"));
+		Tests.assertEquals("4.0 grammar", "/musicxml-4.0/schema/", MusicXMLEntityResolver.getSchemaDirectory("4.0"));
+		Tests.assertEquals("unknown grammar", "/musicxml-4.0/schema/", MusicXMLEntityResolver.getSchemaDirectory(null));
+	}
+	
+	/**
+	 * A score saved as an older version is converted down and declares that version, and a score that's already older is left as it is.
+	 * @throws Exception if the scores can't be cleaned
+	 */
+	public static void testDownConvert() throws Exception {
+		for (String version : new String[] {"3.1", "3.0"}) {
+			byte[] saved = save(clean(TestScores.score(4), version));
+			Tests.assertEquals("DOCTYPE of " + version, "-//Recordare//DTD MusicXML " + version + " Partwise//EN", publicId(saved));
+			Tests.assertTrue("version attribute of " + version, new String(saved, StandardCharsets.UTF_8).contains("version=\"" + version + "\""));
+			Tests.assertEquals("cleaned again as " + version, version, MusicXMLConverter.getVersion(clean(saved, null).getDocument()));
+		}
+		
+		CleanedScore older = clean(score("3.0"), "3.1");
+		Tests.assertEquals("already older", "3.0", MusicXMLConverter.getVersion(older.getDocument()));
+		Tests.assertEquals("already older DOCTYPE", "-//Recordare//DTD MusicXML 3.0 Partwise//EN", publicId(save(older)));
+		
+		try {
+			MusicXMLConverter.downConvert(older.getDocument(), "5.0");
+			Tests.fail("converted to a version that doesn't exist");
+		} catch (IllegalArgumentException e) {
+			// Good
+		}
+	}
+	
+	/**
+	 * A 3.0, 3.1 or 4.0 score is saved as the same version, and reading and saving what was saved again (without cleaning it, since some of the
+	 * operations add to the score every time) gives the same score back.
+	 * @throws Exception if the scores can't be cleaned
+	 */
+	public static void testRoundTrip() throws Exception {
+		for (String version : new String[] {"3.0", "3.1", "4.0"}) {
+			byte[] once = save(clean(score(version), null));
+			Tests.assertEquals("DOCTYPE of " + version, "-//Recordare//DTD MusicXML " + version + " Partwise//EN", publicId(once));
+			CleanedScore again = MusicXMLCleaner.clean(ByteBuffer.wrap(once), TestScores.noOperations());
+			Tests.assertEquals("version of " + version + " read again", version, MusicXMLConverter.getVersion(again.getDocument()));
+			TestScores.assertSameScore("saving " + version + " again", once, save(again));
+		}
+	}
+}
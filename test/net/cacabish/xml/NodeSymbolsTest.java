@@ -0,0 +1,120 @@
+package net.cacabish.xml;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import net.cacabish.MusicXMLEntityResolver;
+import net.cacabish.TestScores;
+import net.cacabish.Tests;
+
+/**
+ * Checks that {@link NodeSymbols} finds the same elements and attributes by ID as the DOM does by name.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class NodeSymbolsTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private NodeSymbolsTest() {}
+	
+	/**
+	 * Parses a test score the way the cleaner does, with its DTD.
+	 * @return the score
+	 * @throws Exception if it can't be parsed
+	 */
+	private static Document parse() throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setIgnoringElementContentWhitespace(true);
+		factory.setValidating(true);
+		DocumentBuilder builder = factory.newDocumentBuilder();
+		builder.setEntityResolver(new MusicXMLEntityResolver());
+		return builder.parse(new ByteArrayInputStream(TestScores.score(20)));
+	}
+	
+	/**
+	 * Every MusicXML name has its own ID, whether or not it's the interned literal, and nothing else has one.
+	 */
+	public static void testNames() {
+		for (int id = 0; id < MusicXMLSymbols.COUNT; id++) {
+			String name = MusicXMLSymbols.name(id);
+			Tests.assertEquals("the literal " + name, id, NodeSymbols.of(name));
+			Tests.assertEquals("a copy of " + name, id, NodeSymbols.of(new String(name.toCharArray())));
+		}
+		Tests.assertEquals("not MusicXML", -1, NodeSymbols.of("bogus"));
+		Tests.assertEquals("case matters", -1, NodeSymbols.of("Credit"));
+	}
+	
+	/**
+	 * Finds the same elements, in the same order, as {@code getElementsByTagName}, both across the whole score and inside one element.
+	 * @throws Exception if the score can't be parsed
+	 */
+	public static void testSameElementsAsByName() throws Exception {
+		Document document = parse();
+		int[] symbols = {MusicXMLSymbols.CREDIT, MusicXMLSymbols.CREDIT_WORDS, MusicXMLSymbols.PART, MusicXMLSymbols.MEASURE, MusicXMLSymbols.PRINT,
+				MusicXMLSymbols.NOTE, MusicXMLSymbols.WORDS, MusicXMLSymbols.SOUND, MusicXMLSymbols.ENDING, MusicXMLSymbols.ACCORDION_HIGH};
+		for (int symbol : symbols) {
+			String name = MusicXMLSymbols.name(symbol);
+			NodeList expected = document.getElementsByTagName(name);
+			List<Element> actual = NodeSymbols.elements(document, symbol);
+			Tests.assertEquals("number of <" + name + ">", expected.getLength(), actual.size());
+			for (int i = 0; i < actual.size(); i++) {
+				Tests.assertTrue("<" + name + "> " + i, expected.item(i) == actual.get(i));
+			}
+			Tests.assertTrue("first <" + name + ">", expected.item(0) == NodeSymbols.first(document, symbol));
+		}
+		
+		Element secondPart = NodeSymbols.elements(document, MusicXMLSymbols.PART).get(1);
+		Tests.assertEquals("measures of the second part", 20, NodeSymbols.elements(secondPart, MusicXMLSymbols.MEASURE).size());
+		Tests.assertTrue("a part doesn't contain itself", NodeSymbols.first(secondPart, MusicXMLSymbols.PART) == null);
+		Tests.assertTrue("the first measure is a child", NodeSymbols.child(secondPart, MusicXMLSymbols.MEASURE) == secondPart.getFirstChild());
+		Tests.assertTrue("notes aren't children of a part", NodeSymbols.child(secondPart, MusicXMLSymbols.NOTE) == null);
+	}
+	
+	/**
+	 * Elements the cleaner makes are found too, whether or not their names are the literals, and a list that was found doesn't change with the document.
+	 * @throws Exception if the score can't be parsed
+	 */
+	public static void testChangedDocument() throws Exception {
+		Document document = parse();
+		Element partList = NodeSymbols.first(document, MusicXMLSymbols.PART_LIST);
+		List<Element> credits = NodeSymbols.elements(document, MusicXMLSymbols.CREDIT);
+		int before = credits.size();
+		
+		// One name is the literal, the other is built at run time, as a stylesheet's would be
+		partList.getParentNode().insertBefore(document.createElement("credit"), partList);
+		partList.getParentNode().insertBefore(document.createElement(new String("credit".toCharArray())), partList);
+		Tests.assertEquals("the list that was already found", before, credits.size());
+		Tests.assertEquals("after adding two", before + 2, NodeSymbols.elements(document, MusicXMLSymbols.CREDIT).size());
+	}
+	
+	/**
+	 * Attributes are found by ID, with those that aren't there being empty just like {@code getAttribute}.
+	 * @throws Exception if the score can't be parsed
+	 */
+	public static void testAttributes() throws Exception {
+		Document document = parse();
+		Element credit = NodeSymbols.first(document, MusicXMLSymbols.CREDIT);
+		Tests.assertEquals("page", "1", NodeSymbols.attribute(credit, MusicXMLSymbols.PAGE));
+		Tests.assertEquals("not there", "", NodeSymbols.attribute(credit, MusicXMLSymbols.NUMBER));
+		Tests.assertTrue("has page", NodeSymbols.hasAttribute(credit, MusicXMLSymbols.PAGE));
+		Tests.assertTrue("doesn't have number", !NodeSymbols.hasAttribute(credit, MusicXMLSymbols.NUMBER));
+		
+		credit.setAttribute("number", "");
+		Tests.assertTrue("has an empty attribute", NodeSymbols.hasAttribute(credit, MusicXMLSymbols.NUMBER));
+		
+		Element creditWords = NodeSymbols.first(credit, MusicXMLSymbols.CREDIT_WORDS);
+		Tests.assertEquals("justify", "center", NodeSymbols.attribute(creditWords, MusicXMLSymbols.JUSTIFY));
+		Tests.assertTrue("an element without attributes", !NodeSymbols.hasAttribute(NodeSymbols.first(document, MusicXMLSymbols.WORK_TITLE), MusicXMLSymbols.ID));
+	}
+}
@@ -0,0 +1,157 @@
+package net.cacabish.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import net.cacabish.MusicXMLEntityResolver;
+import net.cacabish.TestScores;
+import net.cacabish.Tests;
+
+/**
+ * Checks exactly what the {@link PatchWriter} rewrites for each kind of change, by comparing its output with the source edited by hand.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class PatchWriterTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private PatchWriterTest() {}
+	
+	/**
+	 * A test score with a comment, single quotes, and a stray blank line, none of which a writer would produce.
+	 * @return the score
+	 */
+	private static String source() {
+		String score = new String(TestScores.score(4), StandardCharsets.UTF_8);
+		score = score.replace("<words font-family=\"Edwin,FreeSerif\" relative-y=\"20.00\">", "<words font-family='Edwin,FreeSerif'  relative-y=\"20.00\">");
+		score = score.replace("<part id=\"P2\">\n", "<part id=\"P2\">\n    <!-- kept -->\n\n");
+		return score;
+	}
+	
+	/**
+	 * Parses a score the way the cleaner does when it preserves formatting, and starts tracking it.
+	 * @param source the score
+	 * @return the tracked document
+	 * @throws Exception if it can't be parsed
+	 */
+	private static Document parse(String source) throws Exception {
+		byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setIgnoringElementContentWhitespace(true);
+		factory.setValidating(true);
+		DocumentBuilder builder = factory.newDocumentBuilder();
+		builder.setEntityResolver(new MusicXMLEntityResolver());
+		Document document = builder.parse(new ByteArrayInputStream(bytes));
+		DocumentSource.set(document, ByteBuffer.wrap(bytes), null);
+		SourceTracker.track(document);
+		return document;
+	}
+	
+	/**
+	 * @param document a tracked document
+	 * @return what the patch writer writes for it
+	 * @throws Exception if it can't be written
+	 */
+	private static String write(Document document) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PatchWriter.write(document, out);
+		return out.toString("UTF-8");
+	}
+	
+	/**
+	 * Replaces the one place some text appears.
+	 * @param text the text
+	 * @param target what to replace, which must appear exactly once
+	 * @param replacement what to replace it with
+	 * @return the new text
+	 */
+	private static String replaceOnce(String text, String target, String replacement) {
+		int index = text.indexOf(target);
+		Tests.assertTrue("\"" + target + "\" appears once", index != -1 && text.indexOf(target, index + 1) == -1);
+		return text.substring(0, index) + replacement + text.substring(index + target.length());
+	}
+	
+	/**
+	 * With nothing changed, the source comes back byte for byte.
+	 * @throws Exception if the score can't be parsed or written
+	 */
+	public static void testUnchanged() throws Exception {
+		Tests.assertEquals("unchanged", source(), write(parse(source())));
+	}
+	
+	/**
+	 * Changing an attribute rewrites only its value, keeping its place, quotes and spacing along with everything else in the start tag.
+	 * A new attribute goes at the end.
+	 * @throws Exception if the score can't be parsed or written
+	 */
+	public static void testAttributes() throws Exception {
+		Document document = parse(source());
+		Element swing = NodeSymbols.elements(document, MusicXMLSymbols.WORDS).get(1);
+		swing.setAttribute("font-family", "Times New Roman");
+		swing.setAttribute("justify", "left");
+		
+		String expected = replaceOnce(source(), "<words font-family='Edwin,FreeSerif'  relative-y=\"20.00\">",
+				"<words font-family='Times New Roman'  relative-y=\"20.00\" justify=\"left\">");
+		Tests.assertEquals("attributes", expected, write(document));
+		
+		swing.setAttribute("font-family", "Bob's Font");
+		expected = replaceOnce(source(), "<words font-family='Edwin,FreeSerif'  relative-y=\"20.00\">",
+				"<words font-family=\"Bob's Font\"  relative-y=\"20.00\" justify=\"left\">");
+		Tests.assertEquals("a single quote inside single quotes", expected, write(document));
+	}
+	
+	/**
+	 * Changing text rewrites only that element, escaping what needs to be.
+	 * @throws Exception if the score can't be parsed or written
+	 */
+	public static void testText() throws Exception {
+		Document document = parse(source());
+		NodeSymbols.first(document, MusicXMLSymbols.WORK_TITLE).setTextContent("Fish & Chips");
+		Tests.assertEquals("text", replaceOnce(source(), "<work-title>Test Song</work-title>", "<work-title>Fish &amp; Chips</work-title>"), write(document));
+	}
+	
+	/**
+	 * A new element is indented like its siblings, and a removed one takes the whitespace in front of it along with it.
+	 * @throws Exception if the score can't be parsed or written
+	 */
+	public static void testChildren() throws Exception {
+		Document document = parse(source());
+		Element tempo = NodeSymbols.first(document, MusicXMLSymbols.DIRECTION);
+		Element sound = document.createElement("sound");
+		sound.setAttribute("dynamics", "80");
+		tempo.appendChild(sound);
+		Element barline = NodeSymbols.first(document, MusicXMLSymbols.BARLINE);
+		barline.getParentNode().removeChild(barline);
+		
+		String expected = replaceOnce(source(), "        <sound tempo=\"120\"/>\n", "        <sound tempo=\"120\"/>\n        <sound dynamics=\"80\"/>\n");
+		expected = replaceOnce(expected, "      <barline location=\"left\">\n        <ending number=\"1, 2\" type=\"start\">1, 2</ending>\n        </barline>\n", "");
+		Tests.assertEquals("children", expected, write(document));
+	}
+	
+	/**
+	 * A document that isn't being tracked can't be patched.
+	 * @throws Exception if the score can't be parsed
+	 */
+	public static void testUntracked() throws Exception {
+		Document document = parse(source());
+		SourceTracker.untrack(document);
+		try {
+			write(document);
+			Tests.fail("an untracked document was written");
+		} catch (IllegalArgumentException e) {
+			// Good
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package net.cacabish.xml;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import net.cacabish.CancellationToken;
+import net.cacabish.MusicXMLEntityResolver;
+import net.cacabish.TestScores;
+import net.cacabish.Tests;
+
+/**
+ * Checks that a {@link ScoreTree} holds the same elements, text and attributes as the DOM of the same score, whether it's parsed from the bytes or
+ * built from the DOM.
+ *
+ * @author cacabish
+ * @version v1.5.0
+ *
+ */
+public final class ScoreTreeTest {
+	
+	/**
+	 * There should be no reason to instantiate this class.
+	 */
+	private ScoreTreeTest() {}
+	
+	/**
+	 * Parses a score the way the cleaner does, with its DTD if it has one.
+	 * @param bytes the score
+	 * @return its document
+	 * @throws Exception if it can't be parsed
+	 */
+	private static Document parse(byte[] bytes) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setIgnoringElementContentWhitespace(true);
+		factory.setValidating(new String(bytes, StandardCharsets.UTF_8).contains("<!DOCTYPE"));
+		DocumentBuilder builder = factory.newDocumentBuilder();
+		builder.setEntityResolver(new MusicXMLEntityResolver());
+		return builder.parse(new ByteArrayInputStream(bytes));
+	}
+	
+	/**
+	 * Checks that a tree finds the same elements, in the same order and with the same text, as the DOM.
+	 * @param message which tree it is
+	 * @param document the DOM
+	 * @param tree the tree
+	 */
+	private static void assertSameAsDocument(String message, Document document, ScoreTree tree) {
+		int[] symbols = {MusicXMLSymbols.CREDIT_WORDS, MusicXMLSymbols.PART, MusicXMLSymbols.MEASURE, MusicXMLSymbols.PRINT, MusicXMLSymbols.STEP,
+				MusicXMLSymbols.LEFT_MARGIN, MusicXMLSymbols.WORDS, MusicXMLSymbols.ACCORDION_HIGH};
+		for (int symbol : symbols) {
+			String name = MusicXMLSymbols.name(symbol);
+			NodeList expected = document.getElementsByTagName(name);
+			int i = 0;
+			for (int node = tree.find(tree.root(), symbol); node != -1; node = tree.findNext(tree.root(), node, symbol)) {
+				Tests.assertTrue(message + ": too many <" + name + ">", i < expected.getLength());
+				Tests.assertEquals(message + ": name", name, tree.name(node));
+				Tests.assertEquals(message + ": text of <" + name + "> " + i, expected.item(i).getTextContent(), tree.text(node));
+				i++;
+			}
+			Tests.assertEquals(message + ": number of <" + name + ">", expected.getLength(), i);
+		}
+		Tests.assertEquals(message + ": elements", document.getElementsByTagName("*").getLength(), tree.elementCount());
+	}
+	
+	/**
+	 * A tree parsed from the bytes of a score and one built from its DOM both match the DOM.
+	 * @throws Exception if the score can't be parsed
+	 */
+	public static void testSameAsDocument() throws Exception {
+		byte[] bytes = TestScores.score(20);
+		Document document = parse(bytes);
+		assertSameAsDocument("parsed", document, ScoreTree.parse(ByteBuffer.wrap(bytes)));
+		assertSameAsDocument("from the DOM", document, ScoreTree.of(document));
+	}
+	
+	/**
+	 * Looks things up the way the score-wide lookups would: numbers, attributes, and children.
+	 * @throws Exception if the score can't be parsed
+	 */
+	public static void testLookups() throws Exception {
+		ScoreTree tree = ScoreTree.parse(ByteBuffer.wrap(TestScores.score(20)));
+		int root = tree.root();
+		Tests.assertEquals("root", MusicXMLSymbols.SCORE_PARTWISE, tree.symbol(root));
+		Tests.assertEquals("page height", 1596.77, tree.number(tree.find(root, MusicXMLSymbols.PAGE_HEIGHT)));
+		
+		int margins = tree.find(root, MusicXMLSymbols.PAGE_MARGINS);
+		Tests.assertEquals("margins type", "even", tree.attribute(margins, MusicXMLSymbols.TYPE));
+		Tests.assertTrue("margins type by value", tree.hasAttributeValue(margins, MusicXMLSymbols.TYPE, "even"));
+		Tests.assertTrue("not odd", !tree.hasAttributeValue(margins, MusicXMLSymbols.TYPE, "odd"));
+		Tests.assertEquals("no such attribute", null, tree.attribute(margins, MusicXMLSymbols.ID));
+		Tests.assertEquals("the first margin is a child", tree.firstChild(margins), tree.child(margins, MusicXMLSymbols.LEFT_MARGIN));
+		Tests.assertEquals("parent", margins, tree.parent(tree.firstChild(margins)));
+		Tests.assertEquals("no notes in the margins", -1, tree.find(margins, MusicXMLSymbols.NOTE));
+		
+		int newPages = 0;
+		int firstPart = tree.find(root, MusicXMLSymbols.PART);
+		for (int print = tree.find(firstPart, MusicXMLSymbols.PRINT); print != -1; print = tree.findNext(firstPart, print, MusicXMLSymbols.PRINT)) {
+			if (tree.hasAttributeValue(print, MusicXMLSymbols.NEW_PAGE, "yes")) {
+				newPages++;
+			}
+		}
+		Tests.assertEquals("new pages in the first part", 1, newPages);
+	}
+	
+	/**
+	 * References, CDATA and line breaks are decoded the way a parser would decode them.
+	 * @throws Exception if the bytes can't be parsed
+	 */
+	public static void testDecoding() throws Exception {
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<score-partwise><work><work-title>A &amp; B &#x41;&#66;\r\nC</work-title></work>"
+				+ "<credit page=\"&quot;1&quot;\tx\"><credit-words><![CDATA[<&>]]></credit-words></credit><rights>\u00e9</rights></score-partwise>";
+		ScoreTree tree = ScoreTree.parse(ByteBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8)));
+		Document document = parse(xml.getBytes(StandardCharsets.UTF_8));
+		int root = tree.root();
+		
+		Tests.assertEquals("references and a CRLF", "A & B AB\nC", tree.text(tree.find(root, MusicXMLSymbols.WORK_TITLE)));
+		Tests.assertEquals("CDATA", "<&>", tree.text(tree.find(root, MusicXMLSymbols.CREDIT_WORDS)));
+		Tests.assertEquals("not ASCII", "\u00e9", tree.text(tree.find(root, MusicXMLSymbols.RIGHTS)));
+		
+		int credit = tree.find(root, MusicXMLSymbols.CREDIT);
+		String page = ((Element) document.getElementsByTagName("credit").item(0)).getAttribute("page");
+		Tests.assertEquals("attribute", page, tree.attribute(credit, MusicXMLSymbols.PAGE));
+		Tests.assertTrue("attribute by value", tree.hasAttributeValue(credit, MusicXMLSymbols.PAGE, page));
+	}
+	
+	/**
+	 * Bytes that aren't a well-formed UTF-8 document are refused.
+	 */
+	public static void testRefused() {
+		String[] documents = {"<a><b></a>", "<a></a><b/>", "<a x=1/>", "<a>&bogus;</a>", "<a>", "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><a/>"};
+		for (String xml : documents) {
+			try {
+				ScoreTree.parse(ByteBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8)));
+				Tests.fail("\"" + xml + "\" was parsed");
+			} catch (SAXException e) {
+				// Good
+			}
+		}
+	}
+	
+	/**
+	 * A parse stops partway through once the token bound to its thread is cancelled.
+	 */
+	public static void testCancelled() {
+		CancellationToken token = new CancellationToken();
+		token.cancel("out of time");
+		CancellationToken.Binding binding = token.bind();
+		try {
+			ScoreTree.parse(ByteBuffer.wrap(TestScores.score(200)));
+			Tests.fail("the score was parsed");
+		} catch (CancellationException e) {
+			Tests.assertEquals("reason", "out of time", e.getMessage());
+		} catch (SAXException e) {
+			Tests.fail("the score couldn't be parsed: " + e.getMessage());
+		} finally {
+			binding.close();
+		}
+	}
+}